@@ -0,0 +1,83 @@
+package com.example.aidocumentsearch.benchmark;
+
+import com.example.aidocumentsearch.chunking.BuiltInChunkingStrategy;
+import com.example.aidocumentsearch.chunking.TextChunker;
+import com.example.aidocumentsearch.service.PdfProcessingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chunking of text extracted from a generated PDF. Whitespace cleanup happens inside the chunker, so these also
+ * cover what {@code cleanText} used to do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkingBenchmark {
+
+    @Param({"10", "100"})
+    public int pages;
+
+    @Param({"SENTENCE", "PARAGRAPH", "FIXED_TOKEN"})
+    public BuiltInChunkingStrategy strategy;
+
+    private PdfProcessingService pdfProcessingService;
+    private List<String> pageTexts;
+    private String documentText;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pdfProcessingService = Services.pdfProcessingService(Services.profile(384), strategy);
+        Path pdf = Files.createTempFile("chunking-benchmark", ".pdf");
+        try {
+            SampleData.writePdf(pdf, pages, 42);
+            pageTexts = new ArrayList<>();
+            pdfProcessingService.extractPages(pdf, (page, text) -> pageTexts.add(text));
+        } finally {
+            Files.deleteIfExists(pdf);
+        }
+        documentText = String.join("\n", pageTexts);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pdfProcessingService.stop();
+    }
+
+    @Benchmark
+    public List<String> splitTextIntoChunks() {
+        return pdfProcessingService.splitTextIntoChunks(documentText);
+    }
+
+    // How ingestion chunks: page by page, never holding the whole document as one string
+    @Benchmark
+    public void chunkPages(Blackhole blackhole) {
+        TextChunker chunker = pdfProcessingService.newChunker(blackhole::consume);
+        for (int page = 0; page < pageTexts.size(); page++) {
+            chunker.addPage(page + 1, pageTexts.get(page));
+        }
+        chunker.finish();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.aidocumentsearch.benchmark;
+
+import com.example.aidocumentsearch.store.VectorArena;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cosine similarity kernels of {@link VectorArena}, reported per scored row: the scan path (int8 codes when
+ * quantized), the full-precision rescoring path and the row-to-row path HNSW construction uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CosineKernelBenchmark {
+
+    private static final int ROWS = 4096;
+
+    @Param({"384", "1536"})
+    public int dimension;
+
+    @Param({"NONE", "INT8"})
+    public VectorArena.Quantization quantization;
+
+    private VectorArena arena;
+    private float[] query;
+    private double queryNorm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<float[]> vectors = SampleData.clusteredVectors(ROWS + 1, dimension, 7);
+        arena = new VectorArena(dimension, quantization);
+        for (int i = 0; i < ROWS; i++) {
+            arena.append(vectors.get(i));
+        }
+        query = vectors.get(ROWS);
+        queryNorm = VectorArena.norm(query);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public float scan() {
+        float sum = 0;
+        for (int row = 0; row < ROWS; row++) {
+            sum += arena.cosine(row, query, queryNorm);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public float exact() {
+        float sum = 0;
+        for (int row = 0; row < ROWS; row++) {
+            sum += arena.exactCosine(row, query, queryNorm);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS - 1)
+    public float rowToRow() {
+        float sum = 0;
+        for (int row = 1; row < ROWS; row++) {
+            sum += arena.cosine(row - 1, row);
+        }
+        return sum;
+    }
+}
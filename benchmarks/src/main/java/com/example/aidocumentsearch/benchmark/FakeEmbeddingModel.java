@@ -0,0 +1,43 @@
+package com.example.aidocumentsearch.benchmark;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Embeds each text as a vector derived from its hash, so runs are repeatable and measure the pipeline rather than
+ * a model. Costs one xorshift step per component.
+ */
+class FakeEmbeddingModel implements EmbeddingModel {
+
+    private final int dimension;
+
+    FakeEmbeddingModel(int dimension) {
+        this.dimension = dimension;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            embeddings.add(Embedding.from(vector(segment.text().hashCode())));
+        }
+        return Response.from(embeddings);
+    }
+
+    private float[] vector(long seed) {
+        long state = seed * 0x9E3779B97F4A7C15L + 1;
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            state ^= state << 13;
+            state ^= state >>> 7;
+            state ^= state << 17;
+            vector[i] = (state >>> 40) / (float) (1 << 24) - 0.5f;
+        }
+        return vector;
+    }
+}
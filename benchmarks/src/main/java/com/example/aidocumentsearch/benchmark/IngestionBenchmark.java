@@ -0,0 +1,99 @@
+package com.example.aidocumentsearch.benchmark;
+
+import com.example.aidocumentsearch.chunking.BuiltInChunkingStrategy;
+import com.example.aidocumentsearch.config.EmbeddingProfile;
+import com.example.aidocumentsearch.service.EmbeddingService;
+import com.example.aidocumentsearch.service.PdfProcessingService;
+import com.example.aidocumentsearch.service.QdrantVectorService;
+import com.example.aidocumentsearch.store.VectorArena;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end {@code storeDocumentChunks}: batched embedding through {@link EmbeddingService} with a deterministic
+ * fake model, then a new document version written to a durable collection (log, segment, HNSW graph, BM25) and
+ * committed over the previous one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IngestionBenchmark {
+
+    @Param({"100"})
+    public int pages;
+
+    @Param({"384", "1536"})
+    public int dimension;
+
+    private Path storage;
+    private EmbeddingService embeddingService;
+    private QdrantVectorService vectorService;
+    private List<String> chunks;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        EmbeddingProfile profile = Services.profile(dimension);
+        PdfProcessingService pdfProcessingService = Services.pdfProcessingService(profile,
+                BuiltInChunkingStrategy.SENTENCE);
+        Path pdf = Files.createTempFile("ingestion-benchmark", ".pdf");
+        try {
+            SampleData.writePdf(pdf, pages, 42);
+            List<String> pageTexts = new ArrayList<>();
+            pdfProcessingService.extractPages(pdf, (page, text) -> pageTexts.add(text));
+            chunks = pdfProcessingService.splitTextIntoChunks(String.join("\n", pageTexts));
+        } finally {
+            Files.deleteIfExists(pdf);
+            pdfProcessingService.stop();
+        }
+
+        storage = Files.createTempDirectory("ingestion-benchmark");
+        embeddingService = Services.embeddingService(new FakeEmbeddingModel(dimension), profile);
+        vectorService = Services.vectorService(embeddingService, profile, storage, VectorArena.Quantization.NONE);
+    }
+
+    // Reclaims the versions each iteration replaced, so the collection does not grow across the run
+    @TearDown(Level.Iteration)
+    public void compact() throws IOException {
+        vectorService.checkpoint();
+        vectorService.compact();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        vectorService.closeCollection();
+        embeddingService.stop();
+        try (Stream<Path> files = Files.walk(storage)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public int storeDocumentChunks() throws IOException {
+        return vectorService.storeDocumentChunks(chunks, "manual.pdf");
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.aidocumentsearch.benchmark;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded inputs shared by the benchmarks: a manual-like PDF (numbered headings, paragraphs of technical prose,
+ * part numbers, lines wrapped as a PDF layout wraps them) and clustered vectors shaped like embeddings.
+ */
+final class SampleData {
+
+    private static final String[] WORDS = {
+            "the", "pump", "valve", "pressure", "must", "be", "checked", "before", "each", "start", "and", "after",
+            "maintenance", "controller", "firmware", "update", "requires", "a", "restart", "of", "system", "sensor",
+            "reports", "temperature", "in", "degrees", "while", "operator", "should", "confirm", "that", "seal",
+            "is", "not", "damaged", "replace", "filter", "every", "months", "or", "when", "indicator", "turns",
+            "amber", "calibration", "procedure", "described", "section", "applies", "to", "all", "models", "with",
+            "serial", "numbers", "above", "warranty", "does", "cover", "wear", "parts", "such", "as", "gaskets",
+            "bearings", "connect", "power", "supply", "only", "qualified", "personnel", "may", "open", "housing",
+            "error", "code", "indicates", "low", "flow", "rate", "inspect", "inlet", "for", "blockage", "hose",
+            "clamp", "torque", "specification", "lubricate", "shaft", "using", "approved", "grease", "log", "entry"
+    };
+    private static final String[] HEADINGS = {
+            "Installation", "Safety Notes", "Maintenance Schedule", "Troubleshooting", "Calibration",
+            "Technical Data", "Warranty", "Spare Parts"
+    };
+    private static final int LINE_CHARS = 95;
+    private static final int LINES_PER_PAGE = 52;
+
+    private SampleData() {
+    }
+
+    /**
+     * Writes a PDF of {@code pages} pages to {@code target}.
+     */
+    static void writePdf(Path target, int pages, long seed) throws IOException {
+        List<List<String>> layout = layOut(pages, seed);
+        try (PDDocument document = new PDDocument()) {
+            for (List<String> lines : layout) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 9);
+                    content.setLeading(13.5f);
+                    content.newLineAtOffset(50, 740);
+                    for (String line : lines) {
+                        content.showText(line);
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(target.toFile());
+        }
+    }
+
+    static List<float[]> clusteredVectors(int count, int dimension, long seed) {
+        Random random = new Random(seed);
+        float[][] centroids = new float[64][dimension];
+        for (float[] centroid : centroids) {
+            for (int d = 0; d < dimension; d++) {
+                centroid[d] = (float) random.nextGaussian();
+            }
+        }
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] centroid = centroids[random.nextInt(centroids.length)];
+            float[] vector = new float[dimension];
+            for (int d = 0; d < dimension; d++) {
+                vector[d] = centroid[d] + 0.6f * (float) random.nextGaussian();
+            }
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+
+    private static List<List<String>> layOut(int pages, long seed) {
+        Random random = new Random(seed);
+        List<List<String>> layout = new ArrayList<>();
+        int section = 0;
+        for (int p = 1; p <= pages; p++) {
+            List<String> lines = new ArrayList<>();
+            while (lines.size() < LINES_PER_PAGE - 3) {
+                if (random.nextInt(6) == 0) {
+                    section++;
+                    lines.add(section + "." + (1 + random.nextInt(9)) + " " + HEADINGS[random.nextInt(HEADINGS.length)]);
+                }
+                wrap(paragraph(random), lines);
+                lines.add("");
+            }
+            lines.add("Page " + p + " of " + pages);
+            layout.add(lines);
+        }
+        return layout;
+    }
+
+    private static String paragraph(Random random) {
+        StringBuilder text = new StringBuilder();
+        int sentences = 3 + random.nextInt(5);
+        for (int s = 0; s < sentences; s++) {
+            int words = 8 + random.nextInt(18);
+            for (int w = 0; w < words; w++) {
+                String word = random.nextInt(40) == 0
+                        ? "XJ-" + (1000 + random.nextInt(9000))
+                        : WORDS[random.nextInt(WORDS.length)];
+                if (w == 0) {
+                    word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                }
+                text.append(w == 0 ? "" : " ").append(word);
+            }
+            text.append(random.nextInt(8) == 0 ? "; see section " + (1 + random.nextInt(12)) + "." : ".");
+            if (s < sentences - 1) {
+                text.append(' ');
+            }
+        }
+        return text.toString();
+    }
+
+    private static void wrap(String paragraph, List<String> lines) {
+        int start = 0;
+        while (start < paragraph.length()) {
+            int end = Math.min(paragraph.length(), start + LINE_CHARS);
+            if (end < paragraph.length()) {
+                int space = paragraph.lastIndexOf(' ', end);
+                end = space > start ? space : end;
+            }
+            lines.add(paragraph.substring(start, end).trim());
+            start = end + 1;
+        }
+    }
+}
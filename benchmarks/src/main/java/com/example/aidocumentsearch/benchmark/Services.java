@@ -0,0 +1,94 @@
+package com.example.aidocumentsearch.benchmark;
+
+import com.example.aidocumentsearch.chunking.BuiltInChunkingStrategy;
+import com.example.aidocumentsearch.config.EmbeddingProfile;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.service.EmbeddingService;
+import com.example.aidocumentsearch.service.PdfProcessingService;
+import com.example.aidocumentsearch.service.QdrantVectorService;
+import com.example.aidocumentsearch.service.QueryEmbeddingCache;
+import com.example.aidocumentsearch.store.VectorArena;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Builds the services under test without a Spring context, with the defaults from application.properties.
+ */
+final class Services {
+
+    private Services() {
+    }
+
+    static EmbeddingProfile profile(int dimension) {
+        return new EmbeddingProfile(EmbeddingProfile.Provider.LOCAL, "benchmark-" + dimension, dimension, 256);
+    }
+
+    // A registry of its own per service, so gauges never keep an earlier trial's collection reachable
+    static PipelineMetrics metrics() {
+        return new PipelineMetrics(new SimpleMeterRegistry());
+    }
+
+    static PdfProcessingService pdfProcessingService(EmbeddingProfile profile, BuiltInChunkingStrategy strategy) {
+        PdfProcessingService service = new PdfProcessingService();
+        ReflectionTestUtils.setField(service, "chunkSize", 1000);
+        ReflectionTestUtils.setField(service, "chunkOverlap", 200);
+        ReflectionTestUtils.setField(service, "chunkMaxTokens", 0);
+        ReflectionTestUtils.setField(service, "chunkingStrategy", strategy);
+        ReflectionTestUtils.setField(service, "embeddingProfile", profile);
+        ReflectionTestUtils.setField(service, "maxMainMemoryMb", 16L);
+        ReflectionTestUtils.setField(service, "parallelMinPages", 32);
+        ReflectionTestUtils.setField(service, "pagesPerTask", 16);
+        ReflectionTestUtils.setField(service, "extractThreads", 0);
+        service.start();
+        return service;
+    }
+
+    // No content cache, so every call reaches the model
+    static EmbeddingService embeddingService(EmbeddingModel model, EmbeddingProfile profile) throws IOException {
+        QueryEmbeddingCache queryCache = new QueryEmbeddingCache();
+        ReflectionTestUtils.setField(queryCache, "maxEntries", 1000);
+        ReflectionTestUtils.setField(queryCache, "ttlSeconds", 3600L);
+
+        EmbeddingService service = new EmbeddingService();
+        ReflectionTestUtils.setField(service, "embeddingModel", model);
+        ReflectionTestUtils.setField(service, "queryEmbeddingCache", queryCache);
+        ReflectionTestUtils.setField(service, "embeddingProfile", profile);
+        ReflectionTestUtils.setField(service, "storagePath", "");
+        ReflectionTestUtils.setField(service, "contentCacheMaxMb", 0L);
+        ReflectionTestUtils.setField(service, "batchSize", 64);
+        ReflectionTestUtils.setField(service, "batchMaxTokens", 100000);
+        ReflectionTestUtils.setField(service, "concurrency", 4);
+        ReflectionTestUtils.setField(service, "coalesceWindowMillis", 0L);
+        ReflectionTestUtils.setField(service, "metrics", metrics());
+        service.start();
+        return service;
+    }
+
+    /**
+     * The embedded backend, in memory when {@code storage} is null and durable under it otherwise.
+     */
+    static QdrantVectorService vectorService(EmbeddingService embeddingService, EmbeddingProfile profile,
+                                             Path storage, VectorArena.Quantization quantization) throws IOException {
+        QdrantVectorService service = new QdrantVectorService();
+        ReflectionTestUtils.setField(service, "backend", QdrantVectorService.Backend.LOCAL);
+        ReflectionTestUtils.setField(service, "collectionName", "benchmark");
+        ReflectionTestUtils.setField(service, "storagePath", storage == null ? "" : storage.toString());
+        ReflectionTestUtils.setField(service, "hnswM", 16);
+        ReflectionTestUtils.setField(service, "hnswEfConstruction", 200);
+        ReflectionTestUtils.setField(service, "hnswEfSearch", 64);
+        ReflectionTestUtils.setField(service, "exactSearchThreshold", 5000);
+        ReflectionTestUtils.setField(service, "quantization", quantization);
+        ReflectionTestUtils.setField(service, "rescoreFactor", 4);
+        ReflectionTestUtils.setField(service, "compactionMaxSegments", 8);
+        ReflectionTestUtils.setField(service, "compactionDeletedRatio", 0.3);
+        ReflectionTestUtils.setField(service, "embeddingService", embeddingService);
+        ReflectionTestUtils.setField(service, "embeddingProfile", profile);
+        ReflectionTestUtils.setField(service, "metrics", metrics());
+        service.openCollection();
+        return service;
+    }
+}
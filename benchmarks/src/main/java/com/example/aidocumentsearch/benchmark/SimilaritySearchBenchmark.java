@@ -0,0 +1,88 @@
+package com.example.aidocumentsearch.benchmark;
+
+import com.example.aidocumentsearch.config.EmbeddingProfile;
+import com.example.aidocumentsearch.service.QdrantVectorService;
+import com.example.aidocumentsearch.store.VectorArena;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code searchSimilarChunks} over an in-memory collection of clustered vectors, loaded as documents of
+ * {@value #CHUNKS_PER_DOCUMENT} chunks each.
+ *
+ * <p>Loading builds the HNSW graphs, which takes minutes at a million vectors; 1M x 1536 floats alone is about
+ * 6 GB of heap. Pick smaller sizes with {@code -p vectors=10000,100000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx16g"})
+public class SimilaritySearchBenchmark {
+
+    private static final int CHUNKS_PER_DOCUMENT = 10_000;
+    private static final int QUERIES = 256;
+
+    @Param({"10000", "100000", "1000000"})
+    public int vectors;
+
+    @Param({"384", "1536"})
+    public int dimension;
+
+    @Param({"NONE"})
+    public VectorArena.Quantization quantization;
+
+    @Param({"5"})
+    public int topK;
+
+    private QdrantVectorService vectorService;
+    private List<float[]> queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        EmbeddingProfile profile = Services.profile(dimension);
+        vectorService = Services.vectorService(
+                Services.embeddingService(new FakeEmbeddingModel(dimension), profile), profile, null, quantization);
+
+        List<float[]> data = SampleData.clusteredVectors(vectors + QUERIES, dimension, 13);
+        for (int first = 0; first < vectors; first += CHUNKS_PER_DOCUMENT) {
+            int last = Math.min(vectors, first + CHUNKS_PER_DOCUMENT);
+            List<String> chunks = new ArrayList<>(last - first);
+            for (int i = first; i < last; i++) {
+                chunks.add("chunk " + i);
+            }
+            vectorService.storeDocumentChunks(chunks, data.subList(first, last), "document-" + first + ".pdf");
+        }
+        queries = new ArrayList<>(data.subList(vectors, vectors + QUERIES));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        vectorService.closeCollection();
+    }
+
+    @Benchmark
+    public List<String> searchSimilarChunks() {
+        float[] query = queries.get(next);
+        next = (next + 1) % QUERIES;
+        return vectorService.searchSimilarChunks(query, topK);
+    }
+}
@@ -1,6 +1,6 @@
 import React, { useState } from 'react';
 import { Send, Bot, User, FileText } from 'lucide-react';
-import { chatWithDocuments } from '../services/api';
+import { streamChatWithDocuments } from '../services/api';
 
 const ChatInterface = () => {
   const [messages, setMessages] = useState([]);
@@ -16,15 +16,26 @@ const ChatInterface = () => {
     setInputValue('');
     setIsLoading(true);
 
+    // The bot message is added once the sources arrive and then grows token by token
+    const updateBotMessage = (update) => {
+      setMessages(prev => {
+        const last = prev[prev.length - 1];
+        return [...prev.slice(0, -1), { ...last, ...update(last) }];
+      });
+    };
+
     try {
-      const response = await chatWithDocuments(inputValue.trim());
-      const botMessage = {
-        type: 'bot',
-        content: response.answer,
-        sources: response.sources || [],
-        citations: response.citations || []
-      };
-      setMessages(prev => [...prev, botMessage]);
+      await streamChatWithDocuments(userMessage.content, {
+        onSources: (response) => {
+          setMessages(prev => [...prev, {
+            type: 'bot',
+            content: '',
+            sources: response.sources || [],
+            citations: response.citations || []
+          }]);
+        },
+        onToken: (text) => updateBotMessage(last => ({ content: last.content + text }))
+      });
     } catch (error) {
       console.error('Chat error:', error);
       console.error('Error details:', error.response?.data || error.message);
@@ -96,7 +107,7 @@ const ChatInterface = () => {
           ))
         )}
         
-        {isLoading && (
+        {isLoading && messages[messages.length - 1]?.type !== 'bot' && (
           <div className="flex justify-start mb-4">
             <div className="flex max-w-xs lg:max-w-md">
               <div className="flex-shrink-0 mr-3">
@@ -1,11 +1,12 @@
 import React, { useCallback, useState } from 'react';
 import { useDropzone } from 'react-dropzone';
 import { Upload, FileText, AlertCircle, CheckCircle } from 'lucide-react';
-import { uploadDocument } from '../services/api';
+import { uploadDocument, waitForIngestionJob } from '../services/api';
 
 const FileUpload = ({ onUploadSuccess, onUploadError }) => {
   const [isUploading, setIsUploading] = useState(false);
   const [uploadStatus, setUploadStatus] = useState(null);
+  const [progress, setProgress] = useState(null);
 
   const onDrop = useCallback(async (acceptedFiles) => {
     const file = acceptedFiles[0];
@@ -15,7 +16,12 @@ const FileUpload = ({ onUploadSuccess, onUploadError }) => {
     setUploadStatus(null);
 
     try {
-      const response = await uploadDocument(file);
+      const accepted = await uploadDocument(file);
+      const job = await waitForIngestionJob(accepted.jobId, setProgress);
+      if (job.stage === 'FAILED') {
+        throw new Error(job.error || 'Processing failed');
+      }
+      const response = { ...accepted, message: 'Document uploaded and processed successfully', chunksCreated: job.storedChunks };
       setUploadStatus({ type: 'success', message: response.message, chunks: response.chunksCreated });
       onUploadSuccess?.(response);
     } catch (error) {
@@ -24,6 +30,7 @@ const FileUpload = ({ onUploadSuccess, onUploadError }) => {
       onUploadError?.(error);
     } finally {
       setIsUploading(false);
+      setProgress(null);
     }
   }, [onUploadSuccess, onUploadError]);
 
@@ -57,7 +64,11 @@ const FileUpload = ({ onUploadSuccess, onUploadError }) => {
           
           <div>
             <p className="text-lg font-medium text-gray-900">
-              {isUploading ? 'Uploading...' : isDragActive ? 'Drop the PDF here' : 'Upload a PDF'}
+              {isUploading
+                ? (progress && progress.totalChunks > 0
+                    ? `Processing... ${progress.storedChunks}/${progress.totalChunks} chunks`
+                    : 'Uploading...')
+                : isDragActive ? 'Drop the PDF here' : 'Upload a PDF'}
             </p>
             <p className="text-sm text-gray-500 mt-1">
               Drag and drop a PDF file, or click to select
@@ -47,11 +47,78 @@ export const uploadDocument = async (file) => {
   return response.data;
 };
 
-export const chatWithDocuments = async (question) => {
-  const response = await api.post('/chat', { question });
+export const getIngestionJob = async (jobId) => {
+  const response = await api.get(`/documents/jobs/${jobId}`);
   return response.data;
 };
 
+// Polls an ingestion job until it completes or fails, reporting progress along the way
+export const waitForIngestionJob = async (jobId, onProgress, intervalMs = 1000) => {
+  for (;;) {
+    const job = await getIngestionJob(jobId);
+    onProgress?.(job);
+    if (job.stage === 'COMPLETED' || job.stage === 'FAILED') {
+      return job;
+    }
+    await new Promise((resolve) => setTimeout(resolve, intervalMs));
+  }
+};
+
+// Removes a document from searches; resolves to false when it was not stored
+export const deleteDocument = async (filename) => {
+  const response = await api.delete(`/documents/${encodeURIComponent(filename)}`, {
+    validateStatus: (status) => status === 204 || status === 404,
+  });
+  return response.status === 204;
+};
+
+// filenames optionally restricts the answer to those documents
+export const chatWithDocuments = async (question, filenames) => {
+  const response = await api.post('/chat', { question, filenames });
+  return response.data;
+};
+
+// Streams an answer from /chat/stream: onSources gets the sources and citations, onToken each piece of text
+export const streamChatWithDocuments = async (question, { onSources, onToken, filenames } = {}) => {
+  const response = await fetch(`${API_BASE_URL}/chat/stream`, {
+    method: 'POST',
+    headers: { 'Content-Type': 'application/json', Accept: 'text/event-stream' },
+    body: JSON.stringify({ question, filenames }),
+  });
+  if (!response.ok || !response.body) {
+    throw new Error(`Chat stream failed with status ${response.status}`);
+  }
+
+  const reader = response.body.getReader();
+  const decoder = new TextDecoder();
+  let buffer = '';
+  let summary = null;
+  for (;;) {
+    const { done, value } = await reader.read();
+    if (done) break;
+    buffer += decoder.decode(value, { stream: true });
+
+    let end;
+    while ((end = buffer.indexOf('\n\n')) >= 0) {
+      const block = buffer.slice(0, end);
+      buffer = buffer.slice(end + 2);
+      let event = 'message';
+      let data = '';
+      for (const line of block.split('\n')) {
+        if (line.startsWith('event:')) event = line.slice(6).trim();
+        else if (line.startsWith('data:')) data += line.slice(5);
+      }
+      if (!data) continue;
+      const payload = JSON.parse(data);
+      if (event === 'sources') onSources?.(payload);
+      else if (event === 'token') onToken?.(payload.text);
+      else if (event === 'done') summary = payload;
+      else if (event === 'error') throw new Error(payload.text);
+    }
+  }
+  return summary;
+};
+
 export const checkHealth = async () => {
   const response = await api.get('/documents/actuator/health');
   return response.data;
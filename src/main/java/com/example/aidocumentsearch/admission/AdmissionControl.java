@@ -0,0 +1,302 @@
+package com.example.aidocumentsearch.admission;
+
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.metrics.PipelineMetrics.Stage;
+import com.example.aidocumentsearch.metrics.PipelineMetrics.Work;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a chat question or a document upload may start, before any work is done for it.
+ *
+ * <p>Each lane has a concurrency limit that follows its provider's latency: the chat lane the model calls, the
+ * ingestion lane the embedding calls. While latency stays near the lowest seen recently the limit creeps up; when
+ * it rises the limit shrinks in proportion. A lane turns requests away once the work already in flight beyond its
+ * limit would keep a new one waiting longer than the lane's latency budget, and uploads are also turned away while
+ * chat is close to its limit, so interactive questions keep the providers first. A request counts as in flight from
+ * the moment it is admitted until it is {@link #release released}, so an upload still spooling its body or a batch
+ * not yet retrieving already holds its place. On top of that every client has a token bucket per lane, and a batch
+ * of questions pays a token for each of them.
+ */
+@Component
+public class AdmissionControl {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControl.class);
+
+    public enum Lane { CHAT, INGESTION }
+
+    /**
+     * Why a request was turned away: 429 for a client over its rate, 503 for an overloaded lane.
+     */
+    public static final class Rejection {
+
+        private final int status;
+        private final long retryAfterSeconds;
+        private final String reason;
+
+        Rejection(int status, long retryAfterSeconds, String reason) {
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+            this.reason = reason;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Value("${app.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.admission.chat.rate.per.minute:60}")
+    private double chatRatePerMinute;
+
+    @Value("${app.admission.chat.burst:20}")
+    private int chatBurst;
+
+    @Value("${app.admission.chat.limit.initial:16}")
+    private int chatInitialLimit;
+
+    @Value("${app.admission.chat.limit.min:4}")
+    private int chatMinLimit;
+
+    @Value("${app.admission.chat.limit.max:64}")
+    private int chatMaxLimit;
+
+    // Longest a question may expect to wait for a model call before it is refused
+    @Value("${app.admission.chat.latency.budget.ms:10000}")
+    private long chatLatencyBudgetMs;
+
+    @Value("${app.admission.ingestion.rate.per.minute:10}")
+    private double ingestionRatePerMinute;
+
+    @Value("${app.admission.ingestion.burst:5}")
+    private int ingestionBurst;
+
+    @Value("${app.admission.ingestion.limit.initial:4}")
+    private int ingestionInitialLimit;
+
+    @Value("${app.admission.ingestion.limit.min:1}")
+    private int ingestionMinLimit;
+
+    @Value("${app.admission.ingestion.limit.max:16}")
+    private int ingestionMaxLimit;
+
+    // A job is many embedding calls, so by default none waits beyond the limit
+    @Value("${app.admission.ingestion.latency.budget.ms:0}")
+    private long ingestionLatencyBudgetMs;
+
+    // Uploads are refused while chat has this share of its limit in flight
+    @Value("${app.admission.ingestion.max.chat.load:0.8}")
+    private double ingestionMaxChatLoad;
+
+    private final Map<Lane, Limiter> limiters = new EnumMap<>(Lane.class);
+    private final Map<Lane, AtomicInteger> admitted = new EnumMap<>(Lane.class);
+
+    @PostConstruct
+    public void start() {
+        limiters.put(Lane.CHAT, new Limiter(chatRatePerMinute, chatBurst, chatInitialLimit, chatMinLimit,
+                chatMaxLimit, chatLatencyBudgetMs));
+        limiters.put(Lane.INGESTION, new Limiter(ingestionRatePerMinute, ingestionBurst, ingestionInitialLimit,
+                ingestionMinLimit, ingestionMaxLimit, ingestionLatencyBudgetMs));
+        metrics.onRecorded(Stage.LLM_CALL, limiters.get(Lane.CHAT)::sample);
+        metrics.onRecorded(Stage.EMBED, limiters.get(Lane.INGESTION)::sample);
+        for (Lane lane : Lane.values()) {
+            admitted.put(lane, new AtomicInteger());
+            metrics.gauge("rag.admission.limit", "Concurrency a lane currently admits before queueing",
+                    Tags.of("lane", tag(lane)), limiters.get(lane), Limiter::limit);
+            metrics.gauge("rag.admission.admitted", "Admitted requests not yet released",
+                    Tags.of("lane", tag(lane)), admitted.get(lane), AtomicInteger::get);
+        }
+    }
+
+    /**
+     * Admits a request of {@code client} to {@code lane}, taking one of the client's tokens. An admitted request
+     * counts against the lane's limit until it is passed to {@link #release}.
+     *
+     * @return null when the request may go ahead
+     */
+    public Rejection admit(Lane lane, String client) {
+        if (!enabled) {
+            return null;
+        }
+        Limiter limiter = limiters.get(lane);
+        Rejection rejection = limiter.overload(inFlight(lane));
+        if (rejection == null && lane == Lane.INGESTION) {
+            Limiter chat = limiters.get(Lane.CHAT);
+            if (inFlight(Lane.CHAT) >= chat.limit() * ingestionMaxChatLoad) {
+                rejection = new Rejection(503, chat.retryAfterSeconds(1.0), "chat_priority");
+            }
+        }
+        if (rejection == null) {
+            long waitNanos = limiter.bucket(client).tryTake(System.nanoTime());
+            if (waitNanos > 0) {
+                rejection = new Rejection(429, seconds(waitNanos), "rate_limited");
+            }
+        }
+        if (rejection == null) {
+            admitted.get(lane).incrementAndGet();
+        } else {
+            metrics.admissionRejected(tag(lane), rejection.getReason());
+            if (log.isDebugEnabled()) {
+                log.debug("request rejected lane={} client={} reason={} retryAfterSeconds={}", tag(lane), client,
+                        rejection.getReason(), rejection.getRetryAfterSeconds());
+            }
+        }
+        return rejection;
+    }
+
+    /**
+     * Takes {@code tokens} more of {@code client}'s tokens for a request already admitted to {@code lane}, once it
+     * is known to carry more than one unit of work, such as the other questions of a batch. When the client does
+     * not have them the request is refused, so the token its admission took is given back too.
+     *
+     * @return null when the client had them
+     */
+    public Rejection charge(Lane lane, String client, int tokens) {
+        if (!enabled || client == null || tokens <= 0) {
+            return null;
+        }
+        TokenBucket bucket = limiters.get(lane).bucket(client);
+        long waitNanos = bucket.tryTake(System.nanoTime(), tokens);
+        if (waitNanos <= 0) {
+            return null;
+        }
+        bucket.giveBack(1);
+        Rejection rejection = new Rejection(429, seconds(waitNanos), "rate_limited");
+        metrics.admissionRejected(tag(lane), rejection.getReason());
+        return rejection;
+    }
+
+    /**
+     * Ends a request {@link #admit admitted} to {@code lane}, once its response is complete.
+     */
+    public void release(Lane lane) {
+        if (enabled) {
+            admitted.get(lane).decrementAndGet();
+        }
+    }
+
+    public double limit(Lane lane) {
+        return limiters.get(lane).limit();
+    }
+
+    // Buckets that have filled up again hold nothing a new bucket would not
+    @Scheduled(fixedDelayString = "${app.admission.client.eviction.interval.ms:60000}")
+    public void evictIdleClients() {
+        long now = System.nanoTime();
+        for (Limiter limiter : limiters.values()) {
+            limiter.buckets.values().removeIf(bucket -> bucket.isFull(now));
+        }
+    }
+
+    private int inFlight(Lane lane) {
+        int requests = admitted.get(lane).get();
+        if (lane == Lane.INGESTION) {
+            // An upload counts from admission until its 202, and its job from submission until it finishes
+            return requests + metrics.inFlight(Work.INGESTION);
+        }
+        // Admitted requests cover the chat work they start, but a batch counts once more for each running model call
+        int started = metrics.inFlight(Work.CHAT) + metrics.inFlight(Work.STREAM) + metrics.inFlight(Work.BATCH);
+        return Math.max(requests, started) + metrics.inFlight(Work.BATCH_ANSWER);
+    }
+
+    private static String tag(Lane lane) {
+        return lane.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static long seconds(double nanos) {
+        return Math.max(1L, (long) Math.ceil(nanos / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    private static final class Limiter {
+
+        // Weight of a new latency sample in the recent average
+        private static final double SMOOTHING = 0.2;
+        // How fast the baseline forgets a low it has not seen again, per sample
+        private static final double BASELINE_DRIFT = 0.01;
+
+        private final double tokensPerSecond;
+        private final int burst;
+        private final int minLimit;
+        private final int maxLimit;
+        private final long budgetNanos;
+        private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+        private double limit;
+        private double recentNanos;
+        private double baselineNanos;
+
+        Limiter(double ratePerMinute, int burst, int initialLimit, int minLimit, int maxLimit, long budgetMs) {
+            this.tokensPerSecond = ratePerMinute / 60.0;
+            this.burst = burst;
+            this.minLimit = Math.max(1, minLimit);
+            this.maxLimit = Math.max(this.minLimit, maxLimit);
+            this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, budgetMs));
+            this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        }
+
+        TokenBucket bucket(String client) {
+            return buckets.computeIfAbsent(client, key -> new TokenBucket(burst, tokensPerSecond, System.nanoTime()));
+        }
+
+        synchronized void sample(long nanos) {
+            if (recentNanos == 0.0) {
+                recentNanos = nanos;
+                baselineNanos = nanos;
+                return;
+            }
+            recentNanos += (nanos - recentNanos) * SMOOTHING;
+            baselineNanos = recentNanos < baselineNanos ? recentNanos
+                    : baselineNanos + (recentNanos - baselineNanos) * BASELINE_DRIFT;
+            // Below 1 once latency rises over the baseline; the square root is headroom to probe for more
+            double gradient = Math.max(0.5, Math.min(1.0, baselineNanos / Math.max(1.0, recentNanos)));
+            double target = limit * gradient + Math.sqrt(limit);
+            limit = Math.max(minLimit, Math.min(maxLimit, limit + (target - limit) * SMOOTHING));
+        }
+
+        synchronized double limit() {
+            return limit;
+        }
+
+        // A request behind the limit waits about (its place in the queue / limit) calls
+        synchronized Rejection overload(int inFlight) {
+            double admitted = Math.floor(limit);
+            if (recentNanos > 0.0) {
+                admitted += Math.floor(limit * budgetNanos / recentNanos);
+            }
+            if (inFlight < admitted) {
+                return null;
+            }
+            return new Rejection(503, retryAfterSeconds(inFlight - admitted + 1), "overloaded");
+        }
+
+        synchronized long retryAfterSeconds(double excess) {
+            return seconds(excess / limit * recentNanos);
+        }
+    }
+}
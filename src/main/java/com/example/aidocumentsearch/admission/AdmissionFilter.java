@@ -0,0 +1,122 @@
+package com.example.aidocumentsearch.admission;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Applies {@link AdmissionControl} to the chat endpoints and to uploads. It runs as a servlet filter, ahead of
+ * multipart parsing, so a refused upload is never spooled to disk; refused requests get 429 or 503 with a
+ * {@code Retry-After} header straight away. An admitted request carries the client in the
+ * {@link #CLIENT_ATTRIBUTE} request attribute, for charges made once its body is read, and is released once its
+ * response is complete, which for a streamed answer is when the stream ends.
+ */
+@Component
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    public static final String CLIENT_ATTRIBUTE = AdmissionFilter.class.getName() + ".client";
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    // Header naming the client, e.g. X-Forwarded-For behind a proxy; empty uses the connection's address
+    @Value("${app.admission.client.header:}")
+    private String clientHeader;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return lane(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        AdmissionControl.Lane lane = lane(request);
+        String client = client(request);
+        AdmissionControl.Rejection rejection = admissionControl.admit(lane, client);
+        if (rejection == null) {
+            request.setAttribute(CLIENT_ATTRIBUTE, client);
+            boolean async = false;
+            try {
+                chain.doFilter(request, response);
+                if (request.isAsyncStarted()) {
+                    request.getAsyncContext().addListener(new Release(lane));
+                    async = true;
+                }
+            } finally {
+                if (!async) {
+                    admissionControl.release(lane);
+                }
+            }
+            return;
+        }
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(rejection.getRetryAfterSeconds()));
+        if (request.getHeader(HttpHeaders.ORIGIN) != null) {
+            // The controllers' @CrossOrigin never runs for a refused request; browsers need it to read the status
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, HttpHeaders.RETRY_AFTER);
+        }
+        response.setStatus(rejection.getStatus());
+    }
+
+    private static AdmissionControl.Lane lane(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod())) {
+            return null;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.equals("/api/documents/upload")) {
+            return AdmissionControl.Lane.INGESTION;
+        }
+        if (path.equals("/api/chat") || path.equals("/api/chat/stream") || path.equals("/api/chat/batch")) {
+            return AdmissionControl.Lane.CHAT;
+        }
+        return null;
+    }
+
+    // Completion follows a timeout or an error as well, so it is the one event that releases
+    private final class Release implements AsyncListener {
+
+        private final AdmissionControl.Lane lane;
+
+        Release(AdmissionControl.Lane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            admissionControl.release(lane);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    private String client(HttpServletRequest request) {
+        String header = clientHeader.isEmpty() ? null : request.getHeader(clientHeader);
+        if (header == null || header.trim().isEmpty()) {
+            return request.getRemoteAddr();
+        }
+        // The first address of a forwarding chain is the original client
+        int comma = header.indexOf(',');
+        return (comma < 0 ? header : header.substring(0, comma)).trim();
+    }
+}
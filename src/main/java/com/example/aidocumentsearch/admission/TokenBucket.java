@@ -0,0 +1,66 @@
+package com.example.aidocumentsearch.admission;
+
+/**
+ * Rate limit for one client: holds up to {@code capacity} tokens, refilled at {@code tokensPerSecond}, and each
+ * request takes one, or one per unit of work it carries. A full bucket lets a burst of {@code capacity} requests
+ * through at once.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(double capacity, double tokensPerSecond, long nowNanos) {
+        this.capacity = Math.max(1.0, capacity);
+        this.tokensPerNano = tokensPerSecond / 1e9;
+        this.tokens = this.capacity;
+        this.refilledAt = nowNanos;
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return 0 when a token was taken, otherwise the nanoseconds until the next one is
+     */
+    public long tryTake(long nowNanos) {
+        return tryTake(nowNanos, 1);
+    }
+
+    /**
+     * Takes {@code count} tokens if that many are available; a count over the capacity takes a full bucket.
+     *
+     * @return 0 when they were taken, otherwise the nanoseconds until they are
+     */
+    public synchronized long tryTake(long nowNanos, int count) {
+        refill(nowNanos);
+        double cost = Math.min(capacity, Math.max(1, count));
+        if (tokens >= cost) {
+            tokens -= cost;
+            return 0;
+        }
+        return tokensPerNano <= 0.0 ? Long.MAX_VALUE : (long) Math.ceil((cost - tokens) / tokensPerNano);
+    }
+
+    /**
+     * Returns {@code count} tokens taken for a request that ended up doing no work.
+     */
+    public synchronized void giveBack(int count) {
+        tokens = Math.min(capacity, tokens + Math.max(0, count));
+    }
+
+    // A full bucket behaves like a new one, so it can be dropped
+    public synchronized boolean isFull(long nowNanos) {
+        refill(nowNanos);
+        return tokens >= capacity;
+    }
+
+    private void refill(long nowNanos) {
+        if (nowNanos > refilledAt) {
+            tokens = Math.min(capacity, tokens + (nowNanos - refilledAt) * tokensPerNano);
+            refilledAt = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.aidocumentsearch.chunking;
+
+/**
+ * Kinds of places a chunk can end, weakest first. Every boundary is also a word boundary.
+ */
+public enum Boundary {
+    WORD,
+    // After terminal punctuation (. ! ?), optionally followed by closing quotes or brackets
+    SENTENCE,
+    // A blank line in the source text
+    PARAGRAPH
+}
@@ -0,0 +1,39 @@
+package com.example.aidocumentsearch.chunking;
+
+/**
+ * The strategies selectable with {@code app.chunk.strategy}. Each falls back to weaker boundaries when a single
+ * unit (paragraph or sentence) does not fit in one chunk.
+ */
+public enum BuiltInChunkingStrategy implements ChunkingStrategy {
+
+    // Whole sentences up to the size limit
+    SENTENCE {
+        @Override
+        public int chooseBoundary(Boundary[] types, int from, int to) {
+            int boundary = ChunkingStrategy.lastAtLeast(types, from, to, Boundary.SENTENCE);
+            return boundary >= 0 ? boundary : ChunkingStrategy.lastAtLeast(types, from, to, Boundary.WORD);
+        }
+    },
+
+    // Whole paragraphs, then whole sentences
+    PARAGRAPH {
+        @Override
+        public int chooseBoundary(Boundary[] types, int from, int to) {
+            int boundary = ChunkingStrategy.lastAtLeast(types, from, to, Boundary.PARAGRAPH);
+            return boundary >= 0 ? boundary : SENTENCE.chooseBoundary(types, from, to);
+        }
+    },
+
+    // As many words as fit in the token limit, ignoring the character limit
+    FIXED_TOKEN {
+        @Override
+        public int chooseBoundary(Boundary[] types, int from, int to) {
+            return to > from ? to - 1 : -1;
+        }
+
+        @Override
+        public boolean limitsCharacters() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.aidocumentsearch.chunking;
+
+/**
+ * Decides where {@link TextChunker} ends a chunk once adding more text would exceed its size limit.
+ */
+public interface ChunkingStrategy {
+
+    /**
+     * Picks the boundary the full chunk ends on.
+     *
+     * @param types boundary kind of each candidate, in text order
+     * @param from  first candidate that leaves new (non-overlap) text in the chunk
+     * @param to    one past the last candidate
+     * @return the index of the chosen candidate, or -1 to cut mid-word at the size limit
+     */
+    int chooseBoundary(Boundary[] types, int from, int to);
+
+    /**
+     * Whether chunks are capped by the character limit as well as the token limit.
+     */
+    default boolean limitsCharacters() {
+        return true;
+    }
+
+    /**
+     * Index of the last candidate in {@code [from, to)} at least as strong as {@code minimum}, or -1.
+     */
+    static int lastAtLeast(Boundary[] types, int from, int to, Boundary minimum) {
+        for (int i = to - 1; i >= from; i--) {
+            if (types[i].compareTo(minimum) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.aidocumentsearch.chunking;
+
+public class TextChunk {
+
+    private final String text;
+    // 1-based page the chunk starts on, 0 when unknown
+    private final int page;
+
+    public TextChunk(String text, int page) {
+        this.text = text;
+        this.page = page;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getPage() {
+        return page;
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.aidocumentsearch.chunking;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Single-pass chunker fed a document one page at a time. Each chunk goes to the consumer as soon as it is
+ * complete, so a document is never held as a single string.
+ *
+ * <p>Characters are copied once into a reusable buffer that holds only the chunk being built. Whitespace runs
+ * are collapsed as they are copied: a blank line becomes {@code '\n'} and any other run becomes a single space.
+ * Each collapsed run is also a candidate boundary (word, sentence or paragraph), recorded by offset. When the next
+ * character would take the chunk past {@code maxChars} or {@code maxTokens}, the {@link ChunkingStrategy} picks
+ * one of those candidates, the chunk up to it is emitted with one {@code String} copy, and the buffer is
+ * compacted in place. The next chunk starts at the first word within {@code overlapChars} of the cut.
+ *
+ * <p>Tokens are estimated while scanning: one per punctuation character and one per four characters of each
+ * word. That over-counts slightly for English text, which keeps chunks inside the embedding model's input limit.
+ *
+ * <p>A chunk is attributed to the page its first new (non-overlap) character comes from.
+ */
+public class TextChunker {
+
+    private final int maxChars;
+    private final int maxTokens;
+    private final int overlapChars;
+    private final ChunkingStrategy strategy;
+    private final Consumer<TextChunk> consumer;
+
+    // Text of the chunk being built; [0, contentStart) is overlap carried from the previous chunk
+    private char[] buffer = new char[1024];
+    private int length;
+    private int contentStart;
+    private int tokens;
+
+    // Candidate cut offsets: each is the offset of a separator, and the chunk may end just before it
+    private int[] boundaryOffsets = new int[64];
+    private Boundary[] boundaryTypes = new Boundary[64];
+    private int boundaryCount;
+
+    // Page of the text starting at each recorded offset
+    private int[] pageOffsets = new int[8];
+    private int[] pageNumbers = new int[8];
+    private int pageCount;
+
+    // Scanner state carried across pages
+    private int newlines;
+    private boolean afterSentenceEnd;
+    private int wordLength;
+    private int pendingPage;
+
+    public TextChunker(int maxChars, int maxTokens, int overlapChars, ChunkingStrategy strategy,
+                       Consumer<TextChunk> consumer) {
+        this.maxChars = strategy.limitsCharacters() && maxChars > 0 ? maxChars : Integer.MAX_VALUE;
+        this.maxTokens = maxTokens > 0 ? maxTokens : Integer.MAX_VALUE;
+        // Overlap must leave room for new text or chunking would never advance
+        this.overlapChars = Math.max(0, Math.min(overlapChars, this.maxChars / 2));
+        this.strategy = strategy;
+        this.consumer = consumer;
+    }
+
+    public void addPage(int page, CharSequence text) {
+        pendingPage = page;
+        separate(false);
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                separate(true);
+            } else if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                separate(false);
+            } else {
+                append(c);
+            }
+        }
+    }
+
+    public void finish() {
+        int end = length > 0 && isSeparator(buffer[length - 1]) ? length - 1 : length;
+        if (end > contentStart) {
+            consumer.accept(new TextChunk(new String(buffer, 0, end), pageAt(contentStart)));
+        }
+        length = 0;
+        contentStart = 0;
+        tokens = 0;
+        boundaryCount = 0;
+        pageCount = 0;
+        newlines = 0;
+        afterSentenceEnd = false;
+        wordLength = 0;
+    }
+
+    // The first whitespace character after text writes one separator; a second line break in the same run
+    // turns it into a paragraph break
+    private void separate(boolean newline) {
+        if (length == 0) {
+            return;
+        }
+        if (isSeparator(buffer[length - 1])) {
+            if (newline && ++newlines >= 2 && boundaryCount > 0 && boundaryOffsets[boundaryCount - 1] == length - 1) {
+                buffer[length - 1] = '\n';
+                boundaryTypes[boundaryCount - 1] = Boundary.PARAGRAPH;
+            }
+            return;
+        }
+        newlines = newline ? 1 : 0;
+        addBoundary(length, afterSentenceEnd ? Boundary.SENTENCE : Boundary.WORD);
+        put(' ');
+        wordLength = 0;
+    }
+
+    private void append(char c) {
+        boolean wordChar = Character.isLetterOrDigit(c);
+        int charTokens = !wordChar || wordLength % 4 == 0 ? 1 : 0;
+        if (length > contentStart && (length + 1 > maxChars || tokens + charTokens > maxTokens)) {
+            cut();
+        }
+
+        if (pendingPage != 0) {
+            recordPage(length);
+            pendingPage = 0;
+        }
+        put(c);
+        tokens += charTokens;
+        wordLength = wordChar ? wordLength + 1 : 0;
+        newlines = 0;
+
+        if (c == '.' || c == '!' || c == '?') {
+            afterSentenceEnd = true;
+        } else if (!isClosing(c)) {
+            afterSentenceEnd = false;
+        }
+    }
+
+    // Emits the chunk up to the strategy's boundary and keeps the overlap and any unfinished text
+    private void cut() {
+        int first = 0;
+        while (first < boundaryCount && boundaryOffsets[first] <= contentStart) {
+            first++;
+        }
+        int chosen = strategy.chooseBoundary(boundaryTypes, first, boundaryCount);
+
+        // Without a usable boundary (a single word longer than the limit) cut mid-word
+        int end = chosen >= 0 ? boundaryOffsets[chosen] : length;
+        int resume = chosen >= 0 ? end + 1 : length;
+        consumer.accept(new TextChunk(new String(buffer, 0, end), pageAt(contentStart)));
+
+        int keepFrom = overlapStart(end, resume);
+        System.arraycopy(buffer, keepFrom, buffer, 0, length - keepFrom);
+        length -= keepFrom;
+        contentStart = resume - keepFrom;
+
+        int kept = 0;
+        for (int i = 0; i < boundaryCount; i++) {
+            if (boundaryOffsets[i] > keepFrom) {
+                boundaryOffsets[kept] = boundaryOffsets[i] - keepFrom;
+                boundaryTypes[kept] = boundaryTypes[i];
+                kept++;
+            }
+        }
+        Arrays.fill(boundaryTypes, kept, boundaryCount, null);
+        boundaryCount = kept;
+
+        int firstPage = 0;
+        while (firstPage + 1 < pageCount && pageOffsets[firstPage + 1] <= keepFrom) {
+            firstPage++;
+        }
+        int pages = 0;
+        for (int i = firstPage; i < pageCount; i++) {
+            pageOffsets[pages] = Math.max(0, pageOffsets[i] - keepFrom);
+            pageNumbers[pages] = pageNumbers[i];
+            pages++;
+        }
+        pageCount = pages;
+
+        tokens = estimateTokens(buffer, 0, length);
+    }
+
+    // First word start within overlapChars before the cut, or the resume point when there is none
+    private int overlapStart(int end, int resume) {
+        if (overlapChars == 0) {
+            return resume;
+        }
+        int earliest = end - overlapChars;
+        for (int i = 0; i < boundaryCount && boundaryOffsets[i] < end; i++) {
+            if (boundaryOffsets[i] + 1 >= earliest) {
+                return boundaryOffsets[i] + 1;
+            }
+        }
+        return resume;
+    }
+
+    private int pageAt(int offset) {
+        int page = pageCount > 0 ? pageNumbers[0] : 0;
+        for (int i = 1; i < pageCount && pageOffsets[i] <= offset; i++) {
+            page = pageNumbers[i];
+        }
+        return page;
+    }
+
+    private void put(char c) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = c;
+    }
+
+    private void addBoundary(int offset, Boundary type) {
+        if (boundaryCount == boundaryOffsets.length) {
+            boundaryOffsets = Arrays.copyOf(boundaryOffsets, boundaryCount * 2);
+            boundaryTypes = Arrays.copyOf(boundaryTypes, boundaryCount * 2);
+        }
+        boundaryOffsets[boundaryCount] = offset;
+        boundaryTypes[boundaryCount] = type;
+        boundaryCount++;
+    }
+
+    private void recordPage(int offset) {
+        if (pageCount == pageOffsets.length) {
+            pageOffsets = Arrays.copyOf(pageOffsets, pageCount * 2);
+            pageNumbers = Arrays.copyOf(pageNumbers, pageCount * 2);
+        }
+        pageOffsets[pageCount] = offset;
+        pageNumbers[pageCount] = pendingPage;
+        pageCount++;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\n';
+    }
+
+    private static boolean isClosing(char c) {
+        return c == '"' || c == '\'' || c == ')' || c == ']' || c == '”' || c == '’';
+    }
+
+    /**
+     * The estimate used while scanning, applied to already normalised text.
+     */
+    static int estimateTokens(char[] text, int from, int to) {
+        int count = 0;
+        int word = 0;
+        for (int i = from; i < to; i++) {
+            char c = text[i];
+            if (Character.isLetterOrDigit(c)) {
+                if (word++ % 4 == 0) {
+                    count++;
+                }
+            } else {
+                word = 0;
+                if (c != ' ' && c != '\n') {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
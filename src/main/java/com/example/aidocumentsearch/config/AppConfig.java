@@ -2,63 +2,125 @@ package com.example.aidocumentsearch.config;
 
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import com.example.aidocumentsearch.service.GeminiHttpService;
+import com.example.aidocumentsearch.service.LocalEmbeddingModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.time.Duration;
 
 @Configuration
+@EnableScheduling
 public class AppConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(AppConfig.class);
+
     @Value("${openai.api.key:}")
     private String openaiApiKey;
     
     @Value("${googleai.api.key:}")
     private String googleAiApiKey;
 
+    // The OpenAI models use langchain4j's own HTTP client; give them the same limits as LlmHttpClient
+    @Value("${app.llm.http.request.timeout.ms:60000}")
+    private long llmRequestTimeoutMs;
+
+    @Value("${app.llm.http.max.retries:3}")
+    private int llmMaxRetries;
+
+    // OPENAI, LOCAL (bundled all-MiniLM-L6-v2, no API key needed) or AUTO
+    @Value("${app.embedding.provider:AUTO}")
+    private EmbeddingProfile.Provider embeddingProvider;
+
+    // Parallel workers for the local model; 0 uses one per available core
+    @Value("${app.embedding.local.workers:0}")
+    private int localWorkers;
+
     @Bean
-    @Primary
-    public EmbeddingModel embeddingModel() {
-        if (openaiApiKey != null && !openaiApiKey.trim().isEmpty()) {
-            // Use OpenAI embeddings for better accuracy
-            System.out.println("Using OpenAI text-embedding-3-small model");
-            return OpenAiEmbeddingModel.builder()
-                    .apiKey(openaiApiKey)
-                    .modelName("text-embedding-3-small")
-                    .build();
-        } else {
+    public EmbeddingProfile embeddingProfile() {
+        boolean hasOpenAiKey = openaiApiKey != null && !openaiApiKey.trim().isEmpty();
+        if (embeddingProvider == EmbeddingProfile.Provider.LOCAL
+                || (embeddingProvider == EmbeddingProfile.Provider.AUTO && !hasOpenAiKey)) {
+            return new EmbeddingProfile(EmbeddingProfile.Provider.LOCAL,
+                    LocalEmbeddingModel.MODEL_NAME, LocalEmbeddingModel.DIMENSION, LocalEmbeddingModel.MAX_INPUT_TOKENS);
+        }
+        if (!hasOpenAiKey) {
             throw new IllegalStateException("OpenAI API key is required. Please set OPENAI_API_KEY in your .env file.");
         }
+        return new EmbeddingProfile(EmbeddingProfile.Provider.OPENAI, "text-embedding-3-small", 1536, 8191);
+    }
+
+    @Bean
+    @Primary
+    public EmbeddingModel embeddingModel(EmbeddingProfile embeddingProfile) {
+        if (embeddingProfile.getProvider() == EmbeddingProfile.Provider.LOCAL) {
+            int workers = localWorkers > 0 ? localWorkers : Runtime.getRuntime().availableProcessors();
+            log.info("embedding model provider=local model={} workers={}", LocalEmbeddingModel.MODEL_NAME, workers);
+            return new LocalEmbeddingModel(workers);
+        }
+        // Use OpenAI embeddings for better accuracy
+        log.info("embedding model provider=openai model={}", embeddingProfile.getModelName());
+        return OpenAiEmbeddingModel.builder()
+                .apiKey(openaiApiKey)
+                .modelName(embeddingProfile.getModelName())
+                .build();
     }
 
     @Bean
     @Primary
-    public ChatLanguageModel chatLanguageModel() {
-        // Debug logging
-        System.out.println("DEBUG: googleAiApiKey length: " + (googleAiApiKey != null ? googleAiApiKey.length() : "null"));
-        System.out.println("DEBUG: openaiApiKey length: " + (openaiApiKey != null ? openaiApiKey.length() : "null"));
+    public ChatLanguageModel chatLanguageModel(GeminiHttpService geminiHttpService) {
+        if (log.isDebugEnabled()) {
+            log.debug("api keys googleAiKeySet={} openAiKeySet={}",
+                    googleAiApiKey != null && !googleAiApiKey.trim().isEmpty(),
+                    openaiApiKey != null && !openaiApiKey.trim().isEmpty());
+        }
         
         // Check for Gemini Pro API key first
         if (googleAiApiKey != null && !googleAiApiKey.trim().isEmpty()) {
-            System.out.println("Using Google Gemini Pro");
-            return new GeminiHttpService();
+            log.info("chat model provider=gemini");
+            return geminiHttpService;
         }
         
         // Fallback to OpenAI
         if (openaiApiKey != null && !openaiApiKey.trim().isEmpty()) {
-            System.out.println("Using OpenAI GPT-3.5-turbo");
+            log.info("chat model provider=openai model=gpt-3.5-turbo");
             return OpenAiChatModel.builder()
                     .apiKey(openaiApiKey)
                     .modelName("gpt-3.5-turbo")
                     .temperature(0.7)
                     .maxTokens(1000)
+                    .timeout(Duration.ofMillis(llmRequestTimeoutMs))
+                    .maxRetries(llmMaxRetries)
                     .build();
         }
         
         throw new IllegalStateException("Either GOOGLEAI_API_KEY or OPENAI_API_KEY is required in your .env file.");
     }
-}
 
+    @Bean
+    public StreamingChatLanguageModel streamingChatLanguageModel(GeminiHttpService geminiHttpService) {
+        // Same provider choice as the blocking model
+        if (googleAiApiKey != null && !googleAiApiKey.trim().isEmpty()) {
+            return geminiHttpService;
+        }
+        if (openaiApiKey != null && !openaiApiKey.trim().isEmpty()) {
+            return OpenAiStreamingChatModel.builder()
+                    .apiKey(openaiApiKey)
+                    .modelName("gpt-3.5-turbo")
+                    .temperature(0.7)
+                    .maxTokens(1000)
+                    .timeout(Duration.ofMillis(llmRequestTimeoutMs))
+                    .build();
+        }
+        throw new IllegalStateException("Either GOOGLEAI_API_KEY or OPENAI_API_KEY is required in your .env file.");
+    }
+}
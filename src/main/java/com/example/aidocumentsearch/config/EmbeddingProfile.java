@@ -0,0 +1,44 @@
+package com.example.aidocumentsearch.config;
+
+/**
+ * Which embedding model the application runs with. The model name and dimension tag the vector collection, so
+ * switching models never mixes vectors from different spaces.
+ */
+public class EmbeddingProfile {
+
+    public enum Provider {
+        // OpenAI when an API key is configured, the bundled local model otherwise
+        AUTO,
+        OPENAI,
+        LOCAL
+    }
+
+    private final Provider provider;
+    private final String modelName;
+    private final int dimension;
+    // Longest input the model embeds without truncating or splitting it
+    private final int maxInputTokens;
+
+    public EmbeddingProfile(Provider provider, String modelName, int dimension, int maxInputTokens) {
+        this.provider = provider;
+        this.modelName = modelName;
+        this.dimension = dimension;
+        this.maxInputTokens = maxInputTokens;
+    }
+
+    public Provider getProvider() {
+        return provider;
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getMaxInputTokens() {
+        return maxInputTokens;
+    }
+}
@@ -1,15 +1,31 @@
 package com.example.aidocumentsearch.controller;
 
+import com.example.aidocumentsearch.admission.AdmissionControl;
+import com.example.aidocumentsearch.admission.AdmissionFilter;
+import com.example.aidocumentsearch.dto.BatchChatRequest;
 import com.example.aidocumentsearch.dto.ChatRequest;
 import com.example.aidocumentsearch.dto.ChatResponse;
-import com.example.aidocumentsearch.service.RagService;
+import com.example.aidocumentsearch.dto.ChatStreamStats;
+import com.example.aidocumentsearch.service.AsyncChatService;
+import com.example.aidocumentsearch.service.BatchChatService;
+import com.example.aidocumentsearch.service.ChatStreamService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/chat")
@@ -17,35 +33,98 @@ import java.util.stream.Collectors;
 public class ChatController {
 
     @Autowired
-    private RagService ragService;
+    private AsyncChatService asyncChatService;
 
+    @Autowired
+    private ChatStreamService chatStreamService;
+
+    @Autowired
+    private BatchChatService batchChatService;
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    /**
+     * Answers without holding a request thread: the servlet thread returns at once and the response is written
+     * when the answer is ready. A question past its deadline gets 504 and its model call is interrupted; 503
+     * means too many questions are already waiting.
+     */
     @PostMapping
-    public ResponseEntity<ChatResponse> chat(@Valid @RequestBody ChatRequest request) {
+    public DeferredResult<ResponseEntity<ChatResponse>> chat(@Valid @RequestBody ChatRequest request) {
+        long timeoutMs = asyncChatService.deadlineMs(request.getTimeoutMs());
+        // The answer's own deadline normally fires first; this one only covers a lost completion
+        DeferredResult<ResponseEntity<ChatResponse>> result = new DeferredResult<>(timeoutMs + 5000);
+        CompletableFuture<ChatResponse> answer = asyncChatService.answer(request.getQuestion(),
+                request.getFilenames(), timeoutMs);
+        result.onTimeout(() -> answer.cancel(true));
+        result.onError(error -> answer.cancel(true));
+        answer.whenComplete((response, error) -> result.setResult(error == null
+                ? ResponseEntity.ok(response)
+                : errorResponse(error instanceof CompletionException ? error.getCause() : error)));
+        return result;
+    }
+
+    private static ResponseEntity<ChatResponse> errorResponse(Throwable error) {
+        if (error instanceof RejectedExecutionException) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        if (error instanceof TimeoutException || error instanceof CancellationException) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new ChatResponse(
+                    "Sorry, answering your question took too long. Please try again.", List.of(), List.of()));
+        }
+        ChatResponse errorResponse = new ChatResponse(
+                "Sorry, I encountered an error while processing your question: " + error.getMessage(),
+                List.of(),
+                List.of()
+        );
+        return ResponseEntity.internalServerError().body(errorResponse);
+    }
+
+    /**
+     * Streams the answer as Server-Sent Events: a {@code sources} event first, then one {@code token} event per
+     * chunk of generated text and a final {@code done} event with timings. The request thread is released as soon
+     * as the stream is set up.
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(@Valid @RequestBody ChatRequest request) {
+        try {
+            return ResponseEntity.ok(chatStreamService.stream(request.getQuestion(), request.getFilenames()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * Answers several questions as Server-Sent Events: one {@code answer} event per question, in the order the
+     * answers finish and carrying the question's position, then a final {@code done} event. The questions are
+     * embedded and searched together, and their model calls run concurrently. Admission took one of the client's
+     * tokens; the other questions take one each, and 429 means the client does not have them.
+     */
+    @PostMapping(value = "/batch", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> batch(@Valid @RequestBody BatchChatRequest request,
+                                            HttpServletRequest httpRequest) {
+        AdmissionControl.Rejection rejection = admissionControl.charge(AdmissionControl.Lane.CHAT,
+                (String) httpRequest.getAttribute(AdmissionFilter.CLIENT_ATTRIBUTE),
+                request.getQuestions().size() - 1);
+        if (rejection != null) {
+            return ResponseEntity.status(rejection.getStatus())
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(rejection.getRetryAfterSeconds()))
+                    .build();
+        }
         try {
-            String answer = ragService.generateAnswer(request.getQuestion());
-            List<String> sources = ragService.getSources(request.getQuestion());
-            
-            // Create citations from sources (first 100 chars of each source)
-            List<String> citations = sources.stream()
-                    .map(source -> source.length() > 100 ? source.substring(0, 100) + "..." : source)
-                    .collect(Collectors.toList());
-
-            ChatResponse response = new ChatResponse(answer, sources, citations);
-            return ResponseEntity.ok(response);
-
-        } catch (Exception e) {
-            ChatResponse errorResponse = new ChatResponse(
-                    "Sorry, I encountered an error while processing your question: " + e.getMessage(),
-                    List.of(),
-                    List.of()
-            );
-            return ResponseEntity.internalServerError().body(errorResponse);
+            return ResponseEntity.ok(batchChatService.answer(request.getQuestions(), request.getFilenames()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         }
     }
 
+    @GetMapping("/stream/stats")
+    public ResponseEntity<ChatStreamStats> streamStats() {
+        return ResponseEntity.ok(chatStreamService.getStats());
+    }
+
     @GetMapping("/test")
     public ResponseEntity<String> test() {
         return ResponseEntity.ok("Chat API is working!");
     }
 }
-
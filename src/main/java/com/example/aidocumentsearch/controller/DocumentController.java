@@ -1,16 +1,27 @@
 package com.example.aidocumentsearch.controller;
 
+import com.example.aidocumentsearch.dto.EmbeddingCacheStats;
+import com.example.aidocumentsearch.dto.IngestionJobStatus;
+import com.example.aidocumentsearch.dto.RecallReport;
 import com.example.aidocumentsearch.dto.UploadResponse;
+import com.example.aidocumentsearch.dto.VectorStoreStats;
+import com.example.aidocumentsearch.service.EmbeddingService;
+import com.example.aidocumentsearch.service.IngestionJob;
+import com.example.aidocumentsearch.service.IngestionService;
 import com.example.aidocumentsearch.service.PdfProcessingService;
 import com.example.aidocumentsearch.service.QdrantVectorService;
-import com.example.aidocumentsearch.service.EmbeddingService;
+import com.example.aidocumentsearch.service.SemanticAnswerCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.util.List;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/documents")
@@ -23,9 +34,15 @@ public class DocumentController {
     @Autowired
     private QdrantVectorService vectorDatabaseService;
 
+    @Autowired
+    private IngestionService ingestionService;
+
     @Autowired
     private EmbeddingService embeddingService;
 
+    @Autowired
+    private SemanticAnswerCache answerCache;
+
     @PostMapping("/upload")
     public ResponseEntity<UploadResponse> uploadDocument(@RequestParam("file") MultipartFile file) {
         try {
@@ -35,41 +52,88 @@ public class DocumentController {
                         .body(new UploadResponse("Invalid PDF file", null, 0, false));
             }
 
-            // Extract text from PDF
-            String text = pdfProcessingService.extractTextFromPdf(file);
-            
-            if (text.trim().isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(new UploadResponse("PDF contains no readable text", file.getOriginalFilename(), 0, false));
+            // Spooled to a temp file so extraction streams from disk instead of a byte array
+            Path upload = Files.createTempFile("upload-", ".pdf");
+            try {
+                file.transferTo(upload);
+            } catch (IOException e) {
+                Files.deleteIfExists(upload);
+                throw e;
             }
 
-            // Split text into chunks
-            List<String> chunks = pdfProcessingService.splitTextIntoChunks(text);
-            
-            // Generate embeddings for chunks
-            List<List<Double>> embeddings = embeddingService.generateEmbeddings(chunks);
-            
-            // Store in vector database
-            int storedChunks = vectorDatabaseService.storeDocumentChunks(chunks, file.getOriginalFilename());
-
-            return ResponseEntity.ok(new UploadResponse(
-                    "Document uploaded and processed successfully",
-                    file.getOriginalFilename(),
-                    storedChunks,
-                    true
-            ));
+            // Extraction, chunking, embedding and storage run in the background; poll the job for progress
+            IngestionJob job = ingestionService.submit(upload, file.getOriginalFilename());
 
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError()
-                    .body(new UploadResponse("Error processing PDF: " + e.getMessage(), 
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/documents/jobs/" + job.getId()))
+                    .body(new UploadResponse(
+                            "Document accepted for processing",
+                            file.getOriginalFilename(),
+                            0,
+                            true,
+                            job.getId()
+                    ));
+
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new UploadResponse("Too many documents are being processed, please retry shortly",
                             file.getOriginalFilename(), 0, false));
-        } catch (Exception e) {
+        } catch (IOException e) {
             return ResponseEntity.internalServerError()
-                    .body(new UploadResponse("Unexpected error: " + e.getMessage(), 
+                    .body(new UploadResponse("Error reading upload: " + e.getMessage(),
                             file.getOriginalFilename(), 0, false));
         }
     }
 
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<IngestionJobStatus> jobStatus(@PathVariable("id") String id) {
+        IngestionJobStatus status = ingestionService.getStatus(id);
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    /**
+     * Removes a document and all its chunks from searches immediately, along with cached answers citing it; the
+     * disk space is reclaimed in the background by compaction.
+     */
+    @DeleteMapping("/{filename:.+}")
+    public ResponseEntity<Void> deleteDocument(@PathVariable("filename") String filename) {
+        try {
+            if (!vectorDatabaseService.deleteDocument(filename)) {
+                return ResponseEntity.notFound().build();
+            }
+            answerCache.invalidateDocument(filename);
+            return ResponseEntity.noContent().build();
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Runs on the request thread, so {@code k} and {@code samples} are capped (see
+     * {@link QdrantVectorService#measureRecall}); non-positive values get 400.
+     */
+    @GetMapping("/index/recall")
+    public ResponseEntity<RecallReport> indexRecall(@RequestParam(value = "k", defaultValue = "10") int k,
+                                                    @RequestParam(value = "samples", defaultValue = "100") int samples) {
+        if (k <= 0 || samples <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(vectorDatabaseService.measureRecall(k, samples));
+    }
+
+    @GetMapping("/index/stats")
+    public ResponseEntity<VectorStoreStats> indexStats() {
+        return ResponseEntity.ok(vectorDatabaseService.getStats());
+    }
+
+    @GetMapping("/index/embedding-cache")
+    public ResponseEntity<EmbeddingCacheStats> embeddingCacheStats() {
+        return ResponseEntity.ok(embeddingService.getContentCacheStats());
+    }
+
     @GetMapping("/actuator/health")
     public ResponseEntity<String> actuatorHealth() {
         return ResponseEntity.ok("{\"status\":\"UP\"}");
@@ -0,0 +1,54 @@
+package com.example.aidocumentsearch.dto;
+
+/**
+ * Payload of an {@code answer} event of a batch. Answers arrive in the order they finish, so each carries the
+ * position of its question in the request.
+ */
+public class BatchChatAnswer {
+
+    private int index;
+    private String question;
+    private ChatResponse response;
+    private boolean failed;
+
+    public BatchChatAnswer() {}
+
+    public BatchChatAnswer(int index, String question, ChatResponse response, boolean failed) {
+        this.index = index;
+        this.question = question;
+        this.response = response;
+        this.failed = failed;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getQuestion() {
+        return question;
+    }
+
+    public void setQuestion(String question) {
+        this.question = question;
+    }
+
+    public ChatResponse getResponse() {
+        return response;
+    }
+
+    public void setResponse(ChatResponse response) {
+        this.response = response;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    public void setFailed(boolean failed) {
+        this.failed = failed;
+    }
+}
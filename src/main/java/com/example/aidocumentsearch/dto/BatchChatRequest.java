@@ -0,0 +1,40 @@
+package com.example.aidocumentsearch.dto;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+public class BatchChatRequest {
+
+    @NotEmpty(message = "At least one question is required")
+    @Size(max = 50, message = "At most 50 questions can be asked at once")
+    private List<@NotBlank(message = "Question cannot be blank")
+            @Size(max = 1000, message = "Question cannot exceed 1000 characters") String> questions;
+
+    // Restricts retrieval for every question to these documents; empty or missing searches all of them
+    @Size(max = 100, message = "At most 100 filenames can be selected")
+    private List<String> filenames;
+
+    public BatchChatRequest() {}
+
+    public BatchChatRequest(List<String> questions) {
+        this.questions = questions;
+    }
+
+    public List<String> getQuestions() {
+        return questions;
+    }
+
+    public void setQuestions(List<String> questions) {
+        this.questions = questions;
+    }
+
+    public List<String> getFilenames() {
+        return filenames;
+    }
+
+    public void setFilenames(List<String> filenames) {
+        this.filenames = filenames;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.aidocumentsearch.dto;
+
+/**
+ * Payload of the final {@code done} event of a batch.
+ */
+public class BatchChatSummary {
+
+    private int questions;
+    private int failed;
+    private long totalMs;
+
+    public BatchChatSummary() {}
+
+    public BatchChatSummary(int questions, int failed, long totalMs) {
+        this.questions = questions;
+        this.failed = failed;
+        this.totalMs = totalMs;
+    }
+
+    public int getQuestions() {
+        return questions;
+    }
+
+    public void setQuestions(int questions) {
+        this.questions = questions;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public long getTotalMs() {
+        return totalMs;
+    }
+
+    public void setTotalMs(long totalMs) {
+        this.totalMs = totalMs;
+    }
+}
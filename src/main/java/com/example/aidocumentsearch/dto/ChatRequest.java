@@ -2,6 +2,7 @@ package com.example.aidocumentsearch.dto;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Size;
+import java.util.List;
 
 public class ChatRequest {
     
@@ -9,6 +10,13 @@ public class ChatRequest {
     @Size(max = 1000, message = "Question cannot exceed 1000 characters")
     private String question;
     
+    // Restricts retrieval to these documents; empty or missing searches all of them
+    @Size(max = 100, message = "At most 100 filenames can be selected")
+    private List<String> filenames;
+
+    // Deadline for this answer in milliseconds, capped by app.chat.deadline.ms; missing uses that default
+    private Long timeoutMs;
+    
     public ChatRequest() {}
     
     public ChatRequest(String question) {
@@ -22,5 +30,20 @@ public class ChatRequest {
     public void setQuestion(String question) {
         this.question = question;
     }
-}
+    
+    public List<String> getFilenames() {
+        return filenames;
+    }
+    
+    public void setFilenames(List<String> filenames) {
+        this.filenames = filenames;
+    }
+
+    public Long getTimeoutMs() {
+        return timeoutMs;
+    }
 
+    public void setTimeoutMs(Long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+}
@@ -7,6 +7,8 @@ public class ChatResponse {
     private String answer;
     private List<String> sources;
     private List<String> citations;
+    private int contextTokens;
+    private int contextTokensSaved;
     
     public ChatResponse() {}
     
@@ -39,5 +41,20 @@ public class ChatResponse {
     public void setCitations(List<String> citations) {
         this.citations = citations;
     }
+    
+    public int getContextTokens() {
+        return contextTokens;
+    }
+    
+    public void setContextTokens(int contextTokens) {
+        this.contextTokens = contextTokens;
+    }
+    
+    public int getContextTokensSaved() {
+        return contextTokensSaved;
+    }
+    
+    public void setContextTokensSaved(int contextTokensSaved) {
+        this.contextTokensSaved = contextTokensSaved;
+    }
 }
-
@@ -0,0 +1,71 @@
+package com.example.aidocumentsearch.dto;
+
+public class ChatStreamStats {
+
+    private long completed;
+    private long failed;
+    private double averageTimeToFirstTokenMs;
+    private long maxTimeToFirstTokenMs;
+    private double averageTotalMs;
+    private long maxTotalMs;
+
+    public ChatStreamStats() {}
+
+    public ChatStreamStats(long completed, long failed, double averageTimeToFirstTokenMs, long maxTimeToFirstTokenMs,
+                           double averageTotalMs, long maxTotalMs) {
+        this.completed = completed;
+        this.failed = failed;
+        this.averageTimeToFirstTokenMs = averageTimeToFirstTokenMs;
+        this.maxTimeToFirstTokenMs = maxTimeToFirstTokenMs;
+        this.averageTotalMs = averageTotalMs;
+        this.maxTotalMs = maxTotalMs;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(long completed) {
+        this.completed = completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public double getAverageTimeToFirstTokenMs() {
+        return averageTimeToFirstTokenMs;
+    }
+
+    public void setAverageTimeToFirstTokenMs(double averageTimeToFirstTokenMs) {
+        this.averageTimeToFirstTokenMs = averageTimeToFirstTokenMs;
+    }
+
+    public long getMaxTimeToFirstTokenMs() {
+        return maxTimeToFirstTokenMs;
+    }
+
+    public void setMaxTimeToFirstTokenMs(long maxTimeToFirstTokenMs) {
+        this.maxTimeToFirstTokenMs = maxTimeToFirstTokenMs;
+    }
+
+    public double getAverageTotalMs() {
+        return averageTotalMs;
+    }
+
+    public void setAverageTotalMs(double averageTotalMs) {
+        this.averageTotalMs = averageTotalMs;
+    }
+
+    public long getMaxTotalMs() {
+        return maxTotalMs;
+    }
+
+    public void setMaxTotalMs(long maxTotalMs) {
+        this.maxTotalMs = maxTotalMs;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.aidocumentsearch.dto;
+
+/**
+ * Payload of the final {@code done} event. Times are measured from when the request was received.
+ */
+public class ChatStreamSummary {
+
+    private int tokens;
+    private long timeToFirstTokenMs;
+    private long totalMs;
+
+    public ChatStreamSummary() {}
+
+    public ChatStreamSummary(int tokens, long timeToFirstTokenMs, long totalMs) {
+        this.tokens = tokens;
+        this.timeToFirstTokenMs = timeToFirstTokenMs;
+        this.totalMs = totalMs;
+    }
+
+    public int getTokens() {
+        return tokens;
+    }
+
+    public void setTokens(int tokens) {
+        this.tokens = tokens;
+    }
+
+    public long getTimeToFirstTokenMs() {
+        return timeToFirstTokenMs;
+    }
+
+    public void setTimeToFirstTokenMs(long timeToFirstTokenMs) {
+        this.timeToFirstTokenMs = timeToFirstTokenMs;
+    }
+
+    public long getTotalMs() {
+        return totalMs;
+    }
+
+    public void setTotalMs(long totalMs) {
+        this.totalMs = totalMs;
+    }
+}
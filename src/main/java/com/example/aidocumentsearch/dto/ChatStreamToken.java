@@ -0,0 +1,23 @@
+package com.example.aidocumentsearch.dto;
+
+/**
+ * Payload of a {@code token} event. Sent as JSON so line breaks in the text survive SSE framing.
+ */
+public class ChatStreamToken {
+
+    private String text;
+
+    public ChatStreamToken() {}
+
+    public ChatStreamToken(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.aidocumentsearch.dto;
+
+public class IngestionJobStatus {
+
+    private String jobId;
+    private String filename;
+    private String stage;
+    private int totalChunks;
+    private int embeddedChunks;
+    private int storedChunks;
+    private double progress;
+    private double chunksPerSecond;
+    private long elapsedMillis;
+    private String error;
+
+    public IngestionJobStatus() {}
+
+    public IngestionJobStatus(String jobId, String filename, String stage, int totalChunks, int embeddedChunks,
+                              int storedChunks, long elapsedMillis, String error) {
+        this.jobId = jobId;
+        this.filename = filename;
+        this.stage = stage;
+        this.totalChunks = totalChunks;
+        this.embeddedChunks = embeddedChunks;
+        this.storedChunks = storedChunks;
+        this.elapsedMillis = elapsedMillis;
+        this.error = error;
+        this.progress = totalChunks == 0 ? 0.0 : (double) storedChunks / totalChunks;
+        this.chunksPerSecond = elapsedMillis == 0 ? 0.0 : storedChunks * 1000.0 / elapsedMillis;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    public void setTotalChunks(int totalChunks) {
+        this.totalChunks = totalChunks;
+    }
+
+    public int getEmbeddedChunks() {
+        return embeddedChunks;
+    }
+
+    public void setEmbeddedChunks(int embeddedChunks) {
+        this.embeddedChunks = embeddedChunks;
+    }
+
+    public int getStoredChunks() {
+        return storedChunks;
+    }
+
+    public void setStoredChunks(int storedChunks) {
+        this.storedChunks = storedChunks;
+    }
+
+    public double getProgress() {
+        return progress;
+    }
+
+    public void setProgress(double progress) {
+        this.progress = progress;
+    }
+
+    public double getChunksPerSecond() {
+        return chunksPerSecond;
+    }
+
+    public void setChunksPerSecond(double chunksPerSecond) {
+        this.chunksPerSecond = chunksPerSecond;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.aidocumentsearch.dto;
+
+public class RecallReport {
+
+    private int k;
+    private String quantization;
+    private int sampleQueries;
+    private int indexedVectors;
+    private int m;
+    private int efConstruction;
+    private int efSearch;
+    // Recall of the HNSW path and of the exact-scan path against a full-precision brute-force scan
+    private double recall;
+    private double scanRecall;
+    private double exactMillisPerQuery;
+    private double approximateMillisPerQuery;
+
+    public RecallReport() {}
+
+    public RecallReport(int k, String quantization, int sampleQueries, int indexedVectors, int m, int efConstruction,
+                        int efSearch, double recall, double scanRecall,
+                        double exactMillisPerQuery, double approximateMillisPerQuery) {
+        this.k = k;
+        this.quantization = quantization;
+        this.sampleQueries = sampleQueries;
+        this.indexedVectors = indexedVectors;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.recall = recall;
+        this.scanRecall = scanRecall;
+        this.exactMillisPerQuery = exactMillisPerQuery;
+        this.approximateMillisPerQuery = approximateMillisPerQuery;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public void setK(int k) {
+        this.k = k;
+    }
+
+    public String getQuantization() {
+        return quantization;
+    }
+
+    public void setQuantization(String quantization) {
+        this.quantization = quantization;
+    }
+
+    public int getSampleQueries() {
+        return sampleQueries;
+    }
+
+    public void setSampleQueries(int sampleQueries) {
+        this.sampleQueries = sampleQueries;
+    }
+
+    public int getIndexedVectors() {
+        return indexedVectors;
+    }
+
+    public void setIndexedVectors(int indexedVectors) {
+        this.indexedVectors = indexedVectors;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public void setM(int m) {
+        this.m = m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public void setEfConstruction(int efConstruction) {
+        this.efConstruction = efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    public double getRecall() {
+        return recall;
+    }
+
+    public void setRecall(double recall) {
+        this.recall = recall;
+    }
+
+    public double getScanRecall() {
+        return scanRecall;
+    }
+
+    public void setScanRecall(double scanRecall) {
+        this.scanRecall = scanRecall;
+    }
+
+    public double getExactMillisPerQuery() {
+        return exactMillisPerQuery;
+    }
+
+    public void setExactMillisPerQuery(double exactMillisPerQuery) {
+        this.exactMillisPerQuery = exactMillisPerQuery;
+    }
+
+    public double getApproximateMillisPerQuery() {
+        return approximateMillisPerQuery;
+    }
+
+    public void setApproximateMillisPerQuery(double approximateMillisPerQuery) {
+        this.approximateMillisPerQuery = approximateMillisPerQuery;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.aidocumentsearch.dto;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Chunks retrieved once per question; the same result feeds the prompt and the sources returned to the client.
+ * When the chunks were packed into a token budget, {@code chunks} holds only those that made it into
+ * {@code context}.
+ */
+public class RetrievalResult {
+
+    private String question;
+    private List<RetrievedChunk> chunks;
+    private String context;
+    private int retrievedTokens;
+    private int contextTokens;
+
+    public RetrievalResult() {}
+
+    public RetrievalResult(String question, List<RetrievedChunk> chunks) {
+        this.question = question;
+        this.chunks = chunks;
+    }
+
+    public String getQuestion() {
+        return question;
+    }
+
+    public void setQuestion(String question) {
+        this.question = question;
+    }
+
+    public List<RetrievedChunk> getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(List<RetrievedChunk> chunks) {
+        this.chunks = chunks;
+    }
+
+    public String getContext() {
+        return context;
+    }
+
+    public void setContext(String context) {
+        this.context = context;
+    }
+
+    public int getRetrievedTokens() {
+        return retrievedTokens;
+    }
+
+    public void setRetrievedTokens(int retrievedTokens) {
+        this.retrievedTokens = retrievedTokens;
+    }
+
+    public int getContextTokens() {
+        return contextTokens;
+    }
+
+    public void setContextTokens(int contextTokens) {
+        this.contextTokens = contextTokens;
+    }
+
+    // Estimated prompt tokens saved against joining every retrieved chunk verbatim
+    public int tokensSaved() {
+        return Math.max(0, retrievedTokens - contextTokens);
+    }
+
+    public boolean isEmpty() {
+        return chunks == null || chunks.isEmpty();
+    }
+
+    public List<String> texts() {
+        return chunks.stream()
+                .map(RetrievedChunk::getText)
+                .collect(Collectors.toList());
+    }
+
+    // File name, page, chunk number and first 100 chars of each source
+    public List<String> citations() {
+        return chunks.stream()
+                .map(RetrievalResult::citation)
+                .collect(Collectors.toList());
+    }
+
+    private static String citation(RetrievedChunk chunk) {
+        String text = chunk.getText();
+        String excerpt = text.length() > 100 ? text.substring(0, 100) + "..." : text;
+        String page = chunk.getPage() > 0 ? " p." + chunk.getPage() : "";
+        return chunk.getFilename() + page + " #" + (chunk.getChunkIndex() + 1) + ": " + excerpt;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.aidocumentsearch.dto;
+
+public class RetrievedChunk {
+
+    private String chunkId;
+    private double score;
+    private String filename;
+    private int chunkIndex;
+    private int page;
+    private String text;
+
+    public RetrievedChunk() {}
+
+    public RetrievedChunk(String chunkId, double score, String filename, int chunkIndex, int page, String text) {
+        this.chunkId = chunkId;
+        this.score = score;
+        this.filename = filename;
+        this.chunkIndex = chunkIndex;
+        this.page = page;
+        this.text = text;
+    }
+
+    public String getChunkId() {
+        return chunkId;
+    }
+
+    public void setChunkId(String chunkId) {
+        this.chunkId = chunkId;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    public void setChunkIndex(int chunkIndex) {
+        this.chunkIndex = chunkIndex;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public void setPage(int page) {
+        this.page = page;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+}
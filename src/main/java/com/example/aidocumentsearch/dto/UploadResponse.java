@@ -6,6 +6,7 @@ public class UploadResponse {
     private String filename;
     private int chunksCreated;
     private boolean success;
+    private String jobId;
     
     public UploadResponse() {}
     
@@ -15,6 +16,11 @@ public class UploadResponse {
         this.chunksCreated = chunksCreated;
         this.success = success;
     }
+
+    public UploadResponse(String message, String filename, int chunksCreated, boolean success, String jobId) {
+        this(message, filename, chunksCreated, success);
+        this.jobId = jobId;
+    }
     
     public String getMessage() {
         return message;
@@ -47,5 +53,12 @@ public class UploadResponse {
     public void setSuccess(boolean success) {
         this.success = success;
     }
-}
 
+    public String getJobId() {
+        return jobId;
+    }
+    
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.aidocumentsearch.dto;
+
+public class VectorStoreStats {
+
+    private int vectors;
+    private int dimension;
+    private String embeddingModel;
+    private String quantization;
+    private long heapBytes;
+    private long offHeapBytes;
+    private long fullPrecisionHeapBytes;
+    private long heapBytesSaved;
+    private double compressionRatio;
+    private int lexicalTerms;
+    private long lexicalIndexBytes;
+    private int documents;
+    private int segments;
+    // Segments of deleted or replaced documents not yet reclaimed by compaction
+    private int tombstones;
+    // LOCAL or QDRANT; a Qdrant backend reports no memory or segment figures
+    private String backend;
+
+    public VectorStoreStats() {}
+
+    public VectorStoreStats(int vectors, int dimension, String embeddingModel, String quantization,
+                            long heapBytes, long offHeapBytes, long fullPrecisionHeapBytes) {
+        this.vectors = vectors;
+        this.dimension = dimension;
+        this.embeddingModel = embeddingModel;
+        this.quantization = quantization;
+        this.heapBytes = heapBytes;
+        this.offHeapBytes = offHeapBytes;
+        this.fullPrecisionHeapBytes = fullPrecisionHeapBytes;
+        this.heapBytesSaved = fullPrecisionHeapBytes - heapBytes;
+        this.compressionRatio = heapBytes == 0 ? 1.0 : (double) fullPrecisionHeapBytes / heapBytes;
+    }
+
+    public int getVectors() {
+        return vectors;
+    }
+
+    public void setVectors(int vectors) {
+        this.vectors = vectors;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public void setDimension(int dimension) {
+        this.dimension = dimension;
+    }
+
+    public String getEmbeddingModel() {
+        return embeddingModel;
+    }
+
+    public void setEmbeddingModel(String embeddingModel) {
+        this.embeddingModel = embeddingModel;
+    }
+
+    public String getQuantization() {
+        return quantization;
+    }
+
+    public void setQuantization(String quantization) {
+        this.quantization = quantization;
+    }
+
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    public void setHeapBytes(long heapBytes) {
+        this.heapBytes = heapBytes;
+    }
+
+    public long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    public void setOffHeapBytes(long offHeapBytes) {
+        this.offHeapBytes = offHeapBytes;
+    }
+
+    public long getFullPrecisionHeapBytes() {
+        return fullPrecisionHeapBytes;
+    }
+
+    public void setFullPrecisionHeapBytes(long fullPrecisionHeapBytes) {
+        this.fullPrecisionHeapBytes = fullPrecisionHeapBytes;
+    }
+
+    public long getHeapBytesSaved() {
+        return heapBytesSaved;
+    }
+
+    public void setHeapBytesSaved(long heapBytesSaved) {
+        this.heapBytesSaved = heapBytesSaved;
+    }
+
+    public double getCompressionRatio() {
+        return compressionRatio;
+    }
+
+    public void setCompressionRatio(double compressionRatio) {
+        this.compressionRatio = compressionRatio;
+    }
+
+    public int getLexicalTerms() {
+        return lexicalTerms;
+    }
+
+    public void setLexicalTerms(int lexicalTerms) {
+        this.lexicalTerms = lexicalTerms;
+    }
+
+    public long getLexicalIndexBytes() {
+        return lexicalIndexBytes;
+    }
+
+    public void setLexicalIndexBytes(long lexicalIndexBytes) {
+        this.lexicalIndexBytes = lexicalIndexBytes;
+    }
+
+    public int getDocuments() {
+        return documents;
+    }
+
+    public void setDocuments(int documents) {
+        this.documents = documents;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    public int getTombstones() {
+        return tombstones;
+    }
+
+    public void setTombstones(int tombstones) {
+        this.tombstones = tombstones;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public void setBackend(String backend) {
+        this.backend = backend;
+    }
+}
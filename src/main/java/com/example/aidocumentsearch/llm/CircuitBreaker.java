@@ -0,0 +1,69 @@
+package com.example.aidocumentsearch.llm;
+
+/**
+ * Consecutive-failure circuit breaker for one provider. After {@code failureThreshold} failures in a row it opens
+ * and rejects calls for {@code openMs}; then a single trial call is let through, which closes the circuit on
+ * success or opens it again on failure.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String provider;
+    private final int failureThreshold;
+    private final long openMs;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openUntil;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(String provider, int failureThreshold, long openMs) {
+        this.provider = provider;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = openMs;
+    }
+
+    /**
+     * @throws CircuitOpenException when the call may not go ahead
+     */
+    public synchronized void acquire() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (state == State.OPEN && now >= openUntil) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN && !trialInFlight) {
+            trialInFlight = true;
+            return;
+        }
+        throw new CircuitOpenException(provider, Math.max(0, openUntil - now));
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openUntil = System.currentTimeMillis() + openMs;
+            trialInFlight = false;
+        }
+    }
+
+    // A call given up by its caller says nothing about the provider; it only frees the half-open trial
+    public synchronized void onCancelled() {
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.aidocumentsearch.llm;
+
+/**
+ * Thrown without contacting the provider while its circuit breaker is open.
+ */
+public class CircuitOpenException extends LlmHttpException {
+
+    public CircuitOpenException(String provider, long retryInMs) {
+        super(provider, "circuit open after repeated failures, retry in " + retryInMs + " ms", null);
+    }
+}
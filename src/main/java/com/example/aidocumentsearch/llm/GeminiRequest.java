@@ -0,0 +1,67 @@
+package com.example.aidocumentsearch.llm;
+
+import java.util.List;
+
+/**
+ * Body of a Gemini {@code generateContent} / {@code streamGenerateContent} call.
+ */
+public class GeminiRequest {
+
+    private List<Content> contents;
+
+    public GeminiRequest() {}
+
+    public GeminiRequest(List<Content> contents) {
+        this.contents = contents;
+    }
+
+    public static GeminiRequest ofText(String text) {
+        return new GeminiRequest(List.of(new Content(List.of(new Part(text)))));
+    }
+
+    public List<Content> getContents() {
+        return contents;
+    }
+
+    public void setContents(List<Content> contents) {
+        this.contents = contents;
+    }
+
+    public static class Content {
+
+        private List<Part> parts;
+
+        public Content() {}
+
+        public Content(List<Part> parts) {
+            this.parts = parts;
+        }
+
+        public List<Part> getParts() {
+            return parts;
+        }
+
+        public void setParts(List<Part> parts) {
+            this.parts = parts;
+        }
+    }
+
+    public static class Part {
+
+        private String text;
+
+        public Part() {}
+
+        public Part(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+    }
+}
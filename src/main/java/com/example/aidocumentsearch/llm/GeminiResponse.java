@@ -0,0 +1,72 @@
+package com.example.aidocumentsearch.llm;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * The parts of a Gemini response we read: the text of the first candidate. Streaming sends one of these per
+ * event, each carrying the next piece of text.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GeminiResponse {
+
+    private List<Candidate> candidates;
+
+    public List<Candidate> getCandidates() {
+        return candidates;
+    }
+
+    public void setCandidates(List<Candidate> candidates) {
+        this.candidates = candidates;
+    }
+
+    /**
+     * Text of the first candidate's parts joined together, or {@code null} when there is none (for example when
+     * the prompt was blocked).
+     */
+    public String firstText() {
+        if (candidates == null || candidates.isEmpty() || candidates.get(0).getContent() == null) {
+            return null;
+        }
+        List<GeminiRequest.Part> parts = candidates.get(0).getContent().getParts();
+        if (parts == null || parts.isEmpty()) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        for (GeminiRequest.Part part : parts) {
+            if (part.getText() != null) {
+                text.append(part.getText());
+            }
+        }
+        return text.toString();
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Candidate {
+
+        private Content content;
+
+        public Content getContent() {
+            return content;
+        }
+
+        public void setContent(Content content) {
+            this.content = content;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Content {
+
+        private List<GeminiRequest.Part> parts;
+
+        public List<GeminiRequest.Part> getParts() {
+            return parts;
+        }
+
+        public void setParts(List<GeminiRequest.Part> parts) {
+            this.parts = parts;
+        }
+    }
+}
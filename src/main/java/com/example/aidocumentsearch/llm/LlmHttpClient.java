@@ -0,0 +1,229 @@
+package com.example.aidocumentsearch.llm;
+
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Shared HTTP client for LLM providers: one pooled keep-alive {@link HttpClient} (HTTP/2 where the server offers
+ * it), connect and response timeouts, retries with jittered exponential backoff on 429/5xx and connection errors
+ * that honour {@code Retry-After}, and a {@link CircuitBreaker} per provider so a failing provider is answered
+ * from memory instead of holding request threads.
+ *
+ * <p>Callers serialise their typed request with a pre-bound Jackson writer and pass a pre-bound reader for the
+ * response, so no per-call type introspection happens here.
+ */
+@Component
+public class LlmHttpClient {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmHttpClient.class);
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Value("${app.llm.http.connect.timeout.ms:5000}")
+    private long connectTimeoutMs;
+
+    // Time allowed until response headers arrive; a streamed body may take longer
+    @Value("${app.llm.http.request.timeout.ms:60000}")
+    private long requestTimeoutMs;
+
+    @Value("${app.llm.http.max.retries:3}")
+    private int maxRetries;
+
+    @Value("${app.llm.http.retry.base.ms:500}")
+    private long retryBaseMs;
+
+    // Longest single wait between attempts; a longer Retry-After fails the call instead
+    @Value("${app.llm.http.retry.max.ms:10000}")
+    private long retryMaxMs;
+
+    @Value("${app.llm.circuit.failure.threshold:5}")
+    private int circuitFailureThreshold;
+
+    @Value("${app.llm.circuit.open.ms:30000}")
+    private long circuitOpenMs;
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private HttpClient httpClient;
+
+    @PostConstruct
+    public void start() {
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+    }
+
+    /**
+     * POSTs a JSON body and reads the JSON response with {@code reader}.
+     */
+    public <T> T postJson(String provider, URI uri, Map<String, String> headers, byte[] body, ObjectReader reader) {
+        HttpResponse<InputStream> response = send(provider, uri, headers, body);
+        try (InputStream in = response.body()) {
+            return reader.readValue(in);
+        } catch (IOException e) {
+            throw new LlmHttpException(provider, "could not read response", e);
+        }
+    }
+
+    /**
+     * POSTs a JSON body and hands each line of the response to {@code lines} as it arrives. Retries only happen
+     * before the response body starts.
+     */
+    public void postStream(String provider, URI uri, Map<String, String> headers, byte[] body,
+                           Consumer<String> lines) {
+        HttpResponse<InputStream> response = send(provider, uri, headers, body);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.accept(line);
+            }
+        } catch (IOException e) {
+            throw new LlmHttpException(provider, "stream interrupted", e);
+        }
+    }
+
+    public CircuitBreaker.State circuitState(String provider) {
+        return breaker(provider).getState();
+    }
+
+    private HttpResponse<InputStream> send(String provider, URI uri, Map<String, String> headers, byte[] body) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(requestTimeoutMs))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        headers.forEach(builder::header);
+        HttpRequest request = builder.build();
+        CircuitBreaker breaker = breaker(provider);
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                breaker.acquire();
+            } catch (CircuitOpenException e) {
+                metrics.providerError(provider, "circuit_open");
+                throw e;
+            }
+            LlmHttpException failure;
+            long retryAfterMs = -1;
+            try {
+                HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                int status = response.statusCode();
+                if (status >= 200 && status < 300) {
+                    breaker.onSuccess();
+                    return response;
+                }
+                // Only server-side failures count against the provider; a 4xx means it is up and answering
+                if (status >= 500) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
+                failure = new LlmHttpException(provider, status, readQuietly(response.body()));
+                metrics.providerError(provider, Integer.toString(status));
+                if (status != 429 && status < 500) {
+                    throw failure;
+                }
+                retryAfterMs = retryAfterMs(response.headers());
+            } catch (IOException e) {
+                breaker.onFailure();
+                failure = new LlmHttpException(provider, e.toString(), e);
+                metrics.providerError(provider, "io");
+            } catch (InterruptedException e) {
+                breaker.onCancelled();
+                Thread.currentThread().interrupt();
+                throw new LlmHttpException(provider, "interrupted", e);
+            }
+
+            if (attempt >= maxRetries) {
+                throw failure;
+            }
+            long delayMs = retryAfterMs >= 0 ? retryAfterMs : backoffMs(attempt);
+            if (delayMs > retryMaxMs) {
+                throw failure;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("retrying provider={} attempt={} delayMs={} cause=\"{}\"", provider, attempt + 1,
+                        delayMs, failure.getMessage());
+            }
+            metrics.providerRetry(provider);
+            sleep(delayMs, failure);
+        }
+    }
+
+    private CircuitBreaker breaker(String provider) {
+        return breakers.computeIfAbsent(provider,
+                name -> new CircuitBreaker(name, circuitFailureThreshold, circuitOpenMs));
+    }
+
+    // Equal jitter: half the exponential step plus a random share of the other half
+    private long backoffMs(int attempt) {
+        long step = Math.min(retryMaxMs, retryBaseMs << Math.min(attempt, 20));
+        return step / 2 + ThreadLocalRandom.current().nextLong(step / 2 + 1);
+    }
+
+    // Retry-After is either delta-seconds or an HTTP date; -1 when absent or unparseable
+    static long retryAfterMs(HttpHeaders headers) {
+        Optional<String> value = headers.firstValue("Retry-After");
+        if (value.isEmpty()) {
+            return -1;
+        }
+        String retryAfter = value.get().trim();
+        try {
+            return Math.max(0, Long.parseLong(retryAfter) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, at.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException ignored) {
+                return -1;
+            }
+        }
+    }
+
+    private static void sleep(long delayMs, LlmHttpException failure) {
+        try {
+            Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.addSuppressed(e);
+            throw failure;
+        }
+    }
+
+    // Error bodies are short JSON documents; keep enough of one to explain the failure
+    private static String readQuietly(InputStream body) {
+        try (InputStream in = body) {
+            byte[] bytes = in.readNBytes(2048);
+            return new String(bytes, StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.aidocumentsearch.llm;
+
+/**
+ * A call to an LLM provider that failed after any retries. {@link #getStatus()} is the last HTTP status, or 0 when
+ * no response was received.
+ */
+public class LlmHttpException extends RuntimeException {
+
+    private final String provider;
+    private final int status;
+
+    public LlmHttpException(String provider, int status, String message) {
+        super(provider + " returned HTTP " + status + (message == null || message.isEmpty() ? "" : ": " + message));
+        this.provider = provider;
+        this.status = status;
+    }
+
+    public LlmHttpException(String provider, String message, Throwable cause) {
+        super(provider + " request failed: " + message, cause);
+        this.provider = provider;
+        this.status = 0;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
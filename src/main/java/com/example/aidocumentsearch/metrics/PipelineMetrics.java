@@ -0,0 +1,168 @@
+package com.example.aidocumentsearch.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer meters for the question and ingestion pipelines, exported at {@code /actuator/prometheus}.
+ *
+ * <p>Every stage records into one {@code rag.stage} timer tagged with the stage name, published as a percentile
+ * histogram so quantiles can be aggregated across instances. Provider calls count their errors and retries per
+ * provider, and requests and ingestion jobs in progress are exposed as gauges.
+ */
+@Component
+public class PipelineMetrics {
+
+    public enum Stage {
+        QUESTION_EMBEDDING("question_embedding"),
+        VECTOR_SEARCH("vector_search"),
+        LEXICAL_SEARCH("lexical_search"),
+        CONTEXT_PACKING("context_packing"),
+        PROMPT_BUILD("prompt_build"),
+        LLM_CALL("llm_call"),
+        PDF_EXTRACT("pdf_extract"),
+        CHUNK("chunk"),
+        EMBED("embed"),
+        STORE("store"),
+        COMMIT("commit");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+
+        public String tag() {
+            return tag;
+        }
+    }
+
+    // BATCH_ANSWER counts the model calls of batches, which run several at once per batch
+    public enum Work { CHAT, STREAM, BATCH, BATCH_ANSWER, INGESTION }
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> timers = new EnumMap<>(Stage.class);
+    private final Map<Work, AtomicInteger> inFlight = new EnumMap<>(Work.class);
+    private final Map<Stage, List<LongConsumer>> listeners = new EnumMap<>(Stage.class);
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            timers.put(stage, Timer.builder("rag.stage")
+                    .description("Time spent in one stage of answering a question or ingesting a document")
+                    .tag("stage", stage.tag())
+                    .publishPercentileHistogram()
+                    .register(registry));
+            listeners.put(stage, new CopyOnWriteArrayList<>());
+        }
+        for (Work work : Work.values()) {
+            AtomicInteger count = new AtomicInteger();
+            inFlight.put(work, count);
+            Gauge.builder("rag.in.flight", count, AtomicInteger::get)
+                    .description("Requests and ingestion jobs being worked on")
+                    .tag("type", work.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+    }
+
+    public <T> T time(Stage stage, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        timers.get(stage).record(Math.max(0, nanos), TimeUnit.NANOSECONDS);
+        for (LongConsumer listener : listeners.get(stage)) {
+            listener.accept(Math.max(0, nanos));
+        }
+    }
+
+    // Called with every duration recorded for the stage, e.g. to follow provider latency
+    public void onRecorded(Stage stage, LongConsumer listener) {
+        listeners.get(stage).add(listener);
+    }
+
+    public void started(Work work) {
+        inFlight.get(work).incrementAndGet();
+    }
+
+    public void finished(Work work) {
+        inFlight.get(work).decrementAndGet();
+    }
+
+    public int inFlight(Work work) {
+        return inFlight.get(work).get();
+    }
+
+    // reason is a status code, "io" for connection failures or "circuit_open"
+    public void providerError(String provider, String reason) {
+        Counter.builder("llm.provider.errors")
+                .description("Failed calls to model providers, by cause")
+                .tags("provider", provider, "reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    public void providerRetry(String provider) {
+        Counter.builder("llm.provider.retries")
+                .description("Calls to model providers repeated after a retryable failure")
+                .tag("provider", provider)
+                .register(registry)
+                .increment();
+    }
+
+    // Hit rate is hits over all requests of a cache
+    public void cacheRequest(String cache, boolean hit) {
+        Counter.builder("rag.cache.requests")
+                .description("Cache lookups, by cache and whether they hit")
+                .tags("cache", cache, "result", hit ? "hit" : "miss")
+                .register(registry)
+                .increment();
+    }
+
+    // reason is "size", "expired" or "invalidated"
+    public void cacheEviction(String cache, String reason) {
+        Counter.builder("rag.cache.evictions")
+                .description("Cache entries dropped, by cause")
+                .tags("cache", cache, "reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    // reason is "rate_limited", "overloaded" or "chat_priority"
+    public void admissionRejected(String lane, String reason) {
+        Counter.builder("rag.admission.rejected")
+                .description("Requests turned away before any work was done, by lane and cause")
+                .tags("lane", lane, "reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    // Sampled at scrape time; the function should return NaN when the value cannot be read
+    public <T> void gauge(String name, String description, Tags tags, T source, ToDoubleFunction<T> value) {
+        Gauge.builder(name, source, value)
+                .description(description)
+                .tags(tags)
+                .strongReference(true)
+                .register(registry);
+    }
+}
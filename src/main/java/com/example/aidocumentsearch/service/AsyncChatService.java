@@ -0,0 +1,171 @@
+package com.example.aidocumentsearch.service;
+
+import com.example.aidocumentsearch.dto.ChatResponse;
+import com.example.aidocumentsearch.dto.RetrievalResult;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.metrics.PipelineMetrics.Work;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Answers questions off the servlet threads. Retrieval (question embedding and search) and generation run on
+ * separate bounded executors, so a slow model cannot starve retrieval for other questions and a waiting request
+ * holds no thread at all. A question similar enough to one answered before gets that answer from the
+ * {@link SemanticAnswerCache} and skips both.
+ *
+ * <p>Every answer has a deadline. When it passes, or the caller cancels the returned future, the step in progress
+ * is interrupted, which aborts a model call blocked on the provider, and the steps after it never start.
+ */
+@Service
+public class AsyncChatService {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncChatService.class);
+
+    @Autowired
+    private RagService ragService;
+
+    @Autowired
+    private SemanticAnswerCache answerCache;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Value("${app.chat.retrieve.threads:8}")
+    private int retrieveThreads;
+
+    // Model calls in progress at once; the rest wait in the queue
+    @Value("${app.chat.generate.threads:16}")
+    private int generateThreads;
+
+    // Questions each executor holds waiting before new ones are rejected
+    @Value("${app.chat.queue.capacity:1000}")
+    private int queueCapacity;
+
+    // Longest a question may take end to end; a request may ask for less
+    @Value("${app.chat.deadline.ms:60000}")
+    private long deadlineMs;
+
+    // Runs each step on a virtual thread when the runtime has them (Java 21+); the limits above still apply
+    @Value("${app.chat.virtual.threads:true}")
+    private boolean virtualThreads;
+
+    private BoundedExecutor retrieval;
+    private BoundedExecutor generation;
+
+    @PostConstruct
+    public void start() {
+        retrieval = BoundedExecutor.create("chat-retrieve", retrieveThreads, queueCapacity, virtualThreads);
+        generation = BoundedExecutor.create("chat-generate", generateThreads, queueCapacity, virtualThreads);
+        log.info("chat executors retrieveThreads={} generateThreads={} queueCapacity={} virtualThreads={}",
+                retrieveThreads, generateThreads, queueCapacity, generation.usesVirtualThreads());
+    }
+
+    @PreDestroy
+    public void stop() {
+        retrieval.shutdownNow();
+        generation.shutdownNow();
+    }
+
+    /**
+     * The deadline for a request asking for {@code requestedMs} (null or non-positive for the default).
+     */
+    public long deadlineMs(Long requestedMs) {
+        return requestedMs == null || requestedMs <= 0 ? deadlineMs : Math.min(requestedMs, deadlineMs);
+    }
+
+    /**
+     * Answers {@code question} from the given documents (all when {@code filenames} is null or empty). The future
+     * fails with a {@link java.util.concurrent.TimeoutException} after {@code timeoutMs}, and with a
+     * {@link RejectedExecutionException} when either executor's queue is full.
+     */
+    public CompletableFuture<ChatResponse> answer(String question, Collection<String> filenames, long timeoutMs) {
+        CompletableFuture<ChatResponse> answer = new CompletableFuture<>();
+        // The retrieval and generation steps, to interrupt whichever is running when the answer fails
+        AtomicReferenceArray<Future<?>> steps = new AtomicReferenceArray<>(2);
+        metrics.started(Work.CHAT);
+        answer.whenComplete((response, error) -> {
+            metrics.finished(Work.CHAT);
+            if (error != null) {
+                cancel(steps);
+            }
+        });
+
+        try {
+            run(steps, 0, answer, retrieval, () -> {
+                long epoch = answerCache.epoch();
+                float[] key = ragService.answerCacheKey(question);
+                ChatResponse cached = key == null ? null : answerCache.get(key, filenames);
+                if (cached != null) {
+                    answer.complete(cached);
+                    return;
+                }
+                RetrievalResult retrieved = ragService.retrieve(question, filenames);
+                run(steps, 1, answer, generation, () -> {
+                    ChatResponse response = toResponse(ragService.generateAnswer(question, retrieved), retrieved);
+                    if (key != null) {
+                        answerCache.put(key, filenames, response, retrieved, epoch);
+                    }
+                    answer.complete(response);
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            answer.completeExceptionally(e);
+        }
+        answer.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        return answer;
+    }
+
+    // Steps of an answer that is already complete are not started
+    private static void run(AtomicReferenceArray<Future<?>> steps, int index, CompletableFuture<ChatResponse> answer,
+                            BoundedExecutor executor, Step task) {
+        if (answer.isDone()) {
+            return;
+        }
+        steps.set(index, executor.submit(() -> {
+            if (answer.isDone()) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Exception e) {
+                answer.completeExceptionally(e);
+            }
+        }));
+        // The answer may have failed while this step was being submitted
+        if (answer.isCompletedExceptionally()) {
+            cancel(steps);
+        }
+    }
+
+    private static void cancel(AtomicReferenceArray<Future<?>> steps) {
+        for (int i = 0; i < steps.length(); i++) {
+            Future<?> step = steps.get(i);
+            if (step != null) {
+                step.cancel(true);
+            }
+        }
+    }
+
+    static ChatResponse toResponse(String answer, RetrievalResult retrieval) {
+        ChatResponse response = new ChatResponse(answer, retrieval.texts(), retrieval.citations());
+        response.setContextTokens(retrieval.getContextTokens());
+        response.setContextTokensSaved(retrieval.tokensSaved());
+        return response;
+    }
+
+    private interface Step {
+        void run() throws Exception;
+    }
+}
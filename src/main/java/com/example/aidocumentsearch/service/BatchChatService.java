@@ -0,0 +1,276 @@
+package com.example.aidocumentsearch.service;
+
+import com.example.aidocumentsearch.dto.BatchChatAnswer;
+import com.example.aidocumentsearch.dto.BatchChatSummary;
+import com.example.aidocumentsearch.dto.ChatResponse;
+import com.example.aidocumentsearch.dto.ChatStreamToken;
+import com.example.aidocumentsearch.dto.RetrievalResult;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.metrics.PipelineMetrics.Work;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers a batch of questions as Server-Sent Events. Retrieval is done for the whole batch at once (one embedding
+ * request and one pass over the vector store, see {@link RagService#retrieveAll}); the model calls then fan out,
+ * at most {@code app.chat.batch.parallelism} at a time per batch, and each answer is sent as soon as it is ready.
+ * Questions the {@link SemanticAnswerCache} can answer are sent first and skip both steps.
+ */
+@Service
+public class BatchChatService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchChatService.class);
+
+    @Autowired
+    private RagService ragService;
+
+    @Autowired
+    private SemanticAnswerCache answerCache;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    // Model calls one batch has in flight; the next starts when one finishes
+    @Value("${app.chat.batch.parallelism:4}")
+    private int parallelism;
+
+    // Threads shared by the retrieval and model calls of all batches
+    @Value("${app.chat.batch.threads:16}")
+    private int threads;
+
+    @Value("${app.chat.queue.capacity:1000}")
+    private int queueCapacity;
+
+    // How long a batch may stay open before it is closed with a timeout
+    @Value("${app.chat.batch.timeout.ms:300000}")
+    private long timeoutMs;
+
+    @Value("${app.chat.virtual.threads:true}")
+    private boolean virtualThreads;
+
+    private BoundedExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        executor = BoundedExecutor.create("chat-batch", threads, queueCapacity, virtualThreads);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts answering {@code questions} from the given documents (all when {@code filenames} is null or empty) in
+     * the background and returns the emitter the events go to.
+     *
+     * @throws RejectedExecutionException when too many tasks are already waiting
+     */
+    public SseEmitter answer(List<String> questions, List<String> filenames) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Batch batch = new Batch(questions, filenames, emitter);
+        emitter.onTimeout(batch::close);
+        emitter.onError(error -> batch.close());
+
+        metrics.started(Work.BATCH);
+        try {
+            batch.submit(batch::retrieve);
+        } catch (RejectedExecutionException e) {
+            batch.close();
+            throw e;
+        }
+        return emitter;
+    }
+
+    private class Batch {
+
+        private final List<String> questions;
+        private final List<String> filenames;
+        private final SseEmitter emitter;
+        private final long startNanos = System.nanoTime();
+        private final Queue<Future<?>> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger answered = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile boolean closed;
+        // Questions the cache could not answer, in the order their model calls start
+        private volatile int[] pending;
+        private volatile RetrievalResult[] retrievals;
+        private volatile List<float[]> keys;
+        private volatile long epoch;
+
+        Batch(List<String> questions, List<String> filenames, SseEmitter emitter) {
+            this.questions = questions;
+            this.filenames = filenames;
+            this.emitter = emitter;
+        }
+
+        void retrieve() {
+            List<Integer> cachedIndexes = new ArrayList<>();
+            List<ChatResponse> cached = new ArrayList<>();
+            try {
+                epoch = answerCache.epoch();
+                keys = ragService.answerCacheKeys(questions);
+                List<Integer> misses = new ArrayList<>();
+                List<String> missed = new ArrayList<>();
+                for (int i = 0; i < questions.size(); i++) {
+                    ChatResponse response = keys.get(i) == null ? null : answerCache.get(keys.get(i), filenames);
+                    if (response != null) {
+                        cachedIndexes.add(i);
+                        cached.add(response);
+                    } else {
+                        misses.add(i);
+                        missed.add(questions.get(i));
+                    }
+                }
+                RetrievalResult[] results = new RetrievalResult[questions.size()];
+                if (!missed.isEmpty()) {
+                    List<RetrievalResult> retrieved = ragService.retrieveAll(missed, filenames);
+                    for (int m = 0; m < misses.size(); m++) {
+                        results[misses.get(m)] = retrieved.get(m);
+                    }
+                }
+                retrievals = results;
+                pending = misses.stream().mapToInt(Integer::intValue).toArray();
+            } catch (Exception e) {
+                log.warn("batch retrieval failed questions={} error=\"{}\"", questions.size(), e.getMessage());
+                send("error", new ChatStreamToken(
+                        "Sorry, I encountered an error while processing your questions: " + e.getMessage()));
+                complete();
+                return;
+            }
+            for (int c = 0; c < cachedIndexes.size(); c++) {
+                answered(cachedIndexes.get(c), cached.get(c), false);
+            }
+            for (int i = 0; i < Math.min(Math.max(1, parallelism), pending.length); i++) {
+                generateNext();
+            }
+        }
+
+        private void generateNext() {
+            int next = this.next.getAndIncrement();
+            if (next >= pending.length || closed) {
+                return;
+            }
+            int index = pending[next];
+            try {
+                submit(() -> generate(index));
+            } catch (RejectedExecutionException e) {
+                answered(index, failure(index, e), true);
+                generateNext();
+            }
+        }
+
+        private void generate(int index) {
+            String question = questions.get(index);
+            RetrievalResult retrieval = retrievals[index];
+            ChatResponse response;
+            boolean error = false;
+            metrics.started(Work.BATCH_ANSWER);
+            try {
+                response = AsyncChatService.toResponse(ragService.generateAnswer(question, retrieval), retrieval);
+                if (keys.get(index) != null) {
+                    answerCache.put(keys.get(index), filenames, response, retrieval, epoch);
+                }
+            } catch (Exception e) {
+                if (closed) {
+                    return;
+                }
+                log.warn("batch answer failed index={} error=\"{}\"", index, e.getMessage());
+                response = failure(index, e);
+                error = true;
+            } finally {
+                metrics.finished(Work.BATCH_ANSWER);
+            }
+            answered(index, response, error);
+            generateNext();
+        }
+
+        private ChatResponse failure(int index, Exception e) {
+            RetrievalResult retrieval = retrievals[index];
+            return new ChatResponse("Sorry, I encountered an error while processing your question: "
+                    + e.getMessage(), retrieval.texts(), retrieval.citations());
+        }
+
+        private void answered(int index, ChatResponse response, boolean error) {
+            if (error) {
+                failed.incrementAndGet();
+            }
+            send("answer", new BatchChatAnswer(index, questions.get(index), response, error));
+            if (answered.incrementAndGet() < questions.size()) {
+                return;
+            }
+            long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            if (log.isDebugEnabled()) {
+                log.debug("batch answered questions={} failed={} totalMs={}", questions.size(), failed.get(), total);
+            }
+            send("done", new BatchChatSummary(questions.size(), failed.get(), total));
+            complete();
+        }
+
+        void submit(Runnable task) {
+            Future<?> future = executor.submit(task);
+            tasks.add(future);
+            if (closed) {
+                future.cancel(true);
+            }
+        }
+
+        private void send(String event, Object data) {
+            if (closed) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                // The client went away: the model calls still running are interrupted
+                close();
+                emitter.completeWithError(e);
+            }
+        }
+
+        private void complete() {
+            if (finish() && !closed) {
+                closed = true;
+                emitter.complete();
+            }
+        }
+
+        // The client is gone or the batch timed out: nothing more will be sent, so running model calls stop
+        void close() {
+            closed = true;
+            if (finish()) {
+                for (Future<?> task : tasks) {
+                    task.cancel(true);
+                }
+            }
+        }
+
+        private boolean finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            metrics.finished(Work.BATCH);
+            return true;
+        }
+    }
+}
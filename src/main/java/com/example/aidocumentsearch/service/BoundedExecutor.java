@@ -0,0 +1,106 @@
+package com.example.aidocumentsearch.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs at most {@code concurrency} tasks at once with up to {@code queueCapacity} more waiting, and rejects the
+ * rest. Tasks run on a fixed pool of platform threads, or, when asked for and the runtime has them (Java 21+), on
+ * a virtual thread each, with a semaphore holding the same bound. Cancelling a returned future interrupts its task.
+ */
+final class BoundedExecutor {
+
+    private final String name;
+    private final ExecutorService executor;
+    // Only with virtual threads: the running bound, and running plus waiting tasks
+    private final Semaphore permits;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final int limit;
+
+    private BoundedExecutor(String name, ExecutorService executor, Semaphore permits, int limit) {
+        this.name = name;
+        this.executor = executor;
+        this.permits = permits;
+        this.limit = limit;
+    }
+
+    static BoundedExecutor create(String name, int concurrency, int queueCapacity, boolean virtualThreads) {
+        int threads = Math.max(1, concurrency);
+        int capacity = Math.max(1, queueCapacity);
+        ExecutorService virtual = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtual != null) {
+            return new BoundedExecutor(name, virtual, new Semaphore(threads), threads + capacity);
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        return new BoundedExecutor(name, pool, null, threads + capacity);
+    }
+
+    /**
+     * @throws RejectedExecutionException when the queue is full
+     */
+    Future<?> submit(Runnable task) {
+        if (permits == null) {
+            return executor.submit(task);
+        }
+        if (admitted.incrementAndGet() > limit) {
+            admitted.decrementAndGet();
+            throw new RejectedExecutionException(name + " queue is full");
+        }
+        // done() also runs for a task cancelled before it started
+        FutureTask<Void> future = new FutureTask<Void>(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                admitted.decrementAndGet();
+            }
+        };
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            admitted.decrementAndGet();
+            throw e;
+        }
+        return future;
+    }
+
+    boolean usesVirtualThreads() {
+        return permits != null;
+    }
+
+    void shutdownNow() {
+        executor.shutdownNow();
+    }
+
+    // Looked up reflectively so the application still builds and runs on Java 11
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
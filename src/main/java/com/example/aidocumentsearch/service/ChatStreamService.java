@@ -0,0 +1,284 @@
+package com.example.aidocumentsearch.service;
+
+import com.example.aidocumentsearch.dto.ChatResponse;
+import com.example.aidocumentsearch.dto.ChatStreamStats;
+import com.example.aidocumentsearch.dto.ChatStreamSummary;
+import com.example.aidocumentsearch.dto.ChatStreamToken;
+import com.example.aidocumentsearch.dto.RetrievalResult;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.metrics.PipelineMetrics.Stage;
+import com.example.aidocumentsearch.metrics.PipelineMetrics.Work;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Answers questions as Server-Sent Events. Retrieval and the model call run on a small pool rather than the
+ * servlet thread; tokens are forwarded to the client as the model produces them (on whatever thread the model
+ * calls back on), and time-to-first-token and total time are recorded per request.
+ */
+@Service
+public class ChatStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatStreamService.class);
+
+    @Autowired
+    private RagService ragService;
+
+    // By name: the Gemini service also streams, and may be the primary blocking model too
+    @Autowired
+    @Qualifier("streamingChatLanguageModel")
+    private StreamingChatLanguageModel streamingChatLanguageModel;
+
+    @Autowired
+    private SemanticAnswerCache answerCache;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    // How long a stream may stay open before it is closed with a timeout
+    @Value("${app.chat.stream.timeout.ms:120000}")
+    private long timeoutMs;
+
+    // Threads running retrieval and, for models that read their response on the caller, the whole generation
+    @Value("${app.chat.stream.threads:8}")
+    private int threads;
+
+    // Streams waiting for a thread before new ones are rejected
+    @Value("${app.chat.stream.queue.capacity:64}")
+    private int queueCapacity;
+
+    @Value("${app.chat.virtual.threads:true}")
+    private boolean virtualThreads;
+
+    private BoundedExecutor executor;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timeToFirstTokenTotalMs = new LongAdder();
+    private final LongAdder totalMs = new LongAdder();
+    private final AtomicLong maxTimeToFirstTokenMs = new AtomicLong();
+    private final AtomicLong maxTotalMs = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        executor = BoundedExecutor.create("chat-stream", threads, queueCapacity, virtualThreads);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts answering {@code question} from the given documents (all when {@code filenames} is null or empty) in
+     * the background and returns the emitter the events go to.
+     *
+     * @throws RejectedExecutionException when too many streams are already waiting
+     */
+    public SseEmitter stream(String question, List<String> filenames) {
+        long startNanos = System.nanoTime();
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        AnswerStream stream = new AnswerStream(emitter, startNanos);
+        emitter.onTimeout(stream::close);
+        emitter.onError(error -> stream.close());
+
+        metrics.started(Work.STREAM);
+        try {
+            stream.running(executor.submit(() -> answer(question, filenames, stream)));
+        } catch (RejectedExecutionException e) {
+            stream.close();
+            throw e;
+        }
+        return emitter;
+    }
+
+    private void answer(String question, List<String> filenames, AnswerStream stream) {
+        try {
+            long epoch = answerCache.epoch();
+            float[] key = ragService.answerCacheKey(question);
+            ChatResponse cached = key == null ? null : answerCache.get(key, filenames);
+            if (cached != null) {
+                ChatResponse sources = new ChatResponse(null, cached.getSources(), cached.getCitations());
+                sources.setContextTokens(cached.getContextTokens());
+                sources.setContextTokensSaved(cached.getContextTokensSaved());
+                stream.send("sources", sources);
+                stream.onNext(cached.getAnswer());
+                stream.onComplete(null);
+                return;
+            }
+
+            RetrievalResult retrieval = ragService.retrieve(question, filenames);
+            ChatResponse sources = new ChatResponse(null, retrieval.texts(), retrieval.citations());
+            sources.setContextTokens(retrieval.getContextTokens());
+            sources.setContextTokensSaved(retrieval.tokensSaved());
+            stream.send("sources", sources);
+            if (retrieval.isEmpty()) {
+                stream.onNext(RagService.NO_CONTEXT_ANSWER);
+                stream.onComplete(null);
+                return;
+            }
+            if (key != null) {
+                stream.whenAnswered(text -> answerCache.put(key, filenames,
+                        AsyncChatService.toResponse(text, retrieval), retrieval, epoch));
+            }
+            String prompt = ragService.buildPrompt(question, retrieval);
+            stream.modelCalled();
+            streamingChatLanguageModel.generate(prompt, stream);
+        } catch (Exception e) {
+            stream.onError(e);
+        }
+    }
+
+    public ChatStreamStats getStats() {
+        long count = completed.sum();
+        return new ChatStreamStats(count, failed.sum(),
+                count == 0 ? 0.0 : (double) timeToFirstTokenTotalMs.sum() / count, maxTimeToFirstTokenMs.get(),
+                count == 0 ? 0.0 : (double) totalMs.sum() / count, maxTotalMs.get());
+    }
+
+    private void record(long timeToFirstToken, long total) {
+        completed.increment();
+        timeToFirstTokenTotalMs.add(timeToFirstToken);
+        totalMs.add(total);
+        maxTimeToFirstTokenMs.accumulateAndGet(timeToFirstToken, Math::max);
+        maxTotalMs.accumulateAndGet(total, Math::max);
+    }
+
+    // Handler for one request; models call it from a single thread at a time
+    private class AnswerStream implements StreamingResponseHandler<AiMessage> {
+
+        private final SseEmitter emitter;
+        private final long startNanos;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile boolean closed;
+        private volatile Future<?> task;
+        private volatile long modelCalledNanos;
+        private volatile Consumer<String> answered;
+        private final StringBuilder text = new StringBuilder();
+        private int tokens;
+        private long firstTokenNanos;
+
+        AnswerStream(SseEmitter emitter, long startNanos) {
+            this.emitter = emitter;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void onNext(String token) {
+            if (tokens++ == 0) {
+                firstTokenNanos = System.nanoTime();
+            }
+            text.append(token);
+            send("token", new ChatStreamToken(token));
+        }
+
+        @Override
+        public void onComplete(Response<AiMessage> response) {
+            long now = System.nanoTime();
+            long total = TimeUnit.NANOSECONDS.toMillis(now - startNanos);
+            long timeToFirstToken = TimeUnit.NANOSECONDS.toMillis((tokens > 0 ? firstTokenNanos : now) - startNanos);
+            record(timeToFirstToken, total);
+            finish(now);
+            Consumer<String> callback = answered;
+            if (callback != null) {
+                callback.accept(text.toString());
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("answer streamed tokens={} firstTokenMs={} totalMs={}", tokens, timeToFirstToken, total);
+            }
+
+            send("done", new ChatStreamSummary(tokens, timeToFirstToken, total));
+            if (!closed) {
+                closed = true;
+                emitter.complete();
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            failed.increment();
+            finish(System.nanoTime());
+            log.warn("answer stream failed error=\"{}\"", error.getMessage());
+            send("error", new ChatStreamToken(
+                    "Sorry, I encountered an error while processing your question: " + error.getMessage()));
+            if (!closed) {
+                closed = true;
+                emitter.complete();
+            }
+        }
+
+        void send(String event, Object data) {
+            if (closed) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                // The client went away; tokens already on their way are dropped and the model call is interrupted
+                close();
+                emitter.completeWithError(e);
+            }
+        }
+
+        // The client is gone or its stream timed out: nothing more will be sent, so the model call is interrupted
+        void close() {
+            closed = true;
+            if (finish(System.nanoTime())) {
+                Future<?> running = task;
+                if (running != null) {
+                    running.cancel(true);
+                }
+            }
+        }
+
+        void running(Future<?> task) {
+            this.task = task;
+            if (closed) {
+                task.cancel(true);
+            }
+        }
+
+        // Called with the whole answer once the model has finished it
+        void whenAnswered(Consumer<String> callback) {
+            this.answered = callback;
+        }
+
+        void modelCalled() {
+            modelCalledNanos = System.nanoTime();
+        }
+
+        // Once per stream, whichever of completion, failure or disconnect comes first
+        private boolean finish(long now) {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            metrics.finished(Work.STREAM);
+            if (modelCalledNanos != 0) {
+                metrics.record(Stage.LLM_CALL, now - modelCalledNanos);
+            }
+            return true;
+        }
+    }
+}
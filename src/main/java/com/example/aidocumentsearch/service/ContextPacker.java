@@ -0,0 +1,252 @@
+package com.example.aidocumentsearch.service;
+
+import com.example.aidocumentsearch.dto.RetrievedChunk;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns retrieved chunks into the context section of the prompt, in three steps:
+ * <ol>
+ *   <li>chunks of the same file with consecutive chunk indexes are merged into one passage, dropping the text the
+ *   chunker repeated at the start of the later chunk;</li>
+ *   <li>a passage whose word 3-grams are mostly contained in a more relevant passage is dropped;</li>
+ *   <li>passages are added most relevant first while they fit the token budget (the first one is cut to fit if it
+ *   is too long on its own).</li>
+ * </ol>
+ * The chunks behind the packed passages are returned in retrieval order, so sources and citations name exactly
+ * what the model saw.
+ */
+@Component
+public class ContextPacker {
+
+    // Shorter suffix/prefix matches are treated as coincidence rather than chunk overlap
+    private static final int MIN_OVERLAP_CHARS = 16;
+    private static final int SHINGLE_WORDS = 3;
+
+    // Share of a passage's 3-grams found in a kept passage above which it counts as a duplicate
+    @Value("${app.context.duplicate.threshold:0.8}")
+    private double duplicateThreshold = 0.8;
+
+    public static class PackedContext {
+
+        private final String text;
+        private final List<RetrievedChunk> chunks;
+        private final int retrievedTokens;
+        private final int packedTokens;
+
+        PackedContext(String text, List<RetrievedChunk> chunks, int retrievedTokens, int packedTokens) {
+            this.text = text;
+            this.chunks = chunks;
+            this.retrievedTokens = retrievedTokens;
+            this.packedTokens = packedTokens;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public List<RetrievedChunk> getChunks() {
+            return chunks;
+        }
+
+        // Estimated tokens of the chunks joined verbatim, as the prompt used to be built
+        public int getRetrievedTokens() {
+            return retrievedTokens;
+        }
+
+        public int getPackedTokens() {
+            return packedTokens;
+        }
+    }
+
+    public PackedContext pack(List<RetrievedChunk> retrieved, int maxTokens) {
+        int retrievedTokens = 0;
+        for (RetrievedChunk chunk : retrieved) {
+            retrievedTokens += estimateTokens(chunk.getText());
+        }
+
+        List<Passage> passages = dropDuplicates(merge(retrieved));
+        int budget = maxTokens > 0 ? maxTokens : Integer.MAX_VALUE;
+        List<Passage> packed = new ArrayList<>();
+        int packedTokens = 0;
+        for (Passage passage : passages) {
+            int tokens = estimateTokens(passage.text);
+            if (packedTokens + tokens > budget) {
+                if (!packed.isEmpty()) {
+                    continue;
+                }
+                passage.text = truncate(passage.text, budget);
+                tokens = estimateTokens(passage.text);
+            }
+            packed.add(passage);
+            packedTokens += tokens;
+        }
+
+        StringBuilder text = new StringBuilder();
+        Set<RetrievedChunk> used = new HashSet<>();
+        for (Passage passage : packed) {
+            if (text.length() > 0) {
+                text.append("\n\n");
+            }
+            text.append(passage.text);
+            used.addAll(passage.chunks);
+        }
+        List<RetrievedChunk> chunks = new ArrayList<>();
+        for (RetrievedChunk chunk : retrieved) {
+            if (used.contains(chunk)) {
+                chunks.add(chunk);
+            }
+        }
+        return new PackedContext(text.toString(), chunks, retrievedTokens, packedTokens);
+    }
+
+    // Runs of consecutive chunk indexes within a file become one passage, ranked by its best chunk
+    private static List<Passage> merge(List<RetrievedChunk> retrieved) {
+        Map<String, List<RetrievedChunk>> byFile = new LinkedHashMap<>();
+        for (RetrievedChunk chunk : retrieved) {
+            byFile.computeIfAbsent(chunk.getFilename(), f -> new ArrayList<>()).add(chunk);
+        }
+
+        List<Passage> passages = new ArrayList<>();
+        for (List<RetrievedChunk> chunks : byFile.values()) {
+            chunks.sort(Comparator.comparingInt(RetrievedChunk::getChunkIndex));
+            Passage current = null;
+            for (RetrievedChunk chunk : chunks) {
+                RetrievedChunk last = current == null ? null : current.chunks.get(current.chunks.size() - 1);
+                if (last != null && chunk.getChunkIndex() == last.getChunkIndex()) {
+                    // The same chunk retrieved twice
+                    continue;
+                }
+                if (last != null && chunk.getChunkIndex() == last.getChunkIndex() + 1) {
+                    int overlap = overlap(current.text, chunk.getText());
+                    current.text = overlap >= MIN_OVERLAP_CHARS
+                            ? current.text + chunk.getText().substring(overlap)
+                            : current.text + " " + chunk.getText();
+                    current.chunks.add(chunk);
+                    current.score = Math.max(current.score, chunk.getScore());
+                } else {
+                    current = new Passage(chunk);
+                    passages.add(current);
+                }
+            }
+        }
+        passages.sort((a, b) -> Double.compare(b.score, a.score));
+        return passages;
+    }
+
+    private List<Passage> dropDuplicates(List<Passage> passages) {
+        List<Passage> kept = new ArrayList<>();
+        List<Set<Long>> keptShingles = new ArrayList<>();
+        for (Passage passage : passages) {
+            Set<Long> shingles = shingles(passage.text);
+            boolean duplicate = false;
+            for (Set<Long> other : keptShingles) {
+                if (containment(shingles, other) >= duplicateThreshold) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                kept.add(passage);
+                keptShingles.add(shingles);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Length of the longest suffix of {@code a} that is also a prefix of {@code b} (Knuth-Morris-Pratt over the
+     * tail of {@code a}, linear in the lengths).
+     */
+    static int overlap(String a, String b) {
+        int m = Math.min(a.length(), b.length());
+        if (m == 0) {
+            return 0;
+        }
+        int[] failure = new int[m];
+        for (int i = 1, k = 0; i < m; i++) {
+            while (k > 0 && b.charAt(i) != b.charAt(k)) {
+                k = failure[k - 1];
+            }
+            if (b.charAt(i) == b.charAt(k)) {
+                k++;
+            }
+            failure[i] = k;
+        }
+        int k = 0;
+        for (int i = a.length() - m; i < a.length(); i++) {
+            while (k > 0 && (k == m || a.charAt(i) != b.charAt(k))) {
+                k = failure[k - 1];
+            }
+            if (a.charAt(i) == b.charAt(k)) {
+                k++;
+            }
+        }
+        return k;
+    }
+
+    private static Set<Long> shingles(String text) {
+        String[] words = text.toLowerCase(Locale.ROOT).split("\\W+");
+        Set<Long> shingles = new HashSet<>();
+        for (int i = 0; i + SHINGLE_WORDS <= words.length; i++) {
+            long hash = 1125899906842597L;
+            for (int j = i; j < i + SHINGLE_WORDS; j++) {
+                hash = 31 * hash + words[j].hashCode();
+            }
+            shingles.add(hash);
+        }
+        return shingles;
+    }
+
+    // Share of the candidate's shingles already kept: a passage inside a kept one is a duplicate, but a longer
+    // passage around a kept one still brings new text
+    private static double containment(Set<Long> candidate, Set<Long> kept) {
+        if (candidate.isEmpty() || kept.isEmpty()) {
+            return 0.0;
+        }
+        int shared = 0;
+        for (Long shingle : candidate) {
+            if (kept.contains(shingle)) {
+                shared++;
+            }
+        }
+        return (double) shared / candidate.size();
+    }
+
+    // Cuts at the last space that keeps the text within maxTokens
+    private static String truncate(String text, int maxTokens) {
+        int maxChars = Math.max(0, (maxTokens - 1) * 4);
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        int end = text.lastIndexOf(' ', maxChars);
+        return text.substring(0, end > 0 ? end : maxChars);
+    }
+
+    // Roughly four characters per token, the same estimate EmbeddingService batches by
+    static int estimateTokens(String text) {
+        return text.length() / 4 + 1;
+    }
+
+    private static final class Passage {
+
+        String text;
+        double score;
+        final List<RetrievedChunk> chunks = new ArrayList<>();
+
+        Passage(RetrievedChunk chunk) {
+            this.text = chunk.getText();
+            this.score = chunk.getScore();
+            this.chunks.add(chunk);
+        }
+    }
+}
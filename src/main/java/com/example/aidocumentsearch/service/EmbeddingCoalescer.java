@@ -0,0 +1,119 @@
+package com.example.aidocumentsearch.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collects single-text embedding requests from concurrent callers and sends them to the model as micro-batches.
+ * The first request of a batch waits at most {@code windowMillis} for company; a full batch is sent immediately.
+ * Cancelling a returned future before its batch is sent leaves the text out of the batch.
+ */
+class EmbeddingCoalescer {
+
+    private final Function<List<String>, List<float[]>> batchEmbedder;
+    private final Executor dispatcher;
+    private final int maxBatchSize;
+    private final long windowMillis;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread collector;
+
+    private volatile boolean running = true;
+
+    EmbeddingCoalescer(Function<List<String>, List<float[]>> batchEmbedder, Executor dispatcher,
+                       int maxBatchSize, long windowMillis) {
+        this.batchEmbedder = batchEmbedder;
+        this.dispatcher = dispatcher;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.windowMillis = windowMillis;
+        this.collector = new Thread(this::collect, "embedding-coalescer");
+        this.collector.setDaemon(true);
+        this.collector.start();
+    }
+
+    CompletableFuture<float[]> submit(String text) {
+        Request request = new Request(text);
+        if (!running) {
+            request.result.completeExceptionally(new IllegalStateException("Embedding coalescer is shut down"));
+        } else {
+            queue.add(request);
+        }
+        return request.result;
+    }
+
+    void shutdown() {
+        running = false;
+        collector.interrupt();
+    }
+
+    private void collect() {
+        while (running) {
+            List<Request> batch = new ArrayList<>();
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.drainTo(batch);
+                fail(batch, new IllegalStateException("Embedding coalescer is shut down"));
+                return;
+            }
+            dispatch(batch);
+        }
+    }
+
+    private void dispatch(List<Request> batch) {
+        try {
+            dispatcher.execute(() -> {
+                try {
+                    // Callers that gave up waiting cancelled their request; only the rest are sent
+                    batch.removeIf(request -> request.result.isDone());
+                    if (batch.isEmpty()) {
+                        return;
+                    }
+                    List<String> texts = new ArrayList<>(batch.size());
+                    for (Request request : batch) {
+                        texts.add(request.text);
+                    }
+                    List<float[]> vectors = batchEmbedder.apply(texts);
+                    for (int i = 0; i < batch.size(); i++) {
+                        batch.get(i).result.complete(vectors.get(i));
+                    }
+                } catch (RuntimeException e) {
+                    fail(batch, e);
+                }
+            });
+        } catch (RuntimeException e) {
+            fail(batch, e);
+        }
+    }
+
+    private static void fail(List<Request> batch, RuntimeException cause) {
+        for (Request request : batch) {
+            request.result.completeExceptionally(cause);
+        }
+    }
+
+    private static final class Request {
+
+        final String text;
+        final CompletableFuture<float[]> result = new CompletableFuture<>();
+
+        Request(String text) {
+            this.text = text;
+        }
+    }
+}
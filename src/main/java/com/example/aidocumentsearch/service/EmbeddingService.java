@@ -1,30 +1,317 @@
 package com.example.aidocumentsearch.service;
 
-import dev.langchain4j.model.embedding.EmbeddingModel;
+import com.example.aidocumentsearch.config.EmbeddingProfile;
+import com.example.aidocumentsearch.dto.EmbeddingCacheStats;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.store.EmbeddingCache;
 import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class EmbeddingService {
 
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingService.class);
+
     @Autowired
     private EmbeddingModel embeddingModel;
 
-    public List<Double> generateEmbedding(String text) {
-        Embedding embedding = embeddingModel.embed(text).content();
-        return embedding.vectorAsList().stream()
-                .map(Float::doubleValue)
-                .collect(Collectors.toList());
+    @Autowired
+    private QueryEmbeddingCache queryEmbeddingCache;
+
+    @Autowired
+    private EmbeddingProfile embeddingProfile;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    // The content-addressed embedding cache lives here too; empty disables it
+    @Value("${app.storage.path:data}")
+    private String storagePath;
+
+    // Size bound of the on-disk embedding cache; 0 disables it
+    @Value("${app.embedding.cache.max.mb:512}")
+    private long contentCacheMaxMb;
+
+    // Texts per embedAll request
+    @Value("${app.embedding.batch.size:64}")
+    private int batchSize;
+
+    // Estimated tokens per embedAll request, kept under the provider's per-request limit
+    @Value("${app.embedding.batch.max.tokens:100000}")
+    private int batchMaxTokens;
+
+    // Ingestion batches in flight at once
+    @Value("${app.embedding.concurrency:4}")
+    private int concurrency;
+
+    // Question batches in flight at once, on their own threads so a large upload never queues a chat question
+    @Value("${app.embedding.query.concurrency:2}")
+    private int queryConcurrency;
+
+    // How long a single-text request waits for others to share its batch; 0 sends it straight away
+    @Value("${app.embedding.coalesce.window.ms:5}")
+    private long coalesceWindowMillis;
+
+    private ExecutorService batchExecutor;
+    private ExecutorService queryExecutor;
+    private EmbeddingCoalescer coalescer;
+    private EmbeddingCache contentCache;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (storagePath != null && !storagePath.trim().isEmpty() && contentCacheMaxMb > 0) {
+            contentCache = EmbeddingCache.open(Paths.get(storagePath, "embedding-cache.bin"),
+                    contentCacheMaxMb * 1024 * 1024);
+        }
+        batchExecutor = newExecutor(concurrency, "embedding-batch-");
+        queryExecutor = newExecutor(queryConcurrency, "embedding-query-");
+        if (coalesceWindowMillis > 0) {
+            coalescer = new EmbeddingCoalescer(this::embedBatch, queryExecutor, batchSize, coalesceWindowMillis);
+        }
     }
 
-    public List<List<Double>> generateEmbeddings(List<String> texts) {
-        return texts.stream()
-                .map(this::generateEmbedding)
-                .collect(Collectors.toList());
+    private static ExecutorService newExecutor(int threads, String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
-}
 
+    @PreDestroy
+    public void stop() throws IOException {
+        if (coalescer != null) {
+            coalescer.shutdown();
+        }
+        batchExecutor.shutdown();
+        queryExecutor.shutdown();
+        if (contentCache != null) {
+            contentCache.close();
+        }
+    }
+
+    // Returns the model's primitive vector as-is so nothing is boxed on the way to the vector store
+    public float[] generateEmbedding(String text) {
+        String model = embeddingProfile.getModelName();
+        float[] cached = contentCache == null ? null : contentCache.get(model, text);
+        if (cached != null) {
+            return cached;
+        }
+        float[] embedding;
+        if (coalescer == null) {
+            try {
+                embedding = embeddingModel.embed(text).content().vector();
+            } catch (RuntimeException e) {
+                metrics.providerError(providerName(), "error");
+                throw e;
+            }
+        } else {
+            embedding = await(coalescer.submit(text));
+        }
+        cache(model, text, embedding);
+        return embedding;
+    }
+
+    /**
+     * Embeds {@code texts} in order using batched {@code embedAll} calls, with up to {@code app.embedding.concurrency}
+     * batches in flight. Texts found in the content-addressed cache are not sent to the model, and a text repeated
+     * within {@code texts} is embedded once.
+     */
+    public List<float[]> generateEmbeddings(List<String> texts) {
+        String model = embeddingProfile.getModelName();
+        float[][] embeddings = new float[texts.size()][];
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            float[] cached = contentCache == null ? null : contentCache.get(model, texts.get(i));
+            if (cached != null) {
+                embeddings[i] = cached;
+            } else {
+                missing.computeIfAbsent(texts.get(i), text -> new ArrayList<>(1)).add(i);
+            }
+        }
+
+        List<String> toEmbed = new ArrayList<>(missing.keySet());
+        List<CompletableFuture<List<float[]>>> batches = new ArrayList<>();
+        for (List<String> batch : partition(toEmbed)) {
+            batches.add(CompletableFuture.supplyAsync(() -> embedBatch(batch), batchExecutor));
+        }
+
+        int next = 0;
+        for (CompletableFuture<List<float[]>> batch : batches) {
+            for (float[] embedding : await(batch)) {
+                String text = toEmbed.get(next++);
+                for (int index : missing.get(text)) {
+                    embeddings[index] = embedding;
+                }
+                cache(model, text, embedding);
+            }
+        }
+        return Arrays.asList(embeddings);
+    }
+
+    public EmbeddingCacheStats getContentCacheStats() {
+        if (contentCache == null) {
+            return new EmbeddingCacheStats(false, 0, 0, 0, 0, 0);
+        }
+        return new EmbeddingCacheStats(true, contentCache.size(), contentCache.bytes(), contentCache.getMaxBytes(),
+                contentCache.getHits(), contentCache.getMisses());
+    }
+
+    // A failed cache write only costs a future re-embedding, so it never fails the caller
+    private void cache(String model, String text, float[] embedding) {
+        if (contentCache == null) {
+            return;
+        }
+        try {
+            contentCache.put(model, text, embedding);
+        } catch (IOException e) {
+            log.warn("embedding cache write failed error=\"{}\"", e.getMessage());
+        }
+    }
+
+    public float[] generateQueryEmbedding(String question) {
+        float[] cached = queryEmbeddingCache.get(question);
+        if (cached != null) {
+            return cached;
+        }
+        float[] embedding = generateEmbedding(question);
+        queryEmbeddingCache.put(question, embedding);
+        return embedding;
+    }
+
+    /**
+     * Embeds many questions through the query cache, sending the ones it misses to the model together in as few
+     * {@code embedAll} requests as the batch limits allow (one for a typical batch of questions).
+     */
+    public List<float[]> generateQueryEmbeddings(List<String> questions) {
+        String model = embeddingProfile.getModelName();
+        float[][] embeddings = new float[questions.size()][];
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        for (int i = 0; i < questions.size(); i++) {
+            String question = questions.get(i);
+            float[] cached = queryEmbeddingCache.get(question);
+            if (cached == null && contentCache != null) {
+                cached = contentCache.get(model, question);
+            }
+            if (cached != null) {
+                embeddings[i] = cached;
+            } else {
+                missing.computeIfAbsent(question, text -> new ArrayList<>(1)).add(i);
+            }
+        }
+
+        List<String> toEmbed = new ArrayList<>(missing.keySet());
+        List<CompletableFuture<List<float[]>>> batches = new ArrayList<>();
+        for (List<String> batch : partition(toEmbed)) {
+            batches.add(CompletableFuture.supplyAsync(() -> embedBatch(batch), queryExecutor));
+        }
+
+        int next = 0;
+        for (CompletableFuture<List<float[]>> batch : batches) {
+            for (float[] embedding : await(batch)) {
+                String question = toEmbed.get(next++);
+                for (int index : missing.get(question)) {
+                    embeddings[index] = embedding;
+                }
+                queryEmbeddingCache.put(question, embedding);
+                cache(model, question, embedding);
+            }
+        }
+        return Arrays.asList(embeddings);
+    }
+
+    private List<float[]> embedBatch(List<String> texts) {
+        List<TextSegment> segments = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            segments.add(TextSegment.from(text));
+        }
+        List<Embedding> embeddings;
+        try {
+            embeddings = embeddingModel.embedAll(segments).content();
+        } catch (RuntimeException e) {
+            metrics.providerError(providerName(), "error");
+            throw e;
+        }
+        if (embeddings.size() != texts.size()) {
+            throw new IllegalStateException(
+                    "Embedding model returned " + embeddings.size() + " vectors for " + texts.size() + " texts");
+        }
+        List<float[]> vectors = new ArrayList<>(embeddings.size());
+        for (Embedding embedding : embeddings) {
+            vectors.add(embedding.vector());
+        }
+        return vectors;
+    }
+
+    // Tags embedding failures apart from the chat providers of LlmHttpClient
+    private String providerName() {
+        return embeddingProfile.getProvider().name().toLowerCase(Locale.ROOT) + "-embedding";
+    }
+
+    // Splits on whichever limit is hit first: texts per request or estimated tokens per request
+    private List<List<String>> partition(List<String> texts) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int currentTokens = 0;
+        for (String text : texts) {
+            int tokens = estimateTokens(text);
+            if (!current.isEmpty() && (current.size() >= batchSize || currentTokens + tokens > batchMaxTokens)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(text);
+            currentTokens += tokens;
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+
+    // Roughly four characters per token for English text with the OpenAI tokenizers
+    private static int estimateTokens(String text) {
+        return text.length() / 4 + 1;
+    }
+
+    // An interrupted caller stops waiting and cancels its request, so a coalesced text nobody waits for any more is
+    // left out of the batch it was queued for
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new CancellationException("Interrupted waiting for embeddings");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
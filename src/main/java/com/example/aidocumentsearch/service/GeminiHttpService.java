@@ -1,85 +1,136 @@
 package com.example.aidocumentsearch.service;
 
+import com.example.aidocumentsearch.llm.GeminiRequest;
+import com.example.aidocumentsearch.llm.GeminiResponse;
+import com.example.aidocumentsearch.llm.LlmHttpClient;
+import com.example.aidocumentsearch.llm.LlmHttpException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import dev.langchain4j.model.StreamingResponseHandler;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.model.output.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 
+/**
+ * Gemini chat through the shared {@link LlmHttpClient}. Failures (after the client's retries) surface as
+ * {@link LlmHttpException} so callers can tell them apart from an answer.
+ */
 @Service
-public class GeminiHttpService implements ChatLanguageModel {
-    
+public class GeminiHttpService implements ChatLanguageModel, StreamingChatLanguageModel {
+
+    private static final Logger log = LoggerFactory.getLogger(GeminiHttpService.class);
+
+    private static final String PROVIDER = "gemini";
+    private static final String NO_MESSAGE = "I didn't receive a valid message. Please try again.";
+    private static final String NO_ANSWER = "I'm sorry, I couldn't generate a response. Please try again.";
+
+    // Bound once to their types so each call skips Jackson's type introspection
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectWriter REQUEST_WRITER = MAPPER.writerFor(GeminiRequest.class);
+    private static final ObjectReader RESPONSE_READER = MAPPER.readerFor(GeminiResponse.class);
+
     @Value("${googleai.api.key:}")
     private String googleAiApiKey;
-    
-    private final RestTemplate restTemplate = new RestTemplate();
-    
+
+    @Value("${googleai.base.url:https://generativelanguage.googleapis.com}")
+    private String baseUrl;
+
+    @Value("${googleai.model:gemini-pro}")
+    private String model;
+
+    @Autowired
+    private LlmHttpClient llmHttpClient;
+
     @Override
     public Response<AiMessage> generate(List<ChatMessage> messages) {
+        // Get the last user message
+        String userText = lastUserText(messages);
+        if (userText.isEmpty()) {
+            return Response.from(AiMessage.from(NO_MESSAGE));
+        }
+
+        GeminiResponse response = llmHttpClient.postJson(PROVIDER, uri("generateContent"), headers(),
+                requestBody(userText), RESPONSE_READER);
+        String text = response.firstText();
+        return Response.from(AiMessage.from(text == null || text.isEmpty() ? NO_ANSWER : text));
+    }
+
+    /**
+     * Streams the answer through {@code streamGenerateContent} with {@code alt=sse}, passing on the text of each
+     * event as it arrives. The response is read on the calling thread.
+     */
+    @Override
+    public void generate(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        String userText = lastUserText(messages);
+        if (userText.isEmpty()) {
+            handler.onNext(NO_MESSAGE);
+            handler.onComplete(Response.from(AiMessage.from(NO_MESSAGE)));
+            return;
+        }
+
+        StringBuilder answer = new StringBuilder();
         try {
-            // Get the last user message
-            String userText = "";
-            for (int i = messages.size() - 1; i >= 0; i--) {
-                if (messages.get(i) instanceof UserMessage) {
-                    userText = ((UserMessage) messages.get(i)).text();
-                    break;
-                }
-            }
-            
-            if (userText.isEmpty()) {
-                return Response.from(AiMessage.from("I didn't receive a valid message. Please try again."));
-            }
-            
-            // Prepare the request to Gemini Pro API
-            String url = "https://generativelanguage.googleapis.com/v1beta/models/gemini-pro:generateContent?key=" + googleAiApiKey;
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            Map<String, Object> content = new HashMap<>();
-            Map<String, Object> part = new HashMap<>();
-            part.put("text", userText);
-            content.put("parts", List.of(part));
-            requestBody.put("contents", List.of(content));
-            
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-            ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.POST, entity, Map.class);
-            
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                List<Map<String, Object>> candidates = (List<Map<String, Object>>) responseBody.get("candidates");
-                
-                if (candidates != null && !candidates.isEmpty()) {
-                    Map<String, Object> candidate = candidates.get(0);
-                    Map<String, Object> contentResponse = (Map<String, Object>) candidate.get("content");
-                    List<Map<String, Object>> parts = (List<Map<String, Object>>) contentResponse.get("parts");
-                    
-                    if (parts != null && !parts.isEmpty()) {
-                        String aiResponse = (String) parts.get(0).get("text");
-                        return Response.from(AiMessage.from(aiResponse));
-                    }
-                }
+            llmHttpClient.postStream(PROVIDER, uri("streamGenerateContent?alt=sse"), headers(), requestBody(userText),
+                    line -> {
+                        if (!line.startsWith("data:")) {
+                            return;
+                        }
+                        String text;
+                        try {
+                            text = RESPONSE_READER.<GeminiResponse>readValue(line.substring(5)).firstText();
+                        } catch (JsonProcessingException e) {
+                            throw new LlmHttpException(PROVIDER, "malformed stream event", e);
+                        }
+                        if (text != null && !text.isEmpty()) {
+                            answer.append(text);
+                            handler.onNext(text);
+                        }
+                    });
+        } catch (LlmHttpException e) {
+            log.warn("gemini stream failed error=\"{}\"", e.getMessage());
+            handler.onError(e);
+            return;
+        }
+        handler.onComplete(Response.from(AiMessage.from(answer.length() == 0 ? NO_ANSWER : answer.toString())));
+    }
+
+    // The key goes in a header so it never appears in URLs or error messages
+    private Map<String, String> headers() {
+        return Map.of("x-goog-api-key", googleAiApiKey == null ? "" : googleAiApiKey);
+    }
+
+    private URI uri(String method) {
+        return URI.create(baseUrl + "/v1beta/models/" + model + ":" + method);
+    }
+
+    private static byte[] requestBody(String userText) {
+        try {
+            return REQUEST_WRITER.writeValueAsBytes(GeminiRequest.ofText(userText));
+        } catch (JsonProcessingException e) {
+            throw new LlmHttpException(PROVIDER, "could not encode request", e);
+        }
+    }
+
+    private static String lastUserText(List<ChatMessage> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof UserMessage) {
+                return ((UserMessage) messages.get(i)).text();
             }
-            
-            return Response.from(AiMessage.from("I'm sorry, I couldn't generate a response. Please try again."));
-            
-        } catch (Exception e) {
-            System.err.println("Error calling Gemini Pro: " + e.getMessage());
-            return Response.from(AiMessage.from("I'm sorry, I encountered an error while processing your request. Please try again."));
         }
+        return "";
     }
 }
-
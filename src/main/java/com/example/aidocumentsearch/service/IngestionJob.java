@@ -0,0 +1,131 @@
+package com.example.aidocumentsearch.service;
+
+import com.example.aidocumentsearch.dto.IngestionJobStatus;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of one document through the ingestion pipeline. Updated by the stage threads, read by status requests.
+ */
+public class IngestionJob {
+
+    public enum Stage {
+        QUEUED,
+        // Pages are extracted and chunked while earlier batches are already embedding
+        EXTRACTING,
+        EMBEDDING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String id;
+    private final String filename;
+    private final long createdAt = System.currentTimeMillis();
+
+    private volatile Stage stage = Stage.QUEUED;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+    private volatile boolean allBatchesSubmitted;
+    private boolean commitClaimed;
+    private final AtomicInteger totalChunks = new AtomicInteger();
+    private final AtomicInteger embeddedChunks = new AtomicInteger();
+    private final AtomicInteger storedChunks = new AtomicInteger();
+    private final AtomicInteger pendingBatches = new AtomicInteger();
+
+    IngestionJob(String id, String filename) {
+        this.id = id;
+        this.filename = filename;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public boolean isFinished() {
+        return stage == Stage.COMPLETED || stage == Stage.FAILED;
+    }
+
+    public IngestionJobStatus toStatus() {
+        long end = finishedAt != 0 ? finishedAt : System.currentTimeMillis();
+        long elapsed = startedAt == 0 ? 0 : end - startedAt;
+        return new IngestionJobStatus(id, filename, stage.name(), totalChunks.get(), embeddedChunks.get(),
+                storedChunks.get(), elapsed, error);
+    }
+
+    void start(Stage next) {
+        if (startedAt == 0) {
+            startedAt = System.currentTimeMillis();
+        }
+        stage = next;
+    }
+
+    void batchSubmitted(int chunks) {
+        totalChunks.addAndGet(chunks);
+        pendingBatches.incrementAndGet();
+    }
+
+    // Extraction is done; true if every batch is already stored and the caller should commit the document
+    synchronized boolean extracted() {
+        allBatchesSubmitted = true;
+        if (!isFinished()) {
+            stage = Stage.EMBEDDING;
+        }
+        return pendingBatches.get() == 0 && claimCommit();
+    }
+
+    int totalChunks() {
+        return totalChunks.get();
+    }
+
+    void embedded(int chunks) {
+        embeddedChunks.addAndGet(chunks);
+    }
+
+    // True for the last batch after extraction, whose caller commits the document and completes the job
+    boolean stored(int chunks) {
+        storedChunks.addAndGet(chunks);
+        return pendingBatches.decrementAndGet() == 0 && claimCommit();
+    }
+
+    // Exactly one of extracted() and the final stored() gets to commit
+    private synchronized boolean claimCommit() {
+        if (!allBatchesSubmitted || commitClaimed || isFinished()) {
+            return false;
+        }
+        commitClaimed = true;
+        return true;
+    }
+
+    // complete() and fail() return true for the call that finished the job
+    synchronized boolean complete() {
+        if (isFinished()) {
+            return false;
+        }
+        finishedAt = System.currentTimeMillis();
+        stage = Stage.COMPLETED;
+        return true;
+    }
+
+    synchronized boolean fail(String message) {
+        if (isFinished()) {
+            return false;
+        }
+        error = message;
+        finishedAt = System.currentTimeMillis();
+        stage = Stage.FAILED;
+        return true;
+    }
+}
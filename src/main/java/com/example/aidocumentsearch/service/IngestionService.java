@@ -0,0 +1,297 @@
+package com.example.aidocumentsearch.service;
+
+import com.example.aidocumentsearch.chunking.TextChunk;
+import com.example.aidocumentsearch.chunking.TextChunker;
+import com.example.aidocumentsearch.dto.IngestionJobStatus;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.metrics.PipelineMetrics.Stage;
+import com.example.aidocumentsearch.metrics.PipelineMetrics.Work;
+import com.example.aidocumentsearch.store.DocumentVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs document ingestion as background jobs flowing through three stages: extract (streaming pages into the
+ * chunker), embed and store.
+ *
+ * <p>Each stage has its own executor with a bounded queue. A full downstream queue blocks the stage feeding it,
+ * so a burst of uploads cannot pile up unbounded text or vectors in memory; a full extract queue rejects new
+ * uploads instead of holding the request. Chunks are handed to the embed stage in batches while later pages are
+ * still being extracted. A file uploaded for the first time is searchable batch by batch as it is stored. A file
+ * uploaded again is written to a new version, which replaces the earlier one once its last batch is stored; a
+ * failed job leaves the previous version in place.
+ */
+@Service
+public class IngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestionService.class);
+
+    @Autowired
+    private PdfProcessingService pdfProcessingService;
+
+    @Autowired
+    private EmbeddingService embeddingService;
+
+    @Autowired
+    private QdrantVectorService vectorDatabaseService;
+
+    @Autowired
+    private SemanticAnswerCache answerCache;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    // Chunks per embed/store batch
+    @Value("${app.ingest.batch.size:64}")
+    private int batchSize;
+
+    // Tasks each stage queue holds before upstream stages wait (uploads are rejected when extraction is full)
+    @Value("${app.ingest.queue.capacity:16}")
+    private int queueCapacity;
+
+    @Value("${app.ingest.extract.threads:2}")
+    private int extractThreads;
+
+    @Value("${app.ingest.embed.threads:2}")
+    private int embedThreads;
+
+    @Value("${app.ingest.store.threads:1}")
+    private int storeThreads;
+
+    // Finished jobs kept for status requests
+    @Value("${app.ingest.jobs.retained:1000}")
+    private int retainedJobs;
+
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor extractStage;
+    private ThreadPoolExecutor embedStage;
+    private ThreadPoolExecutor storeStage;
+
+    @PostConstruct
+    public void start() {
+        extractStage = stage("ingest-extract", extractThreads, new ThreadPoolExecutor.AbortPolicy());
+        embedStage = stage("ingest-embed", embedThreads, IngestionService::waitForRoom);
+        storeStage = stage("ingest-store", storeThreads, IngestionService::waitForRoom);
+    }
+
+    @PreDestroy
+    public void stop() {
+        extractStage.shutdownNow();
+        embedStage.shutdownNow();
+        storeStage.shutdownNow();
+    }
+
+    /**
+     * Queues a PDF for ingestion and returns its job straight away. The job takes ownership of the file and
+     * deletes it once extraction is over.
+     *
+     * @throws RejectedExecutionException when the extraction queue is full
+     */
+    public IngestionJob submit(Path pdf, String filename) {
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), filename);
+        jobs.put(job.getId(), job);
+        metrics.started(Work.INGESTION);
+        try {
+            extractStage.execute(() -> {
+                try {
+                    DocumentVersion version = vectorDatabaseService.beginDocument(filename);
+                    run(job, version, () -> extract(job, version, pdf));
+                } finally {
+                    deleteQuietly(pdf);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            deleteQuietly(pdf);
+            jobs.remove(job.getId());
+            metrics.finished(Work.INGESTION);
+            throw e;
+        }
+        evictFinishedJobs();
+        return job;
+    }
+
+    public IngestionJobStatus getStatus(String jobId) {
+        IngestionJob job = jobs.get(jobId);
+        return job == null ? null : job.toStatus();
+    }
+
+    // Extraction and chunking are interleaved page by page; the time each takes is told apart, and time spent
+    // waiting for room in the embed queue is left out of both
+    private void extract(IngestionJob job, DocumentVersion version, Path pdf) throws Exception {
+        job.start(IngestionJob.Stage.EXTRACTING);
+        long start = System.nanoTime();
+        int size = Math.max(1, batchSize);
+        List<TextChunk> batch = new ArrayList<>(size);
+        int[] nextChunkIndex = {0};
+        long[] chunkNanos = {0};
+        long[] waitNanos = {0};
+
+        TextChunker chunker = pdfProcessingService.newChunker(chunk -> {
+            batch.add(chunk);
+            if (batch.size() == size) {
+                long submitStart = System.nanoTime();
+                submitBatch(job, version, nextChunkIndex[0], new ArrayList<>(batch));
+                waitNanos[0] += System.nanoTime() - submitStart;
+                nextChunkIndex[0] += batch.size();
+                batch.clear();
+            }
+        });
+        pdfProcessingService.extractPages(pdf, (page, text) -> {
+            if (job.isFinished()) {
+                throw new CancellationException("Ingestion job " + job.getId() + " failed");
+            }
+            long chunkStart = System.nanoTime();
+            chunker.addPage(page, text);
+            chunkNanos[0] += System.nanoTime() - chunkStart;
+        });
+        long chunkStart = System.nanoTime();
+        chunker.finish();
+        chunkNanos[0] += System.nanoTime() - chunkStart;
+        metrics.record(Stage.PDF_EXTRACT, System.nanoTime() - start - chunkNanos[0]);
+        metrics.record(Stage.CHUNK, chunkNanos[0] - waitNanos[0]);
+        if (!batch.isEmpty()) {
+            submitBatch(job, version, nextChunkIndex[0], batch);
+        }
+
+        if (job.totalChunks() == 0) {
+            throw new IllegalStateException("PDF contains no readable text");
+        }
+        if (job.extracted()) {
+            commit(job, version);
+        }
+    }
+
+    // Blocks while the embed queue is full, which in turn pauses extraction
+    private void submitBatch(IngestionJob job, DocumentVersion version, int firstChunk, List<TextChunk> batch) {
+        job.batchSubmitted(batch.size());
+        embedStage.execute(() -> run(job, version, () -> embed(job, version, firstChunk, batch)));
+    }
+
+    private void embed(IngestionJob job, DocumentVersion version, int firstChunk, List<TextChunk> batch) {
+        List<String> texts = new ArrayList<>(batch.size());
+        for (TextChunk chunk : batch) {
+            texts.add(chunk.getText());
+        }
+        List<float[]> embeddings = metrics.time(Stage.EMBED, () -> embeddingService.generateEmbeddings(texts));
+        job.embedded(batch.size());
+        storeStage.execute(() -> run(job, version, () -> store(job, version, firstChunk, batch, embeddings)));
+    }
+
+    private void store(IngestionJob job, DocumentVersion version, int firstChunk, List<TextChunk> batch,
+                       List<float[]> embeddings) throws Exception {
+        long start = System.nanoTime();
+        vectorDatabaseService.storeChunks(version, batch, embeddings, firstChunk);
+        metrics.record(Stage.STORE, System.nanoTime() - start);
+        if (job.stored(batch.size())) {
+            commit(job, version);
+        }
+    }
+
+    private void commit(IngestionJob job, DocumentVersion version) throws Exception {
+        long start = System.nanoTime();
+        version.commit();
+        metrics.record(Stage.COMMIT, System.nanoTime() - start);
+        // Cached answers citing the previous version are out of date now the new one is searchable
+        answerCache.invalidateDocument(job.getFilename());
+        if (job.complete()) {
+            metrics.finished(Work.INGESTION);
+        }
+        log.info("ingestion completed job={} file={} chunks={}", job.getId(), job.getFilename(), job.totalChunks());
+    }
+
+    // Skips work for jobs that already failed; the first failure is recorded and the version's rows dropped
+    private void run(IngestionJob job, DocumentVersion version, StageTask task) {
+        if (job.isFinished()) {
+            return;
+        }
+        try {
+            task.run();
+        } catch (Exception e) {
+            // Dropped before the job reads as failed, so a client seeing FAILED never finds part of the document
+            try {
+                version.abort();
+            } catch (IOException abortFailure) {
+                log.warn("ingestion abort failed job={} error=\"{}\"", job.getId(), abortFailure.getMessage());
+            }
+            String reason = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            if (job.fail(reason)) {
+                metrics.finished(Work.INGESTION);
+                log.warn("ingestion failed job={} file={} error=\"{}\"", job.getId(), job.getFilename(), reason);
+            }
+        }
+    }
+
+    private void evictFinishedJobs() {
+        int excess = jobs.size() - retainedJobs;
+        if (excess <= 0) {
+            return;
+        }
+        Iterator<IngestionJob> oldest = jobs.values().stream()
+                .filter(IngestionJob::isFinished)
+                .sorted((a, b) -> Long.compare(a.getCreatedAt(), b.getCreatedAt()))
+                .limit(excess)
+                .iterator();
+        while (oldest.hasNext()) {
+            jobs.remove(oldest.next().getId());
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    private ThreadPoolExecutor stage(String name, int threads, RejectedExecutionHandler whenFull) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        int count = Math.max(1, threads);
+        return new ThreadPoolExecutor(count, count, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, whenFull);
+    }
+
+    // Backpressure: the upstream stage waits for queue space rather than dropping or running the task itself
+    private static void waitForRoom(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Ingestion is shutting down");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for ingestion queue space", e);
+        }
+    }
+
+    private interface StageTask {
+        void run() throws Exception;
+    }
+}
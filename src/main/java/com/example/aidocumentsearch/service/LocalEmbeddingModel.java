@@ -0,0 +1,87 @@
+package com.example.aidocumentsearch.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the all-MiniLM-L6-v2 model bundled with langchain4j in process, so documents can be embedded without
+ * network calls or an API key.
+ *
+ * <p>langchain4j's {@code AllMiniLmL6V2EmbeddingModel} encodes an {@code embedAll} batch one text at a time.
+ * This splits each batch into one slice per worker, with a worker per core by default, so a batch is encoded
+ * on all of them at once.
+ */
+public class LocalEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    public static final String MODEL_NAME = "all-minilm-l6-v2";
+    public static final int DIMENSION = 384;
+    // Word pieces per model input; longer texts are split and their embeddings averaged
+    public static final int MAX_INPUT_TOKENS = 256;
+
+    // The ONNX session behind it is shared and accepts concurrent runs
+    private final AllMiniLmL6V2EmbeddingModel model = new AllMiniLmL6V2EmbeddingModel();
+    private final int workers;
+    private final ExecutorService executor;
+
+    public LocalEmbeddingModel(int workers) {
+        this.workers = Math.max(1, workers);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.workers, runnable -> {
+            Thread thread = new Thread(runnable, "local-embedding-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        if (segments.isEmpty()) {
+            return Response.from(Collections.emptyList());
+        }
+        int slices = Math.min(workers, segments.size());
+        List<CompletableFuture<List<Embedding>>> futures = new ArrayList<>(slices);
+        for (int slice = 0; slice < slices; slice++) {
+            List<TextSegment> part = segments.subList(
+                    slice * segments.size() / slices, (slice + 1) * segments.size() / slices);
+            futures.add(CompletableFuture.supplyAsync(() -> embedSlice(part), executor));
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        try {
+            for (CompletableFuture<List<Embedding>> future : futures) {
+                embeddings.addAll(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return Response.from(embeddings);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private List<Embedding> embedSlice(List<TextSegment> slice) {
+        List<Embedding> embeddings = new ArrayList<>(slice.size());
+        for (TextSegment segment : slice) {
+            embeddings.add(model.embed(segment).content());
+        }
+        return embeddings;
+    }
+}
@@ -1,15 +1,31 @@
 package com.example.aidocumentsearch.service;
 
+import com.example.aidocumentsearch.chunking.BuiltInChunkingStrategy;
+import com.example.aidocumentsearch.chunking.TextChunk;
+import com.example.aidocumentsearch.chunking.TextChunker;
+import com.example.aidocumentsearch.config.EmbeddingProfile;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @Service
 public class PdfProcessingService {
@@ -20,6 +36,58 @@ public class PdfProcessingService {
     @Value("${app.chunk.overlap:200}")
     private int chunkOverlap;
 
+    // Token cap per chunk; 0 uses the embedding model's input limit
+    @Value("${app.chunk.max.tokens:0}")
+    private int chunkMaxTokens;
+
+    // SENTENCE, PARAGRAPH or FIXED_TOKEN (sized by app.chunk.max.tokens only)
+    @Value("${app.chunk.strategy:SENTENCE}")
+    private BuiltInChunkingStrategy chunkingStrategy;
+
+    @Autowired
+    private EmbeddingProfile embeddingProfile;
+
+    // Heap PDFBox may use per open document before it spills to a scratch file
+    @Value("${app.pdf.max.main.memory.mb:16}")
+    private long maxMainMemoryMb;
+
+    // Documents with at least this many pages are extracted in parallel page ranges
+    @Value("${app.pdf.parallel.min.pages:32}")
+    private int parallelMinPages;
+
+    @Value("${app.pdf.pages.per.task:16}")
+    private int pagesPerTask;
+
+    // Page-range workers shared by all uploads; 0 uses one per available core
+    @Value("${app.pdf.extract.threads:0}")
+    private int extractThreads;
+
+    private ExecutorService pageExecutor;
+    private int pageWorkers;
+
+    /**
+     * Receives the text of each page, in page order.
+     */
+    public interface PageConsumer {
+        void accept(int page, String text);
+    }
+
+    @PostConstruct
+    public void start() {
+        pageWorkers = extractThreads > 0 ? extractThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        pageExecutor = Executors.newFixedThreadPool(pageWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "pdf-extract-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        pageExecutor.shutdownNow();
+    }
+
     public String extractTextFromPdf(MultipartFile file) throws IOException {
         byte[] bytes = file.getBytes();
         try (PDDocument document = PDDocument.load(bytes)) {
@@ -28,71 +96,69 @@ public class PdfProcessingService {
         }
     }
 
-    public List<String> splitTextIntoChunks(String text) {
-        List<String> chunks = new ArrayList<>();
-        
-        // Clean up the text
-        text = cleanText(text);
-        
-        // Split by sentences first, then by paragraphs
-        String[] sentences = text.split("[.!?]+\\s+");
-        
-        StringBuilder currentChunk = new StringBuilder();
-        int currentLength = 0;
-        
-        for (String sentence : sentences) {
-            sentence = sentence.trim();
-            if (sentence.isEmpty()) continue;
-            
-            // If adding this sentence would exceed chunk size, save current chunk
-            if (currentLength + sentence.length() > chunkSize && currentChunk.length() > 0) {
-                chunks.add(currentChunk.toString().trim());
-                
-                // Start new chunk with overlap
-                String overlap = getOverlapText(currentChunk.toString());
-                currentChunk = new StringBuilder(overlap);
-                currentLength = overlap.length();
+    /**
+     * Streams the text of a PDF on disk to {@code consumer} page by page and returns the page count.
+     *
+     * <p>The document is read through a scratch file rather than loaded into a byte array. Large documents are
+     * split into page ranges extracted in parallel, each worker opening its own {@link PDDocument} since they are
+     * not thread-safe; only a bounded number of ranges are extracted ahead of the consumer.
+     */
+    public int extractPages(Path pdf, PageConsumer consumer) throws IOException {
+        int pages;
+        try (PDDocument document = load(pdf)) {
+            pages = document.getNumberOfPages();
+            if (pages < parallelMinPages || pageWorkers < 2) {
+                extractRange(document, 1, pages, consumer);
+                return pages;
             }
-            
-            currentChunk.append(sentence).append(". ");
-            currentLength += sentence.length() + 2;
         }
-        
-        // Add the last chunk if it's not empty
-        if (currentChunk.length() > 0) {
-            chunks.add(currentChunk.toString().trim());
+
+        int rangeSize = Math.max(1, pagesPerTask);
+        Deque<Future<List<String>>> inFlight = new ArrayDeque<>();
+        int nextPage = 1;
+        int deliveredPage = 1;
+        try {
+            while (deliveredPage <= pages) {
+                while (nextPage <= pages && inFlight.size() < 2 * pageWorkers) {
+                    int first = nextPage;
+                    int last = Math.min(pages, first + rangeSize - 1);
+                    inFlight.add(pageExecutor.submit(() -> extractRange(pdf, first, last)));
+                    nextPage = last + 1;
+                }
+                for (String text : inFlight.poll().get()) {
+                    consumer.accept(deliveredPage++, text);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting " + pdf, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to extract " + pdf, e.getCause());
+        } finally {
+            for (Future<List<String>> pending : inFlight) {
+                pending.cancel(true);
+            }
         }
-        
-        return chunks;
+        return pages;
     }
 
-    private String cleanText(String text) {
-        // Remove excessive whitespace and normalize
-        text = text.replaceAll("\\s+", " ");
-        text = text.replaceAll("\n+", "\n");
-        text = text.trim();
-        
-        // Remove common PDF artifacts
-        text = text.replaceAll("\\f", ""); // Form feed characters
-        text = text.replaceAll("\\r", ""); // Carriage returns
-        
-        return text;
+    public List<String> splitTextIntoChunks(String text) {
+        List<String> chunks = new ArrayList<>();
+        TextChunker chunker = newChunker(chunk -> chunks.add(chunk.getText()));
+        chunker.addPage(1, text);
+        chunker.finish();
+        return chunks;
     }
 
-    private String getOverlapText(String chunk) {
-        if (chunk.length() <= chunkOverlap) {
-            return chunk;
-        }
-        
-        // Get the last chunkOverlap characters, but try to break at word boundary
-        String overlap = chunk.substring(chunk.length() - chunkOverlap);
-        int lastSpaceIndex = overlap.indexOf(' ');
-        
-        if (lastSpaceIndex > 0) {
-            return overlap.substring(lastSpaceIndex + 1);
-        }
-        
-        return overlap;
+    /**
+     * Creates a chunker with the configured strategy and limits that can be fed pages from {@link #extractPages}.
+     */
+    public TextChunker newChunker(Consumer<TextChunk> consumer) {
+        int maxTokens = chunkMaxTokens > 0 ? chunkMaxTokens : embeddingProfile.getMaxInputTokens();
+        return new TextChunker(chunkSize, maxTokens, chunkOverlap, chunkingStrategy, consumer);
     }
 
     public boolean isValidPdfFile(MultipartFile file) {
@@ -102,5 +168,28 @@ public class PdfProcessingService {
                file.getOriginalFilename() != null &&
                file.getOriginalFilename().toLowerCase().endsWith(".pdf");
     }
-}
 
+    private PDDocument load(Path pdf) throws IOException {
+        return PDDocument.load(pdf.toFile(), MemoryUsageSetting.setupMixed(maxMainMemoryMb * 1024 * 1024));
+    }
+
+    private List<String> extractRange(Path pdf, int firstPage, int lastPage) throws IOException {
+        List<String> texts = new ArrayList<>(lastPage - firstPage + 1);
+        try (PDDocument document = load(pdf)) {
+            extractRange(document, firstPage, lastPage, (page, text) -> texts.add(text));
+        }
+        return texts;
+    }
+
+    private static void extractRange(PDDocument document, int firstPage, int lastPage, PageConsumer consumer)
+            throws IOException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        // A blank line after each detected paragraph gives the chunker its paragraph boundaries
+        stripper.setParagraphEnd(stripper.getLineSeparator() + stripper.getLineSeparator());
+        for (int page = firstPage; page <= lastPage; page++) {
+            stripper.setStartPage(page);
+            stripper.setEndPage(page);
+            consumer.accept(page, stripper.getText(document));
+        }
+    }
+}
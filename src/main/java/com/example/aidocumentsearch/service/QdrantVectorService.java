@@ -1,128 +1,399 @@
 package com.example.aidocumentsearch.service;
 
+import com.example.aidocumentsearch.chunking.TextChunk;
+import com.example.aidocumentsearch.config.EmbeddingProfile;
+import com.example.aidocumentsearch.dto.RecallReport;
+import com.example.aidocumentsearch.dto.VectorStoreStats;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.store.ChunkRecord;
+import com.example.aidocumentsearch.store.CollectionOptions;
+import com.example.aidocumentsearch.store.DocumentVersion;
+import com.example.aidocumentsearch.store.QdrantVectorStore;
+import com.example.aidocumentsearch.store.SearchHit;
+import com.example.aidocumentsearch.store.VectorArena;
+import com.example.aidocumentsearch.store.VectorCollection;
+import com.example.aidocumentsearch.store.VectorCollection.SearchMode;
+import com.example.aidocumentsearch.store.VectorStore;
+import io.qdrant.client.QdrantClient;
+import io.micrometer.core.instrument.Tags;
+import io.qdrant.client.QdrantGrpcClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
 public class QdrantVectorService {
 
+    private static final Logger log = LoggerFactory.getLogger(QdrantVectorService.class);
+
+    // Each sample costs two brute-force scans of the corpus, so a recall report is capped
+    public static final int MAX_RECALL_K = 100;
+    public static final int MAX_RECALL_SAMPLES = 1000;
+
+    public enum Backend { LOCAL, QDRANT }
+
+    // LOCAL keeps vectors in the embedded collection, QDRANT on a Qdrant server
+    @Value("${vector.db:LOCAL}")
+    private Backend backend;
+
     @Value("${qdrant.host:localhost}")
     private String qdrantHost;
 
-    @Value("${qdrant.port:6333}")
+    // The gRPC port, not the REST one
+    @Value("${qdrant.port:6334}")
     private int qdrantPort;
 
+    @Value("${qdrant.api.key:}")
+    private String qdrantApiKey;
+
+    @Value("${qdrant.use.tls:false}")
+    private boolean qdrantUseTls;
+
+    @Value("${qdrant.timeout.ms:10000}")
+    private long qdrantTimeoutMs;
+
+    // Points per upsert request
+    @Value("${qdrant.upsert.batch.size:256}")
+    private int qdrantUpsertBatchSize;
+
+    // Upsert requests sent without waiting for earlier ones
+    @Value("${qdrant.upsert.max.in.flight:4}")
+    private int qdrantUpsertMaxInFlight;
+
+    // Names the Qdrant collection, or the on-disk collection directory under app.storage.path
     @Value("${qdrant.collection.name:documents}")
     private String collectionName;
 
+    // Empty keeps the collection in memory only
+    @Value("${app.storage.path:data}")
+    private String storagePath;
+
+    @Value("${app.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${app.hnsw.ef.construction:200}")
+    private int hnswEfConstruction;
+
+    @Value("${app.hnsw.ef.search:64}")
+    private int hnswEfSearch;
+
+    // Collections smaller than this are scanned exactly instead of through the HNSW graph
+    @Value("${app.search.exact.threshold:5000}")
+    private int exactSearchThreshold;
+
+    // NONE keeps float vectors on heap; INT8 scans 1-byte codes and keeps full precision off-heap for rescoring
+    @Value("${app.vector.quantization:NONE}")
+    private VectorArena.Quantization quantization;
+
+    // Quantized searches rescore topK * factor candidates against the full-precision vectors
+    @Value("${app.vector.rescore.factor:4}")
+    private int rescoreFactor;
+
+    // A document's segments are merged once it has more than this many
+    @Value("${app.storage.compaction.max.segments:8}")
+    private int compactionMaxSegments;
+
+    // A document is rewritten once this share of its rows has been superseded
+    @Value("${app.storage.compaction.deleted.ratio:0.3}")
+    private double compactionDeletedRatio;
+
     @Autowired
     private EmbeddingService embeddingService;
 
-    // In-memory storage for demo purposes
-    // In production, this would connect to actual Qdrant instance
-    private final Map<String, List<Double>> vectorStorage = new HashMap<>();
-    private final Map<String, Map<String, Object>> metadataStorage = new HashMap<>();
+    @Autowired
+    private EmbeddingProfile embeddingProfile;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    private VectorStore store;
+
+    // The embedded collection when the backend is LOCAL, for what only it supports; null otherwise
+    private VectorCollection collection;
+
+    @PostConstruct
+    public void openCollection() throws IOException {
+        if (backend == Backend.QDRANT) {
+            openQdrant();
+            registerGauges();
+            return;
+        }
+        CollectionOptions options = new CollectionOptions(hnswM, hnswEfConstruction, hnswEfSearch,
+                exactSearchThreshold, quantization, rescoreFactor, CollectionOptions.DEFAULT_MAX_SEGMENT_ROWS);
+        if (storagePath == null || storagePath.trim().isEmpty()) {
+            collection = VectorCollection.inMemory(options);
+        } else {
+            collection = VectorCollection.open(Paths.get(storagePath, collectionName), options);
+        }
+        // Refuses a collection built with another embedding model
+        collection.bindEmbeddingModel(embeddingProfile.getModelName(), embeddingProfile.getDimension());
+        store = collection;
+        registerGauges();
+    }
+
+    // Read at scrape time; a Qdrant that cannot be reached reports NaN rather than failing the scrape
+    private void registerGauges() {
+        Tags tags = Tags.of("backend", backend.name().toLowerCase(Locale.ROOT));
+        metrics.gauge("rag.corpus.vectors", "Searchable chunk vectors", tags, this, service -> {
+            try {
+                return service.store.size();
+            } catch (RuntimeException e) {
+                return Double.NaN;
+            }
+        });
+        if (collection == null) {
+            return;
+        }
+        metrics.gauge("rag.corpus.documents", "Searchable documents", tags, collection,
+                VectorCollection::documentCount);
+        metrics.gauge("rag.vector.memory.bytes", "Memory held by stored vectors and indexes",
+                tags.and("area", "heap"), collection, VectorCollection::heapBytes);
+        metrics.gauge("rag.vector.memory.bytes", "Memory held by stored vectors and indexes",
+                tags.and("area", "off_heap"), collection, VectorCollection::offHeapBytes);
+        metrics.gauge("rag.vector.memory.bytes", "Memory held by stored vectors and indexes",
+                tags.and("area", "lexical"), collection, VectorCollection::lexicalBytes);
+    }
+
+    private void openQdrant() throws IOException {
+        Duration timeout = Duration.ofMillis(qdrantTimeoutMs);
+        QdrantGrpcClient.Builder grpc = QdrantGrpcClient.newBuilder(qdrantHost, qdrantPort, qdrantUseTls)
+                .withTimeout(timeout);
+        if (qdrantApiKey != null && !qdrantApiKey.isEmpty()) {
+            grpc.withApiKey(qdrantApiKey);
+        }
+        QdrantVectorStore qdrant = new QdrantVectorStore(new QdrantClient(grpc.build()), collectionName,
+                embeddingProfile.getDimension(), qdrantUpsertBatchSize, qdrantUpsertMaxInFlight, timeout);
+        store = qdrant;
+        try {
+            qdrant.ensureCollection();
+        } catch (IOException e) {
+            // Started anyway; the collection is created on first use once Qdrant is reachable
+            log.warn("qdrant unreachable host={} port={} error=\"{}\"", qdrantHost, qdrantPort, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void closeCollection() throws IOException {
+        store.close();
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.checkpoint.interval.ms:60000}")
+    public void checkpoint() throws IOException {
+        if (collection != null) {
+            collection.checkpoint();
+        }
+    }
+
+    // Reclaims deleted and replaced documents and merges fragmented ones; searches are not blocked meanwhile
+    @Scheduled(initialDelayString = "${app.storage.compaction.interval.ms:300000}",
+            fixedDelayString = "${app.storage.compaction.interval.ms:300000}")
+    public void compact() throws IOException {
+        if (collection == null) {
+            return;
+        }
+        int removed = collection.compact(compactionMaxSegments, compactionDeletedRatio);
+        if (removed > 0) {
+            log.info("compaction removed segments={}", removed);
+        }
+    }
 
-    public int storeDocumentChunks(List<String> chunks, String filename) {
-        int storedCount = 0;
-        
+    public int storeDocumentChunks(List<String> chunks, String filename) throws IOException {
+        // Embedded in batches, once per chunk
+        return storeDocumentChunks(chunks, embeddingService.generateEmbeddings(chunks), filename);
+    }
+
+    // Replaces any stored version of the document
+    public int storeDocumentChunks(List<String> chunks, List<float[]> embeddings, String filename) throws IOException {
+        List<TextChunk> textChunks = new ArrayList<>(chunks.size());
+        for (String chunk : chunks) {
+            textChunks.add(new TextChunk(chunk, 0));
+        }
+        DocumentVersion version = beginDocument(filename);
+        try {
+            storeChunks(version, textChunks, embeddings, 0);
+            version.commit();
+        } finally {
+            version.abort();
+        }
+        return chunks.size();
+    }
+
+    /**
+     * Starts writing a new version of a document; nothing of it is searchable until it is committed, and the
+     * commit replaces the previous version, including chunks the new one no longer has.
+     */
+    public DocumentVersion beginDocument(String filename) {
+        return store.beginDocument(filename);
+    }
+
+    // Stores one batch of a document version's chunks, numbered from firstChunkIndex
+    public int storeChunks(DocumentVersion version, List<TextChunk> chunks, List<float[]> embeddings,
+                           int firstChunkIndex) throws IOException {
+        String filename = version.getFilename();
+        List<ChunkRecord> records = new ArrayList<>();
         for (int i = 0; i < chunks.size(); i++) {
-            String chunk = chunks.get(i);
-            String vectorId = filename + "_chunk_" + i;
-            
-            // Generate embedding
-            List<Double> embedding = embeddingService.generateEmbedding(chunk);
-            
-            // Store vector and metadata
-            vectorStorage.put(vectorId, embedding);
-            
-            Map<String, Object> metadata = new HashMap<>();
-            metadata.put("filename", filename);
-            metadata.put("chunk_index", i);
-            metadata.put("text", chunk);
-            metadataStorage.put(vectorId, metadata);
-            
-            storedCount++;
-        }
-        
-        return storedCount;
-    }
-
-    public List<String> searchSimilarChunks(List<Double> queryEmbedding, int topK) {
-        // Simple cosine similarity search
-        List<SimilarityResult> results = new ArrayList<>();
-        
-        for (Map.Entry<String, List<Double>> entry : vectorStorage.entrySet()) {
-            String vectorId = entry.getKey();
-            List<Double> vector = entry.getValue();
-            
-            double similarity = cosineSimilarity(queryEmbedding, vector);
-            results.add(new SimilarityResult(vectorId, similarity));
-        }
-        
-        // Sort by similarity and get top K
-        results.sort((a, b) -> Double.compare(b.similarity, a.similarity));
-        
+            int chunkIndex = firstChunkIndex + i;
+            String vectorId = filename + "_chunk_" + chunkIndex;
+            TextChunk chunk = chunks.get(i);
+            records.add(new ChunkRecord(vectorId, filename, chunkIndex, chunk.getPage(), chunk.getText()));
+        }
+
+        // Logged as one batch
+        version.put(records, embeddings);
+        return records.size();
+    }
+
+    public List<String> searchSimilarChunks(float[] queryEmbedding, int topK) {
         List<String> topChunks = new ArrayList<>();
-        for (int i = 0; i < Math.min(topK, results.size()); i++) {
-            String vectorId = results.get(i).vectorId;
-            Map<String, Object> metadata = metadataStorage.get(vectorId);
-            if (metadata != null) {
-                topChunks.add((String) metadata.get("text"));
-            }
+        for (SearchHit hit : searchChunks(queryEmbedding, topK)) {
+            topChunks.add(hit.getRecord().getText());
         }
-        
         return topChunks;
     }
 
-    public void deleteAllDocuments() {
-        vectorStorage.clear();
-        metadataStorage.clear();
+    public List<SearchHit> searchChunks(float[] queryEmbedding, int topK) {
+        return searchChunks(queryEmbedding, topK, null);
     }
 
-    public boolean isAvailable() {
-        // For demo purposes, always return true
-        // In production, this would check Qdrant connection
-        return true;
+    // Only the given documents are searched; null searches all of them
+    public List<SearchHit> searchChunks(float[] queryEmbedding, int topK, Collection<String> filenames) {
+        try {
+            return searchChunksAsync(queryEmbedding, topK, filenames).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
     }
 
-    private double cosineSimilarity(List<Double> a, List<Double> b) {
-        if (a.size() != b.size()) {
-            return 0.0;
-        }
-        
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-        
-        for (int i = 0; i < a.size(); i++) {
-            dotProduct += a.get(i) * b.get(i);
-            normA += a.get(i) * a.get(i);
-            normB += b.get(i) * b.get(i);
+    // Completes off the calling thread when the backend is remote, so other retrieval work can overlap it
+    public CompletableFuture<List<SearchHit>> searchChunksAsync(float[] queryEmbedding, int topK,
+                                                                Collection<String> filenames) {
+        return store.searchAsync(queryEmbedding, topK, filenames);
+    }
+
+    // One pass over the local collection, or one request to Qdrant, for every query
+    public CompletableFuture<List<List<SearchHit>>> searchChunksBatchAsync(List<float[]> queryEmbeddings, int topK,
+                                                                         Collection<String> filenames) {
+        return store.searchBatchAsync(queryEmbeddings, topK, filenames);
+    }
+
+    // BM25 over chunk text, built alongside the vectors as chunks are stored
+    public List<SearchHit> searchLexical(String query, int topK) {
+        return searchLexical(query, topK, null);
+    }
+
+    public List<SearchHit> searchLexical(String query, int topK, Collection<String> filenames) {
+        return store.searchLexical(query, topK, filenames);
+    }
+
+    /**
+     * Compares the HNSW path and the exact-scan path against a full-precision brute-force scan,
+     * using stored vectors as sample queries. {@code k} and {@code sampleQueries} are capped at
+     * {@link #MAX_RECALL_K} and {@link #MAX_RECALL_SAMPLES}.
+     */
+    public RecallReport measureRecall(int k, int sampleQueries) {
+        k = Math.min(k, MAX_RECALL_K);
+        sampleQueries = Math.min(sampleQueries, MAX_RECALL_SAMPLES);
+        int indexed = collection == null ? 0 : collection.size();
+        // Qdrant's index is its own business; there is nothing local to measure
+        List<float[]> queries = k > 0 && collection != null ? collection.sampleVectors(sampleQueries, 7)
+                : new ArrayList<>();
+        if (queries.isEmpty()) {
+            return new RecallReport(k, quantization.name(), 0, indexed, hnswM, hnswEfConstruction, hnswEfSearch,
+                    0.0, 0.0, 0.0, 0.0);
         }
-        
-        if (normA == 0.0 || normB == 0.0) {
-            return 0.0;
+
+        long exactNanos = 0;
+        long approximateNanos = 0;
+        double recallSum = 0.0;
+        double scanRecallSum = 0.0;
+
+        for (float[] query : queries) {
+            List<SearchHit> groundTruth = collection.search(query, k, SearchMode.FULL_PRECISION);
+
+            long start = System.nanoTime();
+            List<SearchHit> scanned = collection.search(query, k, SearchMode.EXACT);
+            exactNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<SearchHit> approximate = collection.search(query, k, SearchMode.APPROXIMATE);
+            approximateNanos += System.nanoTime() - start;
+
+            recallSum += overlap(groundTruth, approximate);
+            scanRecallSum += overlap(groundTruth, scanned);
         }
-        
-        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+
+        int evaluated = queries.size();
+        return new RecallReport(k, quantization.name(), evaluated, indexed, hnswM, hnswEfConstruction, hnswEfSearch,
+                recallSum / evaluated,
+                scanRecallSum / evaluated,
+                exactNanos / 1_000_000.0 / evaluated,
+                approximateNanos / 1_000_000.0 / evaluated);
     }
 
-    private static class SimilarityResult {
-        final String vectorId;
-        final double similarity;
-        
-        SimilarityResult(String vectorId, double similarity) {
-            this.vectorId = vectorId;
-            this.similarity = similarity;
+    public VectorStoreStats getStats() {
+        if (collection == null) {
+            VectorStoreStats stats = new VectorStoreStats(store.isAvailable() ? store.size() : 0,
+                    embeddingProfile.getDimension(), embeddingProfile.getModelName(), "NONE", 0, 0, 0);
+            stats.setBackend(backend.name());
+            return stats;
         }
+        VectorStoreStats stats = new VectorStoreStats(collection.size(), collection.dimension(),
+                collection.embeddingModel(), quantization.name(),
+                collection.heapBytes(), collection.offHeapBytes(), collection.fullPrecisionBytes());
+        stats.setLexicalTerms(collection.lexicalTermCount());
+        stats.setLexicalIndexBytes(collection.lexicalBytes());
+        stats.setDocuments(collection.documentCount());
+        stats.setSegments(collection.segmentCount());
+        stats.setTombstones(collection.tombstoneCount());
+        stats.setBackend(backend.name());
+        return stats;
     }
-}
 
+    public void deleteAllDocuments() throws IOException {
+        store.clear();
+    }
 
+    // Hidden from searches at once; locally the space is reclaimed by the next compaction
+    public boolean deleteDocument(String filename) throws IOException {
+        return store.deleteDocument(filename);
+    }
+
+    // A health check round trip for Qdrant; the embedded collection is always available
+    public boolean isAvailable() {
+        return store.isAvailable();
+    }
+
+    private static double overlap(List<SearchHit> expected, List<SearchHit> actual) {
+        if (expected.isEmpty()) {
+            return 1.0;
+        }
+        Set<String> expectedIds = new HashSet<>();
+        for (SearchHit hit : expected) {
+            expectedIds.add(hit.getRecord().getId());
+        }
+        int found = 0;
+        for (SearchHit hit : actual) {
+            if (expectedIds.contains(hit.getRecord().getId())) {
+                found++;
+            }
+        }
+        return (double) found / expected.size();
+    }
+}
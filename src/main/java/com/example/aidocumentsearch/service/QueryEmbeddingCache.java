@@ -0,0 +1,103 @@
+package com.example.aidocumentsearch.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of normalised question -> embedding with a time-to-live, so repeated and popular questions
+ * skip the embedding call entirely.
+ */
+@Component
+public class QueryEmbeddingCache {
+
+    @Value("${app.query.cache.size:1000}")
+    private int maxEntries;
+
+    @Value("${app.query.cache.ttl.seconds:3600}")
+    private long ttlSeconds;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public float[] get(String question) {
+        String key = normalise(question);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAtMillis > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return entry.embedding;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String question, float[] embedding) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        Entry entry = new Entry(embedding, System.currentTimeMillis() + ttlSeconds * 1000);
+        synchronized (entries) {
+            entries.put(normalise(question), entry);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // Case and whitespace differences should not cost another embedding call
+    static String normalise(String question) {
+        StringBuilder normalised = new StringBuilder(question.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < question.length(); i++) {
+            char c = question.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalised.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    normalised.append(' ');
+                    pendingSpace = false;
+                }
+                normalised.append(c);
+            }
+        }
+        return normalised.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Entry {
+
+        final float[] embedding;
+        final long expiresAtMillis;
+
+        Entry(float[] embedding, long expiresAtMillis) {
+            this.embedding = embedding;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
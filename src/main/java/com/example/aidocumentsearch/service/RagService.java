@@ -1,19 +1,42 @@
 package com.example.aidocumentsearch.service;
 
+import com.example.aidocumentsearch.dto.RetrievalResult;
+import com.example.aidocumentsearch.dto.RetrievedChunk;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.metrics.PipelineMetrics.Stage;
+import com.example.aidocumentsearch.store.ChunkRecord;
+import com.example.aidocumentsearch.store.RankFusion;
+import com.example.aidocumentsearch.store.SearchHit;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.model.output.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Service
 public class RagService {
 
+    private static final Logger log = LoggerFactory.getLogger(RagService.class);
+
+    public static final String NO_CONTEXT_ANSWER =
+            "I couldn't find any relevant information in the uploaded documents to answer your question.";
+
     @Autowired
     private ChatLanguageModel chatLanguageModel;
 
@@ -23,23 +46,296 @@ public class RagService {
     @Autowired
     private EmbeddingService embeddingService;
 
+    @Autowired
+    private ContextPacker contextPacker;
+
+    @Autowired
+    private SemanticAnswerCache answerCache;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
     @Value("${app.top.k.results:5}")
     private int topKResults;
 
+    // Weights of the vector and BM25 rankings in reciprocal-rank fusion; 0 leaves that ranking out
+    @Value("${app.search.fusion.vector.weight:1.0}")
+    private double vectorWeight;
+
+    @Value("${app.search.fusion.lexical.weight:1.0}")
+    private double lexicalWeight;
+
+    @Value("${app.search.fusion.rrf.k:60}")
+    private int rrfK;
+
+    // Each ranking contributes topK * factor candidates to the fusion
+    @Value("${app.search.fusion.candidate.factor:4}")
+    private int candidateFactor;
+
+    // Short identifier-like questions (part numbers, error codes) are answered from BM25 alone when it matches
+    @Value("${app.search.lexical.fast.path:true}")
+    private boolean lexicalFastPath;
+
+    // Token budget for the packed context; 0 picks the default for the configured chat model
+    @Value("${app.context.max.tokens:0}")
+    private int contextMaxTokens;
+
+    @Value("${app.context.max.tokens.gemini:6000}")
+    private int geminiContextMaxTokens;
+
+    @Value("${app.context.max.tokens.openai:2500}")
+    private int openAiContextMaxTokens;
+
+    private ExecutorService lexicalSearches;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        lexicalSearches = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "lexical-search-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        lexicalSearches.shutdown();
+    }
+
+    /**
+     * Runs the BM25 search and the vector search (embedding the question through the query cache) in parallel
+     * and merges them with reciprocal-rank fusion, then packs the hits into the model's context budget; the result
+     * is shared by the prompt and the sources. Fused hits carry their fusion score.
+     */
+    public RetrievalResult retrieve(String question) {
+        return retrieve(question, null);
+    }
+
+    /**
+     * Like {@link #retrieve(String)}, but only searches the documents named in {@code filenames}; {@code null} or
+     * empty searches all of them.
+     */
+    public RetrievalResult retrieve(String question, Collection<String> filenames) {
+        Collection<String> documents = filenames == null || filenames.isEmpty() ? null : filenames;
+        if (lexicalFastPath && looksLikeExactLookup(question)) {
+            List<SearchHit> exact = metrics.time(Stage.LEXICAL_SEARCH,
+                    () -> vectorDatabaseService.searchLexical(question, topKResults, documents));
+            if (!exact.isEmpty()) {
+                return toResult(question, exact);
+            }
+        }
+        if (lexicalWeight <= 0) {
+            float[] questionEmbedding = embedQuestion(question);
+            return toResult(question, metrics.time(Stage.VECTOR_SEARCH,
+                    () -> vectorDatabaseService.searchChunks(questionEmbedding, topKResults, documents)));
+        }
+
+        int candidates = topKResults * Math.max(1, candidateFactor);
+        CompletableFuture<List<SearchHit>> lexical = CompletableFuture.supplyAsync(
+                () -> metrics.time(Stage.LEXICAL_SEARCH,
+                        () -> vectorDatabaseService.searchLexical(question, candidates, documents)),
+                lexicalSearches);
+        CompletableFuture<List<SearchHit>> semantic = vectorWeight > 0
+                ? searchVectorsAsync(embedQuestion(question), candidates, documents)
+                : CompletableFuture.completedFuture(List.of());
+        List<SearchHit> fused = RankFusion.reciprocalRank(List.of(semantic.join(), lexical.join()),
+                new double[]{vectorWeight, lexicalWeight}, rrfK, topKResults);
+        return toResult(question, fused);
+    }
+
+    /**
+     * {@link #retrieve(String, Collection)} for many questions at once: the questions are embedded together and
+     * the vector store is searched for all of them in one pass, while the BM25 searches run alongside. Results are
+     * in question order.
+     */
+    public List<RetrievalResult> retrieveAll(List<String> questions, Collection<String> filenames) {
+        Collection<String> documents = filenames == null || filenames.isEmpty() ? null : filenames;
+        RetrievalResult[] results = new RetrievalResult[questions.size()];
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < questions.size(); i++) {
+            String question = questions.get(i);
+            if (lexicalFastPath && looksLikeExactLookup(question)) {
+                List<SearchHit> exact = metrics.time(Stage.LEXICAL_SEARCH,
+                        () -> vectorDatabaseService.searchLexical(question, topKResults, documents));
+                if (!exact.isEmpty()) {
+                    results[i] = toResult(question, exact);
+                    continue;
+                }
+            }
+            pending.add(i);
+        }
+        if (pending.isEmpty()) {
+            return Arrays.asList(results);
+        }
+
+        boolean fuse = lexicalWeight > 0;
+        int candidates = fuse ? topKResults * Math.max(1, candidateFactor) : topKResults;
+        List<CompletableFuture<List<SearchHit>>> lexical = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i : pending) {
+            String question = questions.get(i);
+            texts.add(question);
+            if (fuse) {
+                lexical.add(CompletableFuture.supplyAsync(() -> metrics.time(Stage.LEXICAL_SEARCH,
+                        () -> vectorDatabaseService.searchLexical(question, candidates, documents)), lexicalSearches));
+            }
+        }
+        List<List<SearchHit>> semantic;
+        if (!fuse || vectorWeight > 0) {
+            List<float[]> embeddings = metrics.time(Stage.QUESTION_EMBEDDING,
+                    () -> embeddingService.generateQueryEmbeddings(texts));
+            long start = System.nanoTime();
+            semantic = vectorDatabaseService.searchChunksBatchAsync(embeddings, candidates, documents)
+                    .whenComplete((hits, error) -> metrics.record(Stage.VECTOR_SEARCH, System.nanoTime() - start))
+                    .join();
+        } else {
+            semantic = null;
+        }
+
+        for (int p = 0; p < pending.size(); p++) {
+            int i = pending.get(p);
+            List<SearchHit> hits = semantic == null ? List.of() : semantic.get(p);
+            if (fuse) {
+                hits = RankFusion.reciprocalRank(List.of(hits, lexical.get(p).join()),
+                        new double[]{vectorWeight, lexicalWeight}, rrfK, topKResults);
+            }
+            results[i] = toResult(questions.get(i), hits);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * The embedding {@link SemanticAnswerCache} entries for {@code question} are keyed by, or null when the cache
+     * is off or the question looks like an identifier lookup: near-identical embeddings can name different parts.
+     */
+    public float[] answerCacheKey(String question) {
+        if (!answerCache.isEnabled() || looksLikeExactLookup(question)) {
+            return null;
+        }
+        return embedQuestion(question);
+    }
+
+    // Like answerCacheKey, embedding the questions together
+    public List<float[]> answerCacheKeys(List<String> questions) {
+        float[][] keys = new float[questions.size()][];
+        if (!answerCache.isEnabled()) {
+            return Arrays.asList(keys);
+        }
+        List<Integer> cacheable = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < questions.size(); i++) {
+            if (!looksLikeExactLookup(questions.get(i))) {
+                cacheable.add(i);
+                texts.add(questions.get(i));
+            }
+        }
+        if (!texts.isEmpty()) {
+            List<float[]> embeddings = metrics.time(Stage.QUESTION_EMBEDDING,
+                    () -> embeddingService.generateQueryEmbeddings(texts));
+            for (int k = 0; k < cacheable.size(); k++) {
+                keys[cacheable.get(k)] = embeddings.get(k);
+            }
+        }
+        return Arrays.asList(keys);
+    }
+
     public String generateAnswer(String question) {
-        // Generate embedding for the question
-        List<Double> questionEmbedding = embeddingService.generateEmbedding(question);
+        return generateAnswer(question, retrieve(question));
+    }
 
-        // Search for relevant chunks
-        List<String> relevantChunks = vectorDatabaseService.searchSimilarChunks(questionEmbedding, topKResults);
+    public String generateAnswer(String question, RetrievalResult retrieval) {
+        if (retrieval.isEmpty()) {
+            return NO_CONTEXT_ANSWER;
+        }
+
+        // Generate response using the chat model
+        UserMessage userMessage = UserMessage.from(buildPrompt(question, retrieval));
+        Response<AiMessage> response = metrics.time(Stage.LLM_CALL, () -> chatLanguageModel.generate(userMessage));
+        AiMessage aiMessage = response.content();
+        
+        return aiMessage.text();
+    }
 
-        if (relevantChunks.isEmpty()) {
-            return "I couldn't find any relevant information in the uploaded documents to answer your question.";
+    // At most three words, one of which reads like an identifier: letters mixed with digits, an inner - _ . /,
+    // or a run of four or more digits
+    static boolean looksLikeExactLookup(String question) {
+        String[] words = question.trim().split("\\s+");
+        if (words.length == 0 || words.length > 3) {
+            return false;
+        }
+        for (String word : words) {
+            boolean letters = false;
+            int digits = 0;
+            boolean connector = false;
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                if (Character.isLetter(c)) {
+                    letters = true;
+                } else if (Character.isDigit(c)) {
+                    digits++;
+                } else if ((c == '-' || c == '_' || c == '.' || c == '/') && i > 0 && i < word.length() - 1
+                        && Character.isLetterOrDigit(word.charAt(i - 1))
+                        && Character.isLetterOrDigit(word.charAt(i + 1))) {
+                    connector = true;
+                }
+            }
+            if ((letters && digits > 0) || connector || digits >= 4) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        // Create context from relevant chunks
-        String context = relevantChunks.stream()
-                .collect(Collectors.joining("\n\n"));
+    private float[] embedQuestion(String question) {
+        return metrics.time(Stage.QUESTION_EMBEDDING, () -> embeddingService.generateQueryEmbedding(question));
+    }
+
+    // Timed until the search completes, on whichever thread completes it
+    private CompletableFuture<List<SearchHit>> searchVectorsAsync(float[] questionEmbedding, int topK,
+                                                                  Collection<String> documents) {
+        long start = System.nanoTime();
+        return vectorDatabaseService.searchChunksAsync(questionEmbedding, topK, documents)
+                .whenComplete((hits, error) -> metrics.record(Stage.VECTOR_SEARCH, System.nanoTime() - start));
+    }
+
+    private RetrievalResult toResult(String question, List<SearchHit> hits) {
+        List<RetrievedChunk> chunks = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            ChunkRecord record = hit.getRecord();
+            chunks.add(new RetrievedChunk(record.getId(), hit.getScore(), record.getFilename(),
+                    record.getChunkIndex(), record.getPage(), record.getText()));
+        }
+
+        ContextPacker.PackedContext packed = metrics.time(Stage.CONTEXT_PACKING,
+                () -> contextPacker.pack(chunks, contextBudget()));
+        RetrievalResult result = new RetrievalResult(question, packed.getChunks());
+        result.setContext(packed.getText());
+        result.setRetrievedTokens(packed.getRetrievedTokens());
+        result.setContextTokens(packed.getPackedTokens());
+        if (!chunks.isEmpty() && log.isDebugEnabled()) {
+            log.debug("context packed hits={} sources={} tokens={} tokensSaved={}", chunks.size(),
+                    packed.getChunks().size(), packed.getPackedTokens(), result.tokensSaved());
+        }
+        return result;
+    }
+
+    private int contextBudget() {
+        if (contextMaxTokens > 0) {
+            return contextMaxTokens;
+        }
+        return chatLanguageModel instanceof GeminiHttpService ? geminiContextMaxTokens : openAiContextMaxTokens;
+    }
+
+    public String buildPrompt(String question, RetrievalResult retrieval) {
+        return metrics.time(Stage.PROMPT_BUILD, () -> formatPrompt(question, retrieval));
+    }
+
+    private String formatPrompt(String question, RetrievalResult retrieval) {
+        // Packed context from retrieve(), or the chunks as they are
+        String context = retrieval.getContext() != null
+                ? retrieval.getContext()
+                : retrieval.texts().stream().collect(Collectors.joining("\n\n"));
 
         // Create the prompt
         String prompt = String.format(
@@ -48,25 +344,15 @@ public class RagService {
                 "Context:\n%s\n\nQuestion: %s\n\nAnswer:",
                 context, question);
 
-        // Debug logging
-        System.out.println("=== RAG PROMPT DEBUG ===");
-        System.out.println("Question: " + question);
-        System.out.println("Context length: " + context.length() + " characters");
-        System.out.println("Prompt length: " + prompt.length() + " characters");
-        System.out.println("First 200 chars of context: " + context.substring(0, Math.min(200, context.length())));
-        System.out.println("=== END DEBUG ===");
-
-        // Generate response using the chat model
-        UserMessage userMessage = UserMessage.from(prompt);
-        Response<AiMessage> response = chatLanguageModel.generate(userMessage);
-        AiMessage aiMessage = response.content();
-        
-        return aiMessage.text();
-    }
+        if (log.isDebugEnabled()) {
+            log.debug("prompt built questionChars={} contextChars={} promptChars={}", question.length(),
+                    context.length(), prompt.length());
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("prompt question=\"{}\" contextStart=\"{}\"", question,
+                    context.substring(0, Math.min(200, context.length())));
+        }
 
-    public List<String> getSources(String question) {
-        List<Double> questionEmbedding = embeddingService.generateEmbedding(question);
-        return vectorDatabaseService.searchSimilarChunks(questionEmbedding, topKResults);
+        return prompt;
     }
 }
-
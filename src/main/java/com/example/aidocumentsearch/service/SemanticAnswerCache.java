@@ -0,0 +1,251 @@
+package com.example.aidocumentsearch.service;
+
+import com.example.aidocumentsearch.dto.ChatResponse;
+import com.example.aidocumentsearch.dto.RetrievalResult;
+import com.example.aidocumentsearch.dto.RetrievedChunk;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.store.VectorArena;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Answers to earlier questions, returned for a new question whose embedding is at least
+ * {@code app.answer.cache.similarity} cosine-similar to a cached one asked over the same documents. Saves the
+ * retrieval and the model call for questions that are reworded versions of each other.
+ *
+ * <p>The cached embeddings are kept unit-length in one flat matrix, one row per slot, so a lookup is a
+ * dot-product scan over contiguous memory; for a cache of a few thousand entries that is cheaper than a graph index
+ * and evicting an entry just frees its slot. Entries expire after a TTL, the least recently used one makes room
+ * when the cache is full, and an entry is dropped as soon as a document it cites is re-ingested or deleted.
+ */
+@Component
+public class SemanticAnswerCache {
+
+    private static final String CACHE = "answer";
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    // 0 disables the cache
+    @Value("${app.answer.cache.size:1000}")
+    private int maxEntries;
+
+    @Value("${app.answer.cache.ttl.seconds:3600}")
+    private long ttlSeconds;
+
+    // Cosine similarity a question needs with a cached one to get its answer
+    @Value("${app.answer.cache.similarity:0.95}")
+    private double minSimilarity;
+
+    private int dimension = -1;
+    private float[] embeddings = new float[0];
+    private Entry[] entries = new Entry[0];
+    private int slots;
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private int size;
+    private long clock;
+
+    // Bumped by every invalidation, so an answer generated from a document's previous version is not cached
+    private long epoch;
+    private final Map<String, Long> invalidatedAt = new HashMap<>();
+
+    @PostConstruct
+    public void start() {
+        metrics.gauge("rag.cache.entries", "Entries held by a cache", Tags.of("cache", CACHE), this,
+                SemanticAnswerCache::size);
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Read before retrieving for an answer that will be {@link #put}: answers citing a document invalidated since
+     * are not cached.
+     */
+    public synchronized long epoch() {
+        return epoch;
+    }
+
+    /**
+     * The cached answer to the question closest to {@code questionEmbedding} asked over the same documents, or
+     * null if none is similar enough.
+     */
+    public ChatResponse get(float[] questionEmbedding, Collection<String> filenames) {
+        if (!isEnabled()) {
+            return null;
+        }
+        double norm = VectorArena.norm(questionEmbedding);
+        String scope = scope(filenames);
+        synchronized (this) {
+            int slot = norm == 0.0 || questionEmbedding.length != dimension ? -1
+                    : closest(questionEmbedding, norm, scope, System.currentTimeMillis());
+            metrics.cacheRequest(CACHE, slot >= 0);
+            if (slot < 0) {
+                return null;
+            }
+            entries[slot].lastUsed = ++clock;
+            return entries[slot].response;
+        }
+    }
+
+    /**
+     * Caches {@code response} for the question, unless nothing was retrieved for it or a document it cites was
+     * invalidated after {@code epoch}. Replaces the entry of a question similar enough to be answered by it.
+     */
+    public void put(float[] questionEmbedding, Collection<String> filenames, ChatResponse response,
+                    RetrievalResult retrieval, long epoch) {
+        double norm = VectorArena.norm(questionEmbedding);
+        if (!isEnabled() || retrieval.isEmpty() || norm == 0.0) {
+            return;
+        }
+        Set<String> cited = new LinkedHashSet<>();
+        for (RetrievedChunk chunk : retrieval.getChunks()) {
+            cited.add(chunk.getFilename());
+        }
+        String scope = scope(filenames);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (String filename : cited) {
+                Long invalidated = invalidatedAt.get(filename);
+                if (invalidated != null && invalidated > epoch) {
+                    return;
+                }
+            }
+            if (questionEmbedding.length != dimension) {
+                // A different embedding model: nothing cached is comparable any more
+                clear();
+                dimension = questionEmbedding.length;
+            }
+            int slot = closest(questionEmbedding, norm, scope, now);
+            if (slot < 0) {
+                slot = allocate(now);
+                size++;
+            }
+            int offset = slot * dimension;
+            for (int i = 0; i < dimension; i++) {
+                embeddings[offset + i] = (float) (questionEmbedding[i] / norm);
+            }
+            entries[slot] = new Entry(response, scope, cited, now + ttlSeconds * 1000, ++clock);
+        }
+    }
+
+    /**
+     * Drops every answer citing {@code filename}; called when the document is re-ingested or deleted.
+     */
+    public synchronized void invalidateDocument(String filename) {
+        invalidatedAt.put(filename, ++epoch);
+        for (int slot = 0; slot < slots; slot++) {
+            if (entries[slot] != null && entries[slot].documents.contains(filename)) {
+                remove(slot, "invalidated");
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries = new Entry[0];
+        embeddings = new float[0];
+        freeSlots.clear();
+        slots = 0;
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Expired entries met on the way are dropped
+    private int closest(float[] query, double norm, String scope, long now) {
+        int best = -1;
+        double bestScore = minSimilarity;
+        for (int slot = 0; slot < slots; slot++) {
+            Entry entry = entries[slot];
+            if (entry == null) {
+                continue;
+            }
+            if (entry.expiresAtMillis <= now) {
+                remove(slot, "expired");
+                continue;
+            }
+            if (!entry.scope.equals(scope)) {
+                continue;
+            }
+            int offset = slot * dimension;
+            float dotProduct = 0.0f;
+            for (int i = 0; i < dimension; i++) {
+                dotProduct += embeddings[offset + i] * query[i];
+            }
+            double score = dotProduct / norm;
+            if (score >= bestScore) {
+                best = slot;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private int allocate(long now) {
+        Integer free = freeSlots.poll();
+        if (free != null) {
+            return free;
+        }
+        if (slots < maxEntries) {
+            if (slots == entries.length) {
+                int capacity = Math.min(maxEntries, Math.max(16, slots * 2));
+                entries = Arrays.copyOf(entries, capacity);
+                embeddings = Arrays.copyOf(embeddings, capacity * dimension);
+            }
+            return slots++;
+        }
+        int eldest = 0;
+        for (int slot = 1; slot < slots; slot++) {
+            if (entries[slot].lastUsed < entries[eldest].lastUsed) {
+                eldest = slot;
+            }
+        }
+        remove(eldest, entries[eldest].expiresAtMillis <= now ? "expired" : "size");
+        return freeSlots.poll();
+    }
+
+    private void remove(int slot, String reason) {
+        entries[slot] = null;
+        freeSlots.push(slot);
+        size--;
+        metrics.cacheEviction(CACHE, reason);
+    }
+
+    // The documents a question was asked over, independent of order; empty for all of them
+    private static String scope(Collection<String> filenames) {
+        return filenames == null || filenames.isEmpty() ? "" : String.join("\n", new TreeSet<>(filenames));
+    }
+
+    private static final class Entry {
+
+        final ChatResponse response;
+        final String scope;
+        final Set<String> documents;
+        final long expiresAtMillis;
+        long lastUsed;
+
+        Entry(ChatResponse response, String scope, Set<String> documents, long expiresAtMillis, long lastUsed) {
+            this.response = response;
+            this.scope = scope;
+            this.documents = documents;
+            this.expiresAtMillis = expiresAtMillis;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
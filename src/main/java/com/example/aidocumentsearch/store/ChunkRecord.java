@@ -0,0 +1,43 @@
+package com.example.aidocumentsearch.store;
+
+public class ChunkRecord {
+
+    private final String id;
+    private final String filename;
+    private final int chunkIndex;
+    // 1-based page the chunk starts on, 0 when unknown
+    private final int page;
+    private final String text;
+
+    public ChunkRecord(String id, String filename, int chunkIndex, String text) {
+        this(id, filename, chunkIndex, 0, text);
+    }
+
+    public ChunkRecord(String id, String filename, int chunkIndex, int page, String text) {
+        this.id = id;
+        this.filename = filename;
+        this.chunkIndex = chunkIndex;
+        this.page = page;
+        this.text = text;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
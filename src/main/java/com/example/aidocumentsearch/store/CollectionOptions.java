@@ -0,0 +1,53 @@
+package com.example.aidocumentsearch.store;
+
+public class CollectionOptions {
+
+    public static final int DEFAULT_MAX_SEGMENT_ROWS = 100_000;
+
+    private final int hnswM;
+    private final int efConstruction;
+    private final int efSearch;
+    private final int exactSearchThreshold;
+    private final VectorArena.Quantization quantization;
+    private final int rescoreFactor;
+    private final int maxSegmentRows;
+
+    public CollectionOptions(int hnswM, int efConstruction, int efSearch, int exactSearchThreshold,
+                             VectorArena.Quantization quantization, int rescoreFactor, int maxSegmentRows) {
+        this.hnswM = hnswM;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.exactSearchThreshold = exactSearchThreshold;
+        this.quantization = quantization;
+        this.rescoreFactor = Math.max(1, rescoreFactor);
+        this.maxSegmentRows = maxSegmentRows;
+    }
+
+    public int getHnswM() {
+        return hnswM;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public int getExactSearchThreshold() {
+        return exactSearchThreshold;
+    }
+
+    public VectorArena.Quantization getQuantization() {
+        return quantization;
+    }
+
+    public int getRescoreFactor() {
+        return rescoreFactor;
+    }
+
+    public int getMaxSegmentRows() {
+        return maxSegmentRows;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.aidocumentsearch.store;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A new version of one document being written to a {@link VectorStore}. Rows are added in batches, possibly from
+ * several threads. When the document is already stored they stay out of searches until {@link #commit}, which
+ * replaces the previous version; a document's first upload is searchable batch by batch.
+ */
+public interface DocumentVersion {
+
+    String getFilename();
+
+    void put(List<ChunkRecord> records, List<float[]> vectors) throws IOException;
+
+    /**
+     * Replaces the stored document with this version; committing a version without rows deletes it.
+     */
+    void commit() throws IOException;
+
+    // Drops the rows written so far; a no-op once committed
+    void abort() throws IOException;
+}
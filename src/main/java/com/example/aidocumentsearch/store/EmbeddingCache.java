@@ -0,0 +1,423 @@
+package com.example.aidocumentsearch.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Content-addressed, size-bounded cache of embeddings on disk, so text that was embedded before (a re-uploaded
+ * PDF, or a revision sharing most of its chunks) is never sent to the model again.
+ *
+ * <p>Entries are keyed by the first 128 bits of SHA-256 over the model name and the whitespace-normalised text.
+ * The file is a little-endian header ({@code magic, version}) followed by appended entries of
+ * {@code [CRC32][key hi][key lo][dimension][floats]}. Only the key-to-offset index lives on heap; vectors are read
+ * back with positional reads that take no lock, so lookups never wait for a write. A torn tail from a crash is
+ * dropped on open.
+ *
+ * <p>When the file grows past its byte budget, a background task rewrites the most recently used entries that fit
+ * in three quarters of it to a new file, which then replaces the old one. Writes keep appending meanwhile, and are
+ * dropped once the file is a quarter over budget.
+ */
+public class EmbeddingCache implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingCache.class);
+
+    private static final int MAGIC = 0x56454d42; // "VEMB"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int ENTRY_HEADER_BYTES = Integer.BYTES + 2 * Long.BYTES + Integer.BYTES;
+    private static final long MAX_FILE_BYTES = 1L << 30;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Path file;
+    private final long maxBytes;
+    private final Executor compactor;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    // Replaced as a whole by compaction; appends go to the current one under the instance monitor
+    private volatile Generation generation;
+    private long fileBytes;
+    private boolean closed;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private EmbeddingCache(Path file, long maxBytes, Executor compactor) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.compactor = compactor;
+    }
+
+    public static EmbeddingCache open(Path file, long maxBytes) throws IOException {
+        return open(file, maxBytes, task -> {
+            Thread thread = new Thread(task, "embedding-cache-compaction");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    static EmbeddingCache open(Path file, long maxBytes, Executor compactor) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        // The index is rebuilt from a single mapping of the file on open
+        EmbeddingCache cache = new EmbeddingCache(file, Math.min(maxBytes, MAX_FILE_BYTES), compactor);
+        cache.load();
+        return cache;
+    }
+
+    public float[] get(String model, String text) {
+        Key key = key(model, text);
+        // A second attempt covers a read that raced with compaction swapping the file
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Generation current = generation;
+            Location location = current.index.get(key);
+            if (location == null) {
+                break;
+            }
+            try {
+                float[] vector = read(current.channel, location);
+                location.lastUsed = clock.incrementAndGet();
+                hits.incrementAndGet();
+                return vector;
+            } catch (ClosedChannelException e) {
+                reopenIfClosed(current);
+            } catch (IOException e) {
+                current.index.remove(key, location);
+                break;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String model, String text, float[] vector) throws IOException {
+        Key key = key(model, text);
+        if (generation.index.containsKey(key)) {
+            return;
+        }
+        ByteBuffer entry = encode(key, vector);
+        synchronized (this) {
+            Generation current = generation;
+            if (closed || current.index.containsKey(key) || fileBytes + entry.capacity() > maxBytes / 4 * 5) {
+                return;
+            }
+            long offset = fileBytes;
+            writeFully(current.channel, entry, offset);
+            fileBytes += entry.capacity();
+            current.index.put(key, new Location(offset, vector.length, clock.incrementAndGet()));
+            if (fileBytes <= maxBytes || !compacting.compareAndSet(false, true)) {
+                return;
+            }
+        }
+        compactor.execute(this::compact);
+    }
+
+    public int size() {
+        return generation.index.size();
+    }
+
+    public synchronized long bytes() {
+        return fileBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        generation.channel.close();
+    }
+
+    private void load() throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        Map<Key, Location> index = new ConcurrentHashMap<>();
+        generation = new Generation(channel, index);
+        long size = channel.size();
+        if (size < FILE_HEADER_BYTES) {
+            writeHeader(channel);
+            fileBytes = FILE_HEADER_BYTES;
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(Integer.BYTES) != VERSION) {
+            // Not ours or an older layout: start over, it is only a cache
+            channel.truncate(0);
+            writeHeader(channel);
+            fileBytes = FILE_HEADER_BYTES;
+            return;
+        }
+
+        ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        in.position(FILE_HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        while (in.remaining() >= ENTRY_HEADER_BYTES) {
+            int start = in.position();
+            int checksum = in.getInt();
+            long hi = in.getLong();
+            long lo = in.getLong();
+            int dimension = in.getInt();
+            int vectorBytes = dimension * Float.BYTES;
+            if (dimension <= 0 || vectorBytes > in.remaining()) {
+                in.position(start);
+                break;
+            }
+            ByteBuffer body = in.duplicate();
+            body.position(start + Integer.BYTES).limit(in.position() + vectorBytes);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                in.position(start);
+                break;
+            }
+            in.position(in.position() + vectorBytes);
+            index.put(new Key(hi, lo), new Location(start, dimension, clock.incrementAndGet()));
+        }
+        fileBytes = in.position();
+        if (fileBytes < size) {
+            channel.truncate(fileBytes);
+        }
+    }
+
+    // Copies the entries present when it starts without holding the monitor, then, holding it, the few appended
+    // since and swaps the files
+    private void compact() {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Generation old = generation;
+            long copiedUpTo;
+            synchronized (this) {
+                copiedUpTo = fileBytes;
+            }
+            List<Map.Entry<Key, Location>> entries = new ArrayList<>();
+            for (Map.Entry<Key, Location> entry : old.index.entrySet()) {
+                if (entry.getValue().offset < copiedUpTo) {
+                    entries.add(entry);
+                }
+            }
+            entries.sort((a, b) -> Long.compare(b.getValue().lastUsed, a.getValue().lastUsed));
+
+            Map<Key, Location> kept = new ConcurrentHashMap<>();
+            writeHeader(out);
+            long position = FILE_HEADER_BYTES;
+            long budget = maxBytes / 4 * 3;
+            for (Map.Entry<Key, Location> entry : entries) {
+                int entryBytes = entryBytes(entry.getValue());
+                if (position + entryBytes > budget) {
+                    break;
+                }
+                position = copy(old.channel, entry, out, position, kept);
+            }
+
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                for (Map.Entry<Key, Location> entry : old.index.entrySet()) {
+                    if (entry.getValue().offset >= copiedUpTo) {
+                        position = copy(old.channel, entry, out, position, kept);
+                    }
+                }
+                out.force(true);
+                old.channel.close();
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                generation = new Generation(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                        kept);
+                fileBytes = position;
+            }
+        } catch (IOException e) {
+            log.warn("embedding cache compaction failed file={} error=\"{}\"", file, e.getMessage());
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    // An interrupted read closes the channel for every reader, so the next one opens it again
+    private synchronized void reopenIfClosed(Generation current) {
+        if (closed || current != generation || current.channel.isOpen()) {
+            return;
+        }
+        try {
+            generation = new Generation(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                    current.index);
+        } catch (IOException e) {
+            log.warn("embedding cache reopen failed file={} error=\"{}\"", file, e.getMessage());
+        }
+    }
+
+    private static long copy(FileChannel from, Map.Entry<Key, Location> entry, FileChannel to, long position,
+                             Map<Key, Location> kept) throws IOException {
+        Location location = entry.getValue();
+        ByteBuffer bytes = ByteBuffer.allocate(entryBytes(location));
+        readFully(from, bytes, location.offset);
+        bytes.flip();
+        writeFully(to, bytes, position);
+        kept.put(entry.getKey(), new Location(position, location.dimension, location.lastUsed));
+        return position + bytes.capacity();
+    }
+
+    private static int entryBytes(Location location) {
+        return ENTRY_HEADER_BYTES + location.dimension * Float.BYTES;
+    }
+
+    private static float[] read(FileChannel channel, Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, buffer, location.offset + ENTRY_HEADER_BYTES);
+        buffer.flip();
+        float[] vector = new float[location.dimension];
+        buffer.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    private static ByteBuffer encode(Key key, float[] vector) {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_BYTES + vector.length * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        entry.position(Integer.BYTES);
+        entry.putLong(key.hi);
+        entry.putLong(key.lo);
+        entry.putInt(vector.length);
+        for (float v : vector) {
+            entry.putFloat(v);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(entry.array(), Integer.BYTES, entry.capacity() - Integer.BYTES);
+        entry.putInt(0, (int) crc.getValue());
+        entry.flip();
+        return entry;
+    }
+
+    // Differences in whitespace alone (line wrapping, extraction quirks) map to the same key
+    static Key key(String model, String text) {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        digest.update(model.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        StringBuilder normalised = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalised.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    normalised.append(' ');
+                    pendingSpace = false;
+                }
+                normalised.append(c);
+            }
+        }
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest(normalised.toString().getBytes(StandardCharsets.UTF_8)));
+        return new Key(hash.getLong(), hash.getLong());
+    }
+
+    private static void writeHeader(FileChannel target) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        writeFully(target, header, 0);
+    }
+
+    private static void writeFully(FileChannel target, ByteBuffer source, long position) throws IOException {
+        while (source.hasRemaining()) {
+            position += target.write(source, position);
+        }
+    }
+
+    private static void readFully(FileChannel source, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = source.read(target, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of embedding cache " + source);
+            }
+            position += read;
+        }
+    }
+
+    static final class Key {
+
+        final long hi;
+        final long lo;
+
+        Key(long hi, long lo) {
+            this.hi = hi;
+            this.lo = lo;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hi == key.hi && lo == key.lo;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hi ^ (hi >>> 32));
+        }
+    }
+
+    private static final class Generation {
+
+        final FileChannel channel;
+        final Map<Key, Location> index;
+
+        Generation(FileChannel channel, Map<Key, Location> index) {
+            this.channel = channel;
+            this.index = index;
+        }
+    }
+
+    private static final class Location {
+
+        final long offset;
+        final int dimension;
+        volatile long lastUsed;
+
+        Location(long offset, int dimension, long lastUsed) {
+            this.offset = offset;
+            this.dimension = dimension;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.aidocumentsearch.store;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Hierarchical Navigable Small World graph over the rows of a {@link VectorArena} (Malkov &amp; Yashunin).
+ * Node ids are arena row ids and must be inserted in row order. Each node keeps up to {@code m} links per
+ * upper layer and {@code 2 * m} on layer 0; neighbour lists are plain int arrays whose first slot is the count.
+ */
+public class HnswIndex {
+
+    private final VectorArena vectors;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+
+    private int[][][] links = new int[0][][];
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int size;
+
+    public HnswIndex(VectorArena vectors, int m, int efConstruction) {
+        if (m < 2) {
+            throw new IllegalArgumentException("HNSW M must be at least 2: " + m);
+        }
+        this.vectors = vectors;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1.0 / Math.log(m);
+    }
+
+    /**
+     * Restores a graph previously exported through {@link #linksOf}, e.g. from a segment file.
+     */
+    HnswIndex(VectorArena vectors, int m, int efConstruction, int[][][] links, int entryPoint, int maxLevel) {
+        this(vectors, m, efConstruction);
+        this.links = links;
+        this.entryPoint = entryPoint;
+        this.maxLevel = maxLevel;
+        this.size = links.length;
+    }
+
+    public void insert(int node) {
+        if (node != size) {
+            throw new IllegalArgumentException("HNSW nodes must be inserted in row order, expected " + size);
+        }
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+        if (node == links.length) {
+            links = Arrays.copyOf(links, Math.max(16, links.length * 2));
+        }
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[1 + maxConnections(l)];
+        }
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            size++;
+            return;
+        }
+
+        float[] query = new float[vectors.dimension()];
+        vectors.copy(node, query);
+        double queryNorm = vectors.norm(node);
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(query, queryNorm, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            ScoredHeap candidates = searchLayer(query, queryNorm, current, efConstruction, l);
+            int[] ordered = candidates.drainDescending();
+            current = ordered[0];
+
+            int[] selected = selectNeighbours(node, ordered, m);
+            int[] own = links[node][l];
+            System.arraycopy(selected, 0, own, 1, selected.length);
+            own[0] = selected.length;
+            for (int neighbour : selected) {
+                connect(neighbour, node, l);
+            }
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        size++;
+    }
+
+    /**
+     * Returns a min-heap holding up to {@code max(ef, k)} approximate nearest rows; callers keep the best k.
+     */
+    public ScoredHeap search(float[] query, double queryNorm, int k, int ef) {
+        if (entryPoint < 0) {
+            return ScoredHeap.topK(0);
+        }
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(query, queryNorm, current, l);
+        }
+        return searchLayer(query, queryNorm, current, Math.max(ef, k), 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    int entryPoint() {
+        return entryPoint;
+    }
+
+    int maxLevel() {
+        return maxLevel;
+    }
+
+    // Per-level neighbour lists of a node; slot 0 of each list holds the neighbour count
+    int[][] linksOf(int node) {
+        return links[node];
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int greedyClosest(float[] query, double queryNorm, int start, int level) {
+        int current = start;
+        float best = vectors.cosine(current, query, queryNorm);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float score = vectors.cosine(neighbours[i], query, queryNorm);
+                if (score > best) {
+                    best = score;
+                    current = neighbours[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    private ScoredHeap searchLayer(float[] query, double queryNorm, int start, int ef, int level) {
+        BitSet visited = new BitSet(size + 1);
+        ScoredHeap candidates = ScoredHeap.bestFirst(ef * 2);
+        ScoredHeap results = ScoredHeap.topK(ef);
+
+        float startScore = vectors.cosine(start, query, queryNorm);
+        visited.set(start);
+        candidates.push(start, startScore);
+        results.push(start, startScore);
+
+        while (!candidates.isEmpty()) {
+            int candidate = candidates.topRow();
+            float candidateScore = candidates.topScore();
+            candidates.pop();
+            if (results.size() >= ef && candidateScore < results.topScore()) {
+                break;
+            }
+
+            int[] neighbours = links[candidate][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float score = vectors.cosine(neighbour, query, queryNorm);
+                if (results.offer(neighbour, score, ef)) {
+                    candidates.push(neighbour, score);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Neighbour-selection heuristic: prefer candidates that are closer to the new node than to any neighbour
+     * already chosen, which keeps links spread across clusters; remaining slots are back-filled by similarity.
+     */
+    private int[] selectNeighbours(int node, int[] orderedCandidates, int limit) {
+        int[] selected = new int[Math.min(limit, orderedCandidates.length)];
+        int count = 0;
+        boolean[] taken = new boolean[orderedCandidates.length];
+
+        for (int c = 0; c < orderedCandidates.length && count < selected.length; c++) {
+            int candidate = orderedCandidates[c];
+            float toNode = vectors.cosine(candidate, node);
+            boolean diverse = true;
+            for (int s = 0; s < count; s++) {
+                if (vectors.cosine(candidate, selected[s]) > toNode) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidate;
+                taken[c] = true;
+            }
+        }
+        for (int c = 0; c < orderedCandidates.length && count < selected.length; c++) {
+            if (!taken[c]) {
+                selected[count++] = orderedCandidates[c];
+            }
+        }
+        return selected;
+    }
+
+    private void connect(int from, int to, int level) {
+        int[] neighbours = links[from][level];
+        int count = neighbours[0];
+        if (count < neighbours.length - 1) {
+            neighbours[++count] = to;
+            neighbours[0] = count;
+            return;
+        }
+
+        // Full: keep the closest links among the existing ones plus the new node
+        ScoredHeap closest = ScoredHeap.topK(count);
+        for (int i = 1; i <= count; i++) {
+            closest.offer(neighbours[i], vectors.cosine(from, neighbours[i]), count);
+        }
+        closest.offer(to, vectors.cosine(from, to), count);
+        int[] kept = closest.drainDescending();
+        System.arraycopy(kept, 0, neighbours, 1, kept.length);
+        neighbours[0] = kept.length;
+    }
+}
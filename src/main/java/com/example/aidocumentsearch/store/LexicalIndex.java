@@ -0,0 +1,425 @@
+package com.example.aidocumentsearch.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * In-memory BM25 inverted index over chunk text, for the exact identifiers, part numbers and rare terms that
+ * embeddings blur together.
+ *
+ * <p>Documents get dense {@code int} ids in insertion order, so each term's postings list is a growable
+ * {@code byte[]} of varint-encoded {@code (doc id delta, term frequency)} pairs. A chunk written again under the
+ * same id replaces its earlier document, which is only flagged as deleted; once deleted documents outnumber live
+ * ones, the postings are rewritten without them.
+ *
+ * <p>Text is split into lower-cased runs of letters and digits. Runs joined by {@code - _ . /} (as in
+ * {@code XJ-2000} or {@code v1.2.3}) are also indexed as one compound term, so an identifier typed exactly ranks
+ * above documents that merely contain its parts.
+ */
+public class LexicalIndex {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int MIN_DELETED_FOR_COMPACTION = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postingsByTerm = new HashMap<>();
+    private final Map<String, Integer> docsByChunkId = new HashMap<>();
+    private String[] chunkIds = new String[256];
+    private int[] lengths = new int[256];
+    private final BitSet deleted = new BitSet();
+    private int docCount;
+    private int deletedCount;
+    private long liveLength;
+
+    /**
+     * Tokenised form of one chunk, prepared outside the index lock.
+     */
+    public static final class Document {
+
+        final String chunkId;
+        final Map<String, int[]> termFrequencies;
+        final int length;
+
+        private Document(String chunkId, Map<String, int[]> termFrequencies, int length) {
+            this.chunkId = chunkId;
+            this.termFrequencies = termFrequencies;
+            this.length = length;
+        }
+    }
+
+    public static final class Hit {
+
+        private final String chunkId;
+        private final float score;
+
+        Hit(String chunkId, float score) {
+            this.chunkId = chunkId;
+            this.score = score;
+        }
+
+        public String getChunkId() {
+            return chunkId;
+        }
+
+        public float getScore() {
+            return score;
+        }
+    }
+
+    public static Document analyze(String chunkId, String text) {
+        Map<String, int[]> frequencies = new HashMap<>();
+        int[] length = {0};
+        tokenize(text, term -> {
+            frequencies.computeIfAbsent(term, t -> new int[1])[0]++;
+            length[0]++;
+        });
+        return new Document(chunkId, frequencies, length[0]);
+    }
+
+    public void addAll(List<Document> documents) {
+        lock.writeLock().lock();
+        try {
+            for (Document document : documents) {
+                add(document);
+            }
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String chunkId) {
+        lock.writeLock().lock();
+        try {
+            Integer doc = docsByChunkId.remove(chunkId);
+            if (doc != null) {
+                markDeleted(doc);
+                compactIfSparse();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postingsByTerm.clear();
+            docsByChunkId.clear();
+            chunkIds = new String[256];
+            lengths = new int[256];
+            deleted.clear();
+            docCount = 0;
+            deletedCount = 0;
+            liveLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Hit> search(String query, int topK) {
+        return search(query, topK, null);
+    }
+
+    /**
+     * Best {@code topK} live chunks by BM25 score, highest first, among those whose id passes {@code filter}
+     * ({@code null} accepts all). The filter is applied before ranking, so a selective one still fills topK.
+     */
+    public List<Hit> search(String query, int topK, Predicate<String> filter) {
+        Set<String> terms = new LinkedHashSet<>();
+        tokenize(query, terms::add);
+        List<Hit> hits = new ArrayList<>();
+        if (terms.isEmpty() || topK <= 0) {
+            return hits;
+        }
+
+        lock.readLock().lock();
+        try {
+            int live = docCount - deletedCount;
+            if (live == 0) {
+                return hits;
+            }
+            float averageLength = Math.max(1f, (float) liveLength / live);
+            float[] scores = new float[docCount];
+            int[] touched = new int[16];
+            int touchedCount = 0;
+
+            for (String term : terms) {
+                Postings postings = postingsByTerm.get(term);
+                if (postings == null) {
+                    continue;
+                }
+                // Replaced and removed chunks stay in the postings until compaction, so they are not counted
+                int docFrequency = deletedCount == 0 ? postings.docFrequency : postings.liveDocFrequency(deleted);
+                if (docFrequency == 0) {
+                    continue;
+                }
+                float idf = (float) Math.max(1e-6,
+                        Math.log(1 + (live - docFrequency + 0.5) / (docFrequency + 0.5)));
+                Cursor cursor = postings.cursor();
+                while (cursor.next()) {
+                    int doc = cursor.doc;
+                    int tf = cursor.termFrequency;
+                    if (deleted.get(doc)) {
+                        continue;
+                    }
+                    float norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+                    if (scores[doc] == 0f) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = doc;
+                    }
+                    scores[doc] += idf * tf * (K1 + 1) / (tf + norm);
+                }
+            }
+
+            ScoredHeap best = ScoredHeap.topK(topK);
+            for (int i = 0; i < touchedCount; i++) {
+                if (filter == null || filter.test(chunkIds[touched[i]])) {
+                    best.offer(touched[i], scores[touched[i]], topK);
+                }
+            }
+            Hit[] ordered = new Hit[best.size()];
+            for (int i = ordered.length - 1; i >= 0; i--) {
+                ordered[i] = new Hit(chunkIds[best.topRow()], best.topScore());
+                best.pop();
+            }
+            hits.addAll(Arrays.asList(ordered));
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docCount - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postingsByTerm.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate heap held by postings and per-document arrays; term strings and map entries are estimated.
+     */
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = (long) chunkIds.length * 4 + (long) lengths.length * 4 + deleted.size() / 8;
+            for (Map.Entry<String, Postings> entry : postingsByTerm.entrySet()) {
+                bytes += entry.getValue().data.length + 32 + 48 + 2L * entry.getKey().length();
+            }
+            return bytes + docsByChunkId.size() * 48L;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Calls {@code terms} with each term of {@code text}, in order and with repeats.
+     */
+    public static void tokenize(String text, Consumer<String> terms) {
+        int n = text.length();
+        int i = 0;
+        StringBuilder part = new StringBuilder();
+        while (i < n) {
+            while (i < n && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == n) {
+                break;
+            }
+            int start = i;
+            int parts = 0;
+            for (;;) {
+                part.setLength(0);
+                while (i < n && Character.isLetterOrDigit(text.charAt(i))) {
+                    part.append(text.charAt(i));
+                    i++;
+                }
+                terms.accept(part.toString().toLowerCase(Locale.ROOT));
+                parts++;
+                if (i + 1 < n && isConnector(text.charAt(i)) && Character.isLetterOrDigit(text.charAt(i + 1))) {
+                    i++;
+                } else {
+                    break;
+                }
+            }
+            if (parts > 1) {
+                terms.accept(text.substring(start, i).toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    // Caller holds the write lock
+    private void add(Document document) {
+        Integer previous = docsByChunkId.get(document.chunkId);
+        if (previous != null) {
+            markDeleted(previous);
+        }
+        int doc = docCount++;
+        if (doc == chunkIds.length) {
+            chunkIds = Arrays.copyOf(chunkIds, doc * 2);
+            lengths = Arrays.copyOf(lengths, doc * 2);
+        }
+        chunkIds[doc] = document.chunkId;
+        lengths[doc] = document.length;
+        liveLength += document.length;
+        docsByChunkId.put(document.chunkId, doc);
+        for (Map.Entry<String, int[]> term : document.termFrequencies.entrySet()) {
+            postingsByTerm.computeIfAbsent(term.getKey(), t -> new Postings()).add(doc, term.getValue()[0]);
+        }
+    }
+
+    private void markDeleted(int doc) {
+        if (!deleted.get(doc)) {
+            deleted.set(doc);
+            deletedCount++;
+            liveLength -= lengths[doc];
+        }
+    }
+
+    // Rewrites every postings list without deleted documents, renumbering the survivors densely
+    private void compactIfSparse() {
+        if (deletedCount < MIN_DELETED_FOR_COMPACTION || deletedCount <= docCount - deletedCount) {
+            return;
+        }
+        int[] remap = new int[docCount];
+        int live = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (deleted.get(doc)) {
+                remap[doc] = -1;
+            } else {
+                remap[doc] = live;
+                chunkIds[live] = chunkIds[doc];
+                lengths[live] = lengths[doc];
+                docsByChunkId.put(chunkIds[live], live);
+                live++;
+            }
+        }
+        Arrays.fill(chunkIds, live, docCount, null);
+
+        postingsByTerm.entrySet().removeIf(entry -> {
+            Postings rewritten = entry.getValue().remap(remap);
+            entry.setValue(rewritten);
+            return rewritten.docFrequency == 0;
+        });
+        docCount = live;
+        deletedCount = 0;
+        deleted.clear();
+    }
+
+    private static boolean isConnector(char c) {
+        return c == '-' || c == '_' || c == '.' || c == '/';
+    }
+
+    private static final class Postings {
+
+        byte[] data = new byte[8];
+        int size;
+        int lastDoc = -1;
+        int docFrequency;
+
+        void add(int doc, int termFrequency) {
+            writeVarint(doc - lastDoc);
+            writeVarint(termFrequency);
+            lastDoc = doc;
+            docFrequency++;
+        }
+
+        Postings remap(int[] remap) {
+            Postings rewritten = new Postings();
+            Cursor cursor = cursor();
+            while (cursor.next()) {
+                if (remap[cursor.doc] >= 0) {
+                    rewritten.add(remap[cursor.doc], cursor.termFrequency);
+                }
+            }
+            rewritten.data = Arrays.copyOf(rewritten.data, rewritten.size);
+            return rewritten;
+        }
+
+        int liveDocFrequency(BitSet deleted) {
+            int live = 0;
+            Cursor cursor = cursor();
+            while (cursor.next()) {
+                if (!deleted.get(cursor.doc)) {
+                    live++;
+                }
+            }
+            return live;
+        }
+
+        Cursor cursor() {
+            return new Cursor(data, size);
+        }
+
+        private void writeVarint(int value) {
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + 5));
+            }
+            while ((value & ~0x7f) != 0) {
+                data[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+    }
+
+    // Decodes a postings list front to back
+    private static final class Cursor {
+
+        private final byte[] data;
+        private final int size;
+        private int position;
+        int doc = -1;
+        int termFrequency;
+
+        Cursor(byte[] data, int size) {
+            this.data = data;
+            this.size = size;
+        }
+
+        boolean next() {
+            if (position >= size) {
+                return false;
+            }
+            doc += readVarint();
+            termFrequency = readVarint();
+            return true;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[position++];
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,497 @@
+package com.example.aidocumentsearch.store;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.Collections.CollectionInfo;
+import io.qdrant.client.grpc.Collections.Distance;
+import io.qdrant.client.grpc.Collections.PayloadSchemaType;
+import io.qdrant.client.grpc.Collections.VectorParams;
+import io.qdrant.client.grpc.JsonWithInt.Value;
+import io.qdrant.client.grpc.Points.BatchResult;
+import io.qdrant.client.grpc.Points.Condition;
+import io.qdrant.client.grpc.Points.Filter;
+import io.qdrant.client.grpc.Points.PointStruct;
+import io.qdrant.client.grpc.Points.ScoredPoint;
+import io.qdrant.client.grpc.Points.ScrollPoints;
+import io.qdrant.client.grpc.Points.SearchPoints;
+import io.qdrant.client.grpc.Points.UpsertPoints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static io.qdrant.client.ConditionFactory.match;
+import static io.qdrant.client.ConditionFactory.matchKeyword;
+import static io.qdrant.client.ConditionFactory.matchKeywords;
+import static io.qdrant.client.PointIdFactory.id;
+import static io.qdrant.client.ValueFactory.value;
+import static io.qdrant.client.VectorsFactory.vectors;
+import static io.qdrant.client.WithPayloadSelectorFactory.enable;
+
+/**
+ * {@link VectorStore} on a Qdrant server, over its gRPC API.
+ *
+ * <p>Each chunk is one point whose payload carries the chunk record, the id of the document version that wrote it
+ * and a {@code committed} flag. Searches only match committed points, so a version is published by flagging its
+ * points and then deleting the document's other points; uncommitted points left by a crash are deleted by the
+ * document's next commit. Between those two calls a search can briefly see both versions. A document with no
+ * committed points yet is written committed, so its first upload is searchable batch by batch.
+ *
+ * <p>Upserts are sent in batches without waiting for earlier ones, up to a shared number in flight, and a
+ * version's commit waits for all of its batches. The collection is created on first use, with cosine distance,
+ * the embedding dimension and keyword indexes on the filtered fields.
+ */
+public class QdrantVectorStore implements VectorStore {
+
+    private static final Logger log = LoggerFactory.getLogger(QdrantVectorStore.class);
+
+    static final String CHUNK_ID = "chunk_id";
+    static final String FILENAME = "filename";
+    static final String CHUNK_INDEX = "chunk_index";
+    static final String PAGE = "page";
+    static final String TEXT = "text";
+    static final String VERSION = "version";
+    static final String COMMITTED = "committed";
+
+    private final QdrantClient client;
+    private final String collectionName;
+    private final int dimension;
+    private final int batchSize;
+    private final Semaphore inFlight;
+    private final Duration timeout;
+    private volatile boolean collectionReady;
+
+    public QdrantVectorStore(QdrantClient client, String collectionName, int dimension, int batchSize,
+                             int maxInFlight, Duration timeout) {
+        this.client = client;
+        this.collectionName = collectionName;
+        this.dimension = dimension;
+        this.batchSize = Math.max(1, batchSize);
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+        this.timeout = timeout;
+    }
+
+    /**
+     * Creates the collection if it does not exist yet.
+     *
+     * @throws IllegalStateException if it exists with another vector dimension
+     * @throws IOException if the server cannot be reached
+     */
+    public synchronized void ensureCollection() throws IOException {
+        if (collectionReady) {
+            return;
+        }
+        CollectionInfo info = null;
+        try {
+            info = await(client.getCollectionInfoAsync(collectionName, timeout));
+        } catch (IOException e) {
+            if (!isNotFound(e)) {
+                throw e;
+            }
+        }
+        if (info != null) {
+            long existing = info.getConfig().getParams().getVectorsConfig().getParams().getSize();
+            if (existing != dimension) {
+                throw new IllegalStateException("Qdrant collection '" + collectionName + "' holds " + existing
+                        + "-dimensional vectors but the embedding model produces " + dimension
+                        + "; use another QDRANT_COLLECTION_NAME");
+            }
+        } else {
+            await(client.createCollectionAsync(collectionName, VectorParams.newBuilder()
+                    .setSize(dimension)
+                    .setDistance(Distance.Cosine)
+                    .build(), timeout));
+            for (String field : new String[]{FILENAME, VERSION}) {
+                await(client.createPayloadIndexAsync(collectionName, field, PayloadSchemaType.Keyword, null,
+                        true, null, timeout));
+            }
+            await(client.createPayloadIndexAsync(collectionName, COMMITTED, PayloadSchemaType.Bool, null,
+                    true, null, timeout));
+            log.info("qdrant collection created name={} dimension={}", collectionName, dimension);
+        }
+        collectionReady = true;
+    }
+
+    @Override
+    public DocumentVersion beginDocument(String filename) {
+        return new Version(filename, UUID.randomUUID().toString());
+    }
+
+    @Override
+    public boolean deleteDocument(String filename) throws IOException {
+        ensureCollection();
+        boolean found = isCommitted(filename);
+        if (found) {
+            await(client.deleteAsync(collectionName, byFilename(filename), timeout));
+        }
+        return found;
+    }
+
+    private boolean isCommitted(String filename) throws IOException {
+        Filter committed = Filter.newBuilder()
+                .addMust(matchKeyword(FILENAME, filename))
+                .addMust(match(COMMITTED, true))
+                .build();
+        return await(client.scrollAsync(ScrollPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .setFilter(committed)
+                .setLimit(1)
+                .setWithPayload(enable(false))
+                .build(), timeout)).getResultCount() > 0;
+    }
+
+    @Override
+    public void clear() throws IOException {
+        ensureCollection();
+        await(client.deleteAsync(collectionName, Filter.getDefaultInstance(), timeout));
+    }
+
+    @Override
+    public CompletableFuture<List<SearchHit>> searchAsync(float[] query, int topK, Collection<String> filenames) {
+        try {
+            ensureCollection();
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (filenames != null && filenames.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        return toCompletable(client.searchAsync(searchRequest(query, topK, filenames), timeout),
+                QdrantVectorStore::toHits);
+    }
+
+    // Sent as one SearchBatch request, which the server answers in a single round trip
+    @Override
+    public CompletableFuture<List<List<SearchHit>>> searchBatchAsync(List<float[]> queries, int topK,
+                                                                      Collection<String> filenames) {
+        try {
+            ensureCollection();
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (queries.isEmpty() || (filenames != null && filenames.isEmpty())) {
+            List<List<SearchHit>> empty = new ArrayList<>(queries.size());
+            for (int q = 0; q < queries.size(); q++) {
+                empty.add(new ArrayList<>());
+            }
+            return CompletableFuture.completedFuture(empty);
+        }
+        List<SearchPoints> requests = new ArrayList<>(queries.size());
+        for (float[] query : queries) {
+            requests.add(searchRequest(query, topK, filenames));
+        }
+        return toCompletable(client.searchBatchAsync(collectionName, requests, null, timeout), batches -> {
+            List<List<SearchHit>> results = new ArrayList<>(batches.size());
+            for (BatchResult batch : batches) {
+                results.add(toHits(batch.getResultList()));
+            }
+            return results;
+        });
+    }
+
+    private SearchPoints searchRequest(float[] query, int topK, Collection<String> filenames) {
+        Filter.Builder filter = Filter.newBuilder().addMust(match(COMMITTED, true));
+        if (filenames != null) {
+            filter.addMust(matchKeywords(FILENAME, new ArrayList<>(filenames)));
+        }
+        SearchPoints.Builder request = SearchPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .setFilter(filter)
+                .setLimit(topK)
+                .setWithPayload(enable(true));
+        for (float component : query) {
+            request.addVector(component);
+        }
+        return request.build();
+    }
+
+    private static List<SearchHit> toHits(List<ScoredPoint> points) {
+        List<SearchHit> hits = new ArrayList<>(points.size());
+        for (ScoredPoint point : points) {
+            hits.add(new SearchHit(toRecord(point.getPayloadMap()), point.getScore()));
+        }
+        return hits;
+    }
+
+    // Qdrant has no BM25 ranking, so hybrid retrieval falls back to vector search alone
+    @Override
+    public List<SearchHit> searchLexical(String query, int topK, Collection<String> filenames) {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public int size() {
+        try {
+            ensureCollection();
+            Filter committed = Filter.newBuilder().addMust(match(COMMITTED, true)).build();
+            return (int) (long) await(client.countAsync(collectionName, committed, true, timeout));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not count points in Qdrant: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean isAvailable() {
+        try {
+            await(client.healthCheckAsync(timeout));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    private Filter byFilename(String filename) {
+        return Filter.newBuilder().addMust(matchKeyword(FILENAME, filename)).build();
+    }
+
+    private static ChunkRecord toRecord(Map<String, Value> payload) {
+        return new ChunkRecord(
+                string(payload, CHUNK_ID),
+                string(payload, FILENAME),
+                (int) integer(payload, CHUNK_INDEX),
+                (int) integer(payload, PAGE),
+                string(payload, TEXT));
+    }
+
+    private static String string(Map<String, Value> payload, String key) {
+        Value value = payload.get(key);
+        return value == null ? "" : value.getStringValue();
+    }
+
+    private static long integer(Map<String, Value> payload, String key) {
+        Value value = payload.get(key);
+        return value == null ? 0 : value.getIntegerValue();
+    }
+
+    // Waits a little longer than the call's own deadline so the server's error is reported rather than ours
+    private <T> T await(ListenableFuture<T> future) throws IOException {
+        try {
+            return future.get(timeout.toMillis() + 1000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IOException("Interrupted while waiting for Qdrant", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Qdrant request failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IOException("Qdrant request timed out after " + timeout.toMillis() + " ms", e);
+        }
+    }
+
+    private static boolean isNotFound(IOException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof StatusRuntimeException
+                && ((StatusRuntimeException) cause).getStatus().getCode() == Status.Code.NOT_FOUND;
+    }
+
+    private static <T, R> CompletableFuture<R> toCompletable(ListenableFuture<T> future, Function<T, R> mapper) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        Futures.addCallback(future, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                try {
+                    result.complete(mapper.apply(value));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    // Points of a version are upserted uncommitted, with ids stable within the version
+    private final class Version implements DocumentVersion {
+
+        private final String filename;
+        private final String version;
+        private final List<ListenableFuture<?>> upserts = new ArrayList<>();
+        private boolean finished;
+        // Decided on the first batch: points of a document's first upload are written committed
+        private Boolean firstUpload;
+
+        private Version(String filename, String version) {
+            this.filename = filename;
+            this.version = version;
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public void put(List<ChunkRecord> records, List<float[]> vectors) throws IOException {
+            if (records.size() != vectors.size()) {
+                throw new IllegalArgumentException("Got " + records.size() + " records but " + vectors.size()
+                        + " vectors");
+            }
+            for (int i = 0; i < records.size(); i++) {
+                if (!filename.equals(records.get(i).getFilename())) {
+                    throw new IllegalArgumentException("Record " + records.get(i).getId() + " does not belong to "
+                            + filename);
+                }
+                if (vectors.get(i).length != dimension) {
+                    throw new IllegalArgumentException("Expected " + dimension + " dimensions but got "
+                            + vectors.get(i).length);
+                }
+            }
+            ensureCollection();
+            boolean committed = isFirstUpload();
+
+            for (int start = 0; start < records.size(); start += batchSize) {
+                int end = Math.min(records.size(), start + batchSize);
+                UpsertPoints.Builder batch = UpsertPoints.newBuilder()
+                        .setCollectionName(collectionName)
+                        .setWait(true);
+                for (int i = start; i < end; i++) {
+                    batch.addPoints(point(records.get(i), vectors.get(i), committed));
+                }
+                send(batch.build());
+            }
+        }
+
+        @Override
+        public void commit() throws IOException {
+            List<ListenableFuture<?>> sent = finish();
+            awaitAll(sent);
+            ensureCollection();
+            Map<String, Value> committed = new HashMap<>();
+            committed.put(COMMITTED, value(true));
+            Filter ownPoints = Filter.newBuilder()
+                    .addMust(matchKeyword(FILENAME, filename))
+                    .addMust(matchKeyword(VERSION, version))
+                    .build();
+            await(client.setPayloadAsync(collectionName, committed, ownPoints, true, null, timeout));
+            Filter otherVersions = Filter.newBuilder()
+                    .addMust(matchKeyword(FILENAME, filename))
+                    .addMustNot(matchKeyword(VERSION, version))
+                    .build();
+            await(client.deleteAsync(collectionName, otherVersions, timeout));
+        }
+
+        @Override
+        public void abort() throws IOException {
+            List<ListenableFuture<?>> sent;
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                sent = finish();
+            }
+            try {
+                awaitAll(sent);
+            } catch (IOException e) {
+                // The points that did arrive are deleted below
+            }
+            Filter ownPoints = Filter.newBuilder()
+                    .addMust(matchKeyword(FILENAME, filename))
+                    .addMust(matchKeyword(VERSION, version))
+                    .build();
+            await(client.deleteAsync(collectionName, ownPoints, timeout));
+        }
+
+        private synchronized List<ListenableFuture<?>> finish() {
+            if (finished) {
+                throw new IllegalStateException("Version of " + filename + " is already finished");
+            }
+            finished = true;
+            return new ArrayList<>(upserts);
+        }
+
+        // Blocks while maxInFlight upserts are outstanding, then returns without waiting for this one
+        private void send(UpsertPoints batch) throws IOException {
+            synchronized (this) {
+                if (finished) {
+                    throw new IllegalStateException("Version of " + filename + " is already finished");
+                }
+            }
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting to upsert to Qdrant", e);
+            }
+            ListenableFuture<?> upsert;
+            try {
+                upsert = client.upsertAsync(batch, timeout);
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+            upsert.addListener(inFlight::release, MoreExecutors.directExecutor());
+            synchronized (this) {
+                upserts.add(upsert);
+            }
+        }
+
+        private void awaitAll(List<ListenableFuture<?>> sent) throws IOException {
+            IOException failure = null;
+            for (ListenableFuture<?> upsert : sent) {
+                try {
+                    await(upsert);
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private synchronized boolean isFirstUpload() throws IOException {
+            if (firstUpload == null) {
+                firstUpload = !isCommitted(filename);
+            }
+            return firstUpload;
+        }
+
+        private PointStruct point(ChunkRecord record, float[] vector, boolean committed) {
+            Map<String, Value> payload = new HashMap<>();
+            payload.put(CHUNK_ID, value(record.getId()));
+            payload.put(FILENAME, value(record.getFilename()));
+            payload.put(CHUNK_INDEX, value(record.getChunkIndex()));
+            payload.put(PAGE, value(record.getPage()));
+            payload.put(TEXT, value(record.getText()));
+            payload.put(VERSION, value(version));
+            payload.put(COMMITTED, value(committed));
+            UUID pointId = UUID.nameUUIDFromBytes((record.getId() + "#" + version).getBytes(StandardCharsets.UTF_8));
+            return PointStruct.newBuilder()
+                    .setId(id(pointId))
+                    .setVectors(vectors(vector))
+                    .putAllPayload(payload)
+                    .build();
+        }
+    }
+}
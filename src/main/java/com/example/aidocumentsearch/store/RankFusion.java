@@ -0,0 +1,40 @@
+package com.example.aidocumentsearch.store;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weighted reciprocal-rank fusion: each ranking adds {@code weight / (k + rank)} to a chunk's score, with ranks
+ * starting at 1. Only ranks matter, so rankings on incomparable scales (cosine similarity, BM25) combine without
+ * normalisation, and a larger {@code k} flattens the advantage of the very top ranks.
+ */
+public final class RankFusion {
+
+    private RankFusion() {}
+
+    public static List<SearchHit> reciprocalRank(List<List<SearchHit>> rankings, double[] weights, int k, int topK) {
+        if (rankings.size() != weights.length) {
+            throw new IllegalArgumentException("Expected one weight per ranking");
+        }
+        Map<String, ChunkRecord> records = new LinkedHashMap<>();
+        Map<String, double[]> scores = new LinkedHashMap<>();
+        for (int r = 0; r < rankings.size(); r++) {
+            List<SearchHit> ranking = rankings.get(r);
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                ChunkRecord record = ranking.get(rank).getRecord();
+                records.putIfAbsent(record.getId(), record);
+                scores.computeIfAbsent(record.getId(), id -> new double[1])[0] += weights[r] / (k + rank + 1);
+            }
+        }
+
+        List<SearchHit> fused = new ArrayList<>(scores.size());
+        for (Map.Entry<String, double[]> score : scores.entrySet()) {
+            fused.add(new SearchHit(records.get(score.getKey()), (float) score.getValue()[0]));
+        }
+        // Stable sort: ties keep the order of the first ranking they appeared in
+        fused.sort((a, b) -> Float.compare(b.getScore(), a.getScore()));
+        return fused.size() > topK ? new ArrayList<>(fused.subList(0, topK)) : fused;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.aidocumentsearch.store;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap of (row, score) pairs kept in parallel primitive arrays, so ranking candidates allocates nothing
+ * per element. A min-heap keeps the worst score on top, which makes it a bounded top-k collector; a max-heap
+ * keeps the best score on top, which makes it a best-first work queue.
+ */
+public class ScoredHeap {
+
+    private final boolean maxOnTop;
+    private int[] rows;
+    private float[] scores;
+    private int size;
+
+    public ScoredHeap(int initialCapacity, boolean maxOnTop) {
+        int capacity = Math.max(initialCapacity, 4);
+        this.maxOnTop = maxOnTop;
+        this.rows = new int[capacity];
+        this.scores = new float[capacity];
+    }
+
+    public static ScoredHeap topK(int k) {
+        return new ScoredHeap(k + 1, false);
+    }
+
+    public static ScoredHeap bestFirst(int initialCapacity) {
+        return new ScoredHeap(initialCapacity, true);
+    }
+
+    public void push(int row, float score) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        rows[size] = row;
+        scores[size] = score;
+        siftUp(size++);
+    }
+
+    /**
+     * Adds the pair if fewer than {@code limit} are held or it beats the current top; only meaningful on a min-heap.
+     */
+    public boolean offer(int row, float score, int limit) {
+        if (size < limit) {
+            push(row, score);
+            return true;
+        }
+        if (score <= scores[0]) {
+            return false;
+        }
+        rows[0] = row;
+        scores[0] = score;
+        siftDown(0);
+        return true;
+    }
+
+    public int topRow() {
+        return rows[0];
+    }
+
+    public float topScore() {
+        return scores[0];
+    }
+
+    public void pop() {
+        size--;
+        if (size > 0) {
+            rows[0] = rows[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Empties a min-heap into rows ordered from best to worst score.
+     */
+    public int[] drainDescending() {
+        int[] ordered = new int[size];
+        for (int i = ordered.length - 1; i >= 0; i--) {
+            ordered[i] = rows[0];
+            pop();
+        }
+        return ordered;
+    }
+
+    private boolean above(int a, int b) {
+        return maxOnTop ? scores[a] > scores[b] : scores[a] < scores[b];
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!above(i, parent)) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                break;
+            }
+            int child = left + 1 < size && above(left + 1, left) ? left + 1 : left;
+            if (!above(child, i)) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int row = rows[a];
+        rows[a] = rows[b];
+        rows[b] = row;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.aidocumentsearch.store;
+
+public class SearchHit {
+
+    private final ChunkRecord record;
+    private final float score;
+
+    public SearchHit(ChunkRecord record, float score) {
+        this.record = record;
+        this.score = score;
+    }
+
+    public ChunkRecord getRecord() {
+        return record;
+    }
+
+    public float getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.aidocumentsearch.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A run of rows sharing one vector arena and one HNSW graph. A writer fills a new segment privately and then
+ * {@link #freeze freezes} it before publishing; from then on its vectors, records and graph never change, so any
+ * number of readers can search it without locking. Once checkpointed it is replaced by an equivalent segment whose
+ * vectors are memory-mapped from disk.
+ *
+ * <p>The only mutable state after publication is the deletion bitmap: rows superseded by a later write of the same
+ * chunk id are flagged atomically and skipped by every search.
+ */
+public class Segment {
+
+    // Rows scored together by scan and scanBatch: 64 rows of a 1536-dimension model are 384 KiB, about an L2 cache
+    private static final int TILE_ROWS = 64;
+
+    private final long id;
+    private final VectorArena vectors;
+    private final HnswIndex graph;
+    private final List<ChunkRecord> records;
+    private volatile AtomicLongArray deleted;
+
+    private Segment(long id, VectorArena vectors, HnswIndex graph, List<ChunkRecord> records) {
+        this.id = id;
+        this.vectors = vectors;
+        this.graph = graph;
+        this.records = records;
+    }
+
+    public static Segment create(long id, int dimension, CollectionOptions options) {
+        VectorArena vectors = new VectorArena(dimension, options.getQuantization());
+        HnswIndex graph = new HnswIndex(vectors, options.getHnswM(), options.getEfConstruction());
+        return new Segment(id, vectors, graph, new ArrayList<>());
+    }
+
+    public static Segment sealed(long id, VectorArena vectors, HnswIndex graph, List<ChunkRecord> records) {
+        Segment segment = new Segment(id, vectors, graph, records);
+        segment.freeze();
+        return segment;
+    }
+
+    public int append(ChunkRecord record, float[] vector) {
+        if (deleted != null) {
+            throw new IllegalStateException("Segment " + id + " is frozen");
+        }
+        int row = vectors.append(vector);
+        records.add(record);
+        graph.insert(row);
+        return row;
+    }
+
+    /**
+     * Ends the private build phase; the segment may be shared with readers afterwards.
+     */
+    public void freeze() {
+        deleted = new AtomicLongArray((vectors.size() + 63) >>> 6);
+    }
+
+    public void delete(int row) {
+        long bit = 1L << row;
+        int word = row >>> 6;
+        long current;
+        do {
+            current = deleted.get(word);
+        } while ((current & bit) == 0 && !deleted.compareAndSet(word, current, current | bit));
+    }
+
+    public boolean isLive(int row) {
+        AtomicLongArray flags = deleted;
+        return flags == null || (flags.get(row >>> 6) & (1L << row)) == 0;
+    }
+
+    public void copyDeletions(Segment source) {
+        for (int row = 0; row < source.size(); row++) {
+            if (!source.isLive(row)) {
+                delete(row);
+            }
+        }
+    }
+
+    public ChunkRecord record(int row) {
+        return records.get(row);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public VectorArena getVectors() {
+        return vectors;
+    }
+
+    public HnswIndex getGraph() {
+        return graph;
+    }
+
+    public int size() {
+        return vectors.size();
+    }
+
+    public int liveCount() {
+        int live = 0;
+        for (int row = 0; row < vectors.size(); row++) {
+            if (isLive(row)) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Scores every live row on the scan path (int8 codes when quantized) and returns the best {@code topK},
+     * rescored at full precision.
+     */
+    public ScoredHeap scan(float[] query, double queryNorm, int topK, int rescoreFactor) {
+        return scan(query, queryNorm, topK, rescoreFactor, 0, vectors.size());
+    }
+
+    /**
+     * {@link #scan} restricted to the rows {@code [from, to)}, so that parts of one segment can be scanned in
+     * parallel. Rows are scored a tile at a time into reused buffers; nothing is allocated per row.
+     */
+    public ScoredHeap scan(float[] query, double queryNorm, int topK, int rescoreFactor, int from, int to) {
+        int shortlist = shortlistSize(topK, rescoreFactor);
+        ScoredHeap best = ScoredHeap.topK(shortlist);
+        float[][] queries = {query};
+        double[] queryNorms = {queryNorm};
+        float[] panel = new float[vectors.panelSize(TILE_ROWS)];
+        float[] scores = new float[TILE_ROWS];
+        int end;
+        for (int start = from; start < to; start = end) {
+            end = Math.min(vectors.tileEnd(start, TILE_ROWS), to);
+            vectors.cosineTile(start, end, queries, queryNorms, panel, scores);
+            for (int row = start; row < end; row++) {
+                if (isLive(row)) {
+                    best.offer(row, scores[row - start], shortlist);
+                }
+            }
+        }
+        return rescore(best, query, queryNorm, topK);
+    }
+
+    /**
+     * {@link #scan} for many queries in one pass: rows are scored a tile at a time against every query, so each row
+     * is read once per batch rather than once per query. Returns one heap per query, in query order.
+     */
+    public ScoredHeap[] scanBatch(float[][] queries, double[] queryNorms, int topK, int rescoreFactor) {
+        int shortlist = shortlistSize(topK, rescoreFactor);
+        ScoredHeap[] best = new ScoredHeap[queries.length];
+        for (int q = 0; q < queries.length; q++) {
+            best[q] = ScoredHeap.topK(shortlist);
+        }
+        float[] panel = new float[vectors.panelSize(TILE_ROWS)];
+        float[] scores = new float[TILE_ROWS * queries.length];
+        int to;
+        for (int from = 0; from < vectors.size(); from = to) {
+            to = vectors.tileEnd(from, TILE_ROWS);
+            vectors.cosineTile(from, to, queries, queryNorms, panel, scores);
+            for (int row = from; row < to; row++) {
+                if (!isLive(row)) {
+                    continue;
+                }
+                int cell = (row - from) * queries.length;
+                for (int q = 0; q < queries.length; q++) {
+                    best[q].offer(row, scores[cell + q], shortlist);
+                }
+            }
+        }
+        for (int q = 0; q < queries.length; q++) {
+            best[q] = rescore(best[q], queries[q], queryNorms[q], topK);
+        }
+        return best;
+    }
+
+    public ScoredHeap searchGraph(float[] query, double queryNorm, int topK, int efSearch, int rescoreFactor) {
+        int shortlist = shortlistSize(topK, rescoreFactor);
+        ScoredHeap candidates = graph.search(query, queryNorm, shortlist, efSearch);
+
+        // Deleted rows remain in the graph for navigation but must not be returned
+        ScoredHeap best = ScoredHeap.topK(shortlist);
+        while (!candidates.isEmpty()) {
+            int row = candidates.topRow();
+            if (isLive(row)) {
+                best.offer(row, candidates.topScore(), shortlist);
+            }
+            candidates.pop();
+        }
+        return rescore(best, query, queryNorm, topK);
+    }
+
+    public ScoredHeap fullPrecisionScan(float[] query, double queryNorm, int topK) {
+        ScoredHeap best = ScoredHeap.topK(topK);
+        for (int row = 0; row < vectors.size(); row++) {
+            if (isLive(row)) {
+                best.offer(row, vectors.exactCosine(row, query, queryNorm), topK);
+            }
+        }
+        return best;
+    }
+
+    private int shortlistSize(int topK, int rescoreFactor) {
+        return vectors.isQuantized() ? topK * rescoreFactor : topK;
+    }
+
+    // Quantized scores only pick the shortlist; the final order comes from the full-precision vectors
+    private ScoredHeap rescore(ScoredHeap shortlist, float[] query, double queryNorm, int topK) {
+        if (!vectors.isQuantized()) {
+            return shortlist;
+        }
+        ScoredHeap best = ScoredHeap.topK(topK);
+        while (!shortlist.isEmpty()) {
+            int row = shortlist.topRow();
+            best.offer(row, vectors.exactCosine(row, query, queryNorm), topK);
+            shortlist.pop();
+        }
+        return best;
+    }
+}
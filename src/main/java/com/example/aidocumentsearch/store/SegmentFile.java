@@ -0,0 +1,237 @@
+package com.example.aidocumentsearch.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable on-disk form of a {@link Segment}. Little-endian layout:
+ * <pre>
+ * header   magic, version, dimension, rows, quantization, hnswM, efConstruction, reserved (8 ints)
+ * vectors  rows * dimension floats  (memory-mapped on open, never copied to heap)
+ * norms    rows floats
+ * scales   rows floats              (INT8 only)
+ * codes    rows * dimension bytes   (INT8 only)
+ * records  per row: id, filename, chunkIndex, page, text   (version 1 files have no page)
+ * graph    entryPoint, maxLevel, then per node: levels, and per level: count, neighbour rows
+ * </pre>
+ * Strings are stored as an int byte length followed by UTF-8 bytes.
+ */
+public final class SegmentFile {
+
+    private static final int MAGIC = 0x56534547; // "VSEG"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 8 * Integer.BYTES;
+
+    private SegmentFile() {}
+
+    public static void write(Path file, Segment segment) throws IOException {
+        VectorArena vectors = segment.getVectors();
+        int dimension = vectors.dimension();
+        int rows = segment.size();
+        HnswIndex graph = segment.getGraph();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter out = new ChannelWriter(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(dimension);
+            out.putInt(rows);
+            out.putInt(vectors.quantization().ordinal());
+            out.putInt(graph.getM());
+            out.putInt(graph.getEfConstruction());
+            out.putInt(0);
+
+            float[] vector = new float[dimension];
+            for (int row = 0; row < rows; row++) {
+                vectors.copy(row, vector);
+                for (float v : vector) {
+                    out.putFloat(v);
+                }
+            }
+            for (int row = 0; row < rows; row++) {
+                out.putFloat(vectors.norm(row));
+            }
+            if (vectors.isQuantized()) {
+                for (int row = 0; row < rows; row++) {
+                    out.putFloat(vectors.scale(row));
+                }
+                byte[] codes = new byte[dimension];
+                for (int row = 0; row < rows; row++) {
+                    vectors.copyCodes(row, codes);
+                    out.putBytes(codes);
+                }
+            }
+
+            for (int row = 0; row < rows; row++) {
+                ChunkRecord record = segment.record(row);
+                out.putString(record.getId());
+                out.putString(record.getFilename());
+                out.putInt(record.getChunkIndex());
+                out.putInt(record.getPage());
+                out.putString(record.getText());
+            }
+
+            out.putInt(graph.entryPoint());
+            out.putInt(graph.maxLevel());
+            for (int node = 0; node < rows; node++) {
+                int[][] levels = graph.linksOf(node);
+                out.putInt(levels.length);
+                for (int[] neighbours : levels) {
+                    out.putInt(neighbours[0]);
+                    for (int i = 1; i <= neighbours[0]; i++) {
+                        out.putInt(neighbours[i]);
+                    }
+                }
+            }
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    public static Segment open(Path file, long id) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            header.flip();
+            int magic = header.getInt();
+            int version = header.getInt();
+            if (magic != MAGIC || version < 1 || version > VERSION) {
+                throw new IOException("Not a vector segment file: " + file);
+            }
+            int dimension = header.getInt();
+            int rows = header.getInt();
+            VectorArena.Quantization quantization = VectorArena.Quantization.values()[header.getInt()];
+            int m = header.getInt();
+            int efConstruction = header.getInt();
+
+            // The vectors stay in the page cache; only the small per-row columns are copied to heap
+            long vectorBytes = (long) rows * dimension * Float.BYTES;
+            MappedByteBuffer mappedVectors = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, vectorBytes);
+            FloatBuffer vectorBuffer = mappedVectors.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+
+            long tailStart = HEADER_BYTES + vectorBytes;
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, tailStart, channel.size() - tailStart)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            float[] norms = new float[rows];
+            in.asFloatBuffer().get(norms);
+            in.position(in.position() + rows * Float.BYTES);
+
+            byte[] codes = null;
+            float[] scales = null;
+            if (quantization == VectorArena.Quantization.INT8) {
+                scales = new float[rows];
+                in.asFloatBuffer().get(scales);
+                in.position(in.position() + rows * Float.BYTES);
+                codes = new byte[rows * dimension];
+                in.get(codes);
+            }
+
+            List<ChunkRecord> records = new ArrayList<>(rows);
+            for (int row = 0; row < rows; row++) {
+                String recordId = getString(in);
+                String filename = getString(in);
+                int chunkIndex = in.getInt();
+                int page = version >= 2 ? in.getInt() : 0;
+                records.add(new ChunkRecord(recordId, filename, chunkIndex, page, getString(in)));
+            }
+
+            int entryPoint = in.getInt();
+            int maxLevel = in.getInt();
+            int[][][] links = new int[rows][][];
+            for (int node = 0; node < rows; node++) {
+                int[][] levels = new int[in.getInt()][];
+                for (int l = 0; l < levels.length; l++) {
+                    int count = in.getInt();
+                    int[] neighbours = new int[count + 1];
+                    neighbours[0] = count;
+                    for (int i = 1; i <= count; i++) {
+                        neighbours[i] = in.getInt();
+                    }
+                    levels[l] = neighbours;
+                }
+                links[node] = levels;
+            }
+
+            VectorArena vectors = VectorArena.mapped(dimension, rows, quantization, vectorBuffer, norms, codes, scales);
+            HnswIndex graph = new HnswIndex(vectors, m, efConstruction, links, entryPoint, maxLevel);
+            return Segment.sealed(id, vectors, graph, records);
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position + target.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment file");
+            }
+        }
+    }
+
+    // Buffers little-endian writes and hands full blocks to the channel
+    private static final class ChannelWriter {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+        ChannelWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putFloat(float value) throws IOException {
+            ensure(Float.BYTES);
+            buffer.putFloat(value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            putBytes(bytes);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.example.aidocumentsearch.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Append-only store of fixed-dimension vectors packed into contiguous slabs.
+ * Each vector is addressed by a dense int row id, so callers keep their own row -> metadata mapping
+ * and no per-vector object is ever allocated.
+ *
+ * <p>Vectors are scaled to unit length as they are appended, so a row's cosine similarity with a query is its dot
+ * product divided by the query's norm alone. Segment files written before that keep their stored norms, which
+ * scoring still divides by.
+ *
+ * <p>In {@link Quantization#INT8} mode every row is additionally kept as one signed byte per dimension plus a
+ * per-row scale. {@link #cosine} then scores against the codes, while the full-precision vectors move to off-heap
+ * direct buffers and are only read by {@link #exactCosine} when rescoring a shortlist.
+ *
+ * <p>A sealed arena created by {@link #mapped} reads its full-precision vectors straight from a memory-mapped
+ * segment file and rejects further appends.
+ */
+public class VectorArena {
+
+    public enum Quantization {
+        NONE,
+        INT8
+    }
+
+    private static final int DEFAULT_ROWS_PER_SLAB = 1024;
+
+    private final int dimension;
+    private final int rowsPerSlab;
+    private final Quantization quantization;
+
+    // Full precision: on-heap float[] slabs, or off-heap buffers when codes carry the scan
+    private final boolean offHeap;
+    private final boolean sealed;
+
+    private float[][] slabs = new float[0][];
+    private FloatBuffer[] offHeapSlabs = new FloatBuffer[0];
+    private float[] norms = new float[0];
+
+    private byte[][] codeSlabs = new byte[0][];
+    private float[] scales = new float[0];
+
+    private int size;
+
+    public VectorArena(int dimension) {
+        this(dimension, DEFAULT_ROWS_PER_SLAB, Quantization.NONE);
+    }
+
+    public VectorArena(int dimension, int rowsPerSlab) {
+        this(dimension, rowsPerSlab, Quantization.NONE);
+    }
+
+    public VectorArena(int dimension, Quantization quantization) {
+        this(dimension, DEFAULT_ROWS_PER_SLAB, quantization);
+    }
+
+    public VectorArena(int dimension, int rowsPerSlab, Quantization quantization) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Vector dimension must be positive: " + dimension);
+        }
+        this.dimension = dimension;
+        this.rowsPerSlab = rowsPerSlab;
+        this.quantization = quantization;
+        this.offHeap = quantization == Quantization.INT8;
+        this.sealed = false;
+    }
+
+    private VectorArena(int dimension, int rows, Quantization quantization, FloatBuffer vectors, float[] norms,
+                        byte[] codes, float[] scales) {
+        this.dimension = dimension;
+        this.rowsPerSlab = Math.max(rows, 1);
+        this.quantization = quantization;
+        this.offHeap = true;
+        this.sealed = true;
+        this.offHeapSlabs = new FloatBuffer[] {vectors};
+        this.norms = norms;
+        if (quantization == Quantization.INT8) {
+            this.codeSlabs = new byte[][] {codes};
+            this.scales = scales;
+        }
+        this.size = rows;
+    }
+
+    /**
+     * Wraps vectors that already live in a (typically memory-mapped) buffer as a read-only arena.
+     */
+    public static VectorArena mapped(int dimension, int rows, Quantization quantization, FloatBuffer vectors,
+                                     float[] norms, byte[] codes, float[] scales) {
+        return new VectorArena(dimension, rows, quantization, vectors, norms, codes, scales);
+    }
+
+    public int append(float[] vector) {
+        if (sealed) {
+            throw new IllegalStateException("Cannot append to a sealed vector arena");
+        }
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException(
+                    "Expected vector of dimension " + dimension + " but got " + vector.length);
+        }
+        int row = size;
+        int slab = row / rowsPerSlab;
+        int offset = (row % rowsPerSlab) * dimension;
+        if (slab == norms.length / rowsPerSlab) {
+            addSlab();
+        }
+
+        double norm = norm(vector);
+        float inverse = norm == 0.0 ? 0.0f : (float) (1.0 / norm);
+        if (isQuantized()) {
+            FloatBuffer target = offHeapSlabs[slab];
+            for (int i = 0; i < dimension; i++) {
+                target.put(offset + i, vector[i] * inverse);
+            }
+            // Codes do not depend on the vector's length, only the scale does
+            scales[row] = encode(vector, codeSlabs[slab], offset) * inverse;
+        } else {
+            float[] target = slabs[slab];
+            for (int i = 0; i < dimension; i++) {
+                target[offset + i] = vector[i] * inverse;
+            }
+        }
+        norms[row] = norm == 0.0 ? 0.0f : 1.0f;
+        size++;
+        return row;
+    }
+
+    /**
+     * Scan-path cosine similarity between a stored row and {@code query}, whose L2 norm the caller computes once per
+     * search. Approximate when quantized; use {@link #exactCosine} to rescore.
+     */
+    public float cosine(int row, float[] query, double queryNorm) {
+        if (!isQuantized()) {
+            return exactCosine(row, query, queryNorm);
+        }
+        byte[] codes = codeSlabs[row / rowsPerSlab];
+        int offset = (row % rowsPerSlab) * dimension;
+
+        float dotProduct = 0.0f;
+        for (int i = 0; i < dimension; i++) {
+            dotProduct += codes[offset + i] * query[i];
+        }
+        return normalise(dotProduct * scales[row], norms[row], queryNorm);
+    }
+
+    public float exactCosine(int row, float[] query, double queryNorm) {
+        int offset = (row % rowsPerSlab) * dimension;
+        double dotProduct = 0.0;
+        if (offHeap) {
+            FloatBuffer slab = offHeapSlabs[row / rowsPerSlab];
+            for (int i = 0; i < dimension; i++) {
+                dotProduct += slab.get(offset + i) * query[i];
+            }
+        } else {
+            float[] slab = slabs[row / rowsPerSlab];
+            for (int i = 0; i < dimension; i++) {
+                dotProduct += slab[offset + i] * query[i];
+            }
+        }
+        return normalise(dotProduct, norms[row], queryNorm);
+    }
+
+    /**
+     * The row ending a tile that starts at {@code from}: at most {@code maxRows} rows, never crossing a slab.
+     */
+    public int tileEnd(int from, int maxRows) {
+        int slabEnd = (from / rowsPerSlab + 1) * rowsPerSlab;
+        return Math.min(Math.min(from + maxRows, slabEnd), size);
+    }
+
+    /**
+     * Scan-path cosine similarities between every row of the tile {@code [from, to)} (see {@link #tileEnd}) and
+     * every query, written to {@code scores[(row - from) * queries.length + q]}. Each row is read from memory once
+     * for all queries, four queries at a time; off-heap rows and int8 codes are first widened into {@code panel},
+     * which must hold {@link #panelSize} floats.
+     */
+    public void cosineTile(int from, int to, float[][] queries, double[] queryNorms, float[] panel, float[] scores) {
+        int rows = to - from;
+        int offset = (from % rowsPerSlab) * dimension;
+        float[] source;
+        if (isQuantized()) {
+            byte[] codes = codeSlabs[from / rowsPerSlab];
+            for (int i = 0; i < rows * dimension; i++) {
+                panel[i] = codes[offset + i];
+            }
+            source = panel;
+            offset = 0;
+        } else if (offHeap) {
+            FloatBuffer slab = offHeapSlabs[from / rowsPerSlab].duplicate();
+            slab.position(offset);
+            slab.get(panel, 0, rows * dimension);
+            source = panel;
+            offset = 0;
+        } else {
+            source = slabs[from / rowsPerSlab];
+        }
+
+        int queryCount = queries.length;
+        for (int r = 0; r < rows; r++) {
+            int base = offset + r * dimension;
+            int row = from + r;
+            float scale = isQuantized() ? scales[row] : 1.0f;
+            int q = 0;
+            for (; q + 3 < queryCount; q += 4) {
+                float[] q0 = queries[q];
+                float[] q1 = queries[q + 1];
+                float[] q2 = queries[q + 2];
+                float[] q3 = queries[q + 3];
+                float dot0 = 0.0f;
+                float dot1 = 0.0f;
+                float dot2 = 0.0f;
+                float dot3 = 0.0f;
+                for (int i = 0; i < dimension; i++) {
+                    float v = source[base + i];
+                    dot0 += v * q0[i];
+                    dot1 += v * q1[i];
+                    dot2 += v * q2[i];
+                    dot3 += v * q3[i];
+                }
+                int cell = r * queryCount + q;
+                scores[cell] = normalise(dot0 * scale, norms[row], queryNorms[q]);
+                scores[cell + 1] = normalise(dot1 * scale, norms[row], queryNorms[q + 1]);
+                scores[cell + 2] = normalise(dot2 * scale, norms[row], queryNorms[q + 2]);
+                scores[cell + 3] = normalise(dot3 * scale, norms[row], queryNorms[q + 3]);
+            }
+            for (; q < queryCount; q++) {
+                float dotProduct = dot(source, base, queries[q], dimension);
+                scores[r * queryCount + q] = normalise(dotProduct * scale, norms[row], queryNorms[q]);
+            }
+        }
+    }
+
+    /**
+     * Floats the {@code panel} of {@link #cosineTile} must hold for a tile of {@code rows}; none when the rows are
+     * on-heap floats, which are read in place.
+     */
+    public int panelSize(int rows) {
+        return offHeap ? rows * dimension : 0;
+    }
+
+    public float cosine(int rowA, int rowB) {
+        int offsetA = (rowA % rowsPerSlab) * dimension;
+        int offsetB = (rowB % rowsPerSlab) * dimension;
+        if (isQuantized()) {
+            byte[] codesA = codeSlabs[rowA / rowsPerSlab];
+            byte[] codesB = codeSlabs[rowB / rowsPerSlab];
+            int dotProduct = 0;
+            for (int i = 0; i < dimension; i++) {
+                dotProduct += codesA[offsetA + i] * codesB[offsetB + i];
+            }
+            return normalise((double) dotProduct * scales[rowA] * scales[rowB], norms[rowA], norms[rowB]);
+        }
+
+        double dotProduct = 0.0;
+        if (offHeap) {
+            FloatBuffer slabA = offHeapSlabs[rowA / rowsPerSlab];
+            FloatBuffer slabB = offHeapSlabs[rowB / rowsPerSlab];
+            for (int i = 0; i < dimension; i++) {
+                dotProduct += slabA.get(offsetA + i) * slabB.get(offsetB + i);
+            }
+        } else {
+            float[] slabA = slabs[rowA / rowsPerSlab];
+            float[] slabB = slabs[rowB / rowsPerSlab];
+            for (int i = 0; i < dimension; i++) {
+                dotProduct += slabA[offsetA + i] * slabB[offsetB + i];
+            }
+        }
+        return normalise(dotProduct, norms[rowA], norms[rowB]);
+    }
+
+    public void copy(int row, float[] target) {
+        int offset = (row % rowsPerSlab) * dimension;
+        if (offHeap) {
+            FloatBuffer slab = offHeapSlabs[row / rowsPerSlab];
+            for (int i = 0; i < dimension; i++) {
+                target[i] = slab.get(offset + i);
+            }
+        } else {
+            System.arraycopy(slabs[row / rowsPerSlab], offset, target, 0, dimension);
+        }
+    }
+
+    public float norm(int row) {
+        return norms[row];
+    }
+
+    public float scale(int row) {
+        return scales[row];
+    }
+
+    public void copyCodes(int row, byte[] target) {
+        System.arraycopy(codeSlabs[row / rowsPerSlab], (row % rowsPerSlab) * dimension, target, 0, dimension);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public Quantization quantization() {
+        return quantization;
+    }
+
+    public boolean isQuantized() {
+        return quantization == Quantization.INT8;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Bytes the stored rows take on the Java heap: float vectors, or int8 codes plus scales, and the per-row norms.
+     * Room allocated in the last slab for rows not yet appended is left out.
+     */
+    public long memoryBytes() {
+        long rows = size;
+        long perRow = isQuantized() ? dimension + Float.BYTES : 0L;
+        if (!offHeap) {
+            perRow += (long) dimension * Float.BYTES;
+        }
+        return rows * (perRow + Float.BYTES);
+    }
+
+    /**
+     * Bytes the stored rows take outside the Java heap: direct buffers, or the mapped vector region of a sealed
+     * segment.
+     */
+    public long offHeapBytes() {
+        return offHeap ? (long) size * dimension * Float.BYTES : 0L;
+    }
+
+    /**
+     * What the same rows would occupy on heap as plain float vectors.
+     */
+    public long fullPrecisionBytes() {
+        return (long) size * (dimension + 1) * Float.BYTES;
+    }
+
+    public static double norm(float[] vector) {
+        double sum = 0.0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        return Math.sqrt(sum);
+    }
+
+    private void addSlab() {
+        int slabCount = norms.length / rowsPerSlab + 1;
+        if (isQuantized()) {
+            offHeapSlabs = Arrays.copyOf(offHeapSlabs, slabCount);
+            offHeapSlabs[slabCount - 1] = ByteBuffer.allocateDirect(rowsPerSlab * dimension * Float.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+            codeSlabs = Arrays.copyOf(codeSlabs, slabCount);
+            codeSlabs[slabCount - 1] = new byte[rowsPerSlab * dimension];
+            scales = Arrays.copyOf(scales, slabCount * rowsPerSlab);
+        } else {
+            slabs = Arrays.copyOf(slabs, slabCount);
+            slabs[slabCount - 1] = new float[rowsPerSlab * dimension];
+        }
+        norms = Arrays.copyOf(norms, slabCount * rowsPerSlab);
+    }
+
+    // Symmetric per-row scalar quantization: the largest magnitude maps to 127
+    private float encode(float[] vector, byte[] codes, int offset) {
+        float maxAbs = 0.0f;
+        for (float v : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        if (maxAbs == 0.0f) {
+            return 0.0f;
+        }
+        float scale = maxAbs / 127.0f;
+        for (int i = 0; i < dimension; i++) {
+            codes[offset + i] = (byte) Math.round(vector[i] / scale);
+        }
+        return scale;
+    }
+
+    // Four independent sums so consecutive multiply-adds do not wait on each other
+    private static float dot(float[] vectors, int offset, float[] query, int length) {
+        float sum0 = 0.0f;
+        float sum1 = 0.0f;
+        float sum2 = 0.0f;
+        float sum3 = 0.0f;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            sum0 += vectors[offset + i] * query[i];
+            sum1 += vectors[offset + i + 1] * query[i + 1];
+            sum2 += vectors[offset + i + 2] * query[i + 2];
+            sum3 += vectors[offset + i + 3] * query[i + 3];
+        }
+        for (; i < length; i++) {
+            sum0 += vectors[offset + i] * query[i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    private static float normalise(double dotProduct, double normA, double normB) {
+        if (normA == 0.0 || normB == 0.0) {
+            return 0.0f;
+        }
+        return (float) (dotProduct / (normA * normB));
+    }
+}
@@ -0,0 +1,1310 @@
+package com.example.aidocumentsearch.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A named set of chunk vectors organised as a list of immutable segments.
+ *
+ * <p>Readers take the current {@link Snapshot} from a volatile field and search it without any locking.
+ * Each {@link #put} builds its own private segment (embedding-sized work: HNSW linking, log writes) in parallel
+ * with other writers, and only the final publish step, which swaps in a new snapshot and updates the id map,
+ * is serialised.
+ *
+ * <p>When opened on a directory the collection is durable. Every segment's rows are appended to its own
+ * write-ahead log and synced before it is published; {@link #checkpoint} writes unflushed segments to immutable
+ * segment files and records them in {@code MANIFEST}. On startup the manifest's segments are memory-mapped
+ * and any remaining logs are replayed, so nothing has to be extracted or embedded again.
+ *
+ * <p>Segments are partitioned by document: each holds the chunks of one file, and a search restricted to some files
+ * only visits their partitions. A new version of a stored document is written privately through {@link #beginDocument}
+ * and replaces the previous partition in one step when committed, while a document's first upload becomes searchable
+ * batch by batch; deleting a document drops its partition the same way. The partitions' segment ids are recorded in
+ * {@code LIVE}, whose atomic rewrite is the commit point, and replaced segments are left as tombstones until
+ * {@link #compact} removes their files. Compaction also merges a document's small segments and drops rows superseded
+ * within it, off the query path.
+ *
+ * <p>A collection can be tagged with the embedding model that produced its vectors ({@link #bindEmbeddingModel}).
+ * The tag is stored next to the manifest, and opening the collection with a different model is refused, so
+ * vectors from two models never end up in the same space.
+ */
+public class VectorCollection implements VectorStore {
+
+    private static final Logger log = LoggerFactory.getLogger(VectorCollection.class);
+
+    public enum SearchMode {
+        // Exact scan below the configured threshold, HNSW above it
+        AUTO,
+        EXACT,
+        APPROXIMATE,
+        // Brute force over full-precision vectors, the reference for recall measurements
+        FULL_PRECISION
+    }
+
+    private static final String MANIFEST = "MANIFEST";
+    private static final String LIVE = "LIVE";
+    private static final String EMBEDDING_TAG = "EMBEDDING";
+    private static final Pattern SEGMENT_FILE = Pattern.compile("segment-(\\d+)\\.(seg|wal)");
+    // Shortest run of rows an exact scan is split into; below it the fork-join overhead outweighs the scan
+    static final int MIN_SCAN_PARTITION_ROWS = 512;
+
+    private final Path directory;
+    private final CollectionOptions options;
+    private final int scanPartitionRows;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private final Map<String, RowRef> rowsById = new ConcurrentHashMap<>();
+    private final AtomicLong nextSegmentId = new AtomicLong(1);
+    private final AtomicInteger dimension = new AtomicInteger();
+    private volatile String embeddingModel;
+    private final LexicalIndex lexical = new LexicalIndex();
+
+    // Guards snapshot replacement, the id map's replace-and-delete step, the unflushed log registry and tombstones
+    private final Object publishLock = new Object();
+    // Serialises checkpoints, compaction and clear, which all rewrite segment files
+    private final Object checkpointLock = new Object();
+    private final Map<Segment, WriteAheadLog> unflushed = new IdentityHashMap<>();
+    private final List<Tombstone> tombstones = new ArrayList<>();
+    // Versions publishing a new document batch by batch; replacing or deleting the document takes it over
+    private final Map<String, Version> firstUploads = new HashMap<>();
+
+    private VectorCollection(Path directory, CollectionOptions options) {
+        this.directory = directory;
+        this.options = options;
+        this.scanPartitionRows = scanPartitionRows(options.getExactSearchThreshold(),
+                ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Rows per run of a parallel exact scan: a scan as large as the exact-search threshold, the largest that AUTO
+     * searches scan, gets one run per core.
+     */
+    static int scanPartitionRows(int exactSearchThreshold, int parallelism) {
+        return Math.max(MIN_SCAN_PARTITION_ROWS, exactSearchThreshold / Math.max(1, parallelism));
+    }
+
+    public static VectorCollection inMemory(CollectionOptions options) {
+        return new VectorCollection(null, options);
+    }
+
+    public static VectorCollection open(Path directory, CollectionOptions options) throws IOException {
+        VectorCollection collection = new VectorCollection(directory, options);
+        collection.recover();
+        return collection;
+    }
+
+    /**
+     * Tags the collection with the model its vectors come from. Untagged collections adopt the tag if their
+     * existing vectors have the model's dimension; tagged ones must match it exactly.
+     */
+    public void bindEmbeddingModel(String model, int vectorDimension) throws IOException {
+        synchronized (publishLock) {
+            String tagged = embeddingModel;
+            if (tagged == null && directory != null && Files.exists(directory.resolve(EMBEDDING_TAG))) {
+                List<String> lines = Files.readAllLines(directory.resolve(EMBEDDING_TAG), StandardCharsets.UTF_8);
+                tagged = lines.get(0).trim();
+                claimDimension(Integer.parseInt(lines.get(1).trim()));
+            }
+            if (tagged != null && !tagged.equals(model)) {
+                throw new IllegalStateException("Collection " + directory + " holds " + tagged + " embeddings ("
+                        + dimension.get() + " dimensions) and cannot store " + model + " embeddings ("
+                        + vectorDimension + " dimensions); use another collection name or clear it first");
+            }
+            claimDimension(vectorDimension);
+            if (tagged == null && directory != null) {
+                replaceFile(EMBEDDING_TAG, model + "\n" + vectorDimension + "\n");
+            }
+            embeddingModel = model;
+        }
+    }
+
+    /**
+     * Adds rows to their documents' partitions, visible as soon as this returns. A row whose chunk id is already
+     * stored replaces it.
+     */
+    public void put(List<ChunkRecord> records, List<float[]> vectors) throws IOException {
+        List<Pending> built = build(records, vectors);
+        for (int i = 0; i < built.size(); i++) {
+            try {
+                publish(built.get(i));
+            } catch (IOException | RuntimeException e) {
+                discard(built.subList(i, built.size()));
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Starts a new version of {@code filename}. A document stored before keeps serving its previous version until
+     * {@link DocumentVersion#commit}, which replaces every row at once. A document not stored yet has nothing to
+     * keep serving, so its batches are published as they arrive; a crash or an abort part way leaves the rows
+     * stored so far searchable until the upload is repeated or aborted.
+     */
+    @Override
+    public DocumentVersion beginDocument(String filename) {
+        synchronized (publishLock) {
+            if (snapshot.partitions.containsKey(filename) || firstUploads.containsKey(filename)) {
+                return new Version(filename, false);
+            }
+            Version version = new Version(filename, true);
+            firstUploads.put(filename, version);
+            return version;
+        }
+    }
+
+    /**
+     * Removes a document from searches straight away; its segments are reclaimed by the next {@link #compact}.
+     *
+     * @return false if no such document is stored
+     */
+    @Override
+    public boolean deleteDocument(String filename) throws IOException {
+        return replacePartition(filename, Collections.emptyList());
+    }
+
+    public List<SearchHit> search(float[] query, int topK, SearchMode mode) {
+        return search(query, topK, mode, null);
+    }
+
+    // Searching memory and mapped files is not worth a thread hop, so the future is already complete
+    @Override
+    public CompletableFuture<List<SearchHit>> searchAsync(float[] query, int topK, Collection<String> filenames) {
+        return CompletableFuture.completedFuture(search(query, topK, SearchMode.AUTO, filenames));
+    }
+
+    /**
+     * Searches only the partitions of {@code filenames}, or every partition when it is {@code null}.
+     */
+    public List<SearchHit> search(float[] query, int topK, SearchMode mode, Collection<String> filenames) {
+        checkQueryDimension(query);
+        Snapshot current = snapshot;
+        List<SearchHit> hits = new ArrayList<>();
+        List<Segment> segments = filenames == null ? current.segments : current.select(filenames);
+        if (segments.isEmpty() || topK <= 0) {
+            return hits;
+        }
+        if (mode == SearchMode.AUTO) {
+            int rows = filenames == null ? rowsById.size() : totalRows(segments);
+            mode = rows < options.getExactSearchThreshold() ? SearchMode.EXACT : SearchMode.APPROXIMATE;
+        }
+
+        double queryNorm = VectorArena.norm(query);
+        if (mode == SearchMode.EXACT && totalRows(segments) > scanPartitionRows
+                && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            return parallelScan(segments, query, queryNorm, topK);
+        }
+        ScoredHeap merged = ScoredHeap.topK(topK);
+        List<ChunkRecord> candidates = new ArrayList<>();
+        for (Segment segment : segments) {
+            ScoredHeap local;
+            if (mode == SearchMode.EXACT) {
+                local = segment.scan(query, queryNorm, topK, options.getRescoreFactor());
+            } else if (mode == SearchMode.APPROXIMATE) {
+                local = segment.searchGraph(query, queryNorm, topK, options.getEfSearch(),
+                        options.getRescoreFactor());
+            } else {
+                local = segment.fullPrecisionScan(query, queryNorm, topK);
+            }
+            collect(segment, local, merged, candidates, topK);
+        }
+
+        return ordered(merged, candidates);
+    }
+
+    /**
+     * Exact search on the common fork-join pool: the segments are cut into contiguous row runs, workers scan the
+     * runs into one bounded top-k heap each, and the heaps are merged at the end.
+     */
+    private List<SearchHit> parallelScan(List<Segment> segments, float[] query, double queryNorm, int topK) {
+        List<ScanPartition> partitions = new ArrayList<>();
+        for (Segment segment : segments) {
+            for (int from = 0; from < segment.size(); from += scanPartitionRows) {
+                partitions.add(new ScanPartition(segment, from, Math.min(segment.size(), from + scanPartitionRows)));
+            }
+        }
+        int[] rowsBefore = new int[partitions.size() + 1];
+        for (int i = 0; i < partitions.size(); i++) {
+            rowsBefore[i + 1] = rowsBefore[i] + partitions.get(i).to - partitions.get(i).from;
+        }
+        ForkJoinPool.commonPool().invoke(new ScanTask(partitions, rowsBefore, 0, partitions.size(), scanPartitionRows,
+                query, queryNorm, topK, options.getRescoreFactor()));
+
+        ScoredHeap merged = ScoredHeap.topK(topK);
+        List<ChunkRecord> candidates = new ArrayList<>();
+        for (ScanPartition partition : partitions) {
+            collect(partition.segment, partition.best, merged, candidates, topK);
+        }
+        return ordered(merged, candidates);
+    }
+
+    // Empties a segment's heap of rows into the merged heap of candidate indexes
+    private static void collect(Segment segment, ScoredHeap local, ScoredHeap merged, List<ChunkRecord> candidates,
+                                int topK) {
+        while (!local.isEmpty()) {
+            candidates.add(segment.record(local.topRow()));
+            merged.offer(candidates.size() - 1, local.topScore(), topK);
+            local.pop();
+        }
+    }
+
+    // One tiled pass serves every query, so like searchAsync the future is already complete
+    @Override
+    public CompletableFuture<List<List<SearchHit>>> searchBatchAsync(List<float[]> queries, int topK,
+                                                                      Collection<String> filenames) {
+        return CompletableFuture.completedFuture(searchBatch(queries, topK, filenames));
+    }
+
+    /**
+     * Searches for every query in one exact pass over the selected partitions, scoring a tile of rows against all
+     * queries before moving to the next tile. Above the exact-search threshold a scan costs more than a graph walk
+     * per query, so each query then takes the HNSW path as {@link #search} would.
+     */
+    public List<List<SearchHit>> searchBatch(List<float[]> queries, int topK, Collection<String> filenames) {
+        for (float[] query : queries) {
+            checkQueryDimension(query);
+        }
+        Snapshot current = snapshot;
+        List<List<SearchHit>> results = new ArrayList<>(queries.size());
+        List<Segment> segments = filenames == null ? current.segments : current.select(filenames);
+        if (segments.isEmpty() || topK <= 0) {
+            for (int q = 0; q < queries.size(); q++) {
+                results.add(new ArrayList<>());
+            }
+            return results;
+        }
+        int rows = filenames == null ? rowsById.size() : totalRows(segments);
+        if (rows >= options.getExactSearchThreshold()) {
+            for (float[] query : queries) {
+                results.add(search(query, topK, SearchMode.APPROXIMATE, filenames));
+            }
+            return results;
+        }
+
+        float[][] matrix = queries.toArray(new float[0][]);
+        double[] queryNorms = new double[matrix.length];
+        ScoredHeap[] merged = new ScoredHeap[matrix.length];
+        for (int q = 0; q < matrix.length; q++) {
+            queryNorms[q] = VectorArena.norm(matrix[q]);
+            merged[q] = ScoredHeap.topK(topK);
+        }
+        List<ChunkRecord> candidates = new ArrayList<>();
+        for (Segment segment : segments) {
+            ScoredHeap[] local = segment.scanBatch(matrix, queryNorms, topK, options.getRescoreFactor());
+            for (int q = 0; q < matrix.length; q++) {
+                collect(segment, local[q], merged[q], candidates, topK);
+            }
+        }
+        for (ScoredHeap best : merged) {
+            results.add(ordered(best, candidates));
+        }
+        return results;
+    }
+
+    // Empties a merged heap of candidate indexes into hits, best first
+    private static List<SearchHit> ordered(ScoredHeap merged, List<ChunkRecord> candidates) {
+        SearchHit[] ordered = new SearchHit[merged.size()];
+        for (int i = ordered.length - 1; i >= 0; i--) {
+            ordered[i] = new SearchHit(candidates.get(merged.topRow()), merged.topScore());
+            merged.pop();
+        }
+        List<SearchHit> hits = new ArrayList<>(ordered.length);
+        Collections.addAll(hits, ordered);
+        return hits;
+    }
+
+    /**
+     * BM25 search over the text of live rows; scores are BM25 scores, not similarities.
+     */
+    public List<SearchHit> searchLexical(String query, int topK) {
+        return searchLexical(query, topK, null);
+    }
+
+    @Override
+    public List<SearchHit> searchLexical(String query, int topK, Collection<String> filenames) {
+        List<SearchHit> hits = new ArrayList<>();
+        Set<String> documents = filenames == null ? null : new HashSet<>(filenames);
+        List<LexicalIndex.Hit> matches = documents == null ? lexical.search(query, topK)
+                : lexical.search(query, topK, chunkId -> {
+                    RowRef ref = rowsById.get(chunkId);
+                    return ref != null && documents.contains(ref.segment.record(ref.row).getFilename());
+                });
+        for (LexicalIndex.Hit hit : matches) {
+            RowRef ref = rowsById.get(hit.getChunkId());
+            if (ref != null && ref.segment.isLive(ref.row)) {
+                hits.add(new SearchHit(ref.segment.record(ref.row), hit.getScore()));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Copies the vectors of up to {@code count} randomly chosen live rows, e.g. to use as benchmark queries.
+     */
+    public List<float[]> sampleVectors(int count, long seed) {
+        List<float[]> samples = new ArrayList<>();
+        List<RowRef> live = new ArrayList<>(rowsById.values());
+        if (live.isEmpty()) {
+            return samples;
+        }
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            RowRef ref = live.get(random.nextInt(live.size()));
+            float[] vector = new float[ref.segment.getVectors().dimension()];
+            ref.segment.getVectors().copy(ref.row, vector);
+            samples.add(vector);
+        }
+        return samples;
+    }
+
+    /**
+     * Writes every unflushed segment to a segment file and drops its write-ahead log; readers and writers keep
+     * running while the files are written. No-op for in-memory collections.
+     */
+    public void checkpoint() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        synchronized (checkpointLock) {
+            List<Segment> pending;
+            synchronized (publishLock) {
+                pending = new ArrayList<>(unflushed.keySet());
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            Map<Segment, Segment> mapped = new IdentityHashMap<>();
+            for (Segment segment : pending) {
+                Path file = segmentPath(segment.getId(), "seg");
+                SegmentFile.write(file, segment);
+                mapped.put(segment, SegmentFile.open(file, segment.getId()));
+            }
+
+            synchronized (publishLock) {
+                Map<String, List<Segment>> partitions = snapshot.copyPartitions();
+                List<WriteAheadLog> flushedLogs = new ArrayList<>();
+                for (List<Segment> segments : partitions.values()) {
+                    for (int i = 0; i < segments.size(); i++) {
+                        Segment original = segments.get(i);
+                        Segment replacement = mapped.remove(original);
+                        if (replacement != null) {
+                            // Swap the heap-resident segment for its memory-mapped twin
+                            replacement.copyDeletions(original);
+                            flushedLogs.add(unflushed.remove(original));
+                            segments.set(i, replacement);
+                            remap(original, replacement);
+                        }
+                    }
+                }
+                snapshot = new Snapshot(partitions);
+                writeManifest(snapshot.segments);
+                for (WriteAheadLog log : flushedLogs) {
+                    log.delete();
+                }
+            }
+
+            // Segments cleared or replaced while their files were being written
+            for (Segment orphan : mapped.values()) {
+                Files.deleteIfExists(segmentPath(orphan.getId(), "seg"));
+            }
+        }
+    }
+
+    @Override
+    public void clear() throws IOException {
+        synchronized (checkpointLock) {
+            List<Segment> dropped;
+            synchronized (publishLock) {
+                dropped = new ArrayList<>(snapshot.segments);
+                if (directory != null) {
+                    writeLive(Collections.emptyList());
+                }
+                snapshot = Snapshot.EMPTY;
+                firstUploads.clear();
+                rowsById.clear();
+                lexical.clear();
+                // A tagged collection keeps its model, and with it the dimension
+                if (embeddingModel == null) {
+                    dimension.set(0);
+                }
+                for (Tombstone tombstone : tombstones) {
+                    dropped.add(tombstone.segment);
+                    if (tombstone.log != null) {
+                        tombstone.log.delete();
+                    }
+                }
+                tombstones.clear();
+                if (directory != null) {
+                    for (WriteAheadLog log : unflushed.values()) {
+                        log.delete();
+                    }
+                    writeManifest(Collections.emptyList());
+                }
+                unflushed.clear();
+            }
+            if (directory != null) {
+                for (Segment segment : dropped) {
+                    Files.deleteIfExists(segmentPath(segment.getId(), "seg"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the files of tombstoned segments, then rewrites each document whose partition has more than
+     * {@code maxSegmentsPerDocument} segments or more than {@code maxDeletedRatio} of its rows superseded, merging
+     * its live rows into as few segments as possible. Searches keep running on the previous snapshot meanwhile;
+     * a document written again during its rewrite keeps the newer rows.
+     *
+     * @return the number of segments removed
+     */
+    public int compact(int maxSegmentsPerDocument, double maxDeletedRatio) throws IOException {
+        synchronized (checkpointLock) {
+            int removed = reclaimTombstones();
+            for (Map.Entry<String, List<Segment>> partition : snapshot.partitions.entrySet()) {
+                List<Segment> segments = partition.getValue();
+                int rows = totalRows(segments);
+                int live = 0;
+                for (Segment segment : segments) {
+                    live += segment.liveCount();
+                }
+                boolean fragmented = segments.size() > Math.max(1, maxSegmentsPerDocument)
+                        && rows <= maxSegmentRows(dimension.get()) * (long) (segments.size() - 1);
+                boolean sparse = rows > 0 && rows - live > maxDeletedRatio * rows;
+                if (live > 0 && (fragmented || sparse)) {
+                    removed += rewrite(partition.getKey(), segments);
+                }
+            }
+            return removed;
+        }
+    }
+
+    @Override
+    public int size() {
+        return rowsById.size();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    public int documentCount() {
+        return snapshot.partitions.size();
+    }
+
+    public int tombstoneCount() {
+        synchronized (publishLock) {
+            return tombstones.size();
+        }
+    }
+
+    public int dimension() {
+        return dimension.get();
+    }
+
+    public String embeddingModel() {
+        return embeddingModel;
+    }
+
+    public int segmentCount() {
+        return snapshot.segments.size();
+    }
+
+    public long heapBytes() {
+        return sumBytes(VectorArena::memoryBytes);
+    }
+
+    public long offHeapBytes() {
+        return sumBytes(VectorArena::offHeapBytes);
+    }
+
+    public long fullPrecisionBytes() {
+        return sumBytes(VectorArena::fullPrecisionBytes);
+    }
+
+    public int lexicalTermCount() {
+        return lexical.termCount();
+    }
+
+    public long lexicalBytes() {
+        return lexical.memoryBytes();
+    }
+
+    public CollectionOptions getOptions() {
+        return options;
+    }
+
+    @Override
+    public void close() throws IOException {
+        checkpoint();
+    }
+
+    // Builds private segments from a batch, one document per segment, logged and synced when durable
+    private List<Pending> build(List<ChunkRecord> records, List<float[]> vectors) throws IOException {
+        if (records.size() != vectors.size()) {
+            throw new IllegalArgumentException("Expected one vector per record");
+        }
+        List<Pending> built = new ArrayList<>();
+        if (records.isEmpty()) {
+            return built;
+        }
+        int vectorDimension = vectors.get(0).length;
+        claimDimension(vectorDimension);
+
+        Map<String, List<Integer>> rowsByDocument = new LinkedHashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            rowsByDocument.computeIfAbsent(records.get(i).getFilename(), f -> new ArrayList<>()).add(i);
+        }
+        int maxRows = maxSegmentRows(vectorDimension);
+        try {
+            for (List<Integer> rows : rowsByDocument.values()) {
+                for (int from = 0; from < rows.size(); from += maxRows) {
+                    List<Integer> part = rows.subList(from, Math.min(rows.size(), from + maxRows));
+                    built.add(buildSegment(records, vectors, part, vectorDimension));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            discard(built);
+            throw e;
+        }
+        return built;
+    }
+
+    private Pending buildSegment(List<ChunkRecord> records, List<float[]> vectors, List<Integer> rows,
+                                 int vectorDimension) throws IOException {
+        Segment segment = Segment.create(nextSegmentId.getAndIncrement(), vectorDimension, options);
+        WriteAheadLog log = directory == null ? null : WriteAheadLog.open(segmentPath(segment.getId(), "wal"));
+        List<ChunkRecord> batch = new ArrayList<>(rows.size());
+        try {
+            for (int i : rows) {
+                if (log != null) {
+                    log.append(records.get(i), vectors.get(i));
+                }
+                segment.append(records.get(i), vectors.get(i));
+                batch.add(records.get(i));
+            }
+            if (log != null) {
+                log.sync();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (log != null) {
+                log.delete();
+            }
+            throw e;
+        }
+        segment.freeze();
+        return new Pending(segment, log, analyze(batch));
+    }
+
+    private static void discard(List<Pending> pending) throws IOException {
+        for (Pending built : pending) {
+            if (built.log != null) {
+                built.log.delete();
+            }
+        }
+    }
+
+    // Appends to the document's partition; recording the segment in LIVE is what makes it survive a restart
+    private void publish(Pending pending) throws IOException {
+        synchronized (publishLock) {
+            if (directory != null) {
+                List<Segment> live = new ArrayList<>(snapshot.segments);
+                live.add(pending.segment);
+                writeLive(live);
+            }
+            if (pending.log != null) {
+                unflushed.put(pending.segment, pending.log);
+            }
+            append(pending.segment, pending.documents);
+        }
+    }
+
+    // Caller holds publishLock (or is still single-threaded during recovery); documents were tokenised beforehand
+    private void append(Segment segment, List<LexicalIndex.Document> documents) {
+        Map<String, List<Segment>> partitions = snapshot.copyPartitions();
+        partitions.computeIfAbsent(documentOf(segment), d -> new ArrayList<>()).add(segment);
+        snapshot = new Snapshot(partitions);
+        register(segment, documents);
+    }
+
+    // Caller holds publishLock
+    private void register(Segment segment, List<LexicalIndex.Document> documents) {
+        lexical.addAll(documents);
+
+        // A re-uploaded chunk replaces the previous row, which stays on disk but is no longer reachable
+        for (int row = 0; row < segment.size(); row++) {
+            RowRef previous = rowsById.put(segment.record(row).getId(), new RowRef(segment, row));
+            if (previous != null) {
+                previous.segment.delete(previous.row);
+            }
+        }
+    }
+
+    // Swaps a document's whole partition for the given segments (none to delete it) and tombstones the old ones
+    private boolean replacePartition(String filename, List<Pending> pending) throws IOException {
+        synchronized (publishLock) {
+            firstUploads.remove(filename);
+            Map<String, List<Segment>> partitions = snapshot.copyPartitions();
+            List<Segment> previous = partitions.remove(filename);
+            List<Segment> segments = new ArrayList<>();
+            for (Pending built : pending) {
+                segments.add(built.segment);
+            }
+            if (!segments.isEmpty()) {
+                partitions.put(filename, segments);
+            }
+            if (previous == null && segments.isEmpty()) {
+                return false;
+            }
+            if (directory != null) {
+                writeLive(new Snapshot(partitions).segments);
+            }
+
+            snapshot = new Snapshot(partitions);
+            for (Pending built : pending) {
+                if (built.log != null) {
+                    unflushed.put(built.segment, built.log);
+                }
+                register(built.segment, built.documents);
+            }
+            if (previous != null) {
+                for (Segment segment : previous) {
+                    // Rows the new version did not write again disappear with the old version
+                    for (int row = 0; row < segment.size(); row++) {
+                        String id = segment.record(row).getId();
+                        if (rowsById.remove(id, new RowRef(segment, row))) {
+                            lexical.remove(id);
+                        }
+                    }
+                    tombstones.add(new Tombstone(segment, unflushed.remove(segment)));
+                }
+            }
+            return true;
+        }
+    }
+
+    // Caller holds checkpointLock. Tombstoned segments are already out of LIVE; once the manifest stops listing
+    // them too, their files can go
+    private int reclaimTombstones() throws IOException {
+        List<Tombstone> reclaimed;
+        synchronized (publishLock) {
+            reclaimed = new ArrayList<>(tombstones);
+            tombstones.clear();
+            if (directory != null && !reclaimed.isEmpty()) {
+                writeManifest(snapshot.segments);
+            }
+        }
+        for (Tombstone tombstone : reclaimed) {
+            if (tombstone.log != null) {
+                tombstone.log.delete();
+            }
+            if (directory != null) {
+                Files.deleteIfExists(segmentPath(tombstone.segment.getId(), "seg"));
+            }
+        }
+        return reclaimed.size();
+    }
+
+    // Caller holds checkpointLock. Copies the live rows of a partition into new segments (mapped from disk when
+    // durable) and swaps them in, unless the document was replaced or deleted in the meantime
+    private int rewrite(String filename, List<Segment> original) throws IOException {
+        List<ChunkRecord> records = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        List<RowRef> sources = new ArrayList<>();
+        for (Segment segment : original) {
+            for (int row = 0; row < segment.size(); row++) {
+                if (segment.isLive(row)) {
+                    float[] vector = new float[segment.getVectors().dimension()];
+                    segment.getVectors().copy(row, vector);
+                    records.add(segment.record(row));
+                    vectors.add(vector);
+                    sources.add(new RowRef(segment, row));
+                }
+            }
+        }
+
+        List<Segment> compacted = new ArrayList<>();
+        int maxRows = maxSegmentRows(vectors.get(0).length);
+        for (int from = 0; from < records.size(); from += maxRows) {
+            Segment segment = Segment.create(nextSegmentId.getAndIncrement(), vectors.get(0).length, options);
+            for (int i = from; i < Math.min(records.size(), from + maxRows); i++) {
+                segment.append(records.get(i), vectors.get(i));
+            }
+            segment.freeze();
+            if (directory != null) {
+                Path file = segmentPath(segment.getId(), "seg");
+                SegmentFile.write(file, segment);
+                segment = SegmentFile.open(file, segment.getId());
+            }
+            compacted.add(segment);
+        }
+
+        List<WriteAheadLog> replacedLogs = new ArrayList<>();
+        synchronized (publishLock) {
+            List<Segment> current = snapshot.partitions.get(filename);
+            if (current == null || current.size() < original.size()
+                    || !sameSegments(current.subList(0, original.size()), original)) {
+                if (directory != null) {
+                    for (Segment segment : compacted) {
+                        Files.deleteIfExists(segmentPath(segment.getId(), "seg"));
+                    }
+                }
+                return 0;
+            }
+            Map<String, List<Segment>> partitions = snapshot.copyPartitions();
+            List<Segment> segments = new ArrayList<>(compacted);
+            // Segments appended to the document while it was being rewritten stay after the compacted ones
+            segments.addAll(current.subList(original.size(), current.size()));
+            partitions.put(filename, segments);
+            Snapshot next = new Snapshot(partitions);
+            if (directory != null) {
+                // Listed alongside the old segments first, so a crash on either side of the LIVE rewrite recovers
+                List<Segment> both = new ArrayList<>(snapshot.segments);
+                both.addAll(compacted);
+                writeManifest(both);
+                writeLive(next.segments);
+            }
+
+            snapshot = next;
+            int offset = 0;
+            for (Segment segment : compacted) {
+                for (int row = 0; row < segment.size(); row++) {
+                    RowRef source = sources.get(offset + row);
+                    if (!rowsById.replace(records.get(offset + row).getId(), source, new RowRef(segment, row))) {
+                        // Superseded after it was copied
+                        segment.delete(row);
+                    }
+                }
+                offset += segment.size();
+            }
+            for (Segment segment : original) {
+                WriteAheadLog log = unflushed.remove(segment);
+                if (log != null) {
+                    replacedLogs.add(log);
+                }
+            }
+            if (directory != null) {
+                writeManifest(snapshot.segments);
+            }
+        }
+
+        for (WriteAheadLog log : replacedLogs) {
+            log.delete();
+        }
+        if (directory != null) {
+            for (Segment segment : original) {
+                Files.deleteIfExists(segmentPath(segment.getId(), "seg"));
+            }
+        }
+        log.info("document compacted file={} segmentsBefore={} segmentsAfter={} rowsDropped={}", filename,
+                original.size(), compacted.size(), totalRows(original) - records.size());
+        return original.size() - compacted.size();
+    }
+
+    private void remap(Segment from, Segment to) {
+        for (int row = 0; row < to.size(); row++) {
+            rowsById.replace(to.record(row).getId(), new RowRef(from, row), new RowRef(to, row));
+        }
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> manifest = readManifest();
+        // Collections written before partitions have no LIVE file; all their segments count as live
+        Set<Long> live = readLive();
+        TreeMap<Long, Path> logs = new TreeMap<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                long id = Long.parseLong(matcher.group(1));
+                nextSegmentId.set(Math.max(nextSegmentId.get(), id + 1));
+                if (manifest.contains(id)) {
+                    // Segment already checkpointed; a leftover log is redundant
+                    if ("wal".equals(matcher.group(2))) {
+                        Files.delete(file);
+                    }
+                } else if ("wal".equals(matcher.group(2))) {
+                    logs.put(id, file);
+                } else {
+                    // Written by a checkpoint that crashed before updating the manifest
+                    Files.delete(file);
+                }
+            }
+        }
+
+        List<Long> unreclaimed = new ArrayList<>();
+        for (long id : manifest) {
+            if (live != null && !live.contains(id)) {
+                // Tombstoned or replaced by compaction, and not yet reclaimed
+                unreclaimed.add(id);
+                continue;
+            }
+            Segment segment = SegmentFile.open(segmentPath(id, "seg"), id);
+            if (segment.size() > 0) {
+                claimDimension(segment.getVectors().dimension());
+            }
+            List<ChunkRecord> records = new ArrayList<>(segment.size());
+            for (int row = 0; row < segment.size(); row++) {
+                records.add(segment.record(row));
+            }
+            append(segment, analyze(records));
+        }
+
+        for (Map.Entry<Long, Path> log : logs.entrySet()) {
+            if (live != null && !live.contains(log.getKey())) {
+                // A version that was never committed, or a tombstoned segment
+                Files.delete(log.getValue());
+                continue;
+            }
+            List<ChunkRecord> records = new ArrayList<>();
+            List<float[]> vectors = new ArrayList<>();
+            WriteAheadLog.replay(log.getValue(), (record, vector) -> {
+                records.add(record);
+                vectors.add(vector);
+            });
+            if (records.isEmpty()) {
+                Files.delete(log.getValue());
+                continue;
+            }
+            claimDimension(vectors.get(0).length);
+            Segment segment = Segment.create(log.getKey(), vectors.get(0).length, options);
+            for (int i = 0; i < records.size(); i++) {
+                segment.append(records.get(i), vectors.get(i));
+            }
+            segment.freeze();
+            unflushed.put(segment, WriteAheadLog.open(log.getValue()));
+            append(segment, analyze(records));
+        }
+        writeLive(snapshot.segments);
+        // The manifest stops listing them before their files go, as when a checkpoint reclaims tombstones
+        writeManifest(snapshot.segments);
+        for (long id : unreclaimed) {
+            Files.deleteIfExists(segmentPath(id, "seg"));
+        }
+        checkpoint();
+    }
+
+    private static List<LexicalIndex.Document> analyze(List<ChunkRecord> records) {
+        List<LexicalIndex.Document> documents = new ArrayList<>(records.size());
+        for (ChunkRecord record : records) {
+            documents.add(LexicalIndex.analyze(record.getId(), record.getText()));
+        }
+        return documents;
+    }
+
+    // The arenas index rows by the query's length, so a shorter query would score a prefix and a longer one fail
+    private void checkQueryDimension(float[] query) {
+        int expected = dimension.get();
+        if (expected != 0 && query.length != expected) {
+            throw new IllegalArgumentException(
+                    "Collection stores vectors of dimension " + expected + " but the query has " + query.length);
+        }
+    }
+
+    private void claimDimension(int vectorDimension) {
+        if (!dimension.compareAndSet(0, vectorDimension) && dimension.get() != vectorDimension) {
+            throw new IllegalArgumentException(
+                    "Collection stores vectors of dimension " + dimension.get() + " but got " + vectorDimension);
+        }
+    }
+
+    private List<Long> readManifest() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        Path manifest = directory.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    ids.add(Long.parseLong(line.trim()));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private Set<Long> readLive() throws IOException {
+        Path file = directory.resolve(LIVE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Set<Long> ids = new HashSet<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                ids.add(Long.parseLong(line.trim()));
+            }
+        }
+        return ids;
+    }
+
+    // Ids of every committed segment, flushed or not; written like the manifest
+    private void writeLive(List<Segment> segments) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (Segment segment : segments) {
+            content.append(segment.getId()).append('\n');
+        }
+        replaceFile(LIVE, content.toString());
+    }
+
+    // Lists flushed segments in publish order
+    private void writeManifest(List<Segment> segments) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (Segment segment : segments) {
+            if (!unflushed.containsKey(segment)) {
+                content.append(segment.getId()).append('\n');
+            }
+        }
+        replaceFile(MANIFEST, content.toString());
+    }
+
+    /**
+     * Written to a synced temporary file and renamed, so a crash leaves either the old or the new content. The
+     * directory is synced after the rename: recovery deletes logs LIVE does not list, so a rename lost to a power
+     * failure would drop rows that were already acknowledged. Syncing the directory also persists the entries of
+     * logs and segment files created before this call.
+     */
+    private void replaceFile(String name, String content) throws IOException {
+        Path temporary = directory.resolve(name + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(name),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    private void syncDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows cannot open a directory as a channel; NTFS makes the rename durable itself
+        }
+    }
+
+    private Path segmentPath(long id, String extension) {
+        return directory.resolve(String.format("segment-%06d.%s", id, extension));
+    }
+
+    // A mapped segment file cannot exceed 2GB of vectors, so cap rows per segment by dimension
+    private int maxSegmentRows(int vectorDimension) {
+        long mappable = (Integer.MAX_VALUE - 1L) / ((long) vectorDimension * Float.BYTES);
+        return (int) Math.min(options.getMaxSegmentRows(), mappable);
+    }
+
+    // Segments hold the rows of a single document, except in collections written before partitions
+    private static String documentOf(Segment segment) {
+        return segment.size() == 0 ? "" : segment.record(0).getFilename();
+    }
+
+    private static int totalRows(List<Segment> segments) {
+        int rows = 0;
+        for (Segment segment : segments) {
+            rows += segment.size();
+        }
+        return rows;
+    }
+
+    private static boolean sameSegments(List<Segment> a, List<Segment> b) {
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return a.size() == b.size();
+    }
+
+    private long sumBytes(ToLongFunction<VectorArena> bytes) {
+        long total = 0;
+        for (Segment segment : snapshot.segments) {
+            total += bytes.applyAsLong(segment.getVectors());
+        }
+        return total;
+    }
+
+    // Segments of a version are logged and built as batches arrive, and published together on commit, or one by
+    // one for a document's first upload
+    private final class Version implements DocumentVersion {
+
+        private final String filename;
+        private final boolean incremental;
+        private final List<Pending> pending = new ArrayList<>();
+        private boolean finished;
+
+        private Version(String filename, boolean incremental) {
+            this.filename = filename;
+            this.incremental = incremental;
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public void put(List<ChunkRecord> records, List<float[]> vectors) throws IOException {
+            for (ChunkRecord record : records) {
+                if (!filename.equals(record.getFilename())) {
+                    throw new IllegalArgumentException("Row " + record.getId() + " belongs to "
+                            + record.getFilename() + ", not " + filename);
+                }
+            }
+            List<Pending> built = build(records, vectors);
+            synchronized (this) {
+                if (!finished && !incremental) {
+                    pending.addAll(built);
+                    return;
+                }
+                if (!finished) {
+                    publishFirstUpload(built);
+                    return;
+                }
+            }
+            discard(built);
+            throw new IllegalStateException("Version of " + filename + " is already committed or aborted");
+        }
+
+        @Override
+        public synchronized void commit() throws IOException {
+            if (finished) {
+                throw new IllegalStateException("Version of " + filename + " is already committed or aborted");
+            }
+            finished = true;
+            if (!incremental) {
+                replacePartition(filename, pending);
+                return;
+            }
+            synchronized (publishLock) {
+                if (!firstUploads.remove(filename, this)) {
+                    throw new IllegalStateException(filename + " was replaced or deleted during its first upload");
+                }
+            }
+        }
+
+        @Override
+        public synchronized void abort() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            discard(pending);
+            pending.clear();
+            if (incremental) {
+                synchronized (publishLock) {
+                    if (firstUploads.remove(filename, this)) {
+                        replacePartition(filename, Collections.emptyList());
+                    }
+                }
+            }
+        }
+
+        // Caller holds this version's monitor
+        private void publishFirstUpload(List<Pending> built) throws IOException {
+            synchronized (publishLock) {
+                if (firstUploads.get(filename) != this) {
+                    discard(built);
+                    throw new IllegalStateException(filename + " was replaced or deleted during its first upload");
+                }
+                for (int i = 0; i < built.size(); i++) {
+                    try {
+                        publish(built.get(i));
+                    } catch (IOException | RuntimeException e) {
+                        discard(built.subList(i, built.size()));
+                        throw e;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Immutable map of document partitions to their published segments, plus all segments in one list; a new
+     * instance replaces the old one on every publish.
+     */
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyMap());
+
+        final Map<String, List<Segment>> partitions;
+        final List<Segment> segments;
+
+        Snapshot(Map<String, List<Segment>> partitions) {
+            Map<String, List<Segment>> frozen = new LinkedHashMap<>();
+            List<Segment> all = new ArrayList<>();
+            for (Map.Entry<String, List<Segment>> partition : partitions.entrySet()) {
+                frozen.put(partition.getKey(), Collections.unmodifiableList(new ArrayList<>(partition.getValue())));
+                all.addAll(partition.getValue());
+            }
+            this.partitions = Collections.unmodifiableMap(frozen);
+            this.segments = Collections.unmodifiableList(all);
+        }
+
+        Map<String, List<Segment>> copyPartitions() {
+            Map<String, List<Segment>> copy = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Segment>> partition : partitions.entrySet()) {
+                copy.put(partition.getKey(), new ArrayList<>(partition.getValue()));
+            }
+            return copy;
+        }
+
+        List<Segment> select(Collection<String> filenames) {
+            List<Segment> selected = new ArrayList<>();
+            for (String filename : new HashSet<>(filenames)) {
+                List<Segment> partition = partitions.get(filename);
+                if (partition != null) {
+                    selected.addAll(partition);
+                }
+            }
+            return selected;
+        }
+    }
+
+    // A frozen segment not yet published, with its synced log and tokenised text
+    private static final class Pending {
+
+        final Segment segment;
+        final WriteAheadLog log;
+        final List<LexicalIndex.Document> documents;
+
+        Pending(Segment segment, WriteAheadLog log, List<LexicalIndex.Document> documents) {
+            this.segment = segment;
+            this.log = log;
+            this.documents = documents;
+        }
+    }
+
+    // A segment out of LIVE whose files wait for compaction
+    private static final class Tombstone {
+
+        final Segment segment;
+        final WriteAheadLog log;
+
+        Tombstone(Segment segment, WriteAheadLog log) {
+            this.segment = segment;
+            this.log = log;
+        }
+    }
+
+    // Rows [from, to) of one segment and, once scanned, their best rows
+    private static final class ScanPartition {
+
+        final Segment segment;
+        final int from;
+        final int to;
+        ScoredHeap best;
+
+        ScanPartition(Segment segment, int from, int to) {
+            this.segment = segment;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    // Halves its range of partitions until it holds a single one or no more rows than one, which it scans in turn
+    private static final class ScanTask extends RecursiveAction {
+
+        private final List<ScanPartition> partitions;
+        private final int[] rowsBefore;
+        private final int first;
+        private final int end;
+        private final int partitionRows;
+        private final float[] query;
+        private final double queryNorm;
+        private final int topK;
+        private final int rescoreFactor;
+
+        ScanTask(List<ScanPartition> partitions, int[] rowsBefore, int first, int end, int partitionRows,
+                 float[] query, double queryNorm, int topK, int rescoreFactor) {
+            this.partitions = partitions;
+            this.rowsBefore = rowsBefore;
+            this.first = first;
+            this.end = end;
+            this.partitionRows = partitionRows;
+            this.query = query;
+            this.queryNorm = queryNorm;
+            this.topK = topK;
+            this.rescoreFactor = rescoreFactor;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - first > 1 && rowsBefore[end] - rowsBefore[first] > partitionRows) {
+                int middle = (first + end) >>> 1;
+                invokeAll(new ScanTask(partitions, rowsBefore, first, middle, partitionRows, query, queryNorm, topK,
+                                rescoreFactor),
+                        new ScanTask(partitions, rowsBefore, middle, end, partitionRows, query, queryNorm, topK,
+                                rescoreFactor));
+                return;
+            }
+            for (int i = first; i < end; i++) {
+                ScanPartition partition = partitions.get(i);
+                partition.best = partition.segment.scan(query, queryNorm, topK, rescoreFactor, partition.from,
+                        partition.to);
+            }
+        }
+    }
+
+    private static final class RowRef {
+
+        final Segment segment;
+        final int row;
+
+        RowRef(Segment segment, int row) {
+            this.segment = segment;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof RowRef)) {
+                return false;
+            }
+            RowRef that = (RowRef) other;
+            return segment == that.segment && row == that.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(segment) * 31 + row;
+        }
+    }
+}
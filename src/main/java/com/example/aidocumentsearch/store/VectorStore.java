@@ -0,0 +1,46 @@
+package com.example.aidocumentsearch.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where chunk vectors live: the embedded {@link VectorCollection} or a {@link QdrantVectorStore} server.
+ * Documents are written as versions and searched with an optional filter on their file names ({@code null}
+ * searches every document).
+ */
+public interface VectorStore extends Closeable {
+
+    DocumentVersion beginDocument(String filename);
+
+    /**
+     * @return false if no such document is stored
+     */
+    boolean deleteDocument(String filename) throws IOException;
+
+    void clear() throws IOException;
+
+    /**
+     * Cosine search; the future completes on the caller's thread for the embedded store and on a transport thread
+     * for remote ones.
+     */
+    CompletableFuture<List<SearchHit>> searchAsync(float[] query, int topK, Collection<String> filenames);
+
+    /**
+     * {@link #searchAsync} for many queries at once, sharing one pass over the store (or one request to it); the
+     * hits of each query are returned in query order.
+     */
+    CompletableFuture<List<List<SearchHit>>> searchBatchAsync(List<float[]> queries, int topK,
+                                                               Collection<String> filenames);
+
+    /**
+     * BM25 search over chunk text; stores without a lexical index return no hits.
+     */
+    List<SearchHit> searchLexical(String query, int topK, Collection<String> filenames);
+
+    int size();
+
+    boolean isAvailable();
+}
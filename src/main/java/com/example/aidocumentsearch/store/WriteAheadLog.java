@@ -0,0 +1,147 @@
+package com.example.aidocumentsearch.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of chunk writes that have not been checkpointed into a segment file yet.
+ * Each entry is {@code [payload length][CRC32 of payload][payload]}, little-endian, where the payload holds the
+ * chunk record and its vector, so replay never needs to call the embedding model again. The record's page number
+ * follows the vector; entries written before pages were recorded simply end after it.
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final int ENTRY_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final Path file;
+    private final FileChannel channel;
+
+    private WriteAheadLog(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    public static WriteAheadLog open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return new WriteAheadLog(file, channel);
+    }
+
+    public void append(ChunkRecord record, float[] vector) throws IOException {
+        byte[] id = record.getId().getBytes(StandardCharsets.UTF_8);
+        byte[] filename = record.getFilename().getBytes(StandardCharsets.UTF_8);
+        byte[] text = record.getText().getBytes(StandardCharsets.UTF_8);
+        int payloadBytes = 6 * Integer.BYTES + id.length + filename.length + text.length
+                + vector.length * Float.BYTES;
+
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_BYTES + payloadBytes).order(ByteOrder.LITTLE_ENDIAN);
+        entry.position(ENTRY_HEADER_BYTES);
+        putBytes(entry, id);
+        putBytes(entry, filename);
+        entry.putInt(record.getChunkIndex());
+        putBytes(entry, text);
+        entry.putInt(vector.length);
+        for (float v : vector) {
+            entry.putFloat(v);
+        }
+        entry.putInt(record.getPage());
+
+        CRC32 crc = new CRC32();
+        crc.update(entry.array(), ENTRY_HEADER_BYTES, payloadBytes);
+        entry.putInt(0, payloadBytes);
+        entry.putInt(Integer.BYTES, (int) crc.getValue());
+        entry.flip();
+        while (entry.hasRemaining()) {
+            channel.write(entry);
+        }
+    }
+
+    /**
+     * Forces everything appended so far to disk; callers sync once per batch rather than per entry.
+     */
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Feeds every intact entry to {@code consumer} in write order and truncates a torn tail left by a crash.
+     */
+    public static int replay(Path file, BiConsumer<ChunkRecord, float[]> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 crc = new CRC32();
+            int entries = 0;
+
+            while (in.remaining() >= ENTRY_HEADER_BYTES) {
+                int start = in.position();
+                int payloadBytes = in.getInt();
+                int checksum = in.getInt();
+                if (payloadBytes <= 0 || payloadBytes > in.remaining()) {
+                    in.position(start);
+                    break;
+                }
+                ByteBuffer payload = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+                payload.limit(payloadBytes);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    in.position(start);
+                    break;
+                }
+                in.position(in.position() + payloadBytes);
+
+                String id = getString(payload);
+                String filename = getString(payload);
+                int chunkIndex = payload.getInt();
+                String text = getString(payload);
+                float[] vector = new float[payload.getInt()];
+                payload.asFloatBuffer().get(vector);
+                payload.position(payload.position() + vector.length * Float.BYTES);
+                int page = payload.remaining() >= Integer.BYTES ? payload.getInt() : 0;
+                consumer.accept(new ChunkRecord(id, filename, chunkIndex, page, text), vector);
+                entries++;
+            }
+
+            if (in.position() < size) {
+                channel.truncate(in.position());
+                channel.force(true);
+            }
+            return entries;
+        }
+    }
+
+    private static void putBytes(ByteBuffer target, byte[] bytes) {
+        target.putInt(bytes.length);
+        target.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
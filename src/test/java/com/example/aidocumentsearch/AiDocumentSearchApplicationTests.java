@@ -1,20 +1,44 @@
 package com.example.aidocumentsearch;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
+@AutoConfigureMockMvc
+// Metrics export is switched off in tests unless asked for
+@AutoConfigureMetrics
 @TestPropertySource(properties = {
     "openai.api.key=test-key",
-    "vector.db=QDRANT"
+    "vector.db=LOCAL",
+    "app.storage.path=target/test-data"
 })
 class AiDocumentSearchApplicationTests {
 
+    @Autowired
+    private MockMvc mvc;
+
     @Test
     void contextLoads() {
         // This test verifies that the Spring context loads successfully
     }
-}
-
 
+    @Test
+    void exportsPipelineMetricsForPrometheus() throws Exception {
+        mvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("rag_stage_seconds_bucket{")))
+                .andExpect(content().string(containsString("stage=\"question_embedding\"")))
+                .andExpect(content().string(containsString("rag_in_flight{")))
+                .andExpect(content().string(containsString("rag_corpus_vectors{")));
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.aidocumentsearch.admission;
+
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.metrics.PipelineMetrics.Stage;
+import com.example.aidocumentsearch.metrics.PipelineMetrics.Work;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PipelineMetrics metrics = new PipelineMetrics(registry);
+    private final AdmissionControl admissionControl = admissionControl();
+    private final AdmissionFilter filter = filter();
+
+    @Test
+    void limitsEachClientToItsOwnRate() throws Exception {
+        assertEquals(200, post("/api/chat", "10.0.0.1").getStatus());
+        assertEquals(200, post("/api/chat/stream", "10.0.0.1").getStatus());
+        MockHttpServletResponse limited = post("/api/chat/batch", "10.0.0.1");
+        assertEquals(429, limited.getStatus());
+        assertEquals("60", limited.getHeader("Retry-After"));
+
+        assertEquals(200, post("/api/chat", "10.0.0.2").getStatus());
+        // Other endpoints are not limited
+        assertEquals(200, post("/api/chat/unknown", "10.0.0.1").getStatus());
+        assertEquals(1, registry.get("rag.admission.rejected").tag("reason", "rate_limited").counter().count());
+    }
+
+    @Test
+    void shedsChatBeyondItsLimitAndUploadsWhileChatIsBusy() throws Exception {
+        metrics.started(Work.CHAT);
+        metrics.started(Work.STREAM);
+        MockHttpServletResponse overloaded = post("/api/chat", "10.0.0.1");
+        assertEquals(503, overloaded.getStatus());
+        assertEquals("1", overloaded.getHeader("Retry-After"));
+        assertEquals(503, post("/api/documents/upload", "10.0.0.1").getStatus());
+        assertEquals(1, registry.get("rag.admission.rejected").tag("reason", "chat_priority").counter().count());
+
+        metrics.finished(Work.CHAT);
+        metrics.finished(Work.STREAM);
+        assertEquals(200, post("/api/documents/upload", "10.0.0.1").getStatus());
+        assertEquals(200, post("/api/chat", "10.0.0.1").getStatus());
+    }
+
+    @Test
+    void countsEachRunningModelCallOfABatch() {
+        metrics.started(Work.BATCH);
+        assertNull(admissionControl.admit(AdmissionControl.Lane.CHAT, "10.0.0.1"));
+        metrics.started(Work.BATCH_ANSWER);
+        assertEquals(503, admissionControl.admit(AdmissionControl.Lane.CHAT, "10.0.0.2").getStatus());
+    }
+
+    @Test
+    void countsRequestsFromAdmissionUntilTheirResponseCompletes() throws Exception {
+        // Neither upload has started a job yet, but both hold the ingestion lane's two places while they spool
+        int[] nested = new int[2];
+        MockHttpServletResponse outer = post("/api/documents/upload", "10.0.0.1", (request, response) -> {
+            nested[0] = post("/api/documents/upload", "10.0.0.2", (inner, innerResponse) ->
+                    nested[1] = post("/api/documents/upload", "10.0.0.3").getStatus()).getStatus();
+        });
+        assertEquals(200, outer.getStatus());
+        assertEquals(200, nested[0]);
+        assertEquals(503, nested[1]);
+        assertEquals(0.0, admitted("ingestion"));
+
+        MockHttpServletRequest streaming = request("/api/chat/stream", "10.0.0.1");
+        filter.doFilter(streaming, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+        assertEquals(1.0, admitted("chat"));
+        MockHttpServletRequest batch = request("/api/chat/batch", "10.0.0.2");
+        filter.doFilter(batch, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+        assertEquals(503, post("/api/chat", "10.0.0.3").getStatus());
+
+        // An answer stream holds its place until it ends
+        streaming.getAsyncContext().complete();
+        assertEquals(1.0, admitted("chat"));
+        assertEquals(200, post("/api/chat", "10.0.0.3").getStatus());
+        batch.getAsyncContext().complete();
+        assertEquals(0.0, admitted("chat"));
+    }
+
+    @Test
+    void refusedChargeGivesBackTheAdmissionToken() {
+        assertNull(admissionControl.admit(AdmissionControl.Lane.CHAT, "10.0.0.1"));
+        AdmissionControl.Rejection rejection = admissionControl.charge(AdmissionControl.Lane.CHAT, "10.0.0.1", 2);
+        assertEquals(429, rejection.getStatus());
+        admissionControl.release(AdmissionControl.Lane.CHAT);
+
+        // Both of the client's tokens are still there
+        assertNull(admissionControl.admit(AdmissionControl.Lane.CHAT, "10.0.0.1"));
+        assertNull(admissionControl.charge(AdmissionControl.Lane.CHAT, "10.0.0.1", 1));
+        admissionControl.release(AdmissionControl.Lane.CHAT);
+        assertEquals(0.0, admitted("chat"));
+    }
+
+    @Test
+    void limitFollowsModelLatencyAndLetsQuestionsQueueWithinTheBudget() {
+        for (int i = 0; i < 30; i++) {
+            metrics.record(Stage.LLM_CALL, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        double steady = admissionControl.limit(AdmissionControl.Lane.CHAT);
+        assertTrue(steady > 2, "limit grows while latency holds: " + steady);
+
+        // A one-second budget at 100 ms per call lets about ten calls per slot wait
+        for (int i = 0; i < 9 * (int) steady; i++) {
+            metrics.started(Work.CHAT);
+        }
+        assertNull(admissionControl.admit(AdmissionControl.Lane.CHAT, "10.0.0.1"));
+
+        for (int i = 0; i < 30; i++) {
+            metrics.record(Stage.LLM_CALL, TimeUnit.MILLISECONDS.toNanos(800));
+        }
+        double slow = admissionControl.limit(AdmissionControl.Lane.CHAT);
+        assertTrue(slow < steady, "limit shrinks when latency rises: " + slow + " vs " + steady);
+        AdmissionControl.Rejection rejection = admissionControl.admit(AdmissionControl.Lane.CHAT, "10.0.0.1");
+        assertEquals(503, rejection.getStatus());
+        assertEquals("overloaded", rejection.getReason());
+    }
+
+    private MockHttpServletResponse post(String path, String client) throws IOException, ServletException {
+        return post(path, client, new MockFilterChain());
+    }
+
+    private MockHttpServletResponse post(String path, String client, FilterChain chain)
+            throws IOException, ServletException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(path, client), response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String path, String client) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setRemoteAddr(client);
+        request.setAsyncSupported(true);
+        return request;
+    }
+
+    private double admitted(String lane) {
+        return registry.get("rag.admission.admitted").tag("lane", lane).gauge().value();
+    }
+
+    private AdmissionControl admissionControl() {
+        AdmissionControl control = new AdmissionControl();
+        ReflectionTestUtils.setField(control, "metrics", metrics);
+        ReflectionTestUtils.setField(control, "enabled", true);
+        ReflectionTestUtils.setField(control, "chatRatePerMinute", 1.0);
+        ReflectionTestUtils.setField(control, "chatBurst", 2);
+        ReflectionTestUtils.setField(control, "chatInitialLimit", 2);
+        ReflectionTestUtils.setField(control, "chatMinLimit", 1);
+        ReflectionTestUtils.setField(control, "chatMaxLimit", 16);
+        ReflectionTestUtils.setField(control, "chatLatencyBudgetMs", 1000L);
+        ReflectionTestUtils.setField(control, "ingestionRatePerMinute", 10.0);
+        ReflectionTestUtils.setField(control, "ingestionBurst", 5);
+        ReflectionTestUtils.setField(control, "ingestionInitialLimit", 2);
+        ReflectionTestUtils.setField(control, "ingestionMinLimit", 1);
+        ReflectionTestUtils.setField(control, "ingestionMaxLimit", 4);
+        ReflectionTestUtils.setField(control, "ingestionLatencyBudgetMs", 0L);
+        ReflectionTestUtils.setField(control, "ingestionMaxChatLoad", 0.8);
+        control.start();
+        return control;
+    }
+
+    private AdmissionFilter filter() {
+        AdmissionFilter admissionFilter = new AdmissionFilter();
+        ReflectionTestUtils.setField(admissionFilter, "admissionControl", admissionControl);
+        ReflectionTestUtils.setField(admissionFilter, "clientHeader", "");
+        return admissionFilter;
+    }
+}
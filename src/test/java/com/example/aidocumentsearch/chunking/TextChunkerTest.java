@@ -0,0 +1,76 @@
+package com.example.aidocumentsearch.chunking;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextChunkerTest {
+
+    @Test
+    void carriesSentencesAcrossPageBreaksAndRecordsStartPage() {
+        List<TextChunk> chunks = new ArrayList<>();
+        TextChunker chunker = new TextChunker(80, 0, 0, BuiltInChunkingStrategy.SENTENCE, chunks::add);
+        chunker.addPage(1, "First sentence on page one.  Second sentence that\r\n runs");
+        chunker.addPage(2, "onto page two! Third sentence is here. Fourth.");
+        chunker.addPage(3, "  ");
+        chunker.addPage(4, "Fifth sentence on page four.");
+        chunker.finish();
+
+        assertEquals(2, chunks.size());
+        assertEquals("First sentence on page one. Second sentence that runs onto page two!", chunks.get(0).getText());
+        assertEquals(1, chunks.get(0).getPage());
+        assertEquals("Third sentence is here. Fourth. Fifth sentence on page four.", chunks.get(1).getText());
+        assertEquals(2, chunks.get(1).getPage());
+    }
+
+    @Test
+    void overlapStartsAtAWordWithinTheOverlapWindow() {
+        List<TextChunk> chunks = new ArrayList<>();
+        TextChunker chunker = new TextChunker(40, 0, 12, BuiltInChunkingStrategy.SENTENCE, chunks::add);
+        chunker.addPage(1, "Alpha beta gamma delta. Epsilon zeta eta theta. Iota kappa.");
+        chunker.finish();
+
+        assertEquals(3, chunks.size());
+        assertEquals("Alpha beta gamma delta.", chunks.get(0).getText());
+        assertEquals("gamma delta. Epsilon zeta eta theta.", chunks.get(1).getText());
+        assertEquals("eta theta. Iota kappa.", chunks.get(2).getText());
+    }
+
+    @Test
+    void paragraphStrategyPrefersBlankLines() {
+        List<TextChunk> chunks = new ArrayList<>();
+        TextChunker chunker = new TextChunker(40, 0, 0, BuiltInChunkingStrategy.PARAGRAPH, chunks::add);
+        chunker.addPage(1, "One. Two.\r\n\r\nThree four five. Six seven eight nine. Ten eleven.");
+        chunker.finish();
+
+        assertEquals(3, chunks.size());
+        assertEquals("One. Two.", chunks.get(0).getText());
+        // A paragraph longer than the limit falls back to sentence boundaries
+        assertEquals("Three four five. Six seven eight nine.", chunks.get(1).getText());
+        assertEquals("Ten eleven.", chunks.get(2).getText());
+    }
+
+    @Test
+    void fixedTokenChunksStayWithinTheTokenLimit() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("word").append(i).append(i % 17 == 0 ? ". " : " ");
+        }
+        List<TextChunk> chunks = new ArrayList<>();
+        TextChunker chunker = new TextChunker(0, 32, 0, BuiltInChunkingStrategy.FIXED_TOKEN, chunks::add);
+        chunker.addPage(1, text);
+        chunker.finish();
+
+        StringBuilder rebuilt = new StringBuilder();
+        for (TextChunk chunk : chunks) {
+            char[] chars = chunk.getText().toCharArray();
+            assertTrue(TextChunker.estimateTokens(chars, 0, chars.length) <= 32);
+            rebuilt.append(chunk.getText()).append(' ');
+        }
+        assertEquals(text.toString().trim(), rebuilt.toString().trim());
+    }
+}
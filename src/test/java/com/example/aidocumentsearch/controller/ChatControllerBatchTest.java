@@ -0,0 +1,182 @@
+package com.example.aidocumentsearch.controller;
+
+import com.example.aidocumentsearch.admission.AdmissionControl;
+import com.example.aidocumentsearch.admission.AdmissionFilter;
+import com.example.aidocumentsearch.dto.RetrievalResult;
+import com.example.aidocumentsearch.dto.RetrievedChunk;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.service.BatchChatService;
+import com.example.aidocumentsearch.service.RagService;
+import com.example.aidocumentsearch.service.SemanticAnswerCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ChatControllerBatchTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PipelineMetrics metrics = new PipelineMetrics(registry);
+    // Not started, so disabled
+    private final SemanticAnswerCache answerCache = new SemanticAnswerCache();
+    private final AtomicInteger retrievals = new AtomicInteger();
+    private final AtomicInteger generating = new AtomicInteger();
+    private final AtomicInteger maxGenerating = new AtomicInteger();
+
+    private BatchChatService batchChatService;
+
+    @AfterEach
+    void stop() {
+        batchChatService.stop();
+    }
+
+    @Test
+    void retrievesOnceAndStreamsAnswersAsTheyFinish() throws Exception {
+        MockMvc mvc = mvc();
+        MvcResult result = mvc.perform(post("/api/chat/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"questions\":[\"slow\",\"first\",\"second\",\"third\"]}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(10_000);
+        String body = result.getResponse().getContentAsString();
+
+        assertEquals(1, retrievals.get());
+        assertEquals(4, body.split("event:answer").length - 1, body);
+        // The slow question was asked first but its answer comes after the others
+        int slow = body.indexOf("\"index\":0");
+        assertTrue(slow > body.indexOf("\"index\":1") && slow > body.indexOf("\"index\":2"), body);
+        assertTrue(body.indexOf("event:done") > slow, body);
+        assertTrue(body.contains("\"answer\":\"Answer to second\""), body);
+        assertTrue(body.contains("\"questions\":4,\"failed\":0"), body);
+        assertEquals(2, maxGenerating.get());
+        assertEquals(0, metrics.inFlight(PipelineMetrics.Work.BATCH));
+        assertEquals(0, metrics.inFlight(PipelineMetrics.Work.BATCH_ANSWER));
+        // Held from admission until the stream ended
+        mvc.perform(asyncDispatch(result));
+        assertEquals(0.0, registry.get("rag.admission.admitted").tag("lane", "chat").gauge().value());
+    }
+
+    @Test
+    void batchTakesATokenPerQuestion() throws Exception {
+        MockMvc mvc = mvc();
+        // Six of the client's eight tokens
+        MvcResult result = mvc.perform(post("/api/chat/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"questions\":[\"a\",\"b\",\"c\",\"d\",\"e\",\"f\"]}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(10_000);
+
+        mvc.perform(post("/api/chat/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"questions\":[\"g\",\"h\",\"i\"]}"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
+        assertEquals(1, retrievals.get());
+
+        // The refused batch gave back the token its admission took, so two questions still fit
+        mvc.perform(post("/api/chat/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"questions\":[\"g\",\"h\"]}"))
+                .andExpect(request().asyncStarted())
+                .andReturn()
+                .getAsyncResult(10_000);
+        assertEquals(2, retrievals.get());
+    }
+
+    @Test
+    void rejectsEmptyAndOversizedBatches() throws Exception {
+        MockMvc mvc = mvc();
+        mvc.perform(post("/api/chat/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"questions\":[]}"))
+                .andExpect(status().isBadRequest());
+
+        List<String> questions = new ArrayList<>();
+        for (int i = 0; i < 51; i++) {
+            questions.add("\"question " + i + "\"");
+        }
+        mvc.perform(post("/api/chat/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"questions\":[" + String.join(",", questions) + "]}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private MockMvc mvc() {
+        RagService ragService = new RagService() {
+            @Override
+            public List<RetrievalResult> retrieveAll(List<String> questions, Collection<String> filenames) {
+                retrievals.incrementAndGet();
+                List<RetrievalResult> results = new ArrayList<>();
+                for (String question : questions) {
+                    results.add(new RetrievalResult(question, List.of(
+                            new RetrievedChunk("1", 0.9f, "guide.pdf", 0, 3, "About " + question + "."))));
+                }
+                return results;
+            }
+
+            @Override
+            public String generateAnswer(String question, RetrievalResult retrieval) {
+                maxGenerating.accumulateAndGet(generating.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(question.equals("slow") ? 300 : 20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    generating.decrementAndGet();
+                }
+                return "Answer to " + question;
+            }
+        };
+        ReflectionTestUtils.setField(ragService, "answerCache", answerCache);
+        batchChatService = new BatchChatService();
+        ReflectionTestUtils.setField(batchChatService, "answerCache", answerCache);
+        ReflectionTestUtils.setField(batchChatService, "ragService", ragService);
+        ReflectionTestUtils.setField(batchChatService, "metrics", metrics);
+        ReflectionTestUtils.setField(batchChatService, "parallelism", 2);
+        ReflectionTestUtils.setField(batchChatService, "threads", 4);
+        ReflectionTestUtils.setField(batchChatService, "queueCapacity", 16);
+        ReflectionTestUtils.setField(batchChatService, "timeoutMs", 10_000L);
+        batchChatService.start();
+
+        AdmissionControl admissionControl = new AdmissionControl();
+        ReflectionTestUtils.setField(admissionControl, "metrics", metrics);
+        ReflectionTestUtils.setField(admissionControl, "enabled", true);
+        ReflectionTestUtils.setField(admissionControl, "chatRatePerMinute", 1.0);
+        ReflectionTestUtils.setField(admissionControl, "chatBurst", 8);
+        ReflectionTestUtils.setField(admissionControl, "chatInitialLimit", 16);
+        ReflectionTestUtils.setField(admissionControl, "chatMinLimit", 1);
+        ReflectionTestUtils.setField(admissionControl, "chatMaxLimit", 16);
+        ReflectionTestUtils.setField(admissionControl, "chatLatencyBudgetMs", 1000L);
+        ReflectionTestUtils.setField(admissionControl, "ingestionInitialLimit", 1);
+        ReflectionTestUtils.setField(admissionControl, "ingestionMinLimit", 1);
+        ReflectionTestUtils.setField(admissionControl, "ingestionMaxLimit", 1);
+        admissionControl.start();
+        AdmissionFilter admissionFilter = new AdmissionFilter();
+        ReflectionTestUtils.setField(admissionFilter, "admissionControl", admissionControl);
+        ReflectionTestUtils.setField(admissionFilter, "clientHeader", "");
+
+        ChatController controller = new ChatController();
+        ReflectionTestUtils.setField(controller, "batchChatService", batchChatService);
+        ReflectionTestUtils.setField(controller, "admissionControl", admissionControl);
+        return MockMvcBuilders.standaloneSetup(controller).addFilters(admissionFilter).build();
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.aidocumentsearch.controller;
+
+import com.example.aidocumentsearch.dto.ChatStreamStats;
+import com.example.aidocumentsearch.dto.RetrievalResult;
+import com.example.aidocumentsearch.dto.RetrievedChunk;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.service.ChatStreamService;
+import com.example.aidocumentsearch.service.RagService;
+import com.example.aidocumentsearch.service.SemanticAnswerCache;
+import com.example.aidocumentsearch.service.StubStreamingChatModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+class ChatControllerStreamTest {
+
+    private static final long TOKEN_DELAY_MS = 20;
+
+    private final StubStreamingChatModel model = new StubStreamingChatModel(List.of("The ", "answer\n", "is 42."),
+            TOKEN_DELAY_MS);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PipelineMetrics metrics = new PipelineMetrics(registry);
+    // Not started, so disabled
+    private final SemanticAnswerCache answerCache = new SemanticAnswerCache();
+
+    private ChatStreamService chatStreamService;
+
+    @AfterEach
+    void stop() {
+        chatStreamService.stop();
+    }
+
+    @Test
+    void sendsSourcesBeforeTokensAndRecordsTimings() throws Exception {
+        MockMvc mvc = mvc(List.of(new RetrievedChunk("1", 0.9f, "guide.pdf", 0, 3, "Forty-two is the answer.")));
+
+        String body = stream(mvc);
+
+        int sources = body.indexOf("event:sources");
+        int firstToken = body.indexOf("event:token");
+        int done = body.indexOf("event:done");
+        assertTrue(sources >= 0 && sources < firstToken && firstToken < done, body);
+        assertTrue(body.contains("guide.pdf p.3 #1: Forty-two is the answer."), body);
+        // Line breaks inside a token stay inside its JSON payload
+        assertTrue(body.contains("{\"text\":\"answer\\n\"}"), body);
+        assertTrue(model.getLastPrompt().contains("Forty-two is the answer."));
+
+        ChatStreamStats stats = chatStreamService.getStats();
+        assertEquals(1, stats.getCompleted());
+        assertTrue(stats.getMaxTimeToFirstTokenMs() >= TOKEN_DELAY_MS);
+        assertTrue(stats.getMaxTotalMs() >= 3 * TOKEN_DELAY_MS);
+        assertTrue(stats.getMaxTimeToFirstTokenMs() <= stats.getMaxTotalMs());
+
+        assertEquals(0, metrics.inFlight(PipelineMetrics.Work.STREAM));
+        assertEquals(1, registry.get("rag.stage").tag("stage", "llm_call").timer().count());
+        assertEquals(1, registry.get("rag.stage").tag("stage", "prompt_build").timer().count());
+    }
+
+    @Test
+    void answersWithoutTheModelWhenNothingIsRetrieved() throws Exception {
+        String body = stream(mvc(List.of()));
+
+        assertTrue(body.contains(RagService.NO_CONTEXT_ANSWER), body);
+        assertTrue(body.contains("event:done"), body);
+        assertNull(model.getLastPrompt());
+    }
+
+    private MockMvc mvc(List<RetrievedChunk> chunks) {
+        RagService ragService = new RagService() {
+            @Override
+            public RetrievalResult retrieve(String question, Collection<String> filenames) {
+                return new RetrievalResult(question, chunks);
+            }
+        };
+        ReflectionTestUtils.setField(ragService, "metrics", metrics);
+        ReflectionTestUtils.setField(ragService, "answerCache", answerCache);
+        chatStreamService = new ChatStreamService();
+        ReflectionTestUtils.setField(chatStreamService, "answerCache", answerCache);
+        ReflectionTestUtils.setField(chatStreamService, "ragService", ragService);
+        ReflectionTestUtils.setField(chatStreamService, "streamingChatLanguageModel", model);
+        ReflectionTestUtils.setField(chatStreamService, "timeoutMs", 10_000L);
+        ReflectionTestUtils.setField(chatStreamService, "threads", 2);
+        ReflectionTestUtils.setField(chatStreamService, "queueCapacity", 4);
+        ReflectionTestUtils.setField(chatStreamService, "metrics", metrics);
+        chatStreamService.start();
+
+        ChatController controller = new ChatController();
+        ReflectionTestUtils.setField(controller, "chatStreamService", chatStreamService);
+        return MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    private static String stream(MockMvc mvc) throws Exception {
+        MvcResult result = mvc.perform(post("/api/chat/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\":\"What is the answer?\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(10_000);
+        return result.getResponse().getContentAsString();
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.aidocumentsearch.controller;
+
+import com.example.aidocumentsearch.chunking.BuiltInChunkingStrategy;
+import com.example.aidocumentsearch.config.EmbeddingProfile;
+import com.example.aidocumentsearch.dto.IngestionJobStatus;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.example.aidocumentsearch.service.EmbeddingService;
+import com.example.aidocumentsearch.service.IngestionService;
+import com.example.aidocumentsearch.service.PdfProcessingService;
+import com.example.aidocumentsearch.service.QdrantVectorService;
+import com.example.aidocumentsearch.service.SemanticAnswerCache;
+import com.example.aidocumentsearch.store.VectorArena;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class DocumentControllerTest {
+
+    private static final int DIMENSION = 4;
+    private static final int PAGES = 6;
+
+    private final PipelineMetrics metrics = new PipelineMetrics(new SimpleMeterRegistry());
+    private final EmbeddingProfile profile =
+            new EmbeddingProfile(EmbeddingProfile.Provider.LOCAL, "test-model", DIMENSION, 100);
+    // Embed calls from this one on throw; 0 never fails
+    private final AtomicInteger failFromCall = new AtomicInteger();
+    private final AtomicInteger embedCalls = new AtomicInteger();
+    private volatile CountDownLatch extractGate = new CountDownLatch(0);
+
+    private IngestionService ingestionService;
+    private QdrantVectorService vectorService;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        PdfProcessingService pdfService = new PdfProcessingService() {
+            @Override
+            public int extractPages(Path pdf, PageConsumer consumer) throws IOException {
+                try {
+                    extractGate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                for (int page = 1; page <= PAGES; page++) {
+                    consumer.accept(page, "Page " + page + " opens the section. It has a second sentence too. "
+                            + "And a third that closes page " + page + ".");
+                }
+                return PAGES;
+            }
+        };
+        ReflectionTestUtils.setField(pdfService, "chunkSize", 60);
+        ReflectionTestUtils.setField(pdfService, "chunkOverlap", 0);
+        ReflectionTestUtils.setField(pdfService, "chunkingStrategy", BuiltInChunkingStrategy.SENTENCE);
+        ReflectionTestUtils.setField(pdfService, "embeddingProfile", profile);
+
+        EmbeddingService embeddingService = new EmbeddingService() {
+            @Override
+            public List<float[]> generateEmbeddings(List<String> texts) {
+                int call = embedCalls.incrementAndGet();
+                if (failFromCall.get() > 0 && call >= failFromCall.get()) {
+                    throw new IllegalStateException("embedding provider unavailable");
+                }
+                List<float[]> embeddings = new ArrayList<>(texts.size());
+                for (String text : texts) {
+                    int hash = text.hashCode();
+                    embeddings.add(new float[]{1, hash & 0xff, (hash >>> 8) & 0xff, (hash >>> 16) & 0xff});
+                }
+                return embeddings;
+            }
+        };
+
+        vectorService = new QdrantVectorService();
+        ReflectionTestUtils.setField(vectorService, "backend", QdrantVectorService.Backend.LOCAL);
+        ReflectionTestUtils.setField(vectorService, "storagePath", "");
+        ReflectionTestUtils.setField(vectorService, "hnswM", 16);
+        ReflectionTestUtils.setField(vectorService, "hnswEfConstruction", 200);
+        ReflectionTestUtils.setField(vectorService, "hnswEfSearch", 64);
+        ReflectionTestUtils.setField(vectorService, "exactSearchThreshold", 5000);
+        ReflectionTestUtils.setField(vectorService, "quantization", VectorArena.Quantization.NONE);
+        ReflectionTestUtils.setField(vectorService, "rescoreFactor", 4);
+        ReflectionTestUtils.setField(vectorService, "embeddingService", embeddingService);
+        ReflectionTestUtils.setField(vectorService, "embeddingProfile", profile);
+        ReflectionTestUtils.setField(vectorService, "metrics", metrics);
+        vectorService.openCollection();
+
+        ingestionService = new IngestionService();
+        ReflectionTestUtils.setField(ingestionService, "pdfProcessingService", pdfService);
+        ReflectionTestUtils.setField(ingestionService, "embeddingService", embeddingService);
+        ReflectionTestUtils.setField(ingestionService, "vectorDatabaseService", vectorService);
+        // Not started, so disabled
+        ReflectionTestUtils.setField(ingestionService, "answerCache", new SemanticAnswerCache());
+        ReflectionTestUtils.setField(ingestionService, "metrics", metrics);
+        ReflectionTestUtils.setField(ingestionService, "batchSize", 2);
+        ReflectionTestUtils.setField(ingestionService, "queueCapacity", 1);
+        ReflectionTestUtils.setField(ingestionService, "extractThreads", 1);
+        ReflectionTestUtils.setField(ingestionService, "embedThreads", 1);
+        ReflectionTestUtils.setField(ingestionService, "storeThreads", 1);
+        ReflectionTestUtils.setField(ingestionService, "retainedJobs", 100);
+        ingestionService.start();
+
+        DocumentController controller = new DocumentController();
+        ReflectionTestUtils.setField(controller, "pdfProcessingService", pdfService);
+        ReflectionTestUtils.setField(controller, "vectorDatabaseService", vectorService);
+        ReflectionTestUtils.setField(controller, "ingestionService", ingestionService);
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        extractGate.countDown();
+        ingestionService.stop();
+        vectorService.closeCollection();
+    }
+
+    @Test
+    void uploadIsAcceptedAndTheJobCompletes() throws Exception {
+        MvcResult result = mvc.perform(multipart("/api/documents/upload").file(pdf("guide.pdf")))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.success").value(true))
+                .andReturn();
+        String location = result.getResponse().getHeader("Location");
+        String jobId = location.substring(location.lastIndexOf('/') + 1);
+
+        IngestionJobStatus done = awaitFinished(jobId);
+        assertEquals("COMPLETED", done.getStage());
+        assertTrue(done.getTotalChunks() > 2, "expected several batches, got " + done.getTotalChunks());
+        assertEquals(done.getTotalChunks(), done.getStoredChunks());
+        assertEquals(done.getTotalChunks(), vectorService.getStats().getVectors());
+        assertEquals(1, vectorService.getStats().getDocuments());
+
+        mvc.perform(get(location))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stage").value("COMPLETED"));
+    }
+
+    @Test
+    void failedEmbeddingLeavesNoPartialDocument() throws Exception {
+        // The second batch fails after the first may already have been stored
+        failFromCall.set(2);
+        String jobId = upload("guide.pdf");
+
+        IngestionJobStatus failed = awaitFinished(jobId);
+        assertEquals("FAILED", failed.getStage());
+        assertTrue(failed.getError().contains("embedding provider unavailable"), failed.getError());
+        assertEquals(0, vectorService.getStats().getVectors());
+        assertEquals(0, vectorService.getStats().getDocuments());
+    }
+
+    @Test
+    void failedReuploadKeepsThePreviousVersion() throws Exception {
+        IngestionJobStatus first = awaitFinished(upload("guide.pdf"));
+        assertEquals("COMPLETED", first.getStage());
+
+        failFromCall.set(embedCalls.get() + 2);
+        IngestionJobStatus second = awaitFinished(upload("guide.pdf"));
+        assertEquals("FAILED", second.getStage());
+        assertEquals(first.getTotalChunks(), vectorService.getStats().getVectors());
+        assertEquals(1, vectorService.getStats().getDocuments());
+    }
+
+    @Test
+    void fullQueueIsServiceUnavailable() throws Exception {
+        extractGate = new CountDownLatch(1);
+        // One upload extracting, one queued behind it
+        String running = upload("a.pdf");
+        String queued = upload("b.pdf");
+
+        mvc.perform(multipart("/api/documents/upload").file(pdf("c.pdf")))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("$.success").value(false));
+        assertEquals(2, metrics.inFlight(PipelineMetrics.Work.INGESTION));
+
+        extractGate.countDown();
+        assertEquals("COMPLETED", awaitFinished(running).getStage());
+        assertEquals("COMPLETED", awaitFinished(queued).getStage());
+        assertEquals(2, vectorService.getStats().getDocuments());
+    }
+
+    private String upload(String filename) throws Exception {
+        MvcResult result = mvc.perform(multipart("/api/documents/upload").file(pdf(filename)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists("Location"))
+                .andReturn();
+        String location = result.getResponse().getHeader("Location");
+        return location.substring(location.lastIndexOf('/') + 1);
+    }
+
+    private IngestionJobStatus awaitFinished(String jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            IngestionJobStatus status = ingestionService.getStatus(jobId);
+            if ("COMPLETED".equals(status.getStage()) || "FAILED".equals(status.getStage())) {
+                return status;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("job " + jobId + " did not finish: " + ingestionService.getStatus(jobId).getStage());
+    }
+
+    // The stubbed extractor never parses it, so any bytes will do
+    private static MockMultipartFile pdf(String filename) {
+        return new MockMultipartFile("file", filename, "application/pdf", new byte[]{'%', 'P', 'D', 'F'});
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.aidocumentsearch.llm;
+
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmHttpClientTest {
+
+    private static final ObjectReader MAP_READER = new ObjectMapper().readerFor(Map.class);
+    private static final byte[] BODY = "{}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private URI uri;
+    private final AtomicInteger requests = new AtomicInteger();
+    // Status and Retry-After (or null) for each request in turn; the last one repeats
+    private final ConcurrentLinkedQueue<Object[]> replies = new ConcurrentLinkedQueue<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/generate", this::reply);
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/generate");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void retriesServerErrorsThenReturnsTheResponse() {
+        replies.add(new Object[]{503, null});
+        replies.add(new Object[]{502, null});
+        replies.add(new Object[]{200, null});
+        LlmHttpClient client = client(3, 5);
+
+        Map<String, Object> response = client.postJson("test", uri, Map.of(), BODY, MAP_READER);
+
+        assertEquals("ok", response.get("result"));
+        assertEquals(3, requests.get());
+        assertEquals(CircuitBreaker.State.CLOSED, client.circuitState("test"));
+        assertEquals(2.0, registry.get("llm.provider.retries").tag("provider", "test").counter().count());
+        assertEquals(1.0, registry.get("llm.provider.errors").tags("provider", "test", "reason", "503")
+                .counter().count());
+    }
+
+    @Test
+    void waitsForRetryAfterOnTooManyRequests() {
+        replies.add(new Object[]{429, "1"});
+        replies.add(new Object[]{200, null});
+        LlmHttpClient client = client(3, 5);
+
+        long start = System.nanoTime();
+        client.postJson("test", uri, Map.of(), BODY, MAP_READER);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(2, requests.get());
+        assertTrue(elapsedMs >= 900, "waited only " + elapsedMs + " ms");
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        replies.add(new Object[]{400, null});
+        LlmHttpClient client = client(3, 5);
+
+        LlmHttpException e = assertThrows(LlmHttpException.class,
+                () -> client.postJson("test", uri, Map.of(), BODY, MAP_READER));
+
+        assertEquals(400, e.getStatus());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void opensTheCircuitAfterRepeatedFailures() {
+        replies.add(new Object[]{500, null});
+        LlmHttpClient client = client(1, 2);
+
+        assertThrows(LlmHttpException.class, () -> client.postJson("test", uri, Map.of(), BODY, MAP_READER));
+        assertEquals(2, requests.get());
+        assertEquals(CircuitBreaker.State.OPEN, client.circuitState("test"));
+
+        assertThrows(CircuitOpenException.class, () -> client.postJson("test", uri, Map.of(), BODY, MAP_READER));
+        assertEquals(2, requests.get());
+        assertEquals(1.0, registry.get("llm.provider.errors").tags("provider", "test", "reason", "circuit_open")
+                .counter().count());
+        // Other providers keep their own circuit
+        assertEquals(CircuitBreaker.State.CLOSED, client.circuitState("other"));
+    }
+
+    @Test
+    void interruptionDoesNotCountAgainstTheProvider() {
+        replies.add(new Object[]{200, null});
+        LlmHttpClient client = client(0, 1);
+
+        Thread.currentThread().interrupt();
+        LlmHttpException e = assertThrows(LlmHttpException.class,
+                () -> client.postJson("test", uri, Map.of(), BODY, MAP_READER));
+
+        assertTrue(Thread.interrupted(), "interrupt flag restored");
+        assertTrue(e.getCause() instanceof InterruptedException);
+        assertEquals(CircuitBreaker.State.CLOSED, client.circuitState("test"));
+        Map<String, Object> response = client.postJson("test", uri, Map.of(), BODY, MAP_READER);
+        assertEquals("ok", response.get("result"));
+    }
+
+    private LlmHttpClient client(int maxRetries, int failureThreshold) {
+        LlmHttpClient client = new LlmHttpClient();
+        ReflectionTestUtils.setField(client, "connectTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(client, "requestTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(client, "maxRetries", maxRetries);
+        ReflectionTestUtils.setField(client, "retryBaseMs", 10L);
+        ReflectionTestUtils.setField(client, "retryMaxMs", 2000L);
+        ReflectionTestUtils.setField(client, "circuitFailureThreshold", failureThreshold);
+        ReflectionTestUtils.setField(client, "circuitOpenMs", 60_000L);
+        ReflectionTestUtils.setField(client, "metrics", new PipelineMetrics(registry));
+        client.start();
+        return client;
+    }
+
+    private void reply(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        exchange.getRequestBody().readAllBytes();
+        Object[] reply = replies.size() > 1 ? replies.poll() : replies.peek();
+        int status = (Integer) reply[0];
+        if (reply[1] != null) {
+            exchange.getResponseHeaders().add("Retry-After", (String) reply[1]);
+        }
+        byte[] body = (status == 200 ? "{\"result\":\"ok\"}" : "{\"error\":\"status " + status + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.aidocumentsearch.service;
+
+import com.example.aidocumentsearch.dto.ChatResponse;
+import com.example.aidocumentsearch.dto.RetrievalResult;
+import com.example.aidocumentsearch.dto.RetrievedChunk;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncChatServiceTest {
+
+    private final PipelineMetrics metrics = new PipelineMetrics(new SimpleMeterRegistry());
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+    private final AtomicInteger generations = new AtomicInteger();
+    // Not started, so disabled unless a test configures it
+    private final SemanticAnswerCache answerCache = new SemanticAnswerCache();
+    private AsyncChatService service;
+    private volatile String generationThread;
+
+    @AfterEach
+    void stop() {
+        release.countDown();
+        service.stop();
+    }
+
+    @Test
+    void answersOnItsOwnThreads() throws Exception {
+        service = service(false, false, 2);
+        ChatResponse response = service.answer("What is the answer?", null, 5000).get(5, TimeUnit.SECONDS);
+
+        assertEquals("Forty-two.", response.getAnswer());
+        assertEquals(List.of("Forty-two is the answer."), response.getSources());
+        assertEquals(List.of("guide.pdf p.3 #1: Forty-two is the answer."), response.getCitations());
+        assertTrue(generationThread.startsWith("chat-generate-"), generationThread);
+        assertEquals(0, metrics.inFlight(PipelineMetrics.Work.CHAT));
+    }
+
+    @Test
+    void rewordedQuestionIsAnsweredFromTheCacheUntilItsDocumentChanges() throws Exception {
+        ReflectionTestUtils.setField(answerCache, "metrics", metrics);
+        ReflectionTestUtils.setField(answerCache, "maxEntries", 10);
+        ReflectionTestUtils.setField(answerCache, "ttlSeconds", 3600L);
+        ReflectionTestUtils.setField(answerCache, "minSimilarity", 0.95);
+        service = service(false, false, 2);
+
+        service.answer("What is the answer?", null, 5000).get(5, TimeUnit.SECONDS);
+        ChatResponse cached = service.answer("what's THE answer", null, 5000).get(5, TimeUnit.SECONDS);
+        assertEquals("Forty-two.", cached.getAnswer());
+        assertEquals(List.of("guide.pdf p.3 #1: Forty-two is the answer."), cached.getCitations());
+        assertEquals(1, generations.get());
+
+        service.answer("Something else", null, 5000).get(5, TimeUnit.SECONDS);
+        assertEquals(2, generations.get());
+
+        answerCache.invalidateDocument("guide.pdf");
+        service.answer("What is the answer?", null, 5000).get(5, TimeUnit.SECONDS);
+        assertEquals(3, generations.get());
+    }
+
+    @Test
+    void deadlineInterruptsTheModelCall() throws Exception {
+        service = service(false, true, 2);
+
+        CompletableFuture<ChatResponse> answer = service.answer("What is the answer?", null, 100);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> answer.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof TimeoutException);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "model call was not interrupted");
+        assertEquals(0, metrics.inFlight(PipelineMetrics.Work.CHAT));
+    }
+
+    @Test
+    void rejectsQuestionsBeyondTheQueue() throws Exception {
+        // One retrieval running and one waiting; the third question is turned away
+        service = service(true, false, 1);
+
+        CompletableFuture<ChatResponse> running = service.answer("first", null, 5000);
+        CompletableFuture<ChatResponse> waiting = service.answer("second", null, 5000);
+        CompletableFuture<ChatResponse> rejected = service.answer("third", null, 5000);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        release.countDown();
+        assertEquals("Forty-two.", running.get(5, TimeUnit.SECONDS).getAnswer());
+        assertEquals("Forty-two.", waiting.get(5, TimeUnit.SECONDS).getAnswer());
+    }
+
+    private AsyncChatService service(boolean blockRetrieval, boolean blockGeneration, int threads) {
+        List<RetrievedChunk> chunks = List.of(new RetrievedChunk("1", 0.9f, "guide.pdf", 0, 3,
+                "Forty-two is the answer."));
+        RagService ragService = new RagService() {
+            @Override
+            public RetrievalResult retrieve(String question, Collection<String> filenames) {
+                if (blockRetrieval) {
+                    awaitRelease();
+                }
+                return new RetrievalResult(question, chunks);
+            }
+
+            @Override
+            public float[] answerCacheKey(String question) {
+                return question.toLowerCase(Locale.ROOT).contains("answer") ? new float[]{1.0f, 0.1f, 0.0f}
+                        : new float[]{0.0f, 1.0f, 0.0f};
+            }
+
+            @Override
+            public String generateAnswer(String question, RetrievalResult retrieval) {
+                generations.incrementAndGet();
+                generationThread = Thread.currentThread().getName();
+                if (blockGeneration) {
+                    awaitRelease();
+                }
+                return "Forty-two.";
+            }
+        };
+        AsyncChatService service = new AsyncChatService();
+        ReflectionTestUtils.setField(service, "ragService", ragService);
+        ReflectionTestUtils.setField(service, "answerCache", answerCache);
+        ReflectionTestUtils.setField(service, "metrics", metrics);
+        ReflectionTestUtils.setField(service, "retrieveThreads", threads);
+        ReflectionTestUtils.setField(service, "generateThreads", threads);
+        ReflectionTestUtils.setField(service, "queueCapacity", 1);
+        ReflectionTestUtils.setField(service, "deadlineMs", 60_000L);
+        ReflectionTestUtils.setField(service, "virtualThreads", false);
+        service.start();
+        return service;
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+            throw new IllegalStateException("interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.aidocumentsearch.service;
+
+import com.example.aidocumentsearch.dto.RetrievedChunk;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContextPackerTest {
+
+    private final ContextPacker packer = new ContextPacker();
+
+    @Test
+    void mergesAdjacentChunksWithoutRepeatingTheirOverlap() {
+        String overlap = "the pump must be primed before the first start";
+        RetrievedChunk first = chunk("a.pdf", 3, 0.9, "Installation notes: " + overlap);
+        RetrievedChunk second = chunk("a.pdf", 4, 0.7, overlap + ", otherwise the seals run dry.");
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(second, first), 0);
+
+        assertEquals("Installation notes: " + overlap + ", otherwise the seals run dry.", packed.getText());
+        // Sources keep retrieval order
+        assertEquals(List.of(second, first), packed.getChunks());
+        assertTrue(packed.getPackedTokens() < packed.getRetrievedTokens());
+    }
+
+    @Test
+    void dropsNearDuplicatePassagesFromOtherFiles() {
+        String text = "Reset the controller by holding the power button for ten seconds until the status light "
+                + "turns amber and then release it";
+        RetrievedChunk original = chunk("manual-v1.pdf", 0, 0.9, text);
+        RetrievedChunk copy = chunk("manual-v2.pdf", 7, 0.8, text + ".");
+        RetrievedChunk other = chunk("faq.pdf", 2, 0.5, "Warranty claims need the original receipt.");
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(original, copy, other), 0);
+
+        assertEquals(List.of(original, other), packed.getChunks());
+    }
+
+    @Test
+    void keepsALongerPassageAroundAShorterOneAlreadyKept() {
+        String step = "Reset the controller by holding the power button for ten seconds";
+        String longer = "Before calling support, try this. " + step + " until the status light turns amber, then "
+                + "wait a minute and check that the pump restarts on its own";
+        RetrievedChunk top = chunk("quick-start.pdf", 1, 0.9, step);
+        RetrievedChunk around = chunk("manual.pdf", 12, 0.8, longer);
+        RetrievedChunk inside = chunk("faq.pdf", 4, 0.7, step + ".");
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(top, around, inside), 0);
+
+        // The longer passage adds the rest of the procedure; the copy of the short one adds nothing
+        assertEquals(List.of(top, around), packed.getChunks());
+    }
+
+    @Test
+    void packsMostRelevantPassagesIntoTheBudget() {
+        RetrievedChunk best = chunk("a.pdf", 0, 0.9, words("alpha", 40));
+        RetrievedChunk large = chunk("b.pdf", 0, 0.8, words("bravo", 200));
+        RetrievedChunk small = chunk("c.pdf", 0, 0.7, words("charlie", 20));
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(best, large, small), 150);
+
+        // The large passage does not fit, the smaller less relevant one still does
+        assertEquals(List.of(best, small), packed.getChunks());
+        assertTrue(packed.getPackedTokens() <= 150);
+
+        // A single passage over the budget is cut at a word boundary
+        ContextPacker.PackedContext cut = packer.pack(List.of(large), 50);
+        assertEquals(List.of(large), cut.getChunks());
+        assertTrue(cut.getPackedTokens() <= 50);
+        assertTrue(large.getText().startsWith(cut.getText() + " "));
+    }
+
+    @Test
+    void overlapFindsLongestSuffixPrefix() {
+        assertEquals(5, ContextPacker.overlap("xxabcab", "abcabyy"));
+        assertEquals(0, ContextPacker.overlap("abc", "xyz"));
+        assertEquals(3, ContextPacker.overlap("aaa", "aaaa"));
+    }
+
+    private static RetrievedChunk chunk(String filename, int index, double score, String text) {
+        return new RetrievedChunk(filename + "#" + index, score, filename, index, 1, text);
+    }
+
+    private static String words(String word, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(i == 0 ? "" : " ").append(word).append(i);
+        }
+        return text.toString();
+    }
+}
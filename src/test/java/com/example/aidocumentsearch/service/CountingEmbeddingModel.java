@@ -0,0 +1,53 @@
+package com.example.aidocumentsearch.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Embedding model for tests: derives a small vector from each text and records every request it is sent, so a test
+ * can tell how many model calls were made and what went into each.
+ */
+public class CountingEmbeddingModel implements EmbeddingModel {
+
+    private final List<List<String>> requests = new CopyOnWriteArrayList<>();
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        List<String> texts = new ArrayList<>(segments.size());
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            texts.add(segment.text());
+            embeddings.add(Embedding.from(vector(segment.text())));
+        }
+        requests.add(Collections.unmodifiableList(texts));
+        return Response.from(embeddings);
+    }
+
+    public static float[] vector(String text) {
+        int hash = text.hashCode();
+        return new float[]{1, hash & 0xff, (hash >>> 8) & 0xff, (hash >>> 16) & 0xff};
+    }
+
+    public int calls() {
+        return requests.size();
+    }
+
+    public List<List<String>> requests() {
+        return requests;
+    }
+
+    public int textsEmbedded() {
+        int texts = 0;
+        for (List<String> request : requests) {
+            texts += request.size();
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.aidocumentsearch.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingCoalescerTest {
+
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+    private final Function<List<String>, List<float[]>> embedder = texts -> {
+        batches.add(new ArrayList<>(texts));
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            vectors.add(CountingEmbeddingModel.vector(text));
+        }
+        return vectors;
+    };
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor();
+
+    private EmbeddingCoalescer coalescer;
+
+    @AfterEach
+    void stop() {
+        coalescer.shutdown();
+        dispatcher.shutdownNow();
+    }
+
+    @Test
+    void requestsWithinTheWindowShareOneBatch() throws Exception {
+        coalescer = new EmbeddingCoalescer(embedder, dispatcher, 16, 200);
+        CompletableFuture<float[]> first = coalescer.submit("first");
+        CompletableFuture<float[]> second = coalescer.submit("second");
+        CompletableFuture<float[]> third = coalescer.submit("third");
+
+        assertArrayEquals(CountingEmbeddingModel.vector("first"), first.get(5, TimeUnit.SECONDS));
+        assertArrayEquals(CountingEmbeddingModel.vector("second"), second.get(5, TimeUnit.SECONDS));
+        assertArrayEquals(CountingEmbeddingModel.vector("third"), third.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("first", "second", "third")), batches);
+    }
+
+    @Test
+    void fullBatchIsSentWithoutWaitingOutTheWindow() throws Exception {
+        coalescer = new EmbeddingCoalescer(embedder, dispatcher, 2, 60_000);
+        long start = System.nanoTime();
+        CompletableFuture<float[]> first = coalescer.submit("a");
+        CompletableFuture<float[]> second = coalescer.submit("b");
+        CompletableFuture<float[]> third = coalescer.submit("c");
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(List.of(List.of("a", "b")), batches);
+        // Alone in its batch, it waits for the window
+        assertFalse(third.isDone());
+    }
+
+    @Test
+    void cancelledRequestIsLeftOutOfItsBatch() throws Exception {
+        coalescer = new EmbeddingCoalescer(embedder, dispatcher, 16, 200);
+        CompletableFuture<float[]> abandoned = coalescer.submit("abandoned");
+        CompletableFuture<float[]> kept = coalescer.submit("kept");
+        abandoned.cancel(false);
+
+        kept.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(List.of("kept")), batches);
+
+        CompletableFuture<float[]> alone = coalescer.submit("alone");
+        alone.cancel(false);
+        Thread.sleep(400);
+        // Nobody was waiting, so the model is not called at all
+        assertEquals(1, batches.size());
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.aidocumentsearch.service;
+
+import com.example.aidocumentsearch.config.EmbeddingProfile;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingServiceTest {
+
+    @TempDir
+    Path storage;
+
+    private EmbeddingService service;
+
+    @AfterEach
+    void stop() throws Exception {
+        service.stop();
+    }
+
+    @Test
+    void splitsIngestionBatchesBySizeAndTokenBudget() throws Exception {
+        CountingEmbeddingModel model = new CountingEmbeddingModel();
+        service = service(model, 3, 100, 0, "");
+
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            texts.add("chunk " + i);
+        }
+        List<float[]> embeddings = service.generateEmbeddings(texts);
+        assertEquals(7, embeddings.size());
+        for (int i = 0; i < 7; i++) {
+            assertArrayEquals(CountingEmbeddingModel.vector(texts.get(i)), embeddings.get(i));
+        }
+        assertEquals(List.of(3, 3, 1), requestSizes(model));
+
+        // 51 estimated tokens each, so no two fit under the budget of 100; the short text joins the last
+        CountingEmbeddingModel budgeted = new CountingEmbeddingModel();
+        service.stop();
+        service = service(budgeted, 64, 100, 0, "");
+        String longText = "x".repeat(200);
+        service.generateEmbeddings(List.of(longText + "a", longText + "b", longText + "c", "short"));
+        assertEquals(List.of(1, 1, 2), requestSizes(budgeted));
+    }
+
+    @Test
+    void ingestionEmbedsEachChunkOnce() throws Exception {
+        CountingEmbeddingModel model = new CountingEmbeddingModel();
+        service = service(model, 64, 100_000, 0, storage.toString());
+
+        List<float[]> embeddings = service.generateEmbeddings(List.of("intro", "body", "intro", "outro"));
+        assertEquals(3, model.textsEmbedded());
+        assertArrayEquals(embeddings.get(0), embeddings.get(2));
+
+        // Re-uploading the same document finds every chunk in the content cache
+        service.generateEmbeddings(List.of("outro", "body", "intro"));
+        assertEquals(1, model.calls());
+
+        // So does a restart, as the cache lives on disk
+        service.stop();
+        service = service(model, 64, 100_000, 0, storage.toString());
+        service.generateEmbeddings(List.of("intro", "body", "appendix"));
+        assertEquals(List.of(List.of("intro", "body", "outro"), List.of("appendix")), model.requests());
+    }
+
+    @Test
+    void concurrentQuestionsAreCoalescedIntoOneRequest() throws Exception {
+        CountingEmbeddingModel model = new CountingEmbeddingModel();
+        service = service(model, 64, 100_000, 300, "");
+
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<float[]>> results = new ArrayList<>();
+            for (String question : List.of("what is a", "what is b", "what is c")) {
+                results.add(callers.submit(() -> service.generateEmbedding(question)));
+            }
+            assertArrayEquals(CountingEmbeddingModel.vector("what is a"), results.get(0).get(5, TimeUnit.SECONDS));
+            assertArrayEquals(CountingEmbeddingModel.vector("what is c"), results.get(2).get(5, TimeUnit.SECONDS));
+            results.get(1).get(5, TimeUnit.SECONDS);
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, model.calls());
+        assertEquals(3, model.textsEmbedded());
+    }
+
+    @Test
+    void interruptedCallerCancelsItsPendingEmbedding() throws Exception {
+        CountingEmbeddingModel model = new CountingEmbeddingModel();
+        service = service(model, 64, 100_000, 500, "");
+
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        AtomicBoolean stillInterrupted = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread caller = new Thread(() -> {
+            try {
+                service.generateEmbedding("abandoned question");
+            } catch (RuntimeException e) {
+                thrown.set(e);
+                stillInterrupted.set(Thread.currentThread().isInterrupted());
+            } finally {
+                done.countDown();
+            }
+        });
+        caller.start();
+        Thread.sleep(100);
+        caller.interrupt();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(thrown.get() instanceof CancellationException, String.valueOf(thrown.get()));
+        assertTrue(stillInterrupted.get());
+        // The window closes with nobody waiting, so the question is never sent
+        Thread.sleep(700);
+        assertEquals(0, model.calls());
+    }
+
+    @Test
+    void modelFailureReachesTheCaller() throws Exception {
+        service = service(new CountingEmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                throw new IllegalStateException("rate limited");
+            }
+        }, 64, 100_000, 0, "");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> service.generateEmbeddings(List.of("a", "b")));
+        assertEquals("rate limited", e.getMessage());
+    }
+
+    private static List<Integer> requestSizes(CountingEmbeddingModel model) {
+        List<Integer> sizes = new ArrayList<>();
+        for (List<String> request : model.requests()) {
+            sizes.add(request.size());
+        }
+        return sizes;
+    }
+
+    static EmbeddingService service(CountingEmbeddingModel model, int batchSize, int batchMaxTokens,
+                                    long coalesceWindowMillis, String storagePath) throws Exception {
+        EmbeddingService service = new EmbeddingService();
+        ReflectionTestUtils.setField(service, "embeddingModel", model);
+        ReflectionTestUtils.setField(service, "queryEmbeddingCache", new QueryEmbeddingCache());
+        ReflectionTestUtils.setField(service, "embeddingProfile",
+                new EmbeddingProfile(EmbeddingProfile.Provider.LOCAL, "test-model", 4, 512));
+        ReflectionTestUtils.setField(service, "metrics", new PipelineMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(service, "storagePath", storagePath);
+        ReflectionTestUtils.setField(service, "contentCacheMaxMb", 1L);
+        ReflectionTestUtils.setField(service, "batchSize", batchSize);
+        ReflectionTestUtils.setField(service, "batchMaxTokens", batchMaxTokens);
+        // One batch at a time, so the model sees requests in order
+        ReflectionTestUtils.setField(service, "concurrency", 1);
+        ReflectionTestUtils.setField(service, "queryConcurrency", 1);
+        ReflectionTestUtils.setField(service, "coalesceWindowMillis", coalesceWindowMillis);
+        service.start();
+        return service;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.aidocumentsearch.service;
+
+import com.example.aidocumentsearch.llm.LlmHttpClient;
+import com.example.aidocumentsearch.llm.LlmHttpException;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeminiHttpServiceTest {
+
+    private HttpServer server;
+    private GeminiHttpService gemini;
+    private volatile String receivedKey;
+    private volatile String receivedBody;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1beta/models/test-model:generateContent", exchange -> {
+            receivedKey = exchange.getRequestHeaders().getFirst("x-goog-api-key");
+            receivedBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            send(exchange, 200, "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"Forty-two.\"}],"
+                    + "\"role\":\"model\"},\"finishReason\":\"STOP\"}]}");
+        });
+        server.createContext("/v1beta/models/test-model:streamGenerateContent", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            send(exchange, 200, "data: {\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"Forty\"}]}}]}\r\n\r\n"
+                    + "data: {\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"-two.\"}]}}]}\r\n\r\n");
+        });
+        server.start();
+
+        LlmHttpClient client = new LlmHttpClient();
+        ReflectionTestUtils.setField(client, "connectTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(client, "requestTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(client, "maxRetries", 0);
+        ReflectionTestUtils.setField(client, "circuitFailureThreshold", 5);
+        ReflectionTestUtils.setField(client, "metrics", new PipelineMetrics(new SimpleMeterRegistry()));
+        client.start();
+
+        gemini = new GeminiHttpService();
+        ReflectionTestUtils.setField(gemini, "googleAiApiKey", "secret");
+        ReflectionTestUtils.setField(gemini, "baseUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(gemini, "model", "test-model");
+        ReflectionTestUtils.setField(gemini, "llmHttpClient", client);
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void sendsTypedRequestAndReadsFirstCandidate() {
+        Response<AiMessage> response = gemini.generate(UserMessage.from("What is the answer?"));
+
+        assertEquals("Forty-two.", response.content().text());
+        assertEquals("secret", receivedKey);
+        assertEquals("{\"contents\":[{\"parts\":[{\"text\":\"What is the answer?\"}]}]}", receivedBody);
+    }
+
+    @Test
+    void streamsTheTextOfEachEvent() {
+        List<String> tokens = new ArrayList<>();
+        AtomicReference<Response<AiMessage>> completed = new AtomicReference<>();
+        gemini.generate(List.of(UserMessage.from("What is the answer?")), new StreamingResponseHandler<AiMessage>() {
+            @Override
+            public void onNext(String token) {
+                tokens.add(token);
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                completed.set(response);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                throw new AssertionError(error);
+            }
+        });
+
+        assertEquals(List.of("Forty", "-two."), tokens);
+        assertEquals("Forty-two.", completed.get().content().text());
+    }
+
+    @Test
+    void surfacesProviderErrors() {
+        ReflectionTestUtils.setField(gemini, "model", "missing-model");
+
+        LlmHttpException e = assertThrows(LlmHttpException.class,
+                () -> gemini.generate(UserMessage.from("What is the answer?")));
+        assertEquals(404, e.getStatus());
+        assertTrue(e.getMessage().startsWith("gemini"));
+    }
+
+    private static void send(HttpExchange exchange, int status, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
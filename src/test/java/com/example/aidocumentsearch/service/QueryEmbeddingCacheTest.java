@@ -0,0 +1,88 @@
+package com.example.aidocumentsearch.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class QueryEmbeddingCacheTest {
+
+    private final CountingEmbeddingModel model = new CountingEmbeddingModel();
+
+    private EmbeddingService service;
+
+    @AfterEach
+    void stop() throws Exception {
+        service.stop();
+    }
+
+    @Test
+    void repeatedAndRephrasedQuestionsSkipTheModel() throws Exception {
+        QueryEmbeddingCache cache = cache(10, 3600);
+        service = service(cache);
+
+        float[] first = service.generateQueryEmbedding("What is the refund policy?");
+        float[] repeated = service.generateQueryEmbedding("What is the refund policy?");
+        float[] normalised = service.generateQueryEmbedding("  what is the   REFUND policy? ");
+        assertEquals(1, model.calls());
+        assertArrayEquals(first, repeated);
+        assertArrayEquals(first, normalised);
+
+        // A batch of questions only sends the ones not seen before
+        List<float[]> batch = service.generateQueryEmbeddings(
+                List.of("what is the refund policy?", "Who approves refunds?"));
+        assertEquals(List.of(List.of("What is the refund policy?"), List.of("Who approves refunds?")),
+                model.requests());
+        assertArrayEquals(first, batch.get(0));
+        assertEquals(3, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedQuestion() throws Exception {
+        service = service(cache(2, 3600));
+
+        service.generateQueryEmbedding("alpha");
+        service.generateQueryEmbedding("beta");
+        service.generateQueryEmbedding("alpha");
+        service.generateQueryEmbedding("gamma");
+        assertEquals(3, model.calls());
+
+        // beta was least recently asked, so it was the one evicted
+        service.generateQueryEmbedding("alpha");
+        assertEquals(3, model.calls());
+        service.generateQueryEmbedding("beta");
+        assertEquals(4, model.calls());
+    }
+
+    @Test
+    void expiredQuestionIsEmbeddedAgain() throws Exception {
+        service = service(cache(10, 0));
+
+        service.generateQueryEmbedding("alpha");
+        service.generateQueryEmbedding("alpha");
+        assertEquals(2, model.calls());
+
+        QueryEmbeddingCache disabled = cache(0, 3600);
+        disabled.put("alpha", new float[]{1, 0, 0, 0});
+        assertNull(disabled.get("alpha"));
+    }
+
+    private EmbeddingService service(QueryEmbeddingCache cache) throws Exception {
+        EmbeddingService service = EmbeddingServiceTest.service(model, 64, 100_000, 0, "");
+        ReflectionTestUtils.setField(service, "queryEmbeddingCache", cache);
+        return service;
+    }
+
+    private static QueryEmbeddingCache cache(int maxEntries, long ttlSeconds) {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache();
+        ReflectionTestUtils.setField(cache, "maxEntries", maxEntries);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", ttlSeconds);
+        return cache;
+    }
+}
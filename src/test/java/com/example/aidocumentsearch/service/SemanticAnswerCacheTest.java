@@ -0,0 +1,95 @@
+package com.example.aidocumentsearch.service;
+
+import com.example.aidocumentsearch.dto.ChatResponse;
+import com.example.aidocumentsearch.dto.RetrievalResult;
+import com.example.aidocumentsearch.dto.RetrievedChunk;
+import com.example.aidocumentsearch.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SemanticAnswerCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void matchesSimilarQuestionsOverTheSameDocumentsOnly() {
+        SemanticAnswerCache cache = cache(10, 3600);
+        cache.put(new float[]{1, 0, 0}, null, response("all"), retrieval("a.pdf"), cache.epoch());
+        cache.put(new float[]{1, 0, 0}, List.of("b.pdf", "a.pdf"), response("a and b"), retrieval("a.pdf"),
+                cache.epoch());
+
+        assertEquals("all", cache.get(new float[]{2, 0.2f, 0}, null).getAnswer());
+        assertEquals("a and b", cache.get(new float[]{1, 0.1f, 0}, List.of("a.pdf", "b.pdf")).getAnswer());
+        assertNull(cache.get(new float[]{1, 0.5f, 0}, null));
+        assertNull(cache.get(new float[]{1, 0, 0}, List.of("a.pdf")));
+
+        // A similar question replaces the entry rather than adding one
+        cache.put(new float[]{1, 0.05f, 0}, null, response("newer"), retrieval("a.pdf"), cache.epoch());
+        assertEquals(2, cache.size());
+        assertEquals("newer", cache.get(new float[]{1, 0, 0}, null).getAnswer());
+
+        assertEquals(3, registry.get("rag.cache.requests").tag("result", "hit").counter().count());
+        assertEquals(2, registry.get("rag.cache.requests").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedAndExpiredEntries() {
+        SemanticAnswerCache cache = cache(2, 3600);
+        cache.put(new float[]{1, 0, 0}, null, response("x"), retrieval("a.pdf"), cache.epoch());
+        cache.put(new float[]{0, 1, 0}, null, response("y"), retrieval("a.pdf"), cache.epoch());
+        cache.get(new float[]{1, 0, 0}, null);
+        cache.put(new float[]{0, 0, 1}, null, response("z"), retrieval("a.pdf"), cache.epoch());
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(new float[]{0, 1, 0}, null));
+        assertEquals("x", cache.get(new float[]{1, 0, 0}, null).getAnswer());
+        assertEquals(1, registry.get("rag.cache.evictions").tag("reason", "size").counter().count());
+
+        SemanticAnswerCache expiring = cache(2, 0);
+        expiring.put(new float[]{1, 0, 0}, null, response("x"), retrieval("a.pdf"), expiring.epoch());
+        assertNull(expiring.get(new float[]{1, 0, 0}, null));
+        assertEquals(0, expiring.size());
+    }
+
+    @Test
+    void dropsAnswersCitingAChangedDocument() {
+        SemanticAnswerCache cache = cache(10, 3600);
+        long before = cache.epoch();
+        cache.put(new float[]{1, 0, 0}, null, response("x"), retrieval("a.pdf"), before);
+        cache.put(new float[]{0, 1, 0}, null, response("y"), retrieval("b.pdf"), before);
+
+        cache.invalidateDocument("a.pdf");
+        assertNull(cache.get(new float[]{1, 0, 0}, null));
+        assertEquals("y", cache.get(new float[]{0, 1, 0}, null).getAnswer());
+
+        // Generated from a.pdf before it changed, so not cached
+        cache.put(new float[]{1, 0, 0}, null, response("x"), retrieval("a.pdf"), before);
+        assertNull(cache.get(new float[]{1, 0, 0}, null));
+        // Nothing retrieved: never cached
+        cache.put(new float[]{0, 0, 1}, null, response("none"), new RetrievalResult("q", List.of()), cache.epoch());
+        assertNull(cache.get(new float[]{0, 0, 1}, null));
+    }
+
+    private SemanticAnswerCache cache(int maxEntries, long ttlSeconds) {
+        SemanticAnswerCache cache = new SemanticAnswerCache();
+        ReflectionTestUtils.setField(cache, "metrics", new PipelineMetrics(registry));
+        ReflectionTestUtils.setField(cache, "maxEntries", maxEntries);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", ttlSeconds);
+        ReflectionTestUtils.setField(cache, "minSimilarity", 0.95);
+        return cache;
+    }
+
+    private static ChatResponse response(String answer) {
+        return new ChatResponse(answer, List.of(), List.of());
+    }
+
+    private static RetrievalResult retrieval(String filename) {
+        return new RetrievalResult("q", List.of(new RetrievedChunk(filename + "_chunk_0", 0.9, filename, 0, 1, "text")));
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.aidocumentsearch.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+
+/**
+ * Streaming model for tests: replays fixed tokens from its own thread with a pause before each one, the way a
+ * remote model calls back from its HTTP client.
+ */
+public class StubStreamingChatModel implements StreamingChatLanguageModel {
+
+    private final List<String> tokens;
+    private final long delayMs;
+    private volatile String lastPrompt;
+
+    public StubStreamingChatModel(List<String> tokens, long delayMs) {
+        this.tokens = tokens;
+        this.delayMs = delayMs;
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        lastPrompt = ((UserMessage) messages.get(messages.size() - 1)).text();
+        Thread thread = new Thread(() -> {
+            try {
+                for (String token : tokens) {
+                    Thread.sleep(delayMs);
+                    handler.onNext(token);
+                }
+                handler.onComplete(Response.from(AiMessage.from(String.join("", tokens))));
+            } catch (InterruptedException e) {
+                handler.onError(e);
+            }
+        }, "stub-model");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public String getLastPrompt() {
+        return lastPrompt;
+    }
+}
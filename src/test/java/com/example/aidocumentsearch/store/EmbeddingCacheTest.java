@@ -0,0 +1,121 @@
+package com.example.aidocumentsearch.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingCacheTest {
+
+    private static final String MODEL = "test-model";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void survivesReopenAndIgnoresWhitespaceDifferences() throws IOException {
+        Path file = directory.resolve("cache.bin");
+        try (EmbeddingCache cache = EmbeddingCache.open(file, 1 << 20)) {
+            cache.put(MODEL, "Some chunk\r\n of  text", vector(1f, 8));
+        }
+
+        try (EmbeddingCache cache = EmbeddingCache.open(file, 1 << 20)) {
+            assertEquals(1, cache.size());
+            assertArrayEquals(vector(1f, 8), cache.get(MODEL, "  Some chunk of text "));
+            assertNull(cache.get("other-model", "Some chunk of text"));
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+        }
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntriesToStayWithinBudget() throws IOException {
+        // Each entry is 20 header bytes plus 64 float bytes, so the budget holds about a dozen
+        long budget = 1000;
+        try (EmbeddingCache cache = EmbeddingCache.open(directory.resolve("cache.bin"), budget, Runnable::run)) {
+            cache.put(MODEL, "kept", vector(0f, 16));
+            for (int i = 1; i <= 30; i++) {
+                cache.put(MODEL, "text " + i, vector(i, 16));
+                assertNotNull(cache.get(MODEL, "kept"));
+                assertTrue(cache.bytes() <= budget);
+            }
+            assertArrayEquals(vector(0f, 16), cache.get(MODEL, "kept"));
+            assertArrayEquals(vector(30f, 16), cache.get(MODEL, "text 30"));
+            assertNull(cache.get(MODEL, "text 1"));
+        }
+        assertTrue(Files.size(directory.resolve("cache.bin")) <= budget);
+    }
+
+    @Test
+    void servesReadsAndWritesWhileCompactionIsPending() throws IOException {
+        long budget = 1000;
+        List<Runnable> compactions = new ArrayList<>();
+        Path file = directory.resolve("cache.bin");
+        try (EmbeddingCache cache = EmbeddingCache.open(file, budget, compactions::add)) {
+            for (int i = 1; i <= 12; i++) {
+                cache.put(MODEL, "text " + i, vector(i, 16));
+            }
+            assertEquals(1, compactions.size());
+            assertTrue(cache.bytes() > budget);
+
+            // Writes and reads carry on until the compaction gets to run
+            cache.put(MODEL, "late", vector(-1f, 16));
+            assertArrayEquals(vector(1f, 16), cache.get(MODEL, "text 1"));
+            compactions.get(0).run();
+
+            assertTrue(cache.bytes() <= budget);
+            assertArrayEquals(vector(-1f, 16), cache.get(MODEL, "late"));
+            assertArrayEquals(vector(12f, 16), cache.get(MODEL, "text 12"));
+            assertArrayEquals(vector(1f, 16), cache.get(MODEL, "text 1"));
+            assertNull(cache.get(MODEL, "text 2"));
+        }
+        try (EmbeddingCache cache = EmbeddingCache.open(file, budget)) {
+            assertArrayEquals(vector(-1f, 16), cache.get(MODEL, "late"));
+        }
+    }
+
+    @Test
+    void dropsTornTailOnOpen() throws IOException {
+        Path file = directory.resolve("cache.bin");
+        try (EmbeddingCache cache = EmbeddingCache.open(file, 1 << 20)) {
+            cache.put(MODEL, "first", vector(1f, 8));
+            cache.put(MODEL, "second", vector(2f, 8));
+        }
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 5);
+        }
+
+        try (EmbeddingCache cache = EmbeddingCache.open(file, 1 << 20)) {
+            assertEquals(1, cache.size());
+            assertArrayEquals(vector(1f, 8), cache.get(MODEL, "first"));
+            assertNull(cache.get(MODEL, "second"));
+            // Appends after recovery land where the torn entry was
+            cache.put(MODEL, "second", vector(2f, 8));
+        }
+        try (EmbeddingCache cache = EmbeddingCache.open(file, 1 << 20)) {
+            assertEquals(2, cache.size());
+            assertArrayEquals(vector(2f, 8), cache.get(MODEL, "second"));
+        }
+    }
+
+    private static float[] vector(float value, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = value + i / 100f;
+        }
+        return vector;
+    }
+}
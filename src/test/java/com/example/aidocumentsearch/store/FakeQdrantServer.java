@@ -0,0 +1,324 @@
+package com.example.aidocumentsearch.store;
+
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.qdrant.client.grpc.Collections.CollectionConfig;
+import io.qdrant.client.grpc.Collections.CollectionInfo;
+import io.qdrant.client.grpc.Collections.CollectionOperationResponse;
+import io.qdrant.client.grpc.Collections.CollectionParams;
+import io.qdrant.client.grpc.Collections.CreateCollection;
+import io.qdrant.client.grpc.Collections.GetCollectionInfoRequest;
+import io.qdrant.client.grpc.Collections.GetCollectionInfoResponse;
+import io.qdrant.client.grpc.Collections.VectorParams;
+import io.qdrant.client.grpc.Collections.VectorsConfig;
+import io.qdrant.client.grpc.CollectionsGrpc;
+import io.qdrant.client.grpc.JsonWithInt.Value;
+import io.qdrant.client.grpc.Points.BatchResult;
+import io.qdrant.client.grpc.Points.Condition;
+import io.qdrant.client.grpc.Points.CountPoints;
+import io.qdrant.client.grpc.Points.CountResponse;
+import io.qdrant.client.grpc.Points.CountResult;
+import io.qdrant.client.grpc.Points.CreateFieldIndexCollection;
+import io.qdrant.client.grpc.Points.DeletePoints;
+import io.qdrant.client.grpc.Points.FieldCondition;
+import io.qdrant.client.grpc.Points.Filter;
+import io.qdrant.client.grpc.Points.Match;
+import io.qdrant.client.grpc.Points.PointStruct;
+import io.qdrant.client.grpc.Points.PointsOperationResponse;
+import io.qdrant.client.grpc.Points.RetrievedPoint;
+import io.qdrant.client.grpc.Points.ScoredPoint;
+import io.qdrant.client.grpc.Points.ScrollPoints;
+import io.qdrant.client.grpc.Points.ScrollResponse;
+import io.qdrant.client.grpc.Points.SearchBatchPoints;
+import io.qdrant.client.grpc.Points.SearchBatchResponse;
+import io.qdrant.client.grpc.Points.SearchPoints;
+import io.qdrant.client.grpc.Points.SearchResponse;
+import io.qdrant.client.grpc.Points.SetPayloadPoints;
+import io.qdrant.client.grpc.Points.UpdateResult;
+import io.qdrant.client.grpc.Points.UpdateStatus;
+import io.qdrant.client.grpc.Points.UpsertPoints;
+import io.qdrant.client.grpc.PointsGrpc;
+import io.qdrant.client.grpc.QdrantGrpc;
+import io.qdrant.client.grpc.QdrantOuterClass.HealthCheckReply;
+import io.qdrant.client.grpc.QdrantOuterClass.HealthCheckRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Just enough of Qdrant's gRPC API for {@link QdrantVectorStore}, served on a local port: one collection kept in a
+ * map, brute-force cosine search, and filters of keyword and boolean matches.
+ */
+class FakeQdrantServer implements AutoCloseable {
+
+    private final Server server;
+    private final Map<String, PointStruct> points = new LinkedHashMap<>();
+    private int dimension = -1;
+    private final AtomicInteger upserts = new AtomicInteger();
+    private final AtomicInteger upsertsInFlight = new AtomicInteger();
+    private final AtomicInteger maxUpsertsInFlight = new AtomicInteger();
+    private final AtomicInteger createdIndexes = new AtomicInteger();
+    private final AtomicInteger batchSearches = new AtomicInteger();
+    private volatile long upsertDelayMs;
+
+    FakeQdrantServer() throws IOException {
+        server = ServerBuilder.forPort(0)
+                .addService(new Health())
+                .addService(new CollectionsService())
+                .addService(new PointsService())
+                .build()
+                .start();
+    }
+
+    int port() {
+        return server.getPort();
+    }
+
+    synchronized int dimension() {
+        return dimension;
+    }
+
+    synchronized void createCollection(int dimension) {
+        this.dimension = dimension;
+    }
+
+    synchronized int pointCount() {
+        return points.size();
+    }
+
+    int upserts() {
+        return upserts.get();
+    }
+
+    int maxUpsertsInFlight() {
+        return maxUpsertsInFlight.get();
+    }
+
+    int createdIndexes() {
+        return createdIndexes.get();
+    }
+
+    int batchSearches() {
+        return batchSearches.get();
+    }
+
+    void delayUpserts(long millis) {
+        upsertDelayMs = millis;
+    }
+
+    @Override
+    public void close() {
+        server.shutdownNow();
+    }
+
+    private static <T> void reply(StreamObserver<T> observer, T response) {
+        observer.onNext(response);
+        observer.onCompleted();
+    }
+
+    private static PointsOperationResponse completed() {
+        return PointsOperationResponse.newBuilder()
+                .setResult(UpdateResult.newBuilder().setStatus(UpdateStatus.Completed))
+                .build();
+    }
+
+    private static String key(PointStruct point) {
+        return point.getId().getUuid();
+    }
+
+    static boolean matches(Filter filter, Map<String, Value> payload) {
+        for (Condition condition : filter.getMustList()) {
+            if (!matches(condition.getField(), payload)) {
+                return false;
+            }
+        }
+        for (Condition condition : filter.getMustNotList()) {
+            if (matches(condition.getField(), payload)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(FieldCondition condition, Map<String, Value> payload) {
+        Value value = payload.get(condition.getKey());
+        if (value == null) {
+            return false;
+        }
+        Match match = condition.getMatch();
+        switch (match.getMatchValueCase()) {
+            case KEYWORD:
+                return match.getKeyword().equals(value.getStringValue());
+            case KEYWORDS:
+                return match.getKeywords().getStringsList().contains(value.getStringValue());
+            case BOOLEAN:
+                return match.getBoolean() == value.getBoolValue();
+            case INTEGER:
+                return match.getInteger() == value.getIntegerValue();
+            default:
+                throw new UnsupportedOperationException("Match " + match.getMatchValueCase());
+        }
+    }
+
+    private static float cosine(List<Float> a, List<Float> b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.size(); i++) {
+            dot += a.get(i) * b.get(i);
+            normA += a.get(i) * a.get(i);
+            normB += b.get(i) * b.get(i);
+        }
+        return (float) (dot / Math.sqrt(normA * normB));
+    }
+
+    private class Health extends QdrantGrpc.QdrantImplBase {
+
+        @Override
+        public void healthCheck(HealthCheckRequest request, StreamObserver<HealthCheckReply> observer) {
+            reply(observer, HealthCheckReply.newBuilder().setTitle("fake qdrant").setVersion("1.7.0").build());
+        }
+    }
+
+    private class CollectionsService extends CollectionsGrpc.CollectionsImplBase {
+
+        @Override
+        public void get(GetCollectionInfoRequest request, StreamObserver<GetCollectionInfoResponse> observer) {
+            int size = dimension();
+            if (size < 0) {
+                observer.onError(Status.NOT_FOUND.withDescription("Collection `" + request.getCollectionName()
+                        + "` doesn't exist!").asRuntimeException());
+                return;
+            }
+            VectorParams params = VectorParams.newBuilder().setSize(size).build();
+            CollectionInfo info = CollectionInfo.newBuilder()
+                    .setConfig(CollectionConfig.newBuilder()
+                            .setParams(CollectionParams.newBuilder()
+                                    .setVectorsConfig(VectorsConfig.newBuilder().setParams(params))))
+                    .build();
+            reply(observer, GetCollectionInfoResponse.newBuilder().setResult(info).build());
+        }
+
+        @Override
+        public void create(CreateCollection request, StreamObserver<CollectionOperationResponse> observer) {
+            createCollection((int) request.getVectorsConfig().getParams().getSize());
+            reply(observer, CollectionOperationResponse.newBuilder().setResult(true).build());
+        }
+    }
+
+    private class PointsService extends PointsGrpc.PointsImplBase {
+
+        @Override
+        public void upsert(UpsertPoints request, StreamObserver<PointsOperationResponse> observer) {
+            upserts.incrementAndGet();
+            maxUpsertsInFlight.accumulateAndGet(upsertsInFlight.incrementAndGet(), Math::max);
+            try {
+                if (upsertDelayMs > 0) {
+                    Thread.sleep(upsertDelayMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (FakeQdrantServer.this) {
+                for (PointStruct point : request.getPointsList()) {
+                    points.put(key(point), point);
+                }
+            }
+            upsertsInFlight.decrementAndGet();
+            reply(observer, completed());
+        }
+
+        @Override
+        public void delete(DeletePoints request, StreamObserver<PointsOperationResponse> observer) {
+            Filter filter = request.getPoints().getFilter();
+            synchronized (FakeQdrantServer.this) {
+                points.values().removeIf(point -> matches(filter, point.getPayloadMap()));
+            }
+            reply(observer, completed());
+        }
+
+        @Override
+        public void setPayload(SetPayloadPoints request, StreamObserver<PointsOperationResponse> observer) {
+            Filter filter = request.getPointsSelector().getFilter();
+            synchronized (FakeQdrantServer.this) {
+                points.replaceAll((id, point) -> matches(filter, point.getPayloadMap())
+                        ? point.toBuilder().putAllPayload(request.getPayloadMap()).build()
+                        : point);
+            }
+            reply(observer, completed());
+        }
+
+        @Override
+        public void createFieldIndex(CreateFieldIndexCollection request,
+                                     StreamObserver<PointsOperationResponse> observer) {
+            createdIndexes.incrementAndGet();
+            reply(observer, completed());
+        }
+
+        @Override
+        public void search(SearchPoints request, StreamObserver<SearchResponse> observer) {
+            reply(observer, SearchResponse.newBuilder().addAllResult(search(request)).build());
+        }
+
+        @Override
+        public void searchBatch(SearchBatchPoints request, StreamObserver<SearchBatchResponse> observer) {
+            batchSearches.incrementAndGet();
+            SearchBatchResponse.Builder response = SearchBatchResponse.newBuilder();
+            for (SearchPoints search : request.getSearchPointsList()) {
+                response.addResult(BatchResult.newBuilder().addAllResult(search(search)));
+            }
+            reply(observer, response.build());
+        }
+
+        private List<ScoredPoint> search(SearchPoints request) {
+            List<ScoredPoint> scored = new ArrayList<>();
+            synchronized (FakeQdrantServer.this) {
+                for (PointStruct point : points.values()) {
+                    if (matches(request.getFilter(), point.getPayloadMap())) {
+                        scored.add(ScoredPoint.newBuilder()
+                                .setId(point.getId())
+                                .setScore(cosine(request.getVectorList(), point.getVectors().getVector().getDataList()))
+                                .putAllPayload(point.getPayloadMap())
+                                .build());
+                    }
+                }
+            }
+            scored.sort(Comparator.comparingDouble(ScoredPoint::getScore).reversed());
+            return scored.subList(0, (int) Math.min(scored.size(), request.getLimit()));
+        }
+
+        @Override
+        public void scroll(ScrollPoints request, StreamObserver<ScrollResponse> observer) {
+            ScrollResponse.Builder response = ScrollResponse.newBuilder();
+            synchronized (FakeQdrantServer.this) {
+                for (PointStruct point : points.values()) {
+                    if (response.getResultCount() == request.getLimit()) {
+                        break;
+                    }
+                    if (matches(request.getFilter(), point.getPayloadMap())) {
+                        response.addResult(RetrievedPoint.newBuilder().setId(point.getId()));
+                    }
+                }
+            }
+            reply(observer, response.build());
+        }
+
+        @Override
+        public void count(CountPoints request, StreamObserver<CountResponse> observer) {
+            long count;
+            synchronized (FakeQdrantServer.this) {
+                count = points.values().stream()
+                        .filter(point -> matches(request.getFilter(), point.getPayloadMap()))
+                        .count();
+            }
+            reply(observer, CountResponse.newBuilder().setResult(CountResult.newBuilder().setCount(count)).build());
+        }
+    }
+}
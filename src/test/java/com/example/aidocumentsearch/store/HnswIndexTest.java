@@ -0,0 +1,81 @@
+package com.example.aidocumentsearch.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswIndexTest {
+
+    private static final int DIMENSION = 32;
+
+    @Test
+    void approximateSearchMatchesExactSearchClosely() {
+        Random random = new Random(1);
+        VectorArena arena = new VectorArena(DIMENSION, 256);
+        HnswIndex index = new HnswIndex(arena, 16, 100);
+        for (int i = 0; i < 3000; i++) {
+            index.insert(arena.append(randomVector(random)));
+        }
+
+        int k = 10;
+        double recallSum = 0.0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random);
+            double queryNorm = VectorArena.norm(query);
+
+            ScoredHeap exact = ScoredHeap.topK(k);
+            for (int row = 0; row < arena.size(); row++) {
+                exact.offer(row, arena.cosine(row, query, queryNorm), k);
+            }
+            Set<Integer> expected = new HashSet<>();
+            for (int row : exact.drainDescending()) {
+                expected.add(row);
+            }
+
+            ScoredHeap approximate = index.search(query, queryNorm, k, 64);
+            ScoredHeap best = ScoredHeap.topK(k);
+            while (!approximate.isEmpty()) {
+                best.offer(approximate.topRow(), approximate.topScore(), k);
+                approximate.pop();
+            }
+            int found = 0;
+            for (int row : best.drainDescending()) {
+                if (expected.contains(row)) {
+                    found++;
+                }
+            }
+            recallSum += (double) found / k;
+        }
+
+        assertTrue(recallSum / queries > 0.9, "recall@10 was " + recallSum / queries);
+    }
+
+    @Test
+    void storedVectorFindsItself() {
+        Random random = new Random(2);
+        VectorArena arena = new VectorArena(DIMENSION);
+        HnswIndex index = new HnswIndex(arena, 8, 50);
+        for (int i = 0; i < 500; i++) {
+            index.insert(arena.append(randomVector(random)));
+        }
+
+        float[] query = new float[DIMENSION];
+        arena.copy(123, query);
+        int[] rows = index.search(query, VectorArena.norm(query), 1, 32).drainDescending();
+        assertEquals(123, rows[0]);
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.aidocumentsearch.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LexicalIndexTest {
+
+    @Test
+    void ranksRareIdentifiersAboveCommonWords() {
+        LexicalIndex index = new LexicalIndex();
+        index.addAll(Arrays.asList(
+                LexicalIndex.analyze("a", "The pump housing is replaced during the annual service."),
+                LexicalIndex.analyze("b", "Order part XJ-2000 for the pump housing."),
+                LexicalIndex.analyze("c", "Part XJ and part 2000 are listed separately in the pump catalogue."),
+                LexicalIndex.analyze("d", "The service interval for the pump is twelve months.")));
+
+        List<LexicalIndex.Hit> hits = index.search("xj-2000 pump", 3);
+        assertEquals("b", hits.get(0).getChunkId());
+        assertEquals("c", hits.get(1).getChunkId());
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+        assertTrue(index.search("nonexistent", 3).isEmpty());
+    }
+
+    @Test
+    void tokenizesCompoundsAsPartsAndWhole() {
+        List<String> terms = new ArrayList<>();
+        LexicalIndex.tokenize("See v1.2.3, ERR_CONN_RESET and end.", terms::add);
+        assertEquals(Arrays.asList("see", "v1", "2", "3", "v1.2.3", "err", "conn", "reset", "err_conn_reset",
+                "and", "end"), terms);
+    }
+
+    @Test
+    void rewrittenChunksReplaceTheirEarlierTextAcrossCompaction() {
+        LexicalIndex index = new LexicalIndex();
+        for (int round = 0; round < 3; round++) {
+            List<LexicalIndex.Document> documents = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                documents.add(LexicalIndex.analyze("chunk-" + i, "round" + round + " shared text " + i));
+            }
+            index.addAll(documents);
+        }
+        index.remove("chunk-7");
+
+        assertEquals(999, index.size());
+        assertTrue(index.search("round0", 10).isEmpty());
+        assertTrue(index.search("round1", 10).isEmpty());
+        assertEquals(10, index.search("round2", 10).size());
+        List<LexicalIndex.Hit> hits = index.search("8", 1);
+        assertEquals("chunk-8", hits.get(0).getChunkId());
+        assertTrue(index.search("7", 5).isEmpty());
+    }
+
+    @Test
+    void reuploadedChunksDoNotInflateTermRarity() {
+        List<LexicalIndex.Document> documents = Arrays.asList(
+                LexicalIndex.analyze("a", "Valve torque settings for the pump."),
+                LexicalIndex.analyze("b", "Valve seals wear out."),
+                LexicalIndex.analyze("c", "The pump runs quietly."));
+        LexicalIndex fresh = new LexicalIndex();
+        fresh.addAll(documents);
+        LexicalIndex reuploaded = new LexicalIndex();
+        for (int upload = 0; upload < 3; upload++) {
+            reuploaded.addAll(documents);
+        }
+
+        List<LexicalIndex.Hit> expected = fresh.search("valve torque", 3);
+        List<LexicalIndex.Hit> actual = reuploaded.search("valve torque", 3);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getChunkId(), actual.get(i).getChunkId());
+            assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-6);
+        }
+    }
+
+    @Test
+    void reciprocalRankFusionRewardsAgreement() {
+        ChunkRecord a = new ChunkRecord("a", "f.pdf", 0, 1, "a");
+        ChunkRecord b = new ChunkRecord("b", "f.pdf", 1, 1, "b");
+        ChunkRecord c = new ChunkRecord("c", "f.pdf", 2, 1, "c");
+        List<SearchHit> vector = Arrays.asList(new SearchHit(a, 0.9f), new SearchHit(b, 0.8f));
+        List<SearchHit> lexical = Arrays.asList(new SearchHit(c, 12f), new SearchHit(b, 7f));
+
+        List<SearchHit> fused = RankFusion.reciprocalRank(Arrays.asList(vector, lexical), new double[]{1, 1}, 60, 2);
+        assertEquals(Arrays.asList("b", "a"), Arrays.asList(fused.get(0).getRecord().getId(),
+                fused.get(1).getRecord().getId()));
+
+        fused = RankFusion.reciprocalRank(Arrays.asList(vector, lexical), new double[]{0, 1}, 60, 3);
+        assertEquals("c", fused.get(0).getRecord().getId());
+    }
+}
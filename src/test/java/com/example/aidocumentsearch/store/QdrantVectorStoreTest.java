@@ -0,0 +1,162 @@
+package com.example.aidocumentsearch.store;
+
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.QdrantGrpcClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QdrantVectorStoreTest {
+
+    private static final int DIMENSION = 8;
+
+    private final Random random = new Random(11);
+    private FakeQdrantServer server;
+    private QdrantVectorStore store;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new FakeQdrantServer();
+        store = connect(server.port(), DIMENSION, 4, 2);
+    }
+
+    @AfterEach
+    void stop() {
+        store.close();
+        server.close();
+    }
+
+    @Test
+    void createsCollectionWithEmbeddingDimensionAndRefusesAnother() throws IOException {
+        assertTrue(store.isAvailable());
+        store.ensureCollection();
+        assertEquals(DIMENSION, server.dimension());
+        assertEquals(3, server.createdIndexes());
+
+        QdrantVectorStore other = connect(server.port(), DIMENSION * 2, 4, 2);
+        assertThrows(IllegalStateException.class, other::ensureCollection);
+        other.close();
+    }
+
+    @Test
+    void pipelinesBatchesAndWaitsForThemOnCommit() throws IOException {
+        server.delayUpserts(50);
+        List<float[]> vectors = vectors(20);
+        DocumentVersion version = store.beginDocument("a.pdf");
+        version.put(records("a.pdf", 20), vectors);
+
+        version.commit();
+        // Five batches of four, two of them in flight at a time
+        assertEquals(5, server.upserts());
+        assertEquals(2, server.maxUpsertsInFlight());
+        assertEquals(20, store.size());
+        SearchHit hit = store.searchAsync(vectors.get(3), 1, null).join().get(0);
+        assertEquals("a.pdf_chunk_3", hit.getRecord().getId());
+        assertEquals(4, hit.getRecord().getPage());
+        assertEquals("text 3", hit.getRecord().getText());
+        assertEquals(1.0f, hit.getScore(), 1e-4f);
+    }
+
+    @Test
+    void newVersionReplacesDocumentAndFiltersRestrictSearch() throws IOException {
+        List<float[]> original = vectors(6);
+        DocumentVersion first = store.beginDocument("a.pdf");
+        first.put(records("a.pdf", 6), original);
+        first.commit();
+        List<float[]> other = vectors(3);
+        DocumentVersion b = store.beginDocument("b.pdf");
+        b.put(records("b.pdf", 3), other);
+        b.commit();
+
+        DocumentVersion abandoned = store.beginDocument("b.pdf");
+        abandoned.put(records("b.pdf", 2), vectors(2));
+        abandoned.abort();
+
+        DocumentVersion second = store.beginDocument("a.pdf");
+        List<float[]> revised = vectors(2);
+        second.put(records("a.pdf", 2), revised);
+        // A stored document keeps serving its previous version until the new one is committed
+        assertEquals(9, store.size());
+        second.commit();
+
+        assertEquals(5, store.size());
+        assertEquals(5, server.pointCount());
+        assertEquals(1.0f, store.searchAsync(revised.get(1), 1, null).join().get(0).getScore(), 1e-4f);
+        List<SearchHit> filtered = store.searchAsync(original.get(4), 5, List.of("b.pdf")).join();
+        assertEquals(3, filtered.size());
+        assertTrue(filtered.stream().allMatch(hit -> hit.getRecord().getFilename().equals("b.pdf")));
+        assertEquals("b.pdf_chunk_2", store.searchAsync(other.get(2), 1, List.of("b.pdf")).join()
+                .get(0).getRecord().getId());
+
+        assertTrue(store.deleteDocument("a.pdf"));
+        assertFalse(store.deleteDocument("a.pdf"));
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    void batchSearchAnswersEveryQueryInOneRequest() throws IOException {
+        List<float[]> vectors = vectors(8);
+        DocumentVersion a = store.beginDocument("a.pdf");
+        a.put(records("a.pdf", 8), vectors);
+        a.commit();
+
+        List<List<SearchHit>> results = store.searchBatchAsync(List.of(vectors.get(5), vectors.get(1)), 2, null)
+                .join();
+        assertEquals(1, server.batchSearches());
+        assertEquals(2, results.size());
+        assertEquals("a.pdf_chunk_5", results.get(0).get(0).getRecord().getId());
+        assertEquals("a.pdf_chunk_1", results.get(1).get(0).getRecord().getId());
+        assertEquals(2, results.get(1).size());
+        assertTrue(store.searchBatchAsync(List.of(vectors.get(0)), 2, List.of()).join().get(0).isEmpty());
+    }
+
+    @Test
+    void reportsUnreachableServer() throws IOException {
+        int port = server.port();
+        server.close();
+        QdrantVectorStore offline = connect(port, DIMENSION, 4, 2);
+        assertFalse(offline.isAvailable());
+        assertThrows(IOException.class, offline::ensureCollection);
+        assertTrue(offline.searchAsync(vectors(1).get(0), 1, null).isCompletedExceptionally());
+        offline.close();
+    }
+
+    private static QdrantVectorStore connect(int port, int dimension, int batchSize, int maxInFlight) {
+        Duration timeout = Duration.ofSeconds(5);
+        QdrantClient client = new QdrantClient(QdrantGrpcClient.newBuilder("localhost", port, false)
+                .withTimeout(timeout)
+                .build());
+        return new QdrantVectorStore(client, "documents", dimension, batchSize, maxInFlight, timeout);
+    }
+
+    private static List<ChunkRecord> records(String filename, int count) {
+        List<ChunkRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add(new ChunkRecord(filename + "_chunk_" + i, filename, i, i + 1, "text " + i));
+        }
+        return records;
+    }
+
+    private List<float[]> vectors(int count) {
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                vector[d] = (float) random.nextGaussian();
+            }
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.aidocumentsearch.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VectorArenaTest {
+
+    private static final int DIMENSION = 384;
+
+    @Test
+    void quantizedScoresTrackFullPrecisionScores() {
+        Random random = new Random(3);
+        VectorArena arena = new VectorArena(DIMENSION, 64, VectorArena.Quantization.INT8);
+        for (int i = 0; i < 200; i++) {
+            arena.append(randomVector(random));
+        }
+
+        float[] query = randomVector(random);
+        double queryNorm = VectorArena.norm(query);
+        for (int row = 0; row < arena.size(); row++) {
+            assertEquals(arena.exactCosine(row, query, queryNorm), arena.cosine(row, query, queryNorm), 0.01);
+        }
+    }
+
+    @Test
+    void quantizedArenaKeepsFullPrecisionOffHeap() {
+        Random random = new Random(4);
+        VectorArena arena = new VectorArena(DIMENSION, 64, VectorArena.Quantization.INT8);
+        float[] vector = randomVector(random);
+        int row = arena.append(vector);
+
+        float[] copy = new float[DIMENSION];
+        arena.copy(row, copy);
+        // Stored at unit length
+        assertEquals(vector[17] / VectorArena.norm(vector), copy[17], 1e-6);
+        assertEquals(1.0f, arena.norm(row));
+        assertTrue(arena.fullPrecisionBytes() / (double) arena.memoryBytes() > 3.5);
+        // Sized by the rows stored, not the 64-row slab holding them
+        assertEquals((long) DIMENSION * Float.BYTES, arena.offHeapBytes());
+        assertEquals(DIMENSION + 2L * Float.BYTES, arena.memoryBytes());
+
+        arena.append(randomVector(random));
+        assertEquals(2L * DIMENSION * Float.BYTES, arena.offHeapBytes());
+        assertEquals(2L * (DIMENSION + 1) * Float.BYTES, arena.fullPrecisionBytes());
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
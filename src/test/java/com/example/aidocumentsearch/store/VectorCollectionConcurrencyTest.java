@@ -0,0 +1,147 @@
+package com.example.aidocumentsearch.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VectorCollectionConcurrencyTest {
+
+    private static final int DIMENSION = 32;
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int UPLOADS_PER_WRITER = 25;
+    private static final int CHUNKS_PER_UPLOAD = 20;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void concurrentUploadsSearchesAndClearsStayConsistent() throws Exception {
+        CollectionOptions options = new CollectionOptions(8, 40, 32, 200, VectorArena.Quantization.NONE, 4,
+                CollectionOptions.DEFAULT_MAX_SEGMENT_ROWS);
+        VectorCollection collection = VectorCollection.open(directory, options);
+
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS + 2);
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch writersDone = new CountDownLatch(WRITERS);
+
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            pool.execute(() -> {
+                Random random = new Random(writer);
+                try {
+                    for (int upload = 0; upload < UPLOADS_PER_WRITER; upload++) {
+                        // Every few uploads reuse a filename so rows get replaced concurrently
+                        String filename = "doc-" + writer + "-" + (upload % 7) + ".pdf";
+                        collection.put(records(filename, CHUNKS_PER_UPLOAD), vectors(random, CHUNKS_PER_UPLOAD));
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                } finally {
+                    writersDone.countDown();
+                }
+            });
+        }
+
+        VectorCollection.SearchMode[] modes = VectorCollection.SearchMode.values();
+        for (int r = 0; r < READERS; r++) {
+            int reader = r;
+            pool.execute(() -> {
+                Random random = new Random(100 + reader);
+                try {
+                    while (writing.get()) {
+                        VectorCollection.SearchMode mode = modes[random.nextInt(modes.length)];
+                        List<SearchHit> hits = collection.search(vectors(random, 1).get(0), 5, mode);
+                        assertTrue(hits.size() <= 5);
+                        for (int i = 0; i < hits.size(); i++) {
+                            assertNotNull(hits.get(i).getRecord());
+                            if (i > 0) {
+                                assertTrue(hits.get(i - 1).getScore() >= hits.get(i).getScore());
+                            }
+                        }
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            });
+        }
+
+        pool.execute(() -> {
+            try {
+                for (int i = 0; i < 5 && writing.get(); i++) {
+                    Thread.sleep(15);
+                    collection.clear();
+                }
+            } catch (Throwable t) {
+                failures.add(t);
+            }
+        });
+        pool.execute(() -> {
+            try {
+                while (writing.get()) {
+                    Thread.sleep(5);
+                    collection.checkpoint();
+                }
+            } catch (Throwable t) {
+                failures.add(t);
+            }
+        });
+
+        assertTrue(writersDone.await(60, TimeUnit.SECONDS));
+        writing.set(false);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertTrue(failures.isEmpty(), () -> "Concurrent access failed: " + failures.peek());
+
+        // Whatever survived the clears must round-trip through a restart unchanged
+        int surviving = collection.size();
+        collection.close();
+        VectorCollection reopened = VectorCollection.open(directory, options);
+        assertEquals(surviving, reopened.size());
+
+        reopened.clear();
+        Random random = new Random(99);
+        List<float[]> vectors = vectors(random, CHUNKS_PER_UPLOAD);
+        reopened.put(records("final.pdf", CHUNKS_PER_UPLOAD), vectors);
+        assertEquals(CHUNKS_PER_UPLOAD, reopened.size());
+        assertEquals("final.pdf_chunk_3",
+                reopened.search(vectors.get(3), 1, VectorCollection.SearchMode.EXACT).get(0).getRecord().getId());
+        reopened.close();
+    }
+
+    private static List<ChunkRecord> records(String filename, int count) {
+        List<ChunkRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add(new ChunkRecord(filename + "_chunk_" + i, filename, i, "text " + i));
+        }
+        return records;
+    }
+
+    private static List<float[]> vectors(Random random, int count) {
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                vector[d] = (float) random.nextGaussian();
+            }
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+}
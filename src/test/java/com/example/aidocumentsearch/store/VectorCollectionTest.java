@@ -0,0 +1,353 @@
+package com.example.aidocumentsearch.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VectorCollectionTest {
+
+    private static final int DIMENSION = 16;
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(5);
+
+    @Test
+    void reopensCheckpointedSegmentsAndReplaysLog() throws IOException {
+        List<float[]> first = vectors(50);
+        List<float[]> second = vectors(20);
+
+        VectorCollection collection = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        collection.put(records("a.pdf", 50), first);
+        collection.checkpoint();
+        collection.put(records("b.pdf", 20), second);
+        // No close: the second batch only exists in the write-ahead log
+
+        VectorCollection reopened = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        assertEquals(70, reopened.size());
+        assertEquals("b.pdf_chunk_7", topId(reopened, second.get(7)));
+        assertEquals("a.pdf_chunk_42", topId(reopened, first.get(42)));
+        // Page numbers survive both the segment file and the log
+        assertEquals(8, reopened.search(second.get(7), 1, VectorCollection.SearchMode.EXACT).get(0).getRecord().getPage());
+        assertEquals(43, reopened.search(first.get(42), 1, VectorCollection.SearchMode.EXACT).get(0).getRecord().getPage());
+        reopened.close();
+    }
+
+    @Test
+    void refusesToReopenWithAnotherEmbeddingModel() throws IOException {
+        VectorCollection collection = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        collection.bindEmbeddingModel("model-a", DIMENSION);
+        collection.put(records("a.pdf", 5), vectors(5));
+        collection.close();
+
+        VectorCollection reopened = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        reopened.bindEmbeddingModel("model-a", DIMENSION);
+        assertThrows(IllegalStateException.class, () -> reopened.bindEmbeddingModel("model-b", DIMENSION * 2));
+        assertThrows(IllegalArgumentException.class, () -> reopened.put(records("b.pdf", 1), Collections.singletonList(new float[DIMENSION * 2])));
+        reopened.close();
+    }
+
+    @Test
+    void rewrittenChunkReplacesPreviousRowAcrossRestart() throws IOException {
+        VectorCollection collection = VectorCollection.open(directory, options(VectorArena.Quantization.INT8));
+        collection.put(records("a.pdf", 10), vectors(10));
+        collection.checkpoint();
+        List<float[]> replacement = vectors(10);
+        collection.put(records("a.pdf", 10), replacement);
+        collection.close();
+
+        VectorCollection reopened = VectorCollection.open(directory, options(VectorArena.Quantization.INT8));
+        assertEquals(10, reopened.size());
+        assertEquals(2, reopened.segmentCount());
+        SearchHit hit = reopened.search(replacement.get(3), 1, VectorCollection.SearchMode.EXACT).get(0);
+        assertEquals("a.pdf_chunk_3", hit.getRecord().getId());
+        assertEquals(1.0f, hit.getScore(), 1e-4f);
+    }
+
+    @Test
+    void lexicalIndexIsRebuiltOnReopenAndFollowsRewrites() throws IOException {
+        VectorCollection collection = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        collection.put(records("a.pdf", 10), vectors(10));
+        collection.checkpoint();
+        collection.put(Collections.singletonList(new ChunkRecord("a.pdf_chunk_3", "a.pdf", 3, 4, "revised text")),
+                vectors(1));
+        collection.close();
+
+        VectorCollection reopened = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        List<SearchHit> hits = reopened.searchLexical("text 5", 1);
+        assertEquals("a.pdf_chunk_5", hits.get(0).getRecord().getId());
+        assertEquals("revised text", reopened.searchLexical("revised", 5).get(0).getRecord().getText());
+        assertTrue(reopened.searchLexical("3", 5).isEmpty());
+
+        reopened.clear();
+        assertTrue(reopened.searchLexical("text", 5).isEmpty());
+    }
+
+    @Test
+    void tornLogTailIsDiscarded() throws IOException {
+        VectorCollection collection = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        collection.put(records("a.pdf", 5), vectors(5));
+
+        Path log;
+        try (Stream<Path> files = Files.list(directory)) {
+            log = files.filter(file -> file.toString().endsWith(".wal")).collect(Collectors.toList()).get(0);
+        }
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        VectorCollection reopened = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        assertEquals(4, reopened.size());
+    }
+
+    @Test
+    void newVersionReplacesDocumentOnCommitAndUncommittedOneIsDropped() throws IOException {
+        VectorCollection collection = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        List<float[]> original = vectors(10);
+        collection.put(records("a.pdf", 10), original);
+        List<float[]> other = vectors(5);
+        collection.put(records("b.pdf", 5), other);
+
+        DocumentVersion version = collection.beginDocument("a.pdf");
+        List<float[]> revised = vectors(4);
+        version.put(records("a.pdf", 4), revised);
+        // Not visible before the commit
+        assertEquals(15, collection.size());
+        assertEquals("a.pdf_chunk_8", topId(collection, original.get(8)));
+
+        version.commit();
+        assertEquals(9, collection.size());
+        assertEquals(1.0f, collection.search(revised.get(2), 1, VectorCollection.SearchMode.EXACT)
+                .get(0).getScore(), 1e-4f);
+        // Chunks the new version no longer has are gone from both indexes
+        assertTrue(collection.searchLexical("8", 5).isEmpty());
+        List<SearchHit> filtered = collection.search(original.get(8), 3, VectorCollection.SearchMode.EXACT,
+                List.of("b.pdf"));
+        assertTrue(filtered.stream().allMatch(hit -> hit.getRecord().getFilename().equals("b.pdf")));
+        assertEquals("b.pdf_chunk_1",
+                collection.searchLexical("text 1", 1, List.of("b.pdf")).get(0).getRecord().getId());
+
+        DocumentVersion abandoned = collection.beginDocument("b.pdf");
+        abandoned.put(records("b.pdf", 2), vectors(2));
+        // Closed without committing the second version of b.pdf
+
+        VectorCollection reopened = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        assertEquals(9, reopened.size());
+        assertEquals(2, reopened.documentCount());
+        assertEquals("b.pdf_chunk_3", topId(reopened, other.get(3)));
+        reopened.close();
+    }
+
+    @Test
+    void firstUploadIsSearchableBatchByBatch() throws IOException {
+        VectorCollection collection = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        DocumentVersion first = collection.beginDocument("a.pdf");
+        List<float[]> batch = vectors(4);
+        first.put(records("a.pdf", 4), batch);
+        assertEquals(4, collection.size());
+        assertEquals("a.pdf_chunk_2", topId(collection, batch.get(2)));
+
+        // A second upload started meanwhile is versioned, and its commit takes the document over
+        DocumentVersion second = collection.beginDocument("a.pdf");
+        List<float[]> revised = vectors(3);
+        second.put(records("a.pdf", 3), revised);
+        assertEquals(4, collection.size());
+        second.commit();
+        assertEquals(3, collection.size());
+        assertThrows(IllegalStateException.class, () -> first.put(records("a.pdf", 2), vectors(2)));
+        assertThrows(IllegalStateException.class, first::commit);
+
+        DocumentVersion aborted = collection.beginDocument("b.pdf");
+        aborted.put(records("b.pdf", 5), vectors(5));
+        assertEquals(8, collection.size());
+        aborted.abort();
+        assertEquals(3, collection.size());
+
+        VectorCollection reopened = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        assertEquals(3, reopened.size());
+        assertEquals(1, reopened.documentCount());
+        reopened.close();
+    }
+
+    @Test
+    void deletedDocumentIsReclaimedByCompaction() throws IOException {
+        VectorCollection collection = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        List<float[]> kept = new ArrayList<>();
+        for (int batch = 0; batch < 5; batch++) {
+            List<ChunkRecord> records = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                int index = batch * 4 + i;
+                records.add(new ChunkRecord("a.pdf_chunk_" + index, "a.pdf", index, 1, "text " + index));
+            }
+            List<float[]> batchVectors = vectors(4);
+            kept.addAll(batchVectors);
+            collection.put(records, batchVectors);
+        }
+        collection.put(records("b.pdf", 6), vectors(6));
+        collection.checkpoint();
+
+        assertTrue(collection.deleteDocument("b.pdf"));
+        assertFalse(collection.deleteDocument("b.pdf"));
+        assertEquals(20, collection.size());
+        assertEquals(1, collection.tombstoneCount());
+        assertTrue(collection.searchLexical("text 5", 10).stream()
+                .noneMatch(hit -> hit.getRecord().getFilename().equals("b.pdf")));
+
+        // One tombstone reclaimed, five segments of a.pdf merged into one
+        assertEquals(5, collection.compact(2, 0.3));
+        assertEquals(0, collection.tombstoneCount());
+        assertEquals(1, collection.segmentCount());
+        assertEquals("a.pdf_chunk_13", topId(collection, kept.get(13)));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.filter(file -> file.toString().endsWith(".seg")).count());
+        }
+        collection.close();
+
+        VectorCollection reopened = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        assertEquals(20, reopened.size());
+        assertEquals(1, reopened.segmentCount());
+        assertEquals("a.pdf_chunk_17", topId(reopened, kept.get(17)));
+        reopened.close();
+    }
+
+    @Test
+    void deletedDocumentStaysGoneAcrossRepeatedRestarts() throws IOException {
+        VectorCollection collection = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+        List<float[]> kept = vectors(8);
+        collection.put(records("a.pdf", 8), kept);
+        collection.put(records("b.pdf", 6), vectors(6));
+        collection.checkpoint();
+        assertTrue(collection.deleteDocument("b.pdf"));
+        // Closed before a checkpoint could reclaim the tombstone
+
+        for (int restart = 0; restart < 2; restart++) {
+            VectorCollection reopened = VectorCollection.open(directory, options(VectorArena.Quantization.NONE));
+            assertEquals(8, reopened.size());
+            assertEquals(1, reopened.documentCount());
+            assertEquals("a.pdf_chunk_5", topId(reopened, kept.get(5)));
+            reopened.close();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.filter(file -> file.toString().endsWith(".seg")).count());
+        }
+    }
+
+    @Test
+    void batchSearchMatchesOneExactSearchPerQuery() throws IOException {
+        for (VectorArena.Quantization quantization : VectorArena.Quantization.values()) {
+            VectorCollection collection = VectorCollection.open(directory.resolve(quantization.name()),
+                    options(quantization));
+            List<float[]> stored = vectors(150);
+            collection.put(records("a.pdf", 150), stored);
+            // b.pdf stays in memory while a.pdf is read from a mapped segment file
+            collection.checkpoint();
+            collection.put(records("b.pdf", 70), vectors(70));
+            // Rewritten rows leave deleted ones behind in the first segment
+            collection.put(records("a.pdf", 10), vectors(10));
+
+            // Seven queries cover the four-at-a-time kernel and its remainder
+            List<float[]> queries = vectors(7);
+            List<List<SearchHit>> batch = collection.searchBatch(queries, 5, null);
+            List<List<SearchHit>> filtered = collection.searchBatch(queries, 5, List.of("b.pdf"));
+            for (int q = 0; q < queries.size(); q++) {
+                assertEquals(ids(collection.search(queries.get(q), 5, VectorCollection.SearchMode.EXACT)),
+                        ids(batch.get(q)));
+                assertEquals(ids(collection.search(queries.get(q), 5, VectorCollection.SearchMode.EXACT,
+                        List.of("b.pdf"))), ids(filtered.get(q)));
+            }
+            SearchHit self = collection.searchBatch(List.of(stored.get(40)), 1, null).get(0).get(0);
+            assertEquals("a.pdf_chunk_40", self.getRecord().getId());
+            assertEquals(1.0f, self.getScore(), 1e-4f);
+            collection.close();
+        }
+    }
+
+    @Test
+    void parallelExactSearchMatchesFullPrecisionScan() throws IOException {
+        // AUTO scans exactly below the threshold, so those scans are the ones split across cores
+        CollectionOptions options = new CollectionOptions(8, 50, 32, 5000, VectorArena.Quantization.NONE, 4,
+                CollectionOptions.DEFAULT_MAX_SEGMENT_ROWS);
+        VectorCollection collection = VectorCollection.inMemory(options);
+        int large = 2500;
+        List<float[]> stored = vectors(large);
+        collection.put(records("a.pdf", large), stored);
+        collection.put(records("b.pdf", 300), vectors(300));
+        collection.put(records("c.pdf", 1500), vectors(1500));
+        // Rewritten rows leave deleted ones behind in the first partition
+        collection.put(records("a.pdf", 10), vectors(10));
+
+        for (float[] query : vectors(5)) {
+            assertEquals(ids(collection.search(query, 10, VectorCollection.SearchMode.FULL_PRECISION)),
+                    ids(collection.search(query, 10, VectorCollection.SearchMode.AUTO)));
+        }
+        SearchHit self = collection.search(stored.get(large - 1), 1, VectorCollection.SearchMode.AUTO).get(0);
+        assertEquals("a.pdf_chunk_" + (large - 1), self.getRecord().getId());
+        assertEquals(1.0f, self.getScore(), 1e-4f);
+
+        // The default threshold of 5000 rows gives four cores runs of 1250 rows
+        assertEquals(1250, VectorCollection.scanPartitionRows(5000, 4));
+        assertEquals(VectorCollection.MIN_SCAN_PARTITION_ROWS, VectorCollection.scanPartitionRows(1000, 8));
+    }
+
+    @Test
+    void queryOfAnotherDimensionIsRefused() throws IOException {
+        VectorCollection collection = VectorCollection.inMemory(options(VectorArena.Quantization.INT8));
+        collection.put(records("a.pdf", 5), vectors(5));
+
+        for (VectorCollection.SearchMode mode : VectorCollection.SearchMode.values()) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> collection.search(new float[DIMENSION - 1], 3, mode));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> collection.searchBatch(List.of(new float[DIMENSION + 1]), 3, null));
+    }
+
+    private static List<String> ids(List<SearchHit> hits) {
+        return hits.stream().map(hit -> hit.getRecord().getId()).collect(Collectors.toList());
+    }
+
+    private String topId(VectorCollection collection, float[] query) {
+        return collection.search(query, 1, VectorCollection.SearchMode.APPROXIMATE).get(0).getRecord().getId();
+    }
+
+    private static CollectionOptions options(VectorArena.Quantization quantization) {
+        return new CollectionOptions(8, 50, 32, 1000, quantization, 4, CollectionOptions.DEFAULT_MAX_SEGMENT_ROWS);
+    }
+
+    private static List<ChunkRecord> records(String filename, int count) {
+        List<ChunkRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add(new ChunkRecord(filename + "_chunk_" + i, filename, i, i + 1, "text " + i));
+        }
+        return records;
+    }
+
+    private List<float[]> vectors(int count) {
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                vector[d] = (float) random.nextGaussian();
+            }
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+}